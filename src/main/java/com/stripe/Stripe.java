@@ -1,5 +1,8 @@
 package com.stripe;
 
+import com.stripe.net.StripeClient;
+import com.stripe.net.WarmUp;
+
 import java.net.PasswordAuthentication;
 import java.net.Proxy;
 
@@ -41,7 +44,9 @@ public abstract class Stripe {
 	}
 
 	/**
-	 * Provide credential for proxy authorization if required
+	 * Provide credential for proxy authorization if required. It is sent to
+	 * HTTP proxies up front using the Basic scheme; the JVM-wide
+	 * {@link java.net.Authenticator} is left alone.
 	 *
 	 * @param auth proxy required userName and password
 	 */
@@ -52,4 +57,24 @@ public abstract class Stripe {
 	public static PasswordAuthentication getProxyCredential() {
 		return proxyCredential;
 	}
+
+	/**
+	 * Does the one-off work of the first API call now, in parallel: building
+	 * the JSON adapters for the model classes, setting up TLS and resolving the
+	 * API host. Call it at startup so the first real request isn't slowed
+	 * down by it.
+	 */
+	public static void warmUp() {
+		warmUp(0);
+	}
+
+	/**
+	 * Like {@link #warmUp()}, and also opens {@code connections} connections
+	 * to the API, which stay in the keep-alive pool for the first requests.
+	 *
+	 * @return the number of connections that were opened
+	 */
+	public static int warmUp(int connections) {
+		return WarmUp.run(StripeClient.getDefault(), connections);
+	}
 }
@@ -0,0 +1,20 @@
+package com.stripe.exception;
+
+/**
+ * Thrown when a request's {@link com.stripe.net.Deadline} passes before
+ * Stripe's answer has been read, whether the request was still waiting to be
+ * sent or already in progress.
+ */
+public class DeadlineExceededException extends APIConnectionException {
+
+	private static final long serialVersionUID = 1L;
+
+	public DeadlineExceededException(String message) {
+		super(message);
+	}
+
+	public DeadlineExceededException(String message, Throwable e) {
+		super(message, e);
+	}
+
+}
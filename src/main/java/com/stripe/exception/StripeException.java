@@ -1,6 +1,8 @@
 package com.stripe.exception;
 
 public abstract class StripeException extends Exception {
+	private static volatile boolean captureStackTraces = true;
+	private static final ThreadLocal<Boolean> captureStackTracesOnThread = new ThreadLocal<Boolean>();
 
 	private String requestId;
 	private Integer statusCode;
@@ -27,6 +29,54 @@ public abstract class StripeException extends Exception {
 		return statusCode;
 	}
 
+	/**
+	 * Turns capturing stack traces for new Stripe exceptions on or off. Walking
+	 * the stack is most of the cost of an exception, which adds up when many
+	 * requests fail, e.g. with card declines during a card testing attack.
+	 * Exceptions created while it is off have an empty stack trace.
+	 */
+	public static void setCaptureStackTraces(boolean capture) {
+		captureStackTraces = capture;
+	}
+
+	public static boolean getCaptureStackTraces() {
+		return captureStackTraces;
+	}
+
+	/**
+	 * Overrides {@link #setCaptureStackTraces(boolean)} for exceptions created
+	 * on the current thread, e.g. by code that turns them into values anyway.
+	 *
+	 * @param capture whether to capture, or null to follow the global setting
+	 * @return the previous setting, to be restored afterwards
+	 */
+	public static Boolean setCaptureStackTracesOnCurrentThread(Boolean capture) {
+		Boolean previous = captureStackTracesOnThread.get();
+		if (capture == null) {
+			captureStackTracesOnThread.remove();
+		} else {
+			captureStackTracesOnThread.set(capture);
+		}
+		return previous;
+	}
+
+	/**
+	 * @return the current thread's override, or null if it follows the
+	 *         global setting
+	 */
+	public static Boolean getCaptureStackTracesOnCurrentThread() {
+		return captureStackTracesOnThread.get();
+	}
+
+	@Override
+	public synchronized Throwable fillInStackTrace() {
+		Boolean capture = captureStackTracesOnThread.get();
+		if (capture != null ? capture : captureStackTraces) {
+			return super.fillInStackTrace();
+		}
+		return this;
+	}
+
 	public String toString() {
 		String reqIdStr = "";
 		if (requestId != null) {
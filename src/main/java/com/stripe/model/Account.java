@@ -187,7 +187,7 @@ public class Account extends APIResource implements MetadataStore<Account> {
 	public static Account retrieve(String id, RequestOptions options)
 			throws AuthenticationException, InvalidRequestException,
 			APIConnectionException, CardException, APIException {
-		return request(RequestMethod.GET, instanceURL(Account.class, id), null, Account.class, options);
+		return cachedRequest(instanceURL(Account.class, id), id, Account.class, options);
 	}
 
 	public Account update(Map<String, Object> params)
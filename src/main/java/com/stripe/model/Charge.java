@@ -6,12 +6,16 @@ import com.stripe.exception.AuthenticationException;
 import com.stripe.exception.CardException;
 import com.stripe.exception.InvalidRequestException;
 import com.stripe.net.APIResource;
+import com.stripe.net.BulkResult;
+import com.stripe.net.BulkRetriever;
 import com.stripe.net.RequestOptions;
+import com.stripe.net.StripeResult;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Map;
 
-public class Charge extends APIResource implements MetadataStore<Charge> {
+public class Charge extends APIResource implements MetadataStore<Charge>, HasId {
 	Integer amount;
 	Long created;
 	String currency;
@@ -28,12 +32,12 @@ public class Charge extends APIResource implements MetadataStore<Charge> {
 	String failureMessage;
 	String failureCode;
 	Integer amountRefunded;
-	String customer;
-	String invoice;
+	ExpandableField<Customer> customer;
+	ExpandableField<Invoice> invoice;
 	ChargeRefundCollection refunds;
 	Card card;
 	Dispute dispute;
-	String balanceTransaction;
+	ExpandableField<BalanceTransaction> balanceTransaction;
 	Map<String, String> metadata;
 	String receiptEmail;
 	String receiptNumber;
@@ -213,19 +217,43 @@ public class Charge extends APIResource implements MetadataStore<Charge> {
 	}
 
 	public String getCustomer() {
-		return customer;
+		return (this.customer != null) ? this.customer.getId() : null;
 	}
 
-	public void setCustomer(String customer) {
-		this.customer = customer;
+	public void setCustomer(String customerID) {
+		this.customer = setExpandableFieldID(customerID, this.customer);
+	}
+
+	public Customer getCustomerObject() {
+		return (this.customer != null) ? this.customer.getExpanded() : null;
+	}
+
+	public void setCustomerObject(Customer customer) {
+		this.customer = new ExpandableField<Customer>(customer.getId(), customer);
+	}
+
+	public ExpandableField<Customer> getCustomerReference() {
+		return this.customer;
 	}
 
 	public String getInvoice() {
-		return invoice;
+		return (this.invoice != null) ? this.invoice.getId() : null;
+	}
+
+	public void setInvoice(String invoiceID) {
+		this.invoice = setExpandableFieldID(invoiceID, this.invoice);
+	}
+
+	public Invoice getInvoiceObject() {
+		return (this.invoice != null) ? this.invoice.getExpanded() : null;
 	}
 
-	public void setInvoice(String invoice) {
-		this.invoice = invoice;
+	public void setInvoiceObject(Invoice invoice) {
+		this.invoice = new ExpandableField<Invoice>(invoice.getId(), invoice);
+	}
+
+	public ExpandableField<Invoice> getInvoiceReference() {
+		return this.invoice;
 	}
 
 	public ChargeRefundCollection getRefunds() {
@@ -254,11 +282,23 @@ public class Charge extends APIResource implements MetadataStore<Charge> {
 	}
 
 	public String getBalanceTransaction() {
-		return balanceTransaction;
+		return (this.balanceTransaction != null) ? this.balanceTransaction.getId() : null;
+	}
+
+	public void setBalanceTransaction(String balanceTransactionID) {
+		this.balanceTransaction = setExpandableFieldID(balanceTransactionID, this.balanceTransaction);
 	}
 
-	public void setBalanceTransaction(String balanceTransaction) {
-		this.balanceTransaction = balanceTransaction;
+	public BalanceTransaction getBalanceTransactionObject() {
+		return (this.balanceTransaction != null) ? this.balanceTransaction.getExpanded() : null;
+	}
+
+	public void setBalanceTransactionObject(BalanceTransaction balanceTransaction) {
+		this.balanceTransaction = new ExpandableField<BalanceTransaction>(balanceTransaction.getId(), balanceTransaction);
+	}
+
+	public ExpandableField<BalanceTransaction> getBalanceTransactionReference() {
+		return this.balanceTransaction;
 	}
 
 	public Map<String, String> getMetadata() {
@@ -383,6 +423,18 @@ public class Charge extends APIResource implements MetadataStore<Charge> {
 		return request(RequestMethod.POST, classURL(Charge.class), params, Charge.class, options);
 	}
 
+	/**
+	 * Like {@link #create(Map)}, but returns declines and other failures
+	 * instead of throwing them.
+	 */
+	public static StripeResult<Charge> createResult(Map<String, Object> params) {
+		return createResult(params, null);
+	}
+
+	public static StripeResult<Charge> createResult(Map<String, Object> params, RequestOptions options) {
+		return requestResult(RequestMethod.POST, classURL(Charge.class), params, Charge.class, options);
+	}
+
 	@Deprecated
 	public static Charge retrieve(String id, String apiKey)
 			throws AuthenticationException, InvalidRequestException,
@@ -395,6 +447,20 @@ public class Charge extends APIResource implements MetadataStore<Charge> {
 		return request(RequestMethod.GET, instanceURL(Charge.class, id), null, Charge.class, options);
 	}
 
+	/**
+	 * Retrieves many charges by id, with at most {@code parallelism} requests in
+	 * flight. Duplicate ids are fetched once and failures are reported per id.
+	 */
+	public static BulkResult<Charge> retrieveAll(Collection<String> ids, int parallelism, RequestOptions options) {
+		return BulkRetriever.retrieveAll(ids, parallelism, options, new BulkRetriever.Retriever<Charge>() {
+			public Charge retrieve(String id, RequestOptions options)
+					throws AuthenticationException, InvalidRequestException,
+					APIConnectionException, CardException, APIException {
+				return Charge.retrieve(id, options);
+			}
+		});
+	}
+
 	@Deprecated
 	public Charge update(Map<String, Object> params, String apiKey)
 			throws AuthenticationException, InvalidRequestException,
@@ -77,7 +77,7 @@ public class Coupon extends APIResource implements MetadataStore<Coupon> {
 	public static Coupon retrieve(String id, RequestOptions options)
 			throws AuthenticationException, InvalidRequestException,
 			APIConnectionException, CardException, APIException {
-		return request(RequestMethod.GET, instanceURL(Coupon.class, id), null, Coupon.class, options);
+		return cachedRequest(instanceURL(Coupon.class, id), id, Coupon.class, options);
 	}
 
 	public static CouponCollection all(Map<String, Object> params)
@@ -6,12 +6,15 @@ import com.stripe.exception.AuthenticationException;
 import com.stripe.exception.CardException;
 import com.stripe.exception.InvalidRequestException;
 import com.stripe.net.APIResource;
+import com.stripe.net.BulkResult;
+import com.stripe.net.BulkRetriever;
 import com.stripe.net.RequestOptions;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
-public class Customer extends APIResource implements MetadataStore<Customer> {
+public class Customer extends APIResource implements MetadataStore<Customer>, HasId {
 	Long created;
 	String id;
 	Boolean livemode;
@@ -271,7 +274,21 @@ public class Customer extends APIResource implements MetadataStore<Customer> {
 	public static Customer retrieve(String id, RequestOptions options)
 			throws AuthenticationException, InvalidRequestException,
 			APIConnectionException, CardException, APIException {
-		return request(RequestMethod.GET, instanceURL(Customer.class, id), null, Customer.class, options);
+		return cachedRequest(instanceURL(Customer.class, id), id, Customer.class, options);
+	}
+
+	/**
+	 * Retrieves many customers by id, with at most {@code parallelism} requests in
+	 * flight. Duplicate ids are fetched once and failures are reported per id.
+	 */
+	public static BulkResult<Customer> retrieveAll(Collection<String> ids, int parallelism, RequestOptions options) {
+		return BulkRetriever.retrieveAll(ids, parallelism, options, new BulkRetriever.Retriever<Customer>() {
+			public Customer retrieve(String id, RequestOptions options)
+					throws AuthenticationException, InvalidRequestException,
+					APIConnectionException, CardException, APIException {
+				return Customer.retrieve(id, options);
+			}
+		});
 	}
 
 	@Deprecated
@@ -39,6 +39,8 @@ public class EventDataDeserializer implements JsonDeserializer<EventData> {
         objectMap.put("balance", Balance.class);
         objectMap.put("card", Card.class);
         objectMap.put("balance_transaction", BalanceTransaction.class);
+        objectMap.put("product", Product.class);
+        objectMap.put("sku", SKU.class);
     }
 
     private Object deserializeJsonPrimitive(JsonPrimitive element) {
@@ -0,0 +1,30 @@
+package com.stripe.model;
+
+/**
+ * A reference to another object that the API renders either as the object's
+ * id or, when requested with {@code expand[]}, as the full object.
+ */
+public class ExpandableField<T extends HasId> {
+	private final String id;
+	private final T expandedObject;
+
+	public ExpandableField(String id, T expandedObject) {
+		this.id = id;
+		this.expandedObject = expandedObject;
+	}
+
+	public boolean isExpanded() {
+		return expandedObject != null;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * @return the expanded object, or null if only the id was returned
+	 */
+	public T getExpanded() {
+		return expandedObject;
+	}
+}
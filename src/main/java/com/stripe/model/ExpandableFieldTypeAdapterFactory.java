@@ -0,0 +1,53 @@
+package com.stripe.model;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+
+/**
+ * Reads {@link ExpandableField}s straight off the token stream: a string is
+ * an id, an object is handed to the adapter for the referenced type.
+ */
+public class ExpandableFieldTypeAdapterFactory implements TypeAdapterFactory {
+	@SuppressWarnings("unchecked")
+	public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+		if (type.getRawType() != ExpandableField.class || !(type.getType() instanceof ParameterizedType)) {
+			return null;
+		}
+		Type objectType = ((ParameterizedType) type.getType()).getActualTypeArguments()[0];
+		final TypeAdapter<HasId> objectAdapter = (TypeAdapter<HasId>) gson.getAdapter(TypeToken.get(objectType));
+
+		TypeAdapter<ExpandableField<HasId>> result = new TypeAdapter<ExpandableField<HasId>>() {
+			public void write(JsonWriter out, ExpandableField<HasId> value) throws IOException {
+				if (value == null) {
+					out.nullValue();
+				} else if (value.isExpanded()) {
+					objectAdapter.write(out, value.getExpanded());
+				} else {
+					out.value(value.getId());
+				}
+			}
+
+			public ExpandableField<HasId> read(JsonReader in) throws IOException {
+				JsonToken token = in.peek();
+				if (token == JsonToken.NULL) {
+					in.nextNull();
+					return null;
+				} else if (token == JsonToken.STRING) {
+					return new ExpandableField<HasId>(in.nextString(), null);
+				}
+				HasId object = objectAdapter.read(in);
+				return new ExpandableField<HasId>(object.getId(), object);
+			}
+		};
+		return (TypeAdapter<T>) result;
+	}
+}
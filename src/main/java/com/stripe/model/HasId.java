@@ -0,0 +1,8 @@
+package com.stripe.model;
+
+/**
+ * Implemented by objects that can be the target of an {@link ExpandableField}.
+ */
+public interface HasId {
+	public String getId();
+}
@@ -10,7 +10,7 @@ import com.stripe.net.RequestOptions;
 
 import java.util.Map;
 
-public class Invoice extends APIResource implements MetadataStore<Invoice>{
+public class Invoice extends APIResource implements MetadataStore<Invoice>, HasId {
 	Integer subtotal;
 	Integer total;
 	Integer amountDue;
@@ -20,7 +20,7 @@ public class Invoice extends APIResource implements MetadataStore<Invoice>{
 	Long created;
 	Long nextPaymentAttempt;
 	Boolean attempted;
-	String charge;
+	ExpandableField<Charge> charge;
 	String description;
 	Boolean closed;
 	String customer;
@@ -114,11 +114,23 @@ public class Invoice extends APIResource implements MetadataStore<Invoice>{
 	}
 
 	public String getCharge() {
-		return charge;
+		return (this.charge != null) ? this.charge.getId() : null;
 	}
 
-	public void setCharge(String charge) {
-		this.charge = charge;
+	public void setCharge(String chargeID) {
+		this.charge = setExpandableFieldID(chargeID, this.charge);
+	}
+
+	public Charge getChargeObject() {
+		return (this.charge != null) ? this.charge.getExpanded() : null;
+	}
+
+	public void setChargeObject(Charge charge) {
+		this.charge = new ExpandableField<Charge>(charge.getId(), charge);
+	}
+
+	public ExpandableField<Charge> getChargeReference() {
+		return this.charge;
 	}
 
 	public String getDescription() {
@@ -21,7 +21,7 @@ public class Order extends APIResource implements MetadataStore<Order> {
 	List<OrderItem> items;
 	Map<String, String> metadata;
 	String status;
-	String charge;
+	ExpandableField<Charge> charge;
 	String customer;
 	String email;
 	String selectedShippingMethod;
@@ -84,10 +84,22 @@ public class Order extends APIResource implements MetadataStore<Order> {
 		this.status = status;
 	}
 	public String getCharge() {
-		return charge;
+		return (this.charge != null) ? this.charge.getId() : null;
 	}
-	public void setCharge(String charge) {
-		this.charge = charge;
+	public void setCharge(String chargeID) {
+		this.charge = setExpandableFieldID(chargeID, this.charge);
+	}
+
+	public Charge getChargeObject() {
+		return (this.charge != null) ? this.charge.getExpanded() : null;
+	}
+
+	public void setChargeObject(Charge charge) {
+		this.charge = new ExpandableField<Charge>(charge.getId(), charge);
+	}
+
+	public ExpandableField<Charge> getChargeReference() {
+		return this.charge;
 	}
 	public String getCustomer() {
 		return customer;
@@ -76,7 +76,7 @@ public class Plan extends APIResource implements MetadataStore<Plan> {
 	public static Plan retrieve(String id, RequestOptions options)
 			throws AuthenticationException, InvalidRequestException,
 			APIConnectionException, CardException, APIException {
-		return request(RequestMethod.GET, instanceURL(Plan.class, id), null, Plan.class, options);
+		return cachedRequest(instanceURL(Plan.class, id), id, Plan.class, options);
 	}
 
 	@Deprecated
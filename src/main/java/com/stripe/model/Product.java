@@ -182,7 +182,7 @@ public class Product extends APIResource implements MetadataStore<Product> {
 	public static Product retrieve(String id, RequestOptions options)
 			throws AuthenticationException, InvalidRequestException,
 			APIConnectionException, CardException, APIException {
-		return request(RequestMethod.GET, instanceURL(Product.class, id), null, Product.class, options);
+		return cachedRequest(instanceURL(Product.class, id), id, Product.class, options);
 	}
 
 	public static ProductCollection all(Map<String, Object> params,
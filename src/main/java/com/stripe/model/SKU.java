@@ -138,7 +138,7 @@ public class SKU extends APIResource implements MetadataStore<SKU> {
 	public static SKU retrieve(String id, RequestOptions options)
 			throws AuthenticationException, InvalidRequestException,
 			APIConnectionException, CardException, APIException {
-		return request(RequestMethod.GET, instanceURL(SKU.class, id), null, SKU.class, options);
+		return cachedRequest(instanceURL(SKU.class, id), id, SKU.class, options);
 	}
 
 	public static SKUCollection all(Map<String, Object> params,
@@ -3,16 +3,20 @@ package com.stripe.model;
 import com.google.gson.FieldNamingPolicy;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.stripe.net.ResponseMetadata;
 
 import java.lang.reflect.Field;
 
 public abstract class StripeObject {
+	// Transient, so neither sent back to Stripe nor printed
+	private transient ResponseMetadata lastResponse;
 
 	public static final Gson PRETTY_PRINT_GSON = new GsonBuilder().
 		setPrettyPrinting().
 		serializeNulls().
 		setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES).
 		registerTypeAdapter(EventData.class, new EventDataDeserializer()).
+		registerTypeAdapterFactory(new ExpandableFieldTypeAdapterFactory()).
 		create();
 
 	@Override public String toString() {
@@ -39,6 +43,20 @@ public abstract class StripeObject {
 		}
 	}
 
+	/**
+	 * @return how the request that returned this object went, or null if it
+	 *         wasn't returned by a request, e.g. because it was nested in
+	 *         another object. Objects shared through an {@code ObjectCache}
+	 *         keep the response they were first fetched with.
+	 */
+	public ResponseMetadata getLastResponse() {
+		return lastResponse;
+	}
+
+	public void setLastResponse(ResponseMetadata lastResponse) {
+		this.lastResponse = lastResponse;
+	}
+
 	protected static boolean equals(Object a, Object b) {
 		return a == null ? b == null : a.equals(b);
 	}
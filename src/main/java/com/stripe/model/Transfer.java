@@ -29,7 +29,7 @@ public class Transfer extends APIResource implements MetadataStore<Transfer> {
 	String destination;
 	String destinationPayment;
 	BankAccount account;
-	String balanceTransaction;
+	ExpandableField<BalanceTransaction> balanceTransaction;
 	Map<String, String> metadata;
 	String failureCode;
 	String failureMessage;
@@ -160,11 +160,23 @@ public class Transfer extends APIResource implements MetadataStore<Transfer> {
 	}
 
 	public String getBalanceTransaction() {
-		return balanceTransaction;
+		return (this.balanceTransaction != null) ? this.balanceTransaction.getId() : null;
 	}
 
-	public void setBalanceTransaction(String balanceTransaction) {
-		this.balanceTransaction = balanceTransaction;
+	public void setBalanceTransaction(String balanceTransactionID) {
+		this.balanceTransaction = setExpandableFieldID(balanceTransactionID, this.balanceTransaction);
+	}
+
+	public BalanceTransaction getBalanceTransactionObject() {
+		return (this.balanceTransaction != null) ? this.balanceTransaction.getExpanded() : null;
+	}
+
+	public void setBalanceTransactionObject(BalanceTransaction balanceTransaction) {
+		this.balanceTransaction = new ExpandableField<BalanceTransaction>(balanceTransaction.getId(), balanceTransaction);
+	}
+
+	public ExpandableField<BalanceTransaction> getBalanceTransactionReference() {
+		return this.balanceTransaction;
 	}
 
 	public String getFailureCode() {
@@ -9,15 +9,19 @@ import com.stripe.exception.APIException;
 import com.stripe.exception.AuthenticationException;
 import com.stripe.exception.CardException;
 import com.stripe.exception.InvalidRequestException;
+import com.stripe.exception.StripeException;
 import com.stripe.model.ChargeRefundCollection;
 import com.stripe.model.ChargeRefundCollectionDeserializer;
 import com.stripe.model.Dispute;
 import com.stripe.model.DisputeDataDeserializer;
 import com.stripe.model.EventData;
 import com.stripe.model.EventDataDeserializer;
+import com.stripe.model.ExpandableField;
+import com.stripe.model.ExpandableFieldTypeAdapterFactory;
 import com.stripe.model.ExternalAccountTypeAdapterFactory;
 import com.stripe.model.FeeRefundCollection;
 import com.stripe.model.FeeRefundCollectionDeserializer;
+import com.stripe.model.HasId;
 import com.stripe.model.StripeObject;
 import com.stripe.model.StripeRawJsonObject;
 import com.stripe.model.StripeRawJsonObjectDeserializer;
@@ -27,10 +31,12 @@ import java.net.URLEncoder;
 import java.util.Map;
 
 public abstract class APIResource extends StripeObject {
-	private static StripeResponseGetter stripeResponseGetter = new LiveStripeResponseGetter();
-
+	/**
+	 * Replaces the transport of {@link StripeClient#getDefault()}, which serves
+	 * every request not made through another client.
+	 */
 	public static void setStripeResponseGetter(StripeResponseGetter srg) {
-		APIResource.stripeResponseGetter = srg;
+		StripeClient.getDefault().setResponseGetter(srg);
 	}
 
 	public static final Gson GSON = new GsonBuilder()
@@ -41,6 +47,7 @@ public abstract class APIResource extends StripeObject {
 			.registerTypeAdapter(StripeRawJsonObject.class, new StripeRawJsonObjectDeserializer())
 			.registerTypeAdapter(Dispute.class, new DisputeDataDeserializer())
 			.registerTypeAdapterFactory(new ExternalAccountTypeAdapterFactory())
+			.registerTypeAdapterFactory(new ExpandableFieldTypeAdapterFactory())
 			.create();
 
 	private static String className(Class<?> clazz) {
@@ -92,6 +99,21 @@ public abstract class APIResource extends StripeObject {
 		}
 	}
 
+	/**
+	 * Points an expandable field at a new id, keeping the expanded object only
+	 * if it is still the one being referenced.
+	 */
+	protected static <T extends HasId> ExpandableField<T> setExpandableFieldID(String newId,
+			ExpandableField<T> currentObject) {
+		if (newId == null) {
+			return null;
+		}
+		if (currentObject == null || (currentObject.isExpanded() && !equals(currentObject.getId(), newId))) {
+			return new ExpandableField<T>(newId, null);
+		}
+		return new ExpandableField<T>(newId, currentObject.getExpanded());
+	}
+
 	public static final String CHARSET = "UTF-8";
 
 	public enum RequestMethod {
@@ -118,16 +140,57 @@ public abstract class APIResource extends StripeObject {
 			RequestOptions options) throws AuthenticationException,
 			InvalidRequestException, APIConnectionException, CardException,
 			APIException {
-		return APIResource.stripeResponseGetter.request(method, url, params, clazz,
+		return client(options).request(method, url, params, clazz,
 				APIResource.RequestType.MULTIPART, options);
 	}
 
+	/**
+	 * Retrieves a single object, going through the {@link ObjectCache} set on
+	 * {@code options} when there is one.
+	 */
+	protected static <T> T cachedRequest(final String url, String id,
+			final Class<T> clazz, final RequestOptions options)
+			throws AuthenticationException, InvalidRequestException,
+			APIConnectionException, CardException, APIException {
+		ObjectCache cache = options == null ? null : options.getObjectCache();
+		if (cache == null) {
+			return request(RequestMethod.GET, url, null, clazz, options);
+		}
+		return cache.get(new CacheKey(clazz, id, url, options), clazz, new ObjectCache.Loader<T>() {
+			public T load() throws AuthenticationException, InvalidRequestException,
+					APIConnectionException, CardException, APIException {
+				return request(RequestMethod.GET, url, null, clazz, options);
+			}
+		});
+	}
+
 	protected static <T> T request(APIResource.RequestMethod method,
 			String url, Map<String, Object> params, Class<T> clazz,
 			RequestOptions options) throws AuthenticationException,
 			InvalidRequestException, APIConnectionException, CardException,
 			APIException {
-		return APIResource.stripeResponseGetter.request(method, url, params, clazz,
+		return client(options).request(method, url, params, clazz,
 				APIResource.RequestType.NORMAL, options);
 	}
+
+	/**
+	 * Like {@link #request}, but returns failures instead of throwing them.
+	 * The exceptions behind them are created without a stack trace.
+	 */
+	protected static <T> StripeResult<T> requestResult(APIResource.RequestMethod method,
+			String url, Map<String, Object> params, Class<T> clazz,
+			RequestOptions options) {
+		Boolean previous = StripeException.setCaptureStackTracesOnCurrentThread(false);
+		try {
+			return StripeResult.success(request(method, url, params, clazz, options));
+		} catch (StripeException e) {
+			return StripeResult.failure(StripeError.from(e));
+		} finally {
+			StripeException.setCaptureStackTracesOnCurrentThread(previous);
+		}
+	}
+
+	private static StripeClient client(RequestOptions options) {
+		return options == null || options.getClient() == null ? StripeClient.getDefault() : options.getClient();
+	}
 }
@@ -0,0 +1,116 @@
+package com.stripe.net;
+
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Calls App Engine's URL Fetch service through reflection, which avoids
+ * having to maintain an App Engine-specific JAR. The classes, methods and the
+ * service are looked up once, on first use, rather than on every request.
+ */
+final class AppEngineURLFetch {
+	private static final String PACKAGE = "com.google.appengine.api.urlfetch.";
+
+	private static volatile AppEngineURLFetch instance;
+
+	private final Map<APIResource.RequestMethod, Object> httpMethods =
+			new EnumMap<APIResource.RequestMethod, Object>(APIResource.RequestMethod.class);
+	private final Method newFetchOptions;
+	private final Method setDeadline;
+	private final Constructor<?> newRequest;
+	private final Method setPayload;
+	private final Constructor<?> newHeader;
+	private final Method setHeader;
+	private final Object urlFetchService;
+	private final Method fetch;
+	private final Method getResponseCode;
+	private final Method getContent;
+
+	private AppEngineURLFetch() throws ClassNotFoundException, NoSuchFieldException, NoSuchMethodException,
+			IllegalAccessException, InvocationTargetException {
+		Class<?> requestMethodClass = Class.forName(PACKAGE + "HTTPMethod");
+		for (APIResource.RequestMethod method : APIResource.RequestMethod.values()) {
+			httpMethods.put(method, requestMethodClass.getDeclaredField(method.name()).get(null));
+		}
+
+		Class<?> fetchOptionsBuilderClass = Class.forName(PACKAGE + "FetchOptions$Builder");
+		Method newFetchOptions;
+		try {
+			newFetchOptions = fetchOptionsBuilderClass.getDeclaredMethod("validateCertificate");
+		} catch (NoSuchMethodException e) {
+			System.err
+					.println("Warning: this App Engine SDK version does not allow verification of SSL certificates;"
+							+ "this exposes you to a MITM attack. Please upgrade your App Engine SDK to >=1.5.0. "
+							+ "If you have questions, contact support@stripe.com.");
+			newFetchOptions = fetchOptionsBuilderClass.getDeclaredMethod("withDefaults");
+		}
+		this.newFetchOptions = newFetchOptions;
+
+		Class<?> fetchOptionsClass = Class.forName(PACKAGE + "FetchOptions");
+		this.setDeadline = fetchOptionsClass.getDeclaredMethod("setDeadline", Double.class);
+
+		Class<?> requestClass = Class.forName(PACKAGE + "HTTPRequest");
+		this.newRequest = requestClass.getDeclaredConstructor(URL.class, requestMethodClass, fetchOptionsClass);
+		this.setPayload = requestClass.getDeclaredMethod("setPayload", byte[].class);
+
+		Class<?> httpHeaderClass = Class.forName(PACKAGE + "HTTPHeader");
+		this.newHeader = httpHeaderClass.getDeclaredConstructor(String.class, String.class);
+		this.setHeader = requestClass.getDeclaredMethod("setHeader", httpHeaderClass);
+
+		Class<?> urlFetchFactoryClass = Class.forName(PACKAGE + "URLFetchServiceFactory");
+		this.urlFetchService = urlFetchFactoryClass.getDeclaredMethod("getURLFetchService").invoke(null);
+		this.fetch = urlFetchService.getClass().getDeclaredMethod("fetch", requestClass);
+		this.fetch.setAccessible(true);
+
+		Class<?> responseClass = Class.forName(PACKAGE + "HTTPResponse");
+		this.getResponseCode = responseClass.getDeclaredMethod("getResponseCode");
+		this.getContent = responseClass.getDeclaredMethod("getContent");
+	}
+
+	static AppEngineURLFetch get() throws ClassNotFoundException, NoSuchFieldException, NoSuchMethodException,
+			IllegalAccessException, InvocationTargetException {
+		AppEngineURLFetch urlFetch = instance;
+		if (urlFetch == null) {
+			// Racing threads may each look everything up; any of them will do
+			urlFetch = new AppEngineURLFetch();
+			instance = urlFetch;
+		}
+		return urlFetch;
+	}
+
+	/**
+	 * Looks everything up again, which is what every request used to cost.
+	 */
+	static AppEngineURLFetch resolve() throws ClassNotFoundException, NoSuchFieldException,
+			NoSuchMethodException, IllegalAccessException, InvocationTargetException {
+		return new AppEngineURLFetch();
+	}
+
+	/**
+	 * @param payload the request body, or null for none
+	 */
+	StripeResponse fetch(APIResource.RequestMethod method, URL url, byte[] payload, Map<String, String> headers,
+			double deadlineSeconds) throws IllegalAccessException, InvocationTargetException, InstantiationException,
+			UnsupportedEncodingException {
+		Object fetchOptions = newFetchOptions.invoke(null);
+		setDeadline.invoke(fetchOptions, Double.valueOf(deadlineSeconds));
+
+		Object request = newRequest.newInstance(url, httpMethods.get(method), fetchOptions);
+		if (payload != null) {
+			setPayload.invoke(request, payload);
+		}
+		for (Map.Entry<String, String> header : headers.entrySet()) {
+			setHeader.invoke(request, newHeader.newInstance(header.getKey(), header.getValue()));
+		}
+
+		Object response = fetch.invoke(urlFetchService, request);
+		int responseCode = (Integer) getResponseCode.invoke(response);
+		String body = new String((byte[]) getContent.invoke(response), APIResource.CHARSET);
+		return new StripeResponse(responseCode, body);
+	}
+}
@@ -0,0 +1,387 @@
+package com.stripe.net;
+
+import com.stripe.exception.APIConnectionException;
+import com.stripe.exception.APIException;
+import com.stripe.exception.AuthenticationException;
+import com.stripe.exception.CardException;
+import com.stripe.exception.InvalidRequestException;
+import com.stripe.exception.RateLimitException;
+import com.stripe.exception.StripeException;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs a large number of create (or update) calls with bounded concurrency.
+ *
+ * Each item is identified by a record id from your own system, from which a
+ * deterministic Idempotency-Key is derived. Completed record ids are appended
+ * to an optional checkpoint file; running the same batch again with the same
+ * file skips them, and retried items reuse their idempotency key, so a crashed
+ * run can be resumed without creating duplicates. Stripe remembers idempotency
+ * keys for 24 hours, so resume within that window:
+ *
+ * <pre>
+ * List&lt;ItemResult&lt;InvoiceItem&gt;&gt; report = BulkMutationExecutor.builder(
+ *     new BulkMutationExecutor.Mutation&lt;InvoiceItem&gt;() {
+ *       public InvoiceItem mutate(Map&lt;String, Object&gt; params, RequestOptions options) throws ... {
+ *         return InvoiceItem.create(params, options);
+ *       }
+ *     })
+ *     .setIdempotencyKeyPrefix("usage-2015-09")
+ *     .setCheckpointFile(new File("usage-2015-09.checkpoint"))
+ *     .setParallelism(8)
+ *     .build()
+ *     .execute(items);
+ * </pre>
+ */
+public class BulkMutationExecutor<T> {
+	private static final int MAX_RETRIES = 3;
+	private static final long INITIAL_BACKOFF_MILLIS = 250;
+	private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 255;
+	// Leaves room for a hyphen and a hex SHA-256 digest
+	private static final int MAX_IDEMPOTENCY_KEY_PREFIX_LENGTH = MAX_IDEMPOTENCY_KEY_LENGTH - 65;
+
+	public interface Mutation<T> {
+		public T mutate(Map<String, Object> params, RequestOptions options)
+				throws AuthenticationException, InvalidRequestException,
+				APIConnectionException, CardException, APIException;
+	}
+
+	private final Mutation<T> mutation;
+	private final int parallelism;
+	private final RequestOptions options;
+	private final String idempotencyKeyPrefix;
+	private final File checkpointFile;
+
+	private BulkMutationExecutor(BulkMutationExecutorBuilder<T> builder) {
+		this.mutation = builder.mutation;
+		this.parallelism = builder.parallelism;
+		this.options = builder.options != null ? builder.options : RequestOptions.getDefault();
+		this.idempotencyKeyPrefix = builder.idempotencyKeyPrefix;
+		this.checkpointFile = builder.checkpointFile;
+	}
+
+	public static <T> BulkMutationExecutorBuilder<T> builder(Mutation<T> mutation) {
+		return new BulkMutationExecutorBuilder<T>(mutation);
+	}
+
+	/**
+	 * Runs every item, blocking until all of them have finished.
+	 *
+	 * @return one result per item, in the order the items were supplied
+	 * @throws IOException if the checkpoint file can't be read or written;
+	 *         no further items are started once a write has failed
+	 */
+	public List<ItemResult<T>> execute(Iterator<Item> items) throws IOException, InterruptedException {
+		// Workers don't see the calling thread's deadline
+		final RequestOptions batchOptions = Deadline.propagate(options);
+		// Nor do their responses become this thread's last one
+		ResponseMetadata.setLast(null);
+		Set<String> completed = readCheckpoint();
+		final List<ItemResult<T>> results = Collections.synchronizedList(new ArrayList<ItemResult<T>>());
+		final Writer checkpoint = openCheckpoint();
+		final AtomicReference<IOException> checkpointFailure = new AtomicReference<IOException>();
+		final Semaphore permits = new Semaphore(parallelism);
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "stripe-bulk-mutation");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		try {
+			for (int index = 0; items.hasNext() && checkpointFailure.get() == null; index++) {
+				final Item item = items.next();
+				final String idempotencyKey = idempotencyKey(item.getRecordId());
+				if (completed.contains(item.getRecordId())) {
+					results.add(new ItemResult<T>(item.getRecordId(), idempotencyKey, null, null, true));
+					continue;
+				}
+				// Pad the list so workers can fill in their slot out of order
+				results.add(null);
+				final int slot = index;
+
+				permits.acquire();
+				executor.execute(new Runnable() {
+					public void run() {
+						try {
+							ItemResult<T> result = apply(item, idempotencyKey, batchOptions);
+							results.set(slot, result);
+							if (result.isSuccessful() && checkpoint != null) {
+								writeCheckpoint(checkpoint, item.getRecordId());
+							}
+						} catch (IOException e) {
+							checkpointFailure.compareAndSet(null, e);
+						} finally {
+							permits.release();
+						}
+					}
+				});
+			}
+			executor.shutdown();
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			if (checkpointFailure.get() != null) {
+				throw checkpointFailure.get();
+			}
+		} finally {
+			executor.shutdownNow();
+			if (checkpoint != null) {
+				checkpoint.close();
+			}
+		}
+		return new ArrayList<ItemResult<T>>(results);
+	}
+
+	/**
+	 * @return the Idempotency-Key used for the item with {@code recordId};
+	 *         record ids that would make it too long are hashed
+	 */
+	public String idempotencyKey(String recordId) {
+		String key = idempotencyKeyPrefix == null ? recordId : String.format("%s-%s", idempotencyKeyPrefix, recordId);
+		if (key.length() <= MAX_IDEMPOTENCY_KEY_LENGTH) {
+			return key;
+		}
+		String digest = sha256Hex(recordId);
+		return idempotencyKeyPrefix == null ? digest : String.format("%s-%s", idempotencyKeyPrefix, digest);
+	}
+
+	private ItemResult<T> apply(Item item, String idempotencyKey, RequestOptions batchOptions) {
+		RequestOptions itemOptions = batchOptions.toBuilder().setIdempotencyKey(idempotencyKey).build();
+		Deadline deadline = itemOptions.getDeadline();
+		for (int attempt = 0; ; attempt++) {
+			try {
+				RequestOptions attemptOptions = attempt == 0 ? itemOptions
+						: itemOptions.toBuilder().setIdempotencyKey(idempotencyKey).setAttempt(attempt + 1).build();
+				T result = mutation.mutate(item.getParams(), attemptOptions);
+				return new ItemResult<T>(item.getRecordId(), idempotencyKey, result, null, false);
+			} catch (RuntimeException e) {
+				// A bug or bad options; fail this item rather than the batch
+				return new ItemResult<T>(item.getRecordId(), idempotencyKey, null,
+						new APIException(e.getMessage(), null, null, e), false);
+			} catch (StripeException e) {
+				// Retrying with the same Idempotency-Key is always safe; only
+				// bother for failures that might go away.
+				if (attempt >= MAX_RETRIES || !isRetryable(e)) {
+					return new ItemResult<T>(item.getRecordId(), idempotencyKey, null, e, false);
+				}
+				long backoff = INITIAL_BACKOFF_MILLIS << attempt;
+				if (deadline != null && deadline.remaining(TimeUnit.MILLISECONDS) < backoff) {
+					return new ItemResult<T>(item.getRecordId(), idempotencyKey, null, deadline.exceeded(e), false);
+				}
+				try {
+					Thread.sleep(backoff);
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					return new ItemResult<T>(item.getRecordId(), idempotencyKey, null, e, false);
+				}
+			}
+		}
+	}
+
+	private static boolean isRetryable(StripeException e) {
+		if (e instanceof RateLimitException || e instanceof APIConnectionException) {
+			return true;
+		}
+		return e instanceof APIException && e.getStatusCode() != null && e.getStatusCode() >= 500;
+	}
+
+	private Set<String> readCheckpoint() throws IOException {
+		Set<String> completed = new HashSet<String>();
+		if (checkpointFile == null || !checkpointFile.isFile()) {
+			return completed;
+		}
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(checkpointFile), APIResource.CHARSET));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (!line.isEmpty()) {
+					completed.add(line);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return completed;
+	}
+
+	private Writer openCheckpoint() throws IOException {
+		if (checkpointFile == null) {
+			return null;
+		}
+		return new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(checkpointFile, true), APIResource.CHARSET));
+	}
+
+	private static void writeCheckpoint(Writer checkpoint, String recordId) throws IOException {
+		synchronized (checkpoint) {
+			checkpoint.write(recordId);
+			checkpoint.write('\n');
+			checkpoint.flush();
+		}
+	}
+
+	private static String sha256Hex(String value) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(APIResource.CHARSET));
+			StringBuilder hex = new StringBuilder(digest.length * 2);
+			for (byte b : digest) {
+				hex.append(String.format("%02x", b));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public static class Item {
+		private final String recordId;
+		private final Map<String, Object> params;
+
+		/**
+		 * @param recordId a stable id for this item in your own system; it may
+		 *        not contain line breaks
+		 */
+		public Item(String recordId, Map<String, Object> params) {
+			if (recordId == null || recordId.isEmpty() || recordId.indexOf('\n') >= 0 || recordId.indexOf('\r') >= 0) {
+				throw new IllegalArgumentException("Record ids must be non-empty and may not contain line breaks");
+			}
+			this.recordId = recordId;
+			this.params = params;
+		}
+
+		public String getRecordId() {
+			return recordId;
+		}
+
+		public Map<String, Object> getParams() {
+			return params;
+		}
+	}
+
+	public static class ItemResult<T> {
+		private final String recordId;
+		private final String idempotencyKey;
+		private final T result;
+		private final StripeException failure;
+		private final boolean skipped;
+
+		ItemResult(String recordId, String idempotencyKey, T result, StripeException failure, boolean skipped) {
+			this.recordId = recordId;
+			this.idempotencyKey = idempotencyKey;
+			this.result = result;
+			this.failure = failure;
+			this.skipped = skipped;
+		}
+
+		public String getRecordId() {
+			return recordId;
+		}
+
+		public String getIdempotencyKey() {
+			return idempotencyKey;
+		}
+
+		/**
+		 * @return the created object, or null if the item failed or was skipped
+		 */
+		public T getResult() {
+			return result;
+		}
+
+		public StripeException getFailure() {
+			return failure;
+		}
+
+		/**
+		 * @return whether the item was already recorded as complete in the
+		 *         checkpoint file and wasn't sent again
+		 */
+		public boolean isSkipped() {
+			return skipped;
+		}
+
+		public boolean isSuccessful() {
+			return failure == null;
+		}
+	}
+
+	public static final class BulkMutationExecutorBuilder<T> {
+		private final Mutation<T> mutation;
+		private int parallelism = 4;
+		private RequestOptions options;
+		private String idempotencyKeyPrefix;
+		private File checkpointFile;
+
+		private BulkMutationExecutorBuilder(Mutation<T> mutation) {
+			this.mutation = mutation;
+		}
+
+		public BulkMutationExecutorBuilder<T> setParallelism(int parallelism) {
+			if (parallelism <= 0) {
+				throw new IllegalArgumentException("Parallelism must be positive");
+			}
+			this.parallelism = parallelism;
+			return this;
+		}
+
+		/**
+		 * Options used for every item. Any idempotency key set here is replaced
+		 * by the per-item key.
+		 */
+		public BulkMutationExecutorBuilder<T> setRequestOptions(RequestOptions options) {
+			this.options = options;
+			return this;
+		}
+
+		/**
+		 * Namespaces the derived idempotency keys, e.g. by billing period, so
+		 * that record ids can be reused across batches. At most 190
+		 * characters.
+		 */
+		public BulkMutationExecutorBuilder<T> setIdempotencyKeyPrefix(String idempotencyKeyPrefix) {
+			if (idempotencyKeyPrefix != null && idempotencyKeyPrefix.length() > MAX_IDEMPOTENCY_KEY_PREFIX_LENGTH) {
+				throw new IllegalArgumentException(String.format(
+						"Idempotency key prefixes may be at most %d characters", MAX_IDEMPOTENCY_KEY_PREFIX_LENGTH));
+			}
+			this.idempotencyKeyPrefix = idempotencyKeyPrefix;
+			return this;
+		}
+
+		public BulkMutationExecutorBuilder<T> setCheckpointFile(File checkpointFile) {
+			this.checkpointFile = checkpointFile;
+			return this;
+		}
+
+		public BulkMutationExecutor<T> build() {
+			return new BulkMutationExecutor<T>(this);
+		}
+	}
+}
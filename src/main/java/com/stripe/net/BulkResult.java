@@ -0,0 +1,54 @@
+package com.stripe.net;
+
+import com.stripe.exception.StripeException;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The outcome of a bulk operation. Every requested id is either in
+ * {@link #getResults()} or in {@link #getFailures()}; both maps iterate in the
+ * order the ids were first requested.
+ */
+public class BulkResult<T> {
+	private final List<String> ids;
+	private final Map<String, T> results;
+	private final Map<String, StripeException> failures;
+
+	BulkResult(List<String> ids, Map<String, T> results, Map<String, StripeException> failures) {
+		this.ids = Collections.unmodifiableList(ids);
+		this.results = Collections.unmodifiableMap(results);
+		this.failures = Collections.unmodifiableMap(failures);
+	}
+
+	/**
+	 * @return the distinct ids that were requested, in input order
+	 */
+	public List<String> getIds() {
+		return ids;
+	}
+
+	public Map<String, T> getResults() {
+		return results;
+	}
+
+	public Map<String, StripeException> getFailures() {
+		return failures;
+	}
+
+	/**
+	 * @return the object for {@code id}, or null if it failed or wasn't requested
+	 */
+	public T get(String id) {
+		return results.get(id);
+	}
+
+	public StripeException getFailure(String id) {
+		return failures.get(id);
+	}
+
+	public boolean isSuccessful() {
+		return failures.isEmpty();
+	}
+}
@@ -0,0 +1,149 @@
+package com.stripe.net;
+
+import com.stripe.exception.APIConnectionException;
+import com.stripe.exception.APIException;
+import com.stripe.exception.AuthenticationException;
+import com.stripe.exception.CardException;
+import com.stripe.exception.InvalidRequestException;
+import com.stripe.exception.RateLimitException;
+import com.stripe.exception.StripeException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Retrieves many objects by id with a bounded number of requests in flight.
+ *
+ * Ids are deduplicated, and a failure for one id never aborts the batch.
+ * When Stripe answers with a 429, every worker in the batch backs off before
+ * its next request and the rate limited id is retried a few times.
+ */
+public class BulkRetriever {
+	private static final int MAX_RATE_LIMIT_RETRIES = 3;
+	private static final long INITIAL_BACKOFF_MILLIS = 250;
+
+	public interface Retriever<T> {
+		public T retrieve(String id, RequestOptions options)
+				throws AuthenticationException, InvalidRequestException,
+				APIConnectionException, CardException, APIException;
+	}
+
+	private static final Random random = new Random();
+
+	private BulkRetriever() {
+	}
+
+	public static <T> BulkResult<T> retrieveAll(Collection<String> ids, int parallelism,
+			RequestOptions requestOptions, final Retriever<T> retriever) {
+		if (parallelism <= 0) {
+			throw new IllegalArgumentException("Parallelism must be positive");
+		}
+		for (String id : ids) {
+			if (id == null) {
+				throw new IllegalArgumentException("Ids may not be null");
+			}
+		}
+		// Workers don't see the calling thread's deadline
+		final RequestOptions options = Deadline.propagate(requestOptions);
+		// Nor do their responses become this thread's last one
+		ResponseMetadata.setLast(null);
+		final List<String> uniqueIds = new ArrayList<String>(new LinkedHashSet<String>(ids));
+		final Queue<String> pending = new ConcurrentLinkedQueue<String>(uniqueIds);
+		// Synchronized rather than concurrent maps, since a retriever may return null
+		final Map<String, T> results = Collections.synchronizedMap(new HashMap<String, T>());
+		final Map<String, StripeException> failures = Collections.synchronizedMap(new HashMap<String, StripeException>());
+		final AtomicLong pausedUntil = new AtomicLong();
+
+		int workers = Math.min(parallelism, uniqueIds.size());
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(workers, 1), new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "stripe-bulk-retrieve");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		try {
+			for (int i = 0; i < workers; i++) {
+				executor.execute(new Runnable() {
+					public void run() {
+						String id;
+						while ((id = pending.poll()) != null) {
+							try {
+								results.put(id, retrieveWithBackoff(id, options, retriever, pausedUntil));
+							} catch (StripeException e) {
+								failures.put(id, e);
+							} catch (RuntimeException e) {
+								// A bug or unparseable response; fail this id rather than the worker
+								failures.put(id, new APIException(e.getMessage(), null, null, e));
+							} catch (InterruptedException e) {
+								failures.put(id, new APIConnectionException("Interrupted during bulk retrieve", e));
+								Thread.currentThread().interrupt();
+								return;
+							}
+						}
+					}
+				});
+			}
+			executor.shutdown();
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+
+		Map<String, T> orderedResults = new LinkedHashMap<String, T>();
+		Map<String, StripeException> orderedFailures = new LinkedHashMap<String, StripeException>();
+		for (String id : uniqueIds) {
+			if (results.containsKey(id)) {
+				orderedResults.put(id, results.get(id));
+			} else if (failures.containsKey(id)) {
+				orderedFailures.put(id, failures.get(id));
+			} else {
+				orderedFailures.put(id, new APIConnectionException("Bulk retrieve was interrupted before this id was fetched"));
+			}
+		}
+		return new BulkResult<T>(uniqueIds, orderedResults, orderedFailures);
+	}
+
+	private static <T> T retrieveWithBackoff(String id, RequestOptions options, Retriever<T> retriever,
+			AtomicLong pausedUntil) throws StripeException, InterruptedException {
+		Deadline deadline = options == null ? null : options.getDeadline();
+		for (int attempt = 0; ; attempt++) {
+			long pause = pausedUntil.get() - System.currentTimeMillis();
+			if (deadline != null && deadline.remaining(TimeUnit.MILLISECONDS) < pause) {
+				throw deadline.exceeded(null);
+			}
+			if (pause > 0) {
+				Thread.sleep(pause);
+			}
+			try {
+				return retriever.retrieve(id, attempt == 0 || options == null ? options
+						: options.toBuilder().setIdempotencyKey(options.getIdempotencyKey()).setAttempt(attempt + 1).build());
+			} catch (RateLimitException e) {
+				if (attempt >= MAX_RATE_LIMIT_RETRIES) {
+					throw e;
+				}
+				long backoff = INITIAL_BACKOFF_MILLIS << attempt;
+				long until = System.currentTimeMillis() + backoff + random.nextInt((int) backoff);
+				long current;
+				while ((current = pausedUntil.get()) < until && !pausedUntil.compareAndSet(current, until)) {
+					// Another worker extended the pause concurrently; re-check.
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package com.stripe.net;
+
+/**
+ * Identifies a cached object. Keys are scoped by API key, Stripe-Account and
+ * Stripe-Version so that objects never leak between accounts.
+ */
+public final class CacheKey {
+	private final Class<?> resourceClass;
+	private final String id;
+	private final String url;
+	private final String apiKey;
+	private final String stripeAccount;
+	private final String stripeVersion;
+	private final int hashCode;
+
+	public CacheKey(Class<?> resourceClass, String id, String url, RequestOptions options) {
+		this.resourceClass = resourceClass;
+		this.id = id;
+		this.url = url;
+		this.apiKey = options.getApiKey();
+		this.stripeAccount = options.getStripeAccount();
+		this.stripeVersion = options.getStripeVersion();
+
+		int result = resourceClass.hashCode();
+		result = 31 * result + (url != null ? url.hashCode() : 0);
+		result = 31 * result + (apiKey != null ? apiKey.hashCode() : 0);
+		result = 31 * result + (stripeAccount != null ? stripeAccount.hashCode() : 0);
+		result = 31 * result + (stripeVersion != null ? stripeVersion.hashCode() : 0);
+		this.hashCode = result;
+	}
+
+	public Class<?> getResourceClass() {
+		return resourceClass;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	public String getStripeAccount() {
+		return stripeAccount;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (o == null || getClass() != o.getClass()) return false;
+
+		CacheKey that = (CacheKey) o;
+		return hashCode == that.hashCode
+				&& resourceClass == that.resourceClass
+				&& (url != null ? url.equals(that.url) : that.url == null)
+				&& (apiKey != null ? apiKey.equals(that.apiKey) : that.apiKey == null)
+				&& (stripeAccount != null ? stripeAccount.equals(that.stripeAccount) : that.stripeAccount == null)
+				&& (stripeVersion != null ? stripeVersion.equals(that.stripeVersion) : that.stripeVersion == null);
+	}
+
+	@Override
+	public int hashCode() {
+		return hashCode;
+	}
+
+	@Override
+	public String toString() {
+		// Never include the API key
+		return String.format("%s[%s%s]", resourceClass.getSimpleName(), id,
+				stripeAccount == null ? "" : "@" + stripeAccount);
+	}
+}
@@ -0,0 +1,85 @@
+package com.stripe.net;
+
+/**
+ * An immutable snapshot of an {@link ObjectCache}'s counters.
+ */
+public final class CacheStats {
+	private final long hitCount;
+	private final long staleHitCount;
+	private final long missCount;
+	private final long loadSuccessCount;
+	private final long loadFailureCount;
+	private final long totalLoadTimeNanos;
+	private final long evictionCount;
+
+	public CacheStats(long hitCount, long staleHitCount, long missCount,
+			long loadSuccessCount, long loadFailureCount, long totalLoadTimeNanos,
+			long evictionCount) {
+		this.hitCount = hitCount;
+		this.staleHitCount = staleHitCount;
+		this.missCount = missCount;
+		this.loadSuccessCount = loadSuccessCount;
+		this.loadFailureCount = loadFailureCount;
+		this.totalLoadTimeNanos = totalLoadTimeNanos;
+		this.evictionCount = evictionCount;
+	}
+
+	/**
+	 * @return lookups answered from the cache, including stale and negative hits
+	 */
+	public long getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * @return lookups answered with a stale entry while it was being refreshed
+	 */
+	public long getStaleHitCount() {
+		return staleHitCount;
+	}
+
+	public long getMissCount() {
+		return missCount;
+	}
+
+	public long getRequestCount() {
+		return hitCount + missCount;
+	}
+
+	public double getHitRatio() {
+		long requestCount = getRequestCount();
+		return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+	}
+
+	public long getLoadSuccessCount() {
+		return loadSuccessCount;
+	}
+
+	public long getLoadFailureCount() {
+		return loadFailureCount;
+	}
+
+	public long getTotalLoadTimeNanos() {
+		return totalLoadTimeNanos;
+	}
+
+	/**
+	 * @return the mean time spent loading a value from Stripe, in nanoseconds
+	 */
+	public double getAverageLoadPenaltyNanos() {
+		long loadCount = loadSuccessCount + loadFailureCount;
+		return loadCount == 0 ? 0.0 : (double) totalLoadTimeNanos / loadCount;
+	}
+
+	public long getEvictionCount() {
+		return evictionCount;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("CacheStats{hits=%d, staleHits=%d, misses=%d, loadSuccesses=%d, "
+				+ "loadFailures=%d, totalLoadTimeNanos=%d, evictions=%d}",
+				hitCount, staleHitCount, missCount, loadSuccessCount, loadFailureCount,
+				totalLoadTimeNanos, evictionCount);
+	}
+}
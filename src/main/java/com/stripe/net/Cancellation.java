@@ -0,0 +1,75 @@
+package com.stripe.net;
+
+/**
+ * Lets another thread abandon the request the current thread is sending.
+ *
+ * A thread installs one with {@link #setCurrent(Cancellation)} before making
+ * a request. {@link LiveStripeResponseGetter} registers a callback that
+ * disconnects the request's connection, so that {@link #cancel()} unblocks it
+ * wherever it is stuck, the way a passed {@link Deadline} does.
+ */
+final class Cancellation {
+	private static final ThreadLocal<Cancellation> CURRENT = new ThreadLocal<Cancellation>();
+
+	private boolean cancelled;
+	private Runnable onCancel;
+
+	/**
+	 * @return the cancellation installed on the current thread, or null
+	 */
+	static Cancellation current() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * @return the previous cancellation, to be restored afterwards
+	 */
+	static Cancellation setCurrent(Cancellation cancellation) {
+		Cancellation previous = CURRENT.get();
+		if (cancellation == null) {
+			CURRENT.remove();
+		} else {
+			CURRENT.set(cancellation);
+		}
+		return previous;
+	}
+
+	void cancel() {
+		Runnable callback;
+		synchronized (this) {
+			if (cancelled) {
+				return;
+			}
+			cancelled = true;
+			callback = onCancel;
+		}
+		// Outside the lock, since the callback takes its own
+		if (callback != null) {
+			callback.run();
+		}
+	}
+
+	synchronized boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Runs {@code callback} on cancellation, straight away if that has
+	 * already happened. Replaces any earlier callback.
+	 */
+	void register(Runnable callback) {
+		synchronized (this) {
+			onCancel = callback;
+			if (!cancelled) {
+				return;
+			}
+		}
+		callback.run();
+	}
+
+	synchronized void unregister(Runnable callback) {
+		if (onCancel == callback) {
+			onCancel = null;
+		}
+	}
+}
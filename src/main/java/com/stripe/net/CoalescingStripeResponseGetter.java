@@ -0,0 +1,237 @@
+package com.stripe.net;
+
+import com.stripe.exception.APIConnectionException;
+import com.stripe.exception.APIException;
+import com.stripe.exception.AuthenticationException;
+import com.stripe.exception.CardException;
+import com.stripe.exception.DeadlineExceededException;
+import com.stripe.exception.InvalidRequestException;
+
+import java.io.UnsupportedEncodingException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Wraps another {@link StripeResponseGetter} so that concurrent, identical GET
+ * requests share a single in-flight request. Two requests are identical when
+ * they have the same URL, query parameters, response class, API key,
+ * Stripe-Account and Stripe-Version.
+ *
+ * Every caller waiting on a shared request receives the same deserialized
+ * object, or the same exception, so returned objects should be treated as
+ * read-only when coalescing is enabled. When the shared request fails because
+ * the {@link Deadline} of the caller that started it passed, the others try
+ * again within their own.
+ *
+ * Enable it with:
+ *
+ * <pre>
+ * APIResource.setStripeResponseGetter(
+ *     new CoalescingStripeResponseGetter(new LiveStripeResponseGetter()));
+ * </pre>
+ */
+public class CoalescingStripeResponseGetter implements StripeResponseGetter {
+	private final StripeResponseGetter delegate;
+	private final ConcurrentMap<RequestKey, InFlightRequest> inFlight =
+			new ConcurrentHashMap<RequestKey, InFlightRequest>();
+	private final ConcurrentMap<String, AtomicLong> coalescedByEndpoint =
+			new ConcurrentHashMap<String, AtomicLong>();
+	private final AtomicLong requestCount = new AtomicLong();
+	private final AtomicLong coalescedCount = new AtomicLong();
+
+	public CoalescingStripeResponseGetter(StripeResponseGetter delegate) {
+		this.delegate = delegate;
+	}
+
+	public <T> T request(
+			APIResource.RequestMethod method,
+			String url,
+			Map<String, Object> params,
+			Class<T> clazz,
+			APIResource.RequestType type,
+			RequestOptions options) throws AuthenticationException, InvalidRequestException, APIConnectionException, CardException, APIException {
+		if (method != APIResource.RequestMethod.GET || type != APIResource.RequestType.NORMAL) {
+			return delegate.request(method, url, params, clazz, type, options);
+		}
+		requestCount.incrementAndGet();
+
+		RequestKey key = new RequestKey(url, encodeQuery(params), clazz,
+				options == null ? RequestOptions.getDefault() : options);
+		InFlightRequest call = new InFlightRequest();
+		InFlightRequest existing;
+		while ((existing = inFlight.putIfAbsent(key, call)) != null) {
+			AtomicLong counter = recordCoalesced(url);
+			existing.await(Deadline.effective(options));
+			if (!(existing.failure instanceof DeadlineExceededException)) {
+				return clazz.cast(existing.get());
+			}
+			// The shared request ran out of its caller's time, which may be
+			// shorter than ours; try again with our own.
+			coalescedCount.decrementAndGet();
+			counter.decrementAndGet();
+		}
+
+		try {
+			// So waiters don't see an earlier request's metadata if the
+			// delegate doesn't record any
+			ResponseMetadata.setLast(null);
+			T result = delegate.request(method, url, params, clazz, type, options);
+			call.complete(result, null, ResponseMetadata.getLast());
+			return result;
+		} catch (Throwable t) {
+			call.complete(null, t, ResponseMetadata.getLast());
+			throw StripeExceptionRethrower.rethrow(t);
+		} finally {
+			inFlight.remove(key, call);
+		}
+	}
+
+	/**
+	 * @return the number of GET requests seen by this getter
+	 */
+	public long getRequestCount() {
+		return requestCount.get();
+	}
+
+	/**
+	 * @return the number of GET requests that were served by another caller's
+	 *         in-flight request instead of making their own
+	 */
+	public long getCoalescedCount() {
+		return coalescedCount.get();
+	}
+
+	/**
+	 * @return a snapshot of coalesced request counts, keyed by
+	 *         {@link EndpointTemplate} so there's one entry per endpoint rather
+	 *         than per object
+	 */
+	public Map<String, Long> getCoalescedCountsByEndpoint() {
+		Map<String, Long> snapshot = new HashMap<String, Long>();
+		for (Map.Entry<String, AtomicLong> entry : coalescedByEndpoint.entrySet()) {
+			snapshot.put(entry.getKey(), entry.getValue().get());
+		}
+		return snapshot;
+	}
+
+	public void resetStats() {
+		requestCount.set(0);
+		coalescedCount.set(0);
+		coalescedByEndpoint.clear();
+	}
+
+	StripeResponseGetter getDelegate() {
+		return delegate;
+	}
+
+	private AtomicLong recordCoalesced(String url) {
+		coalescedCount.incrementAndGet();
+		String endpoint = EndpointTemplate.of(url);
+		AtomicLong counter = coalescedByEndpoint.get(endpoint);
+		if (counter == null) {
+			AtomicLong created = new AtomicLong();
+			counter = coalescedByEndpoint.putIfAbsent(endpoint, created);
+			if (counter == null) {
+				counter = created;
+			}
+		}
+		counter.incrementAndGet();
+		return counter;
+	}
+
+	private static String encodeQuery(Map<String, Object> params) throws InvalidRequestException {
+		try {
+			return LiveStripeResponseGetter.createQuery(params);
+		} catch (UnsupportedEncodingException e) {
+			throw new InvalidRequestException("Unable to encode parameters to "
+					+ APIResource.CHARSET
+					+ ". Please contact support@stripe.com for assistance.",
+					null, null, 0, e);
+		}
+	}
+
+	private static class InFlightRequest {
+		private final CountDownLatch done = new CountDownLatch(1);
+		private volatile Object result;
+		private volatile Throwable failure;
+		private volatile ResponseMetadata metadata;
+
+		void complete(Object result, Throwable failure, ResponseMetadata metadata) {
+			this.result = result;
+			this.failure = failure;
+			this.metadata = metadata;
+			done.countDown();
+		}
+
+		void await(Deadline deadline) throws APIConnectionException {
+			try {
+				Deadline.await(done, deadline);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new APIConnectionException(
+						"Interrupted while waiting for an identical in-flight request to Stripe.", e);
+			}
+		}
+
+		Object get() throws AuthenticationException, InvalidRequestException,
+				APIConnectionException, CardException, APIException {
+			// Waiters see the shared request as their last one
+			ResponseMetadata.setLast(metadata);
+			if (failure != null) {
+				throw StripeExceptionRethrower.rethrow(failure);
+			}
+			return result;
+		}
+	}
+
+	private static class RequestKey {
+		private final String url;
+		private final String query;
+		private final Class<?> clazz;
+		private final String apiKey;
+		private final String stripeAccount;
+		private final String stripeVersion;
+		private final int hashCode;
+
+		RequestKey(String url, String query, Class<?> clazz, RequestOptions options) {
+			this.url = url;
+			this.query = query;
+			this.clazz = clazz;
+			this.apiKey = options.getApiKey();
+			this.stripeAccount = options.getStripeAccount();
+			this.stripeVersion = options.getStripeVersion();
+
+			int result = url != null ? url.hashCode() : 0;
+			result = 31 * result + query.hashCode();
+			result = 31 * result + clazz.hashCode();
+			result = 31 * result + (apiKey != null ? apiKey.hashCode() : 0);
+			result = 31 * result + (stripeAccount != null ? stripeAccount.hashCode() : 0);
+			result = 31 * result + (stripeVersion != null ? stripeVersion.hashCode() : 0);
+			this.hashCode = result;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (o == null || getClass() != o.getClass()) return false;
+
+			RequestKey that = (RequestKey) o;
+			return hashCode == that.hashCode
+					&& clazz == that.clazz
+					&& query.equals(that.query)
+					&& (url != null ? url.equals(that.url) : that.url == null)
+					&& (apiKey != null ? apiKey.equals(that.apiKey) : that.apiKey == null)
+					&& (stripeAccount != null ? stripeAccount.equals(that.stripeAccount) : that.stripeAccount == null)
+					&& (stripeVersion != null ? stripeVersion.equals(that.stripeVersion) : that.stripeVersion == null);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+	}
+}
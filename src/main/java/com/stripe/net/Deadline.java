@@ -0,0 +1,145 @@
+package com.stripe.net;
+
+import com.stripe.exception.DeadlineExceededException;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A point in time by which a call into Stripe must have finished, including
+ * any time spent queueing, connecting, retrying and reading the response.
+ *
+ * A deadline can be set per request with
+ * {@link RequestOptions.RequestOptionsBuilder#setDeadline(Deadline)}, or for
+ * everything the current thread does, e.g. from a servlet filter that knows
+ * the caller's time budget:
+ *
+ * <pre>
+ * Deadline previous = Deadline.setCurrent(Deadline.after(2, TimeUnit.SECONDS));
+ * try {
+ *   ...
+ * } finally {
+ *   Deadline.setCurrent(previous);
+ * }
+ * </pre>
+ *
+ * When both are set, the earlier one applies. Requests still running when it
+ * passes fail with a {@link DeadlineExceededException}.
+ */
+public final class Deadline {
+	private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<Deadline>();
+
+	private final long deadlineNanos;
+
+	private Deadline(long deadlineNanos) {
+		this.deadlineNanos = deadlineNanos;
+	}
+
+	public static Deadline after(long duration, TimeUnit unit) {
+		return new Deadline(System.nanoTime() + unit.toNanos(duration));
+	}
+
+	/**
+	 * @return the deadline set for the current thread, or null
+	 */
+	public static Deadline current() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * Sets the deadline for requests made by the current thread.
+	 *
+	 * @param deadline the new deadline, or null to remove it
+	 * @return the previous deadline, to be restored afterwards
+	 */
+	public static Deadline setCurrent(Deadline deadline) {
+		Deadline previous = CURRENT.get();
+		if (deadline == null) {
+			CURRENT.remove();
+		} else {
+			CURRENT.set(deadline);
+		}
+		return previous;
+	}
+
+	/**
+	 * @return the earlier of the deadline on {@code options} and the current
+	 *         thread's deadline, or null if there is neither
+	 */
+	static Deadline effective(RequestOptions options) {
+		Deadline fromOptions = options == null ? null : options.getDeadline();
+		Deadline fromThread = current();
+		if (fromOptions == null) {
+			return fromThread;
+		}
+		if (fromThread == null) {
+			return fromOptions;
+		}
+		return fromOptions.deadlineNanos - fromThread.deadlineNanos <= 0 ? fromOptions : fromThread;
+	}
+
+	/**
+	 * @return {@code options} with the effective deadline set on them, for
+	 *         handing a request to another thread, which won't see the current
+	 *         thread's deadline
+	 */
+	static RequestOptions propagate(RequestOptions options) {
+		Deadline deadline = effective(options);
+		if (deadline == null || (options != null && options.getDeadline() == deadline)) {
+			return options;
+		}
+		RequestOptions base = options == null ? RequestOptions.getDefault() : options;
+		return base.toBuilder().setIdempotencyKey(base.getIdempotencyKey()).setDeadline(deadline).build();
+	}
+
+	/**
+	 * Waits for {@code latch} until this deadline, or forever if
+	 * {@code deadline} is null.
+	 *
+	 * @throws DeadlineExceededException if the deadline passes first
+	 */
+	static void await(CountDownLatch latch, Deadline deadline)
+			throws InterruptedException, DeadlineExceededException {
+		if (deadline == null) {
+			latch.await();
+		} else if (!latch.await(deadline.remaining(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS)) {
+			throw deadline.exceeded(null);
+		}
+	}
+
+	public long remaining(TimeUnit unit) {
+		return unit.convert(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+	}
+
+	public boolean isExpired() {
+		return deadlineNanos - System.nanoTime() <= 0;
+	}
+
+	/**
+	 * @return {@code timeoutMillis} (0 for none), shortened so that it ends no
+	 *         later than this deadline, but never less than 1ms since 0 means no
+	 *         timeout to URLConnection
+	 */
+	int capTimeoutMillis(int timeoutMillis) {
+		long remaining = (deadlineNanos - System.nanoTime() + 999999) / 1000000;
+		if (timeoutMillis > 0) {
+			remaining = Math.min(timeoutMillis, remaining);
+		}
+		return (int) Math.max(1, Math.min(Integer.MAX_VALUE, remaining));
+	}
+
+	/**
+	 * @throws DeadlineExceededException if this deadline has passed
+	 */
+	void check() throws DeadlineExceededException {
+		if (isExpired()) {
+			throw exceeded(null);
+		}
+	}
+
+	DeadlineExceededException exceeded(Throwable cause) {
+		return new DeadlineExceededException(String.format(
+				"The request deadline passed %dms ago before Stripe's response was received.",
+				Math.max(0, -remaining(TimeUnit.MILLISECONDS))), cause);
+	}
+}
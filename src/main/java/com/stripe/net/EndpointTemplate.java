@@ -0,0 +1,72 @@
+package com.stripe.net;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Reduces request URLs to the endpoint they call, with object ids replaced
+ * by {@code {id}}, so that latency and error statistics can be grouped by
+ * endpoint without one entry per object:
+ *
+ * <pre>
+ * EndpointTemplate.of("https://api.stripe.com/v1/customers/cus_123/cards/card_456?expand[]=customer")
+ *     // "/v1/customers/{id}/cards/{id}"
+ * </pre>
+ */
+public final class EndpointTemplate {
+	/*
+	 * Paths alternate between collection names and ids
+	 * (/v1/customers/{id}/sources/{id}); these are the words that can follow
+	 * a collection or an id without being an id themselves.
+	 */
+	private static final Set<String> ACTIONS = new HashSet<String>(Arrays.asList(
+			"cancel", "capture", "close", "dispute", "lines", "pay", "refund", "reject", "upcoming", "verify"));
+	// Words that prefix a collection name rather than being one
+	// (/v1/bitcoin/receivers/{id}, /v1/balance/history/{id})
+	private static final Set<String> NAMESPACES = new HashSet<String>(Arrays.asList("balance", "bitcoin"));
+	// Stripe-generated ids such as ch_1AbC or btcrcv_123, wherever they are
+	private static final Pattern GENERATED_ID = Pattern.compile("[a-z]+_[a-z]*[A-Z0-9][A-Za-z0-9]*");
+
+	private EndpointTemplate() {
+	}
+
+	public static String of(String url) {
+		int start = url.indexOf("://");
+		start = start < 0 ? 0 : url.indexOf('/', start + 3);
+		if (start < 0) {
+			return "/";
+		}
+		int end = url.indexOf('?', start);
+		String path = end < 0 ? url.substring(start) : url.substring(start, end);
+
+		String[] segments = path.split("/");
+		StringBuilder template = new StringBuilder();
+		// segments[0] is empty and segments[1] is the API version
+		boolean idPosition = false;
+		for (int i = 1; i < segments.length; i++) {
+			template.append('/');
+			String segment = segments[i];
+			if (i >= 2 && (idPosition ? !ACTIONS.contains(segment) && !precedesId(segments, i)
+					: isGeneratedId(segment))) {
+				template.append("{id}");
+				idPosition = false;
+			} else {
+				template.append(segment);
+				idPosition = i >= 2 && !idPosition && !NAMESPACES.contains(segment);
+			}
+		}
+		return template.length() == 0 ? "/" : template.toString();
+	}
+
+	private static boolean isGeneratedId(String segment) {
+		return GENERATED_ID.matcher(segment).matches();
+	}
+
+	// A word followed by a generated id is a collection name even where an id
+	// would usually be, as in unlisted namespaces
+	private static boolean precedesId(String[] segments, int i) {
+		return !isGeneratedId(segments[i]) && i + 1 < segments.length && isGeneratedId(segments[i + 1]);
+	}
+}
@@ -0,0 +1,135 @@
+package com.stripe.net;
+
+import com.stripe.model.Account;
+import com.stripe.model.Coupon;
+import com.stripe.model.Customer;
+import com.stripe.model.Discount;
+import com.stripe.model.Event;
+import com.stripe.model.EventData;
+import com.stripe.model.ExternalAccount;
+import com.stripe.model.Plan;
+import com.stripe.model.Product;
+import com.stripe.model.SKU;
+import com.stripe.model.StripeObject;
+import com.stripe.model.Subscription;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps an {@link ObjectCache} in sync with Stripe by applying webhook
+ * {@link Event}s to it.
+ *
+ * {@code *.deleted} events evict the object. {@code *.created} and
+ * {@code *.updated} events replace cached copies with the object embedded in
+ * the event, which avoids a refetch. Events about a customer's subscriptions,
+ * sources or discount evict the customer, whose representation embeds them.
+ *
+ * Replacements are ordered by {@link Event#getCreated()}, so an event
+ * delivered late never overwrites an entry that was loaded after it.
+ * Evictions always apply, since that is safe whatever the clock skew between
+ * Stripe and this machine.
+ */
+public class EventCacheInvalidator {
+	@SuppressWarnings("rawtypes")
+	private static final Map<String, Class> cachedTypes = new HashMap<String, Class>();
+	static {
+		cachedTypes.put("account", Account.class);
+		cachedTypes.put("coupon", Coupon.class);
+		cachedTypes.put("customer", Customer.class);
+		cachedTypes.put("plan", Plan.class);
+		cachedTypes.put("product", Product.class);
+		cachedTypes.put("sku", SKU.class);
+	}
+
+	private final ObjectCache cache;
+	private final boolean replaceWithEventObjects;
+
+	public EventCacheInvalidator(ObjectCache cache) {
+		this(cache, true);
+	}
+
+	/**
+	 * @param replaceWithEventObjects whether to replace cached objects with the
+	 *        ones embedded in events. Embedded objects are rendered with the
+	 *        webhook endpoint's API version, so pass false if you retrieve
+	 *        objects with a different pinned Stripe-Version.
+	 */
+	public EventCacheInvalidator(ObjectCache cache, boolean replaceWithEventObjects) {
+		this.cache = cache;
+		this.replaceWithEventObjects = replaceWithEventObjects;
+	}
+
+	/**
+	 * Applies {@code event} to the cache.
+	 *
+	 * @return whether the event concerned a cached object type
+	 */
+	public boolean handle(Event event) {
+		String type = event.getType();
+		EventData data = event.getData();
+		if (type == null || data == null || data.getObject() == null) {
+			return false;
+		}
+		int dot = type.lastIndexOf('.');
+		if (dot < 0) {
+			return false;
+		}
+		String resource = type.substring(0, dot);
+		String action = type.substring(dot + 1);
+		StripeObject object = data.getObject();
+		long version = event.getCreated() == null ? Long.MAX_VALUE : event.getCreated();
+
+		if (resource.startsWith("customer.")) {
+			String customerId = nestedCustomerId(object);
+			if (customerId == null) {
+				return false;
+			}
+			cache.invalidate(Customer.class, customerId, version);
+			return true;
+		}
+
+		Class<?> resourceClass = cachedTypes.get(resource);
+		if (resourceClass == null) {
+			return false;
+		}
+		String id = idOf(object);
+		if (id == null) {
+			return false;
+		}
+		if (replaceWithEventObjects && !"deleted".equals(action) && resourceClass.isInstance(object)) {
+			cache.replace(resourceClass, id, object, version);
+		} else {
+			cache.invalidate(resourceClass, id, version);
+		}
+		return true;
+	}
+
+	private static String nestedCustomerId(StripeObject object) {
+		if (object instanceof Subscription) {
+			return ((Subscription) object).getCustomer();
+		} else if (object instanceof Discount) {
+			return ((Discount) object).getCustomer();
+		} else if (object instanceof ExternalAccount) {
+			return ((ExternalAccount) object).getCustomer();
+		}
+		return null;
+	}
+
+	private static String idOf(StripeObject object) {
+		if (object instanceof Account) {
+			return ((Account) object).getId();
+		} else if (object instanceof Coupon) {
+			return ((Coupon) object).getId();
+		} else if (object instanceof Customer) {
+			return ((Customer) object).getId();
+		} else if (object instanceof Plan) {
+			return ((Plan) object).getId();
+		} else if (object instanceof Product) {
+			return ((Product) object).getId();
+		} else if (object instanceof SKU) {
+			return ((SKU) object).getId();
+		}
+		return null;
+	}
+}
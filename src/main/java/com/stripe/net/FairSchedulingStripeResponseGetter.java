@@ -0,0 +1,408 @@
+package com.stripe.net;
+
+import com.stripe.exception.APIConnectionException;
+import com.stripe.exception.APIException;
+import com.stripe.exception.AuthenticationException;
+import com.stripe.exception.CardException;
+import com.stripe.exception.InvalidRequestException;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Wraps another {@link StripeResponseGetter} so that at most a fixed number of
+ * requests are in flight at once, and shares those slots fairly between
+ * connected accounts.
+ *
+ * Requests queue per Stripe-Account header and the queues are served by
+ * deficit round-robin: each turn an account may start as many requests as its
+ * weight (1 by default), so one account's bulk export can't starve everyone
+ * else. Requests made without a Stripe-Account share the
+ * {@link #PLATFORM_ACCOUNT} queue. When an account's queue is full, further
+ * requests for it fail immediately with an {@link APIConnectionException}
+ * rather than waiting:
+ *
+ * <pre>
+ * APIResource.setStripeResponseGetter(
+ *     FairSchedulingStripeResponseGetter.builder(new LiveStripeResponseGetter())
+ *         .setMaxConcurrency(32)
+ *         .setMaxQueueLength(100)
+ *         .setWeight("acct_bigplatformpartner", 4)
+ *         .build());
+ * </pre>
+ */
+public class FairSchedulingStripeResponseGetter implements StripeResponseGetter {
+	/**
+	 * The account under which requests without a Stripe-Account header are
+	 * queued and reported.
+	 */
+	public static final String PLATFORM_ACCOUNT = "";
+
+	private final StripeResponseGetter delegate;
+	private final int maxQueueLength;
+	private final int defaultWeight;
+	private final Map<String, Integer> weights;
+	private final int maxIdleAccounts;
+
+	// Guarded by this; in least recently used order
+	private final Map<String, AccountQueue> queues = new LinkedHashMap<String, AccountQueue>(16, 0.75f, true);
+	private final Deque<AccountQueue> active = new ArrayDeque<AccountQueue>();
+	private int inFlight;
+	private int maxConcurrency;
+
+	private FairSchedulingStripeResponseGetter(FairSchedulingStripeResponseGetterBuilder builder) {
+		this.delegate = builder.delegate;
+		this.maxConcurrency = builder.maxConcurrency;
+		this.maxQueueLength = builder.maxQueueLength;
+		this.defaultWeight = builder.defaultWeight;
+		this.weights = new HashMap<String, Integer>(builder.weights);
+		this.maxIdleAccounts = builder.maxIdleAccounts;
+	}
+
+	public static FairSchedulingStripeResponseGetterBuilder builder(StripeResponseGetter delegate) {
+		return new FairSchedulingStripeResponseGetterBuilder(delegate);
+	}
+
+	public <T> T request(
+			APIResource.RequestMethod method,
+			String url,
+			Map<String, Object> params,
+			Class<T> clazz,
+			APIResource.RequestType type,
+			RequestOptions options) throws AuthenticationException, InvalidRequestException, APIConnectionException, CardException, APIException {
+		String account = options == null || options.getStripeAccount() == null
+				? PLATFORM_ACCOUNT : options.getStripeAccount();
+		long start = System.nanoTime();
+		Ticket ticket = enqueue(account);
+		try {
+			await(ticket, Deadline.effective(options));
+			long queueWait = System.nanoTime() - start;
+			RequestTrace.addQueueWait(queueWait);
+			try {
+				return delegate.request(method, url, params, clazz, type, options);
+			} finally {
+				RequestTrace.addQueueWait(-queueWait);
+			}
+		} finally {
+			release(ticket);
+		}
+	}
+
+	/**
+	 * @return a snapshot of every account with requests queued or in flight,
+	 *         and of the most recently active idle ones, keyed by
+	 *         Stripe-Account
+	 */
+	public synchronized Map<String, AccountStats> getAccountStats() {
+		Map<String, AccountStats> stats = new HashMap<String, AccountStats>();
+		for (AccountQueue queue : queues.values()) {
+			stats.put(queue.account, queue.snapshot());
+		}
+		return Collections.unmodifiableMap(stats);
+	}
+
+	/**
+	 * @return the number of requests currently being sent
+	 */
+	public synchronized int getInFlightCount() {
+		return inFlight;
+	}
+
+	public synchronized int getMaxConcurrency() {
+		return maxConcurrency;
+	}
+
+	/**
+	 * Changes the number of requests sent at once. Requests already in
+	 * flight aren't affected when lowering it.
+	 */
+	public synchronized void setMaxConcurrency(int maxConcurrency) {
+		if (maxConcurrency <= 0) {
+			throw new IllegalArgumentException("Max concurrency must be positive");
+		}
+		this.maxConcurrency = maxConcurrency;
+		dispatch();
+	}
+
+	StripeResponseGetter getDelegate() {
+		return delegate;
+	}
+
+	private synchronized Ticket enqueue(String account) throws APIConnectionException {
+		AccountQueue queue = queues.get(account);
+		boolean added = queue == null;
+		if (added) {
+			Integer weight = weights.get(account);
+			queue = new AccountQueue(account, weight == null ? defaultWeight : weight);
+			queues.put(account, queue);
+		}
+		if (inFlight >= maxConcurrency && queue.waiting.size() >= maxQueueLength) {
+			queue.rejectedCount++;
+			throw new APIConnectionException(String.format(
+					"Too many queued requests for account %s (maximum %d); try again later.",
+					account.isEmpty() ? "(platform)" : account, maxQueueLength));
+		}
+		Ticket ticket = new Ticket(queue);
+		if (queue.waiting.isEmpty()) {
+			active.addLast(queue);
+		}
+		queue.waiting.addLast(ticket);
+		dispatch();
+		if (added) {
+			forgetIdleAccounts();
+		}
+		return ticket;
+	}
+
+	private void await(Ticket ticket, Deadline deadline) throws APIConnectionException {
+		try {
+			Deadline.await(ticket.granted, deadline);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new APIConnectionException("Interrupted while waiting to send a request to Stripe", e);
+		}
+	}
+
+	/*
+	 * Drops the least recently used accounts with nothing queued or in flight
+	 * so that a stream of one-off accounts doesn't grow the map forever.
+	 */
+	private void forgetIdleAccounts() {
+		int idle = 0;
+		for (AccountQueue queue : queues.values()) {
+			if (queue.isIdle()) {
+				idle++;
+			}
+		}
+		Iterator<AccountQueue> candidates = queues.values().iterator();
+		while (idle > maxIdleAccounts && candidates.hasNext()) {
+			if (candidates.next().isIdle()) {
+				candidates.remove();
+				idle--;
+			}
+		}
+	}
+
+	private synchronized void release(Ticket ticket) {
+		AccountQueue queue = ticket.queue;
+		if (ticket.granted.getCount() > 0) {
+			// Gave up before being scheduled
+			queue.waiting.remove(ticket);
+			if (queue.waiting.isEmpty()) {
+				queue.deficit = 0;
+				queue.inTurn = false;
+				active.remove(queue);
+			}
+			return;
+		}
+		queue.inFlight--;
+		inFlight--;
+		dispatch();
+	}
+
+	/*
+	 * Deficit round-robin with a cost of one per request. An account's deficit
+	 * is topped up by its weight at the start of each turn, and carried over
+	 * when the turn is cut short because every slot is taken.
+	 */
+	private void dispatch() {
+		while (inFlight < maxConcurrency && !active.isEmpty()) {
+			AccountQueue queue = active.peekFirst();
+			if (!queue.inTurn) {
+				queue.deficit += queue.weight;
+				queue.inTurn = true;
+			}
+			Ticket ticket = queue.waiting.pollFirst();
+			queue.deficit--;
+			queue.inFlight++;
+			queue.servedCount++;
+			queue.totalQueueTimeNanos += System.nanoTime() - ticket.enqueuedAt;
+			inFlight++;
+			ticket.granted.countDown();
+
+			if (queue.waiting.isEmpty()) {
+				queue.deficit = 0;
+				queue.inTurn = false;
+				active.removeFirst();
+			} else if (queue.deficit <= 0) {
+				queue.inTurn = false;
+				active.removeFirst();
+				active.addLast(queue);
+			}
+		}
+	}
+
+	private static class AccountQueue {
+		final String account;
+		final int weight;
+		final Deque<Ticket> waiting = new ArrayDeque<Ticket>();
+		int deficit;
+		boolean inTurn;
+		int inFlight;
+		long servedCount;
+		long rejectedCount;
+		long totalQueueTimeNanos;
+
+		AccountQueue(String account, int weight) {
+			this.account = account;
+			this.weight = weight;
+		}
+
+		boolean isIdle() {
+			return waiting.isEmpty() && inFlight == 0;
+		}
+
+		AccountStats snapshot() {
+			return new AccountStats(weight, waiting.size(), inFlight, servedCount, rejectedCount, totalQueueTimeNanos);
+		}
+	}
+
+	private static class Ticket {
+		final AccountQueue queue;
+		final CountDownLatch granted = new CountDownLatch(1);
+		final long enqueuedAt = System.nanoTime();
+
+		Ticket(AccountQueue queue) {
+			this.queue = queue;
+		}
+	}
+
+	/**
+	 * An immutable snapshot of one account's queue.
+	 */
+	public static final class AccountStats {
+		private final int weight;
+		private final int queueLength;
+		private final int inFlightCount;
+		private final long servedCount;
+		private final long rejectedCount;
+		private final long totalQueueTimeNanos;
+
+		AccountStats(int weight, int queueLength, int inFlightCount, long servedCount, long rejectedCount,
+				long totalQueueTimeNanos) {
+			this.weight = weight;
+			this.queueLength = queueLength;
+			this.inFlightCount = inFlightCount;
+			this.servedCount = servedCount;
+			this.rejectedCount = rejectedCount;
+			this.totalQueueTimeNanos = totalQueueTimeNanos;
+		}
+
+		public int getWeight() {
+			return weight;
+		}
+
+		/**
+		 * @return requests waiting for a slot
+		 */
+		public int getQueueLength() {
+			return queueLength;
+		}
+
+		public int getInFlightCount() {
+			return inFlightCount;
+		}
+
+		/**
+		 * @return requests that have been given a slot
+		 */
+		public long getServedCount() {
+			return servedCount;
+		}
+
+		/**
+		 * @return requests turned away because the queue was full
+		 */
+		public long getRejectedCount() {
+			return rejectedCount;
+		}
+
+		public long getTotalQueueTimeNanos() {
+			return totalQueueTimeNanos;
+		}
+
+		public double getAverageQueueTimeNanos() {
+			return servedCount == 0 ? 0.0 : (double) totalQueueTimeNanos / servedCount;
+		}
+	}
+
+	public static final class FairSchedulingStripeResponseGetterBuilder {
+		private final StripeResponseGetter delegate;
+		private int maxConcurrency = 16;
+		private int maxQueueLength = 1000;
+		private int defaultWeight = 1;
+		private final Map<String, Integer> weights = new HashMap<String, Integer>();
+		private int maxIdleAccounts = 1000;
+
+		private FairSchedulingStripeResponseGetterBuilder(StripeResponseGetter delegate) {
+			this.delegate = delegate;
+		}
+
+		/**
+		 * The number of requests sent at once across all accounts.
+		 */
+		public FairSchedulingStripeResponseGetterBuilder setMaxConcurrency(int maxConcurrency) {
+			if (maxConcurrency <= 0) {
+				throw new IllegalArgumentException("Max concurrency must be positive");
+			}
+			this.maxConcurrency = maxConcurrency;
+			return this;
+		}
+
+		/**
+		 * The number of requests per account that may wait for a slot before
+		 * further ones are rejected.
+		 */
+		public FairSchedulingStripeResponseGetterBuilder setMaxQueueLength(int maxQueueLength) {
+			if (maxQueueLength < 0) {
+				throw new IllegalArgumentException("Max queue length must not be negative");
+			}
+			this.maxQueueLength = maxQueueLength;
+			return this;
+		}
+
+		public FairSchedulingStripeResponseGetterBuilder setDefaultWeight(int defaultWeight) {
+			if (defaultWeight <= 0) {
+				throw new IllegalArgumentException("Weights must be positive");
+			}
+			this.defaultWeight = defaultWeight;
+			return this;
+		}
+
+		/**
+		 * Lets {@code stripeAccount} start {@code weight} requests per turn.
+		 * Use {@link FairSchedulingStripeResponseGetter#PLATFORM_ACCOUNT} for
+		 * requests without a Stripe-Account.
+		 */
+		public FairSchedulingStripeResponseGetterBuilder setWeight(String stripeAccount, int weight) {
+			if (weight <= 0) {
+				throw new IllegalArgumentException("Weights must be positive");
+			}
+			this.weights.put(stripeAccount, weight);
+			return this;
+		}
+
+		/**
+		 * The number of accounts with nothing queued or in flight whose
+		 * stats are kept, 1000 by default. Beyond that the least recently
+		 * used are forgotten as new accounts arrive.
+		 */
+		public FairSchedulingStripeResponseGetterBuilder setMaxIdleAccounts(int maxIdleAccounts) {
+			if (maxIdleAccounts < 0) {
+				throw new IllegalArgumentException("Max idle accounts must not be negative");
+			}
+			this.maxIdleAccounts = maxIdleAccounts;
+			return this;
+		}
+
+		public FairSchedulingStripeResponseGetter build() {
+			return new FairSchedulingStripeResponseGetter(this);
+		}
+	}
+}
@@ -0,0 +1,509 @@
+package com.stripe.net;
+
+import com.stripe.exception.APIConnectionException;
+import com.stripe.exception.APIException;
+import com.stripe.exception.AuthenticationException;
+import com.stripe.exception.CardException;
+import com.stripe.exception.InvalidRequestException;
+import com.stripe.exception.StripeException;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Wraps another {@link StripeResponseGetter} to cut tail latency on reads.
+ *
+ * GET requests are sent as usual. If an answer hasn't arrived after the
+ * configured percentile of recent latencies for the same endpoint (see
+ * {@link EndpointTemplate}), a second, identical request is sent, which the
+ * underlying connection pool serves on a different connection. Whichever
+ * answers first is returned, and the other's connection is closed. POST and
+ * DELETE requests are never hedged. The first attempt is sent from the
+ * calling thread, so per-thread settings still apply to it.
+ *
+ * Recent latencies are those of the last one to two windows (a minute by
+ * default), and are always those of first attempts, whether they answered
+ * first or not, so that hedging doesn't feed on its own wins.
+ *
+ * Hedges are paid for out of a budget that grows by a fixed fraction of each
+ * request, so they can add at most that fraction of extra load:
+ *
+ * <pre>
+ * APIResource.setStripeResponseGetter(
+ *     HedgingStripeResponseGetter.builder(new LiveStripeResponseGetter())
+ *         .setPercentile(95)
+ *         .setBudgetRatio(0.05)
+ *         .build());
+ * </pre>
+ */
+public class HedgingStripeResponseGetter implements StripeResponseGetter {
+	private static final long TOKEN = 1000000;
+	private static final int DEFAULT_MAX_HEDGES_IN_FLIGHT = 16;
+
+	private static final ScheduledExecutorService hedgeTimer = Executors.newSingleThreadScheduledExecutor(
+			new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "stripe-hedge-timer");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	private final StripeResponseGetter delegate;
+	private final double percentile;
+	private final long minimumSamples;
+	private final long minimumDelayNanos;
+	private final long windowNanos;
+	private final long tokensPerRequest;
+	private final long maxTokens;
+	private final ExecutorService executor;
+
+	private final ConcurrentMap<String, RecentLatencies> latencies = new ConcurrentHashMap<String, RecentLatencies>();
+	private final AtomicLong tokens;
+	private final AtomicLong requestCount = new AtomicLong();
+	private final AtomicLong hedgeCount = new AtomicLong();
+	private final AtomicLong hedgeWinCount = new AtomicLong();
+	private final AtomicLong budgetExhaustedCount = new AtomicLong();
+
+	private HedgingStripeResponseGetter(HedgingStripeResponseGetterBuilder builder) {
+		this.delegate = builder.delegate;
+		this.percentile = builder.percentile;
+		this.minimumSamples = builder.minimumSamples;
+		this.minimumDelayNanos = builder.minimumDelayNanos;
+		this.windowNanos = builder.windowNanos;
+		this.tokensPerRequest = (long) (builder.budgetRatio * TOKEN);
+		this.maxTokens = builder.maxBurst * TOKEN;
+		this.tokens = new AtomicLong(maxTokens);
+		this.executor = builder.executor != null ? builder.executor : new ThreadPoolExecutor(
+				0, DEFAULT_MAX_HEDGES_IN_FLIGHT, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+				new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "stripe-hedged-request");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+	}
+
+	public static HedgingStripeResponseGetterBuilder builder(StripeResponseGetter delegate) {
+		return new HedgingStripeResponseGetterBuilder(delegate);
+	}
+
+	public <T> T request(
+			final APIResource.RequestMethod method,
+			final String url,
+			final Map<String, Object> params,
+			final Class<T> clazz,
+			final APIResource.RequestType type,
+			RequestOptions options) throws AuthenticationException, InvalidRequestException, APIConnectionException, CardException, APIException {
+		if (method != APIResource.RequestMethod.GET || type != APIResource.RequestType.NORMAL) {
+			return delegate.request(method, url, params, clazz, type, options);
+		}
+		requestCount.incrementAndGet();
+		earnTokens();
+
+		RecentLatencies recent = recentLatencies(EndpointTemplate.of(url));
+		long start = System.nanoTime();
+		final Race race = new Race();
+		ScheduledFuture<?> timer = null;
+		long delay = hedgeDelayNanos(recent);
+		if (delay >= 0) {
+			// The hedge runs on another thread, which doesn't see this one's
+			// deadline or exception settings
+			final RequestOptions hedgeOptions = Deadline.propagate(options);
+			final Boolean captureStackTraces = StripeException.getCaptureStackTracesOnCurrentThread();
+			timer = hedgeTimer.schedule(new Runnable() {
+				public void run() {
+					startHedge(race, new Runnable() {
+						public void run() {
+							Boolean previousCapture = StripeException.setCaptureStackTracesOnCurrentThread(captureStackTraces);
+							Cancellation previous = Cancellation.setCurrent(race.hedge);
+							ResponseMetadata.setLast(null);
+							try {
+								race.hedgeDone(delegate.request(method, url, params, clazz, type, hedgeOptions), null,
+										ResponseMetadata.getLast());
+							} catch (Throwable t) {
+								race.hedgeDone(null, t, ResponseMetadata.getLast());
+							} finally {
+								Cancellation.setCurrent(previous);
+								StripeException.setCaptureStackTracesOnCurrentThread(previousCapture);
+							}
+						}
+					});
+				}
+			}, delay, TimeUnit.NANOSECONDS);
+		}
+
+		// The first attempt runs on this thread, keeping its thread-locals
+		Cancellation previous = Cancellation.setCurrent(race.primary);
+		T result = null;
+		Throwable failure = null;
+		try {
+			result = delegate.request(method, url, params, clazz, type, options);
+		} catch (Throwable t) {
+			failure = t;
+		} finally {
+			Cancellation.setCurrent(previous);
+			if (timer != null) {
+				timer.cancel(false);
+			}
+		}
+		// Timed even if the hedge won, so slow first attempts still count
+		// toward the delay. One abandoned for the hedge took at least this
+		// long. Only failing to reach Stripe at all doesn't count.
+		if (!(failure instanceof APIConnectionException) || race.primary.isCancelled()) {
+			recent.recordNanos(System.nanoTime() - start);
+		}
+
+		try {
+			if (!race.hedgeWon(failure instanceof APIConnectionException)) {
+				if (failure != null) {
+					throw StripeExceptionRethrower.rethrow(failure);
+				}
+				return result;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new APIConnectionException("Interrupted while waiting for a response from Stripe", e);
+		}
+		hedgeWinCount.incrementAndGet();
+		ResponseMetadata.setLast(race.hedgeMetadata);
+		if (race.hedgeFailure != null) {
+			throw StripeExceptionRethrower.rethrow(race.hedgeFailure);
+		}
+		return clazz.cast(race.hedgeResult);
+	}
+
+	/**
+	 * @return a copy of the recent latencies of first attempts at requests to
+	 *         {@code endpoint}, as returned by {@link EndpointTemplate#of(String)},
+	 *         or null if there were none
+	 */
+	public LatencyHistogram getLatencyHistogram(String endpoint) {
+		RecentLatencies recent = latencies.get(endpoint);
+		return recent == null ? null : recent.copy();
+	}
+
+	/**
+	 * @return the number of GET requests seen by this getter
+	 */
+	public long getRequestCount() {
+		return requestCount.get();
+	}
+
+	/**
+	 * @return the number of hedged requests sent
+	 */
+	public long getHedgeCount() {
+		return hedgeCount.get();
+	}
+
+	/**
+	 * @return the number of hedged requests that answered first
+	 */
+	public long getHedgeWinCount() {
+		return hedgeWinCount.get();
+	}
+
+	/**
+	 * @return the number of slow requests that weren't hedged because the
+	 *         budget was spent or the executor had no room
+	 */
+	public long getBudgetExhaustedCount() {
+		return budgetExhaustedCount.get();
+	}
+
+	/**
+	 * @return how many hedged requests could be sent right now, as earned
+	 *         by earlier requests
+	 */
+	public double getAvailableHedges() {
+		return (double) tokens.get() / TOKEN;
+	}
+
+	StripeResponseGetter getDelegate() {
+		return delegate;
+	}
+
+	private RecentLatencies recentLatencies(String endpoint) {
+		RecentLatencies recent = latencies.get(endpoint);
+		if (recent == null) {
+			RecentLatencies created = new RecentLatencies(windowNanos);
+			recent = latencies.putIfAbsent(endpoint, created);
+			if (recent == null) {
+				recent = created;
+			}
+		}
+		return recent;
+	}
+
+	/*
+	 * Negative until enough recent requests to the endpoint have been seen to
+	 * pick a sensible delay.
+	 */
+	private long hedgeDelayNanos(RecentLatencies recent) {
+		recent.rotate();
+		LatencyHistogram current = recent.current;
+		LatencyHistogram previous = recent.previous;
+		if (current.getCount() + previous.getCount() < minimumSamples) {
+			return -1;
+		}
+		return Math.max(minimumDelayNanos,
+				LatencyHistogram.getValueAtPercentileNanos(percentile, previous, current));
+	}
+
+	private void startHedge(Race race, Runnable hedge) {
+		if (!race.startHedge()) {
+			// The first attempt finished in the meantime
+			return;
+		}
+		if (!spendToken()) {
+			budgetExhaustedCount.incrementAndGet();
+			race.hedgeNotStarted();
+			return;
+		}
+		try {
+			executor.execute(hedge);
+			hedgeCount.incrementAndGet();
+		} catch (RejectedExecutionException e) {
+			tokens.addAndGet(TOKEN);
+			budgetExhaustedCount.incrementAndGet();
+			race.hedgeNotStarted();
+		}
+	}
+
+	private void earnTokens() {
+		long current;
+		do {
+			current = tokens.get();
+			if (current >= maxTokens) {
+				return;
+			}
+		} while (!tokens.compareAndSet(current, Math.min(maxTokens, current + tokensPerRequest)));
+	}
+
+	private boolean spendToken() {
+		long current;
+		do {
+			current = tokens.get();
+			if (current < TOKEN) {
+				return false;
+			}
+		} while (!tokens.compareAndSet(current, current - TOKEN));
+		return true;
+	}
+
+	/*
+	 * Decides whose answer the caller gets. The hedge wins by answering
+	 * before the first attempt finishes, which is then abandoned; otherwise
+	 * the hedge is. A hedge that can't reach Stripe either only matters if
+	 * the first attempt couldn't.
+	 */
+	private static final class Race {
+		final Cancellation primary = new Cancellation();
+		final Cancellation hedge = new Cancellation();
+		private boolean primaryDone;
+		private boolean hedgeStarted;
+		private boolean hedgeDone;
+		private boolean hedgeWon;
+		volatile Object hedgeResult;
+		volatile Throwable hedgeFailure;
+		volatile ResponseMetadata hedgeMetadata;
+
+		synchronized boolean startHedge() {
+			hedgeStarted = !primaryDone;
+			return hedgeStarted;
+		}
+
+		synchronized void hedgeNotStarted() {
+			hedgeStarted = false;
+			notifyAll();
+		}
+
+		void hedgeDone(Object result, Throwable failure, ResponseMetadata metadata) {
+			synchronized (this) {
+				hedgeResult = result;
+				hedgeFailure = failure;
+				hedgeMetadata = metadata;
+				hedgeDone = true;
+				notifyAll();
+				if (primaryDone || failure instanceof APIConnectionException) {
+					return;
+				}
+				hedgeWon = true;
+			}
+			primary.cancel();
+		}
+
+		/**
+		 * Called once the first attempt has finished, waiting for the hedge
+		 * if that attempt couldn't reach Stripe and the hedge is underway.
+		 */
+		boolean hedgeWon(boolean failedToConnect) throws InterruptedException {
+			synchronized (this) {
+				primaryDone = true;
+				if (hedgeWon) {
+					return true;
+				}
+				if (failedToConnect) {
+					while (hedgeStarted && !hedgeDone) {
+						wait();
+					}
+					if (hedgeDone) {
+						return true;
+					}
+				}
+			}
+			hedge.cancel();
+			return false;
+		}
+	}
+
+	/*
+	 * Two histograms taking turns: latencies go into the current one, and the
+	 * previous one is dropped once the current one is a window old.
+	 */
+	private static final class RecentLatencies {
+		private final long windowNanos;
+		volatile LatencyHistogram current = new LatencyHistogram();
+		volatile LatencyHistogram previous = new LatencyHistogram();
+		private volatile long rotatedAt = System.nanoTime();
+
+		RecentLatencies(long windowNanos) {
+			this.windowNanos = windowNanos;
+		}
+
+		void recordNanos(long nanos) {
+			rotate();
+			current.recordNanos(nanos);
+		}
+
+		void rotate() {
+			long now = System.nanoTime();
+			if (now - rotatedAt < windowNanos) {
+				return;
+			}
+			synchronized (this) {
+				if (now - rotatedAt < windowNanos) {
+					return;
+				}
+				// A whole window without requests leaves nothing recent
+				previous = now - rotatedAt < 2 * windowNanos ? current : new LatencyHistogram();
+				current = new LatencyHistogram();
+				rotatedAt = now;
+			}
+		}
+
+		LatencyHistogram copy() {
+			rotate();
+			LatencyHistogram copy = new LatencyHistogram();
+			copy.add(previous);
+			copy.add(current);
+			return copy;
+		}
+	}
+
+	public static final class HedgingStripeResponseGetterBuilder {
+		private final StripeResponseGetter delegate;
+		private double percentile = 95;
+		private long minimumSamples = 20;
+		private long minimumDelayNanos = TimeUnit.MILLISECONDS.toNanos(10);
+		private long windowNanos = TimeUnit.MINUTES.toNanos(1);
+		private double budgetRatio = 0.05;
+		private long maxBurst = 10;
+		private ExecutorService executor;
+
+		private HedgingStripeResponseGetterBuilder(StripeResponseGetter delegate) {
+			this.delegate = delegate;
+		}
+
+		/**
+		 * The percentile of an endpoint's recent latency after which a hedge is
+		 * sent, between 0 and 100.
+		 */
+		public HedgingStripeResponseGetterBuilder setPercentile(double percentile) {
+			if (percentile <= 0 || percentile > 100) {
+				throw new IllegalArgumentException("Percentile must be between 0 and 100");
+			}
+			this.percentile = percentile;
+			return this;
+		}
+
+		/**
+		 * The number of requests to an endpoint that must have completed before
+		 * its requests are hedged.
+		 */
+		public HedgingStripeResponseGetterBuilder setMinimumSamples(long minimumSamples) {
+			this.minimumSamples = minimumSamples;
+			return this;
+		}
+
+		/**
+		 * A floor on the hedge delay, so fast endpoints aren't hedged on noise.
+		 */
+		public HedgingStripeResponseGetterBuilder setMinimumDelay(long delay, TimeUnit unit) {
+			this.minimumDelayNanos = unit.toNanos(delay);
+			return this;
+		}
+
+		/**
+		 * How long latencies count as recent: each one is kept for between one
+		 * and two windows.
+		 */
+		public HedgingStripeResponseGetterBuilder setWindow(long duration, TimeUnit unit) {
+			if (duration <= 0) {
+				throw new IllegalArgumentException("Window must be positive");
+			}
+			this.windowNanos = unit.toNanos(duration);
+			return this;
+		}
+
+		/**
+		 * The number of hedges allowed per request over time, e.g. 0.05 for at
+		 * most 5% extra requests.
+		 */
+		public HedgingStripeResponseGetterBuilder setBudgetRatio(double budgetRatio) {
+			if (budgetRatio < 0 || budgetRatio > 1) {
+				throw new IllegalArgumentException("Budget ratio must be between 0 and 1");
+			}
+			this.budgetRatio = budgetRatio;
+			return this;
+		}
+
+		/**
+		 * The number of hedges that can be saved up while requests are fast.
+		 */
+		public HedgingStripeResponseGetterBuilder setMaxBurst(long maxBurst) {
+			if (maxBurst < 0) {
+				throw new IllegalArgumentException("Max burst must not be negative");
+			}
+			this.maxBurst = maxBurst;
+			return this;
+		}
+
+		/**
+		 * The executor hedges run on; first attempts run on the calling
+		 * thread. Defaults to at most 16 daemon threads. Hedges the executor
+		 * rejects aren't sent.
+		 */
+		public HedgingStripeResponseGetterBuilder setExecutor(ExecutorService executor) {
+			this.executor = executor;
+			return this;
+		}
+
+		public HedgingStripeResponseGetter build() {
+			return new HedgingStripeResponseGetter(this);
+		}
+	}
+}
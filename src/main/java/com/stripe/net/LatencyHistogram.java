@@ -0,0 +1,155 @@
+package com.stripe.net;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of request latencies, cheap enough to update on every
+ * request from many threads at once.
+ *
+ * Latencies are counted in microsecond buckets whose width grows with their
+ * value: each power of two is split into eight equal buckets, so reported
+ * percentiles are within 12.5% of the true value. Anything above about 38
+ * hours lands in the last bucket.
+ */
+public class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int MAX_EXPONENT = 37;
+	private static final int BUCKETS = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong totalNanos = new AtomicLong();
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	public void record(long duration, TimeUnit unit) {
+		recordNanos(unit.toNanos(duration));
+	}
+
+	public void recordNanos(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		counts.incrementAndGet(bucket(TimeUnit.NANOSECONDS.toMicros(nanos)));
+		count.incrementAndGet();
+		totalNanos.addAndGet(nanos);
+		long max;
+		while ((max = maxNanos.get()) < nanos && !maxNanos.compareAndSet(max, nanos)) {
+			// Another thread raised the max first; retry unless it's now big enough
+		}
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getTotalNanos() {
+		return totalNanos.get();
+	}
+
+	public double getMeanNanos() {
+		long n = count.get();
+		return n == 0 ? 0.0 : (double) totalNanos.get() / n;
+	}
+
+	public long getMaxNanos() {
+		return maxNanos.get();
+	}
+
+	/**
+	 * @param percentile between 0 and 100, e.g. 99.9
+	 * @return an upper bound on the latency of the given share of recorded
+	 *         requests, or 0 if nothing has been recorded
+	 */
+	public long getValueAtPercentileNanos(double percentile) {
+		return getValueAtPercentileNanos(percentile, this);
+	}
+
+	/**
+	 * The percentile of the requests recorded by all of {@code histograms}
+	 * together, without merging them first.
+	 */
+	static long getValueAtPercentileNanos(double percentile, LatencyHistogram... histograms) {
+		if (percentile < 0 || percentile > 100) {
+			throw new IllegalArgumentException("Percentile must be between 0 and 100");
+		}
+		long total = 0;
+		long max = 0;
+		long[] snapshot = new long[BUCKETS];
+		for (LatencyHistogram histogram : histograms) {
+			for (int i = 0; i < BUCKETS; i++) {
+				long n = histogram.counts.get(i);
+				snapshot[i] += n;
+				total += n;
+			}
+			max = Math.max(max, histogram.maxNanos.get());
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return Math.min(TimeUnit.MICROSECONDS.toNanos(upperBound(i)), max);
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * Adds everything recorded by {@code other}, e.g. to copy it.
+	 */
+	void add(LatencyHistogram other) {
+		for (int i = 0; i < BUCKETS; i++) {
+			long n = other.counts.get(i);
+			if (n != 0) {
+				counts.addAndGet(i, n);
+			}
+		}
+		count.addAndGet(other.count.get());
+		totalNanos.addAndGet(other.totalNanos.get());
+		long max;
+		long otherMax = other.maxNanos.get();
+		while ((max = maxNanos.get()) < otherMax && !maxNanos.compareAndSet(max, otherMax)) {
+			// Lost a race with a concurrent record; retry unless it's now big enough
+		}
+	}
+
+	/**
+	 * Clears all counts. Requests recorded while resetting may or may not be
+	 * kept.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		count.set(0);
+		totalNanos.set(0);
+		maxNanos.set(0);
+	}
+
+	static int bucket(long micros) {
+		if (micros < SUB_BUCKETS) {
+			return (int) micros;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(micros);
+		if (exponent > MAX_EXPONENT) {
+			return BUCKETS - 1;
+		}
+		int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+	}
+
+	static long upperBound(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket + 1;
+		}
+		int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+		int subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+		return (long) (SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS);
+	}
+}
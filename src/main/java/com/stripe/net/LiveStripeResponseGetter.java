@@ -7,9 +7,12 @@ import com.stripe.exception.AuthenticationException;
 import com.stripe.exception.RateLimitException;
 import com.stripe.exception.CardException;
 import com.stripe.exception.InvalidRequestException;
+import com.stripe.exception.StripeException;
+import com.stripe.model.StripeObject;
 
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLSocketFactory;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -17,19 +20,28 @@ import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.net.Authenticator;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.PasswordAuthentication;
+import java.net.Proxy;
 import java.net.URL;
 import java.net.URLStreamHandler;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class LiveStripeResponseGetter implements StripeResponseGetter {
 	private static final String DNS_CACHE_TTL_PROPERTY_NAME = "networkaddress.cache.ttl";
@@ -41,7 +53,171 @@ public class LiveStripeResponseGetter implements StripeResponseGetter {
 	 */
 	private static final String CUSTOM_URL_STREAM_HANDLER_PROPERTY_NAME = "com.stripe.net.customURLStreamHandler";
 
-	private static final SSLSocketFactory socketFactory = new StripeSSLSocketFactory();
+	private static final ConcurrentMap<String, URLStreamHandler> customURLStreamHandlers =
+			new ConcurrentHashMap<String, URLStreamHandler>();
+
+	private static final StripeSSLSocketFactory DEFAULT_SOCKET_FACTORY = new StripeSSLSocketFactory();
+
+	/*
+	 * Only in jars built on JDK 11 or later, and only usable when running on
+	 * one; see com.stripe.net.jfr.
+	 */
+	private static final String JFR_LISTENER_CLASS_NAME = "com.stripe.net.jfr.JfrRequestListener";
+
+	private static final RequestListener[] DEFAULT_REQUEST_LISTENERS = defaultRequestListeners();
+
+	private static final ScheduledExecutorService watchdogTimer = Executors.newSingleThreadScheduledExecutor(
+			new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "stripe-request-deadline");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 30 * 1000;
+	static final int DEFAULT_READ_TIMEOUT_MILLIS = 80 * 1000;
+
+	private volatile int connectTimeoutMillis;
+	private volatile int readTimeoutMillis;
+	private final boolean useGlobalProxy;
+	private final Proxy proxy;
+	private final PasswordAuthentication proxyCredential;
+	private final SSLSocketFactory socketFactory;
+	private volatile ProxyTunnelSSLSocketFactory tunnelSocketFactory;
+	private volatile RequestListener[] requestListeners = DEFAULT_REQUEST_LISTENERS;
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	/**
+	 * Uses the default timeouts and whatever proxy is configured through
+	 * {@link Stripe#setConnectionProxy(Proxy)} at the time of each request.
+	 */
+	public LiveStripeResponseGetter() {
+		this(DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_READ_TIMEOUT_MILLIS, true, null, null, DEFAULT_SOCKET_FACTORY);
+	}
+
+	/**
+	 * @param proxy the proxy for this getter's connections, or null to
+	 *        connect directly regardless of the global proxy setting
+	 */
+	public LiveStripeResponseGetter(int connectTimeoutMillis, int readTimeoutMillis, Proxy proxy,
+			PasswordAuthentication proxyCredential) {
+		this(connectTimeoutMillis, readTimeoutMillis, false, proxy, proxyCredential, DEFAULT_SOCKET_FACTORY);
+	}
+
+	/**
+	 * @param socketFactory the factory for this getter's TLS connections, e.g.
+	 *        a {@link StripeSSLSocketFactory} with its own session cache
+	 */
+	public LiveStripeResponseGetter(int connectTimeoutMillis, int readTimeoutMillis, Proxy proxy,
+			PasswordAuthentication proxyCredential, SSLSocketFactory socketFactory) {
+		this(connectTimeoutMillis, readTimeoutMillis, false, proxy, proxyCredential, socketFactory);
+	}
+
+	private LiveStripeResponseGetter(int connectTimeoutMillis, int readTimeoutMillis, boolean useGlobalProxy,
+			Proxy proxy, PasswordAuthentication proxyCredential, SSLSocketFactory socketFactory) {
+		if (connectTimeoutMillis < 0 || readTimeoutMillis < 0) {
+			throw new IllegalArgumentException("Timeouts must not be negative");
+		}
+		this.connectTimeoutMillis = connectTimeoutMillis;
+		this.readTimeoutMillis = readTimeoutMillis;
+		this.useGlobalProxy = useGlobalProxy;
+		this.proxy = proxy;
+		this.proxyCredential = proxyCredential;
+		this.socketFactory = socketFactory != null ? socketFactory : DEFAULT_SOCKET_FACTORY;
+	}
+
+	public int getConnectTimeoutMillis() {
+		return connectTimeoutMillis;
+	}
+
+	public int getReadTimeoutMillis() {
+		return readTimeoutMillis;
+	}
+
+	/**
+	 * Changes the connect timeout for requests sent from now on, e.g. from
+	 * {@link StripeClientMXBean} during an incident.
+	 */
+	public void setConnectTimeoutMillis(int connectTimeoutMillis) {
+		if (connectTimeoutMillis < 0) {
+			throw new IllegalArgumentException("Timeouts must not be negative");
+		}
+		this.connectTimeoutMillis = connectTimeoutMillis;
+	}
+
+	public void setReadTimeoutMillis(int readTimeoutMillis) {
+		if (readTimeoutMillis < 0) {
+			throw new IllegalArgumentException("Timeouts must not be negative");
+		}
+		this.readTimeoutMillis = readTimeoutMillis;
+	}
+
+	/**
+	 * @return the factory for TLS connections, which is a
+	 *         {@link StripeSSLSocketFactory} keeping handshake statistics unless
+	 *         another one was passed in
+	 */
+	public SSLSocketFactory getSSLSocketFactory() {
+		return socketFactory;
+	}
+
+	/**
+	 * Opens {@code connections} connections to {@link Stripe#getApiBase()} at
+	 * once and leaves them in the keep-alive pool, so that the first requests
+	 * after startup don't each pay for a TCP and TLS handshake.
+	 *
+	 * @see #warmUp(String, int)
+	 */
+	public int warmUp(int connections) {
+		return warmUp(Stripe.getApiBase(), connections);
+	}
+
+	/**
+	 * Opens {@code connections} connections to {@code apiBase} at once with a
+	 * harmless GET, and leaves them in the keep-alive pool.
+	 *
+	 * HttpURLConnection keeps at most {@code http.maxConnections} (5 by
+	 * default) idle connections per host, and closes them once they have been
+	 * idle for as long as the server allows, so there is no point warming up
+	 * more than that or long before the traffic arrives.
+	 *
+	 * @return the number of connections that were opened
+	 */
+	public int warmUp(final String apiBase, int connections) {
+		final CountDownLatch start = new CountDownLatch(1);
+		final AtomicInteger opened = new AtomicInteger();
+		List<Thread> threads = new ArrayList<Thread>(connections);
+		for (int i = 0; i < connections; i++) {
+			// All at once, since one at a time would keep reusing the same connection
+			Thread thread = new Thread(new Runnable() {
+				public void run() {
+					try {
+						start.await();
+						makeURLConnectionRequest(APIResource.RequestMethod.GET, apiBase, null,
+								RequestOptions.getDefault(), null, null);
+						opened.incrementAndGet();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} catch (APIConnectionException e) {
+						// Requests will connect on their own
+					}
+				}
+			}, "stripe-warm-up");
+			thread.setDaemon(true);
+			thread.start();
+			threads.add(thread);
+		}
+		start.countDown();
+		try {
+			for (Thread thread : threads) {
+				thread.join();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return opened.get();
+	}
 
 	public <T> T request(
 			APIResource.RequestMethod method,
@@ -50,7 +226,72 @@ public class LiveStripeResponseGetter implements StripeResponseGetter {
 			Class<T> clazz,
 			APIResource.RequestType type,
 			RequestOptions options) throws AuthenticationException, InvalidRequestException, APIConnectionException, CardException, APIException {
-		return _request(method, url, params, clazz, type, options);
+		RequestTrace trace = new RequestTrace(requestListeners, method, url, options);
+		trace.inFlightAtStart = inFlight.getAndIncrement();
+		trace.started();
+		try {
+			return _request(method, url, params, clazz, type, options, trace);
+		} catch (StripeException e) {
+			trace.failed(e);
+			ResponseMetadata.setLast(new ResponseMetadata(trace));
+			throw StripeExceptionRethrower.rethrow(e);
+		} catch (RuntimeException e) {
+			trace.failed(e);
+			ResponseMetadata.setLast(new ResponseMetadata(trace));
+			throw e;
+		} finally {
+			inFlight.decrementAndGet();
+		}
+	}
+
+	private static RequestListener[] defaultRequestListeners() {
+		if (Boolean.getBoolean("com.stripe.net.jfr.disabled")) {
+			return new RequestListener[0];
+		}
+		try {
+			return new RequestListener[] {
+					(RequestListener) Class.forName(JFR_LISTENER_CLASS_NAME).getConstructor().newInstance() };
+		} catch (ClassNotFoundException e) {
+			return new RequestListener[0];
+		} catch (LinkageError e) {
+			// Built with the listener, but running on a JVM without JFR
+			return new RequestListener[0];
+		} catch (InstantiationException e) {
+			return new RequestListener[0];
+		} catch (IllegalAccessException e) {
+			return new RequestListener[0];
+		} catch (NoSuchMethodException e) {
+			return new RequestListener[0];
+		} catch (InvocationTargetException e) {
+			return new RequestListener[0];
+		}
+	}
+
+	/**
+	 * @return the {@code Request-Id} Stripe gave a response, or null
+	 */
+	static String getRequestId(Map<String, List<String>> headers) {
+		List<String> requestIdList = headers == null ? null : headers.get("Request-Id");
+		if (requestIdList != null && requestIdList.size() > 0) {
+			return requestIdList.get(0);
+		}
+		return null;
+	}
+
+	/**
+	 * Has {@code listener} told about every request this getter sends from
+	 * now on.
+	 */
+	public synchronized void addRequestListener(RequestListener listener) {
+		RequestListener[] listeners = Arrays.copyOf(requestListeners, requestListeners.length + 1);
+		listeners[listeners.length - 1] = listener;
+		requestListeners = listeners;
+	}
+
+	public synchronized void removeRequestListener(RequestListener listener) {
+		List<RequestListener> listeners = new ArrayList<RequestListener>(Arrays.asList(requestListeners));
+		listeners.remove(listener);
+		requestListeners = listeners.toArray(new RequestListener[listeners.size()]);
 	}
 
 	private static String urlEncodePair(String k, String v)
@@ -92,63 +333,103 @@ public class LiveStripeResponseGetter implements StripeResponseGetter {
 		return headers;
 	}
 
-	private static java.net.HttpURLConnection createStripeConnection(
-			String url, RequestOptions options) throws IOException {
+	private java.net.HttpURLConnection createStripeConnection(
+			String url, RequestOptions options, Watchdog watchdog) throws IOException {
 		URL stripeURL;
 		String customURLStreamHandlerClassName = System.getProperty(
 				CUSTOM_URL_STREAM_HANDLER_PROPERTY_NAME, null);
 		if (customURLStreamHandlerClassName != null) {
-			// instantiate the custom handler provided
-			try {
-				Class<URLStreamHandler> clazz = (Class<URLStreamHandler>) Class
-						.forName(customURLStreamHandlerClassName);
-				Constructor<URLStreamHandler> constructor = clazz
-						.getConstructor();
-				URLStreamHandler customHandler = constructor.newInstance();
-				stripeURL = new URL(null, url, customHandler);
-			} catch (ClassNotFoundException e) {
-				throw new IOException(e);
-			} catch (SecurityException e) {
-				throw new IOException(e);
-			} catch (NoSuchMethodException e) {
-				throw new IOException(e);
-			} catch (IllegalArgumentException e) {
-				throw new IOException(e);
-			} catch (InstantiationException e) {
-				throw new IOException(e);
-			} catch (IllegalAccessException e) {
-				throw new IOException(e);
-			} catch (InvocationTargetException e) {
-				throw new IOException(e);
-			}
+			stripeURL = new URL(null, url, customURLStreamHandler(customURLStreamHandlerClassName));
 		} else {
 			stripeURL = new URL(url);
 		}
 		HttpURLConnection conn;
-		if (Stripe.getConnectionProxy() != null) {
-			conn = (HttpURLConnection) stripeURL.openConnection(Stripe.getConnectionProxy());
-			Authenticator.setDefault(new Authenticator() {
-				@Override
-				protected PasswordAuthentication getPasswordAuthentication() {
-					return Stripe.getProxyCredential();
-				}
-			});
+		Proxy connectionProxy = useGlobalProxy ? Stripe.getConnectionProxy() : proxy;
+		PasswordAuthentication credential = useGlobalProxy ? Stripe.getProxyCredential() : proxyCredential;
+		SSLSocketFactory connectionSocketFactory = socketFactory;
+		if (connectionProxy != null && connectionProxy.type() == Proxy.Type.HTTP
+				&& "https".equals(stripeURL.getProtocol())) {
+			// We open the tunnel ourselves so credentials are sent up front
+			connectionSocketFactory = tunnelSocketFactory(connectionProxy, credential);
+			conn = (HttpURLConnection) stripeURL.openConnection(Proxy.NO_PROXY);
+		} else if (connectionProxy != null) {
+			conn = (HttpURLConnection) stripeURL.openConnection(connectionProxy);
+			if (credential != null && connectionProxy.type() == Proxy.Type.HTTP) {
+				conn.setRequestProperty("Proxy-Authorization",
+						ProxyTunnelSSLSocketFactory.basicAuthorization(credential));
+			}
 		} else {
 			conn = (HttpURLConnection) stripeURL.openConnection();
 		}
-		conn.setConnectTimeout(30 * 1000);
-		conn.setReadTimeout(80 * 1000);
+		int connectTimeoutMillis = this.connectTimeoutMillis;
+		int readTimeoutMillis = this.readTimeoutMillis;
+		if (watchdog.deadline != null) {
+			conn.setConnectTimeout(watchdog.deadline.capTimeoutMillis(connectTimeoutMillis));
+			conn.setReadTimeout(watchdog.deadline.capTimeoutMillis(readTimeoutMillis));
+		} else {
+			conn.setConnectTimeout(connectTimeoutMillis);
+			conn.setReadTimeout(readTimeoutMillis);
+		}
+		watchdog.watch(conn);
 		conn.setUseCaches(false);
 		for (Map.Entry<String, String> header : getHeaders(options).entrySet()) {
 			conn.setRequestProperty(header.getKey(), header.getValue());
 		}
 		if (conn instanceof HttpsURLConnection) {
-			((HttpsURLConnection) conn).setSSLSocketFactory(socketFactory);
+			((HttpsURLConnection) conn).setSSLSocketFactory(connectionSocketFactory);
 		}
 
 		return conn;
 	}
 
+	/*
+	 * Handlers are shared by every URL of a protocol, so one instance of the
+	 * custom handler serves all requests.
+	 */
+	static URLStreamHandler customURLStreamHandler(String className) throws IOException {
+		URLStreamHandler handler = customURLStreamHandlers.get(className);
+		if (handler != null) {
+			return handler;
+		}
+		// instantiate the custom handler provided
+		try {
+			Class<URLStreamHandler> clazz = (Class<URLStreamHandler>) Class
+					.forName(className);
+			Constructor<URLStreamHandler> constructor = clazz
+					.getConstructor();
+			handler = constructor.newInstance();
+		} catch (ClassNotFoundException e) {
+			throw new IOException(e);
+		} catch (SecurityException e) {
+			throw new IOException(e);
+		} catch (NoSuchMethodException e) {
+			throw new IOException(e);
+		} catch (IllegalArgumentException e) {
+			throw new IOException(e);
+		} catch (InstantiationException e) {
+			throw new IOException(e);
+		} catch (IllegalAccessException e) {
+			throw new IOException(e);
+		} catch (InvocationTargetException e) {
+			throw new IOException(e);
+		}
+		URLStreamHandler existing = customURLStreamHandlers.putIfAbsent(className, handler);
+		return existing != null ? existing : handler;
+	}
+
+	/*
+	 * HttpsURLConnection only reuses a pooled connection for the same socket
+	 * factory, so hold on to one per proxy.
+	 */
+	private SSLSocketFactory tunnelSocketFactory(Proxy connectionProxy, PasswordAuthentication credential) {
+		ProxyTunnelSSLSocketFactory factory = tunnelSocketFactory;
+		if (factory == null || !factory.isFor(connectionProxy, credential)) {
+			factory = new ProxyTunnelSSLSocketFactory(socketFactory, connectionProxy, credential);
+			tunnelSocketFactory = factory;
+		}
+		return factory;
+	}
+
 	private static String formatURL(String url, String query) {
 		if (query == null || query.isEmpty()) {
 			return url;
@@ -159,41 +440,50 @@ public class LiveStripeResponseGetter implements StripeResponseGetter {
 		}
 	}
 
-	private static java.net.HttpURLConnection createGetConnection(
-			String url, String query, RequestOptions options) throws IOException {
+	private java.net.HttpURLConnection createGetConnection(
+			String url, String query, RequestOptions options, Watchdog watchdog) throws IOException {
 		String getURL = formatURL(url, query);
-		java.net.HttpURLConnection conn = createStripeConnection(getURL, options);
+		java.net.HttpURLConnection conn = createStripeConnection(getURL, options, watchdog);
 		conn.setRequestMethod("GET");
 
 		return conn;
 	}
 
-	private static java.net.HttpURLConnection createPostConnection(
-			String url, String query, RequestOptions options) throws IOException {
-		java.net.HttpURLConnection conn = createStripeConnection(url, options);
+	private java.net.HttpURLConnection createPostConnection(
+			String url, String query, RequestOptions options, Watchdog watchdog, RequestTrace trace)
+			throws IOException {
+		java.net.HttpURLConnection conn = createStripeConnection(url, options, watchdog);
 
 		conn.setDoOutput(true);
 		conn.setRequestMethod("POST");
 		conn.setRequestProperty("Content-Type", String.format(
 				"application/x-www-form-urlencoded;charset=%s", APIResource.CHARSET));
 
+		byte[] body = query.getBytes(APIResource.CHARSET);
+		if (trace != null) {
+			trace.requestBytes = body.length;
+			trace.connect(conn);
+		}
 		OutputStream output = null;
 		try {
 			output = conn.getOutputStream();
-			output.write(query.getBytes(APIResource.CHARSET));
+			output.write(body);
 		} finally {
 			if (output != null) {
 				output.close();
 			}
 		}
+		if (trace != null) {
+			trace.requestWritten();
+		}
 		return conn;
 	}
 
-	private static java.net.HttpURLConnection createDeleteConnection(
-			String url, String query, RequestOptions options) throws IOException {
+	private java.net.HttpURLConnection createDeleteConnection(
+			String url, String query, RequestOptions options, Watchdog watchdog) throws IOException {
 		String deleteUrl = formatURL(url, query);
 		java.net.HttpURLConnection conn = createStripeConnection(
-				deleteUrl, options);
+				deleteUrl, options, watchdog);
 		conn.setRequestMethod("DELETE");
 
 		return conn;
@@ -253,6 +543,65 @@ public class LiveStripeResponseGetter implements StripeResponseGetter {
 		return flatParams;
 	}
 
+	/*
+	 * Disconnects a request's connection once its deadline passes, or when
+	 * the thread's Cancellation is cancelled. This unblocks whatever the
+	 * request is stuck in (connecting, the TLS handshake, uploading or
+	 * reading) so the caller hears about it promptly.
+	 */
+	private static class Watchdog implements Runnable {
+		final Deadline deadline;
+		private final ScheduledFuture<?> alarm;
+		private final Cancellation cancellation;
+		private HttpURLConnection conn;
+		private boolean fired;
+		private boolean disarmed;
+
+		Watchdog(Deadline deadline) {
+			this.deadline = deadline;
+			this.alarm = deadline == null ? null
+					: watchdogTimer.schedule(this, deadline.remaining(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+			this.cancellation = Cancellation.current();
+			if (cancellation != null) {
+				cancellation.register(this);
+			}
+		}
+
+		synchronized void watch(HttpURLConnection conn) {
+			this.conn = conn;
+			if (fired) {
+				conn.disconnect();
+			}
+		}
+
+		public synchronized void run() {
+			fired = true;
+			if (conn != null) {
+				conn.disconnect();
+			}
+			// HttpURLConnection quietly resends an idempotent request whose
+			// connection drops before the response, so keep disconnecting
+			// until the request gives up.
+			if (!disarmed) {
+				watchdogTimer.schedule(this, 50, TimeUnit.MILLISECONDS);
+			}
+		}
+
+		void disarm() {
+			if (cancellation != null) {
+				cancellation.unregister(this);
+			}
+			synchronized (this) {
+				if (alarm != null) {
+					alarm.cancel(false);
+				}
+				// The connection may be back in the keep-alive pool by now
+				conn = null;
+				disarmed = true;
+			}
+		}
+	}
+
 	// represents Errors returned as JSON
 	private static class ErrorContainer {
 		private LiveStripeResponseGetter.Error error;
@@ -273,32 +622,50 @@ public class LiveStripeResponseGetter implements StripeResponseGetter {
 		String charge;
 	}
 
-	private static String getResponseBody(InputStream responseStream)
+	private static String getResponseBody(InputStream responseStream, Deadline deadline, RequestTrace trace)
 			throws IOException {
-		//\A is the beginning of
-		// the stream boundary
-		String rBody = new Scanner(responseStream, APIResource.CHARSET)
-												.useDelimiter("\\A")
-												.next(); //
-
-		responseStream.close();
-		return rBody;
+		// Read in chunks so that a response trickling in slower than the
+		// deadline is noticed even if every individual read is quick
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		try {
+			int read;
+			while ((read = responseStream.read(buffer)) != -1) {
+				body.write(buffer, 0, read);
+				if (deadline != null && deadline.isExpired()) {
+					throw new IOException("Deadline passed while reading the response body");
+				}
+			}
+		} finally {
+			responseStream.close();
+		}
+		String responseBody = body.toString(APIResource.CHARSET);
+		if (trace != null) {
+			trace.responseBody = responseBody;
+			trace.bodyRead(body.size());
+		}
+		return responseBody;
 	}
 
-	private static StripeResponse makeURLConnectionRequest(
+	private StripeResponse makeURLConnectionRequest(
 			APIResource.RequestMethod method, String url, String query,
-			RequestOptions options) throws APIConnectionException {
+			RequestOptions options, Deadline deadline, RequestTrace trace) throws APIConnectionException {
 		java.net.HttpURLConnection conn = null;
+		Watchdog watchdog = new Watchdog(deadline);
+		boolean succeeded = false;
+		if (trace != null) {
+			trace.requestBody = query;
+		}
 		try {
 			switch (method) {
 			case GET:
-				conn = createGetConnection(url, query, options);
+				conn = createGetConnection(url, query, options, watchdog);
 				break;
 			case POST:
-				conn = createPostConnection(url, query, options);
+				conn = createPostConnection(url, query, options, watchdog, trace);
 				break;
 			case DELETE:
-				conn = createDeleteConnection(url, query, options);
+				conn = createDeleteConnection(url, query, options, watchdog);
 				break;
 			default:
 				throw new APIConnectionException(
@@ -308,20 +675,30 @@ public class LiveStripeResponseGetter implements StripeResponseGetter {
 										+ "support@stripe.com for assistance.",
 								method));
 			}
+			if (trace != null && method != APIResource.RequestMethod.POST) {
+				trace.connect(conn);
+			}
 			// trigger the request
 			int rCode = conn.getResponseCode();
 			String rBody;
 			Map<String, List<String>> headers;
+			if (trace != null) {
+				trace.firstByte(rCode, conn.getHeaderField("Request-Id"));
+			}
 
 			if (rCode >= 200 && rCode < 300) {
-				rBody = getResponseBody(conn.getInputStream());
+				rBody = getResponseBody(conn.getInputStream(), deadline, trace);
 			} else {
-				rBody = getResponseBody(conn.getErrorStream());
+				rBody = getResponseBody(conn.getErrorStream(), deadline, trace);
 			}
 			headers = conn.getHeaderFields();
+			succeeded = true;
 			return new StripeResponse(rCode, rBody, headers);
 
 		} catch (IOException e) {
+			if (deadline != null && deadline.isExpired()) {
+				throw deadline.exceeded(e);
+			}
 			throw new APIConnectionException(
 					String.format(
 							"IOException during API request to Stripe (%s): %s "
@@ -330,20 +707,27 @@ public class LiveStripeResponseGetter implements StripeResponseGetter {
 									+ " or let us know at support@stripe.com.",
 							Stripe.getApiBase(), e.getMessage()), e);
 		} finally {
-			if (conn != null) {
+			watchdog.disarm();
+			// Leave successful connections open for the keep-alive pool; the
+			// response body has been read to the end, which returns them to it
+			if (conn != null && !succeeded) {
 				conn.disconnect();
 			}
 		}
 	}
 
-	private static <T> T _request(APIResource.RequestMethod method,
+	private <T> T _request(APIResource.RequestMethod method,
 			String url, Map<String, Object> params, Class<T> clazz,
-			APIResource.RequestType type, RequestOptions options)
+			APIResource.RequestType type, RequestOptions options, RequestTrace trace)
 			throws AuthenticationException, InvalidRequestException,
 			APIConnectionException, CardException, APIException {
 		if (options == null) {
 			options = RequestOptions.getDefault();
 		}
+		Deadline deadline = Deadline.effective(options);
+		if (deadline != null) {
+			deadline.check();
+		}
 		String originalDNSCacheTTL = null;
 		Boolean allowedToSetTTL = true;
 
@@ -370,11 +754,11 @@ public class LiveStripeResponseGetter implements StripeResponseGetter {
 			StripeResponse response;
 			switch (type) {
 			case NORMAL:
-				response = getStripeResponse(method, url, params, options);
+				response = getStripeResponse(method, url, params, options, deadline, trace);
 				break;
 			case MULTIPART:
 				response = getMultipartStripeResponse(method, url, params,
-						options);
+						options, deadline, trace);
 				break;
 			default:
 				throw new RuntimeException(
@@ -385,17 +769,24 @@ public class LiveStripeResponseGetter implements StripeResponseGetter {
 			int rCode = response.responseCode;
 			String rBody = response.responseBody;
 
-			String requestId = null;
-			Map<String, List<String>> headers = response.getResponseHeaders();
-			List<String> requestIdList = headers == null ? null : headers.get("Request-Id");
-			if (requestIdList != null && requestIdList.size() > 0) {
-				requestId = requestIdList.get(0);
+			String requestId = getRequestId(response.getResponseHeaders());
+			if (trace.requestId == null) {
+				// Not seen by the trace for App Engine requests
+				trace.requestId = requestId;
 			}
 
 			if (rCode < 200 || rCode >= 300) {
 				handleAPIError(rBody, rCode, requestId);
 			}
-			return APIResource.GSON.fromJson(rBody, clazz);
+			T result = APIResource.GSON.fromJson(rBody, clazz);
+			trace.deserialized();
+			ResponseMetadata metadata = new ResponseMetadata(trace);
+			response.setMetadata(metadata);
+			if (result instanceof StripeObject) {
+				((StripeObject) result).setLastResponse(metadata);
+			}
+			ResponseMetadata.setLast(metadata);
+			return result;
 		} finally {
 			if (allowedToSetTTL) {
 				if (originalDNSCacheTTL == null) {
@@ -411,9 +802,9 @@ public class LiveStripeResponseGetter implements StripeResponseGetter {
 		}
 	}
 
-	private static StripeResponse getStripeResponse(
+	private StripeResponse getStripeResponse(
 			APIResource.RequestMethod method, String url,
-			Map<String, Object> params, RequestOptions options)
+			Map<String, Object> params, RequestOptions options, Deadline deadline, RequestTrace trace)
 			throws InvalidRequestException, APIConnectionException,
 			APIException {
 		String query;
@@ -428,13 +819,13 @@ public class LiveStripeResponseGetter implements StripeResponseGetter {
 
 		try {
 			// HTTPSURLConnection verifies SSL cert by default
-			return makeURLConnectionRequest(method, url, query, options);
+			return makeURLConnectionRequest(method, url, query, options, deadline, trace);
 		} catch (ClassCastException ce) {
 			// appengine doesn't have HTTPSConnection, use URLFetch API
 			String appEngineEnv = System.getProperty(
 					"com.google.appengine.runtime.environment", null);
 			if (appEngineEnv != null) {
-				return makeAppEngineRequest(method, url, query, options);
+				return makeAppEngineRequest(method, url, query, options, deadline);
 			} else {
 				// non-appengine ClassCastException
 				throw ce;
@@ -442,9 +833,9 @@ public class LiveStripeResponseGetter implements StripeResponseGetter {
 		}
 	}
 
-	private static StripeResponse getMultipartStripeResponse(
+	private StripeResponse getMultipartStripeResponse(
 			APIResource.RequestMethod method, String url,
-			Map<String, Object> params, RequestOptions options)
+			Map<String, Object> params, RequestOptions options, Deadline deadline, RequestTrace trace)
 			throws InvalidRequestException, APIConnectionException,
 			APIException {
 
@@ -455,8 +846,10 @@ public class LiveStripeResponseGetter implements StripeResponseGetter {
 		}
 
 		java.net.HttpURLConnection conn = null;
+		Watchdog watchdog = new Watchdog(deadline);
+		boolean succeeded = false;
 		try {
-			conn = createStripeConnection(url, options);
+			conn = createStripeConnection(url, options, watchdog);
 
 			String boundary = MultipartProcessor.getBoundary();
 			conn.setDoOutput(true);
@@ -464,6 +857,9 @@ public class LiveStripeResponseGetter implements StripeResponseGetter {
 			conn.setRequestProperty("Content-Type", String.format(
 					"multipart/form-data; boundary=%s", boundary));
 
+			if (trace != null) {
+				trace.connect(conn);
+			}
 			MultipartProcessor multipartProcessor = null;
 			try {
 				multipartProcessor = new MultipartProcessor(
@@ -501,21 +897,31 @@ public class LiveStripeResponseGetter implements StripeResponseGetter {
 					multipartProcessor.finish();
 				}
 			}
+			if (trace != null) {
+				trace.requestWritten();
+			}
 
 			// trigger the request
 			int rCode = conn.getResponseCode();
 			String rBody;
 			Map<String, List<String>> headers;
+			if (trace != null) {
+				trace.firstByte(rCode, conn.getHeaderField("Request-Id"));
+			}
 
 			if (rCode >= 200 && rCode < 300) {
-				rBody = getResponseBody(conn.getInputStream());
+				rBody = getResponseBody(conn.getInputStream(), deadline, trace);
 			} else {
-				rBody = getResponseBody(conn.getErrorStream());
+				rBody = getResponseBody(conn.getErrorStream(), deadline, trace);
 			}
 			headers = conn.getHeaderFields();
+			succeeded = true;
 			return new StripeResponse(rCode, rBody, headers);
 
 		} catch (IOException e) {
+			if (deadline != null && deadline.isExpired()) {
+				throw deadline.exceeded(e);
+			}
 			throw new APIConnectionException(
 					String.format(
 							"IOException during API request to Stripe (%s): %s "
@@ -524,7 +930,10 @@ public class LiveStripeResponseGetter implements StripeResponseGetter {
 									+ " or let us know at support@stripe.com.",
 							Stripe.getApiBase(), e.getMessage()), e);
 		} finally {
-			if (conn != null) {
+			watchdog.disarm();
+			// Leave successful connections open for the keep-alive pool; the
+			// response body has been read to the end, which returns them to it
+			if (conn != null && !succeeded) {
 				conn.disconnect();
 			}
 		}
@@ -552,12 +961,8 @@ public class LiveStripeResponseGetter implements StripeResponseGetter {
 		}
 	}
 
-	/*
-	 * This is slower than usual because of reflection but avoids having to
-	 * maintain AppEngine-specific JAR
-	 */
 	private static StripeResponse makeAppEngineRequest(APIResource.RequestMethod method,
-			String url, String query, RequestOptions options) throws APIException {
+			String url, String query, RequestOptions options, Deadline deadline) throws APIException {
 		String unknownErrorMessage = "Sorry, an unknown error occurred while trying to use the "
 				+ "Google App Engine runtime. Please contact support@stripe.com for assistance.";
 		try {
@@ -566,73 +971,15 @@ public class LiveStripeResponseGetter implements StripeResponseGetter {
 			}
 			URL fetchURL = new URL(url);
 
-			Class<?> requestMethodClass = Class
-					.forName("com.google.appengine.api.urlfetch.HTTPMethod");
-			Object httpMethod = requestMethodClass.getDeclaredField(
-					method.name()).get(null);
-
-			Class<?> fetchOptionsBuilderClass = Class
-					.forName("com.google.appengine.api.urlfetch.FetchOptions$Builder");
-			Object fetchOptions;
-			try {
-				fetchOptions = fetchOptionsBuilderClass.getDeclaredMethod(
-						"validateCertificate").invoke(null);
-			} catch (NoSuchMethodException e) {
-				System.err
-						.println("Warning: this App Engine SDK version does not allow verification of SSL certificates;"
-								+ "this exposes you to a MITM attack. Please upgrade your App Engine SDK to >=1.5.0. "
-								+ "If you have questions, contact support@stripe.com.");
-				fetchOptions = fetchOptionsBuilderClass.getDeclaredMethod(
-						"withDefaults").invoke(null);
-			}
-
-			Class<?> fetchOptionsClass = Class
-					.forName("com.google.appengine.api.urlfetch.FetchOptions");
-
 			// GAE requests can time out after 60 seconds, so make sure we leave
 			// some time for the application to handle a slow Stripe
-			fetchOptionsClass.getDeclaredMethod("setDeadline",
-					java.lang.Double.class)
-					.invoke(fetchOptions, new Double(55));
-
-			Class<?> requestClass = Class
-					.forName("com.google.appengine.api.urlfetch.HTTPRequest");
-
-			Object request = requestClass.getDeclaredConstructor(URL.class,
-					requestMethodClass, fetchOptionsClass).newInstance(
-					fetchURL, httpMethod, fetchOptions);
-
-			if (method == APIResource.RequestMethod.POST) {
-				requestClass.getDeclaredMethod("setPayload", byte[].class)
-						.invoke(request, query.getBytes());
-			}
-
-			for (Map.Entry<String, String> header : getHeaders(options)
-					.entrySet()) {
-				Class<?> httpHeaderClass = Class
-						.forName("com.google.appengine.api.urlfetch.HTTPHeader");
-				Object reqHeader = httpHeaderClass.getDeclaredConstructor(
-						String.class, String.class).newInstance(
-						header.getKey(), header.getValue());
-				requestClass.getDeclaredMethod("setHeader", httpHeaderClass)
-						.invoke(request, reqHeader);
-			}
-
-			Class<?> urlFetchFactoryClass = Class
-					.forName("com.google.appengine.api.urlfetch.URLFetchServiceFactory");
-			Object urlFetchService = urlFetchFactoryClass.getDeclaredMethod(
-					"getURLFetchService").invoke(null);
-
-			Method fetchMethod = urlFetchService.getClass().getDeclaredMethod(
-					"fetch", requestClass);
-			fetchMethod.setAccessible(true);
-			Object response = fetchMethod.invoke(urlFetchService, request);
-
-			int responseCode = (Integer) response.getClass()
-					.getDeclaredMethod("getResponseCode").invoke(response);
-			String body = new String((byte[]) response.getClass()
-					.getDeclaredMethod("getContent").invoke(response), APIResource.CHARSET);
-			return new StripeResponse(responseCode, body);
+			double deadlineSeconds = 55;
+			if (deadline != null) {
+				deadlineSeconds = Math.min(deadlineSeconds, Math.max(0.001, deadline.remaining(TimeUnit.MILLISECONDS) / 1000.0));
+			}
+			byte[] payload = method == APIResource.RequestMethod.POST ? query.getBytes() : null;
+
+			return AppEngineURLFetch.get().fetch(method, fetchURL, payload, getHeaders(options), deadlineSeconds);
 		} catch (InvocationTargetException e) {
 			throw new APIException(unknownErrorMessage, null, 0, e);
 		} catch (MalformedURLException e) {
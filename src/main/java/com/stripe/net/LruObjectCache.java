@@ -0,0 +1,362 @@
+package com.stripe.net;
+
+import com.stripe.exception.APIConnectionException;
+import com.stripe.exception.APIException;
+import com.stripe.exception.AuthenticationException;
+import com.stripe.exception.CardException;
+import com.stripe.exception.InvalidRequestException;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-memory {@link ObjectCache} with a maximum size, least-recently-used
+ * eviction and a time-to-live for each entry.
+ *
+ * Entries older than their time-to-live may still be served for an additional
+ * stale-while-revalidate window, during which a single background refresh is
+ * started. 404 responses can be cached for a (usually shorter) negative
+ * time-to-live so that lookups of missing objects don't hit Stripe every time.
+ *
+ * Each entry remembers when it was loaded so that {@link #replace} only
+ * overwrites entries older than the event. Load times come from the local
+ * clock and event versions from Stripe's, so entries that don't look older
+ * are evicted rather than kept: under clock skew they may well be older, and
+ * evicting is always safe. {@link #invalidate} always evicts, and loads that
+ * overlap any change are never cached, whatever either clock says.
+ */
+public class LruObjectCache implements ObjectCache {
+	private static final Executor DEFAULT_REFRESH_EXECUTOR = createRefreshExecutor();
+
+	private final int maximumSize;
+	private final long timeToLiveNanos;
+	private final long staleWhileRevalidateNanos;
+	private final long negativeTimeToLiveNanos;
+	private final Executor refreshExecutor;
+	private final LinkedHashMap<CacheKey, CachedValue> entries;
+	// The newest change version seen for recently invalidated or replaced
+	// objects, so loads that raced with the change aren't cached.
+	private final LinkedHashMap<String, Long> changeVersions;
+
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong staleHitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	private final AtomicLong loadSuccessCount = new AtomicLong();
+	private final AtomicLong loadFailureCount = new AtomicLong();
+	private final AtomicLong totalLoadTimeNanos = new AtomicLong();
+	private final AtomicLong evictionCount = new AtomicLong();
+
+	private LruObjectCache(LruObjectCacheBuilder builder) {
+		this.maximumSize = builder.maximumSize;
+		this.timeToLiveNanos = builder.timeToLiveNanos;
+		this.staleWhileRevalidateNanos = builder.staleWhileRevalidateNanos;
+		this.negativeTimeToLiveNanos = builder.negativeTimeToLiveNanos;
+		this.refreshExecutor = builder.refreshExecutor != null ? builder.refreshExecutor : DEFAULT_REFRESH_EXECUTOR;
+		this.entries = new LinkedHashMap<CacheKey, CachedValue>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<CacheKey, CachedValue> eldest) {
+				if (size() > LruObjectCache.this.maximumSize) {
+					evictionCount.incrementAndGet();
+					return true;
+				}
+				return false;
+			}
+		};
+		this.changeVersions = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+				return size() > LruObjectCache.this.maximumSize;
+			}
+		};
+	}
+
+	public static LruObjectCacheBuilder builder() {
+		return new LruObjectCacheBuilder();
+	}
+
+	public <T> T get(CacheKey key, Class<T> clazz, Loader<T> loader)
+			throws AuthenticationException, InvalidRequestException,
+			APIConnectionException, CardException, APIException {
+		long now = System.nanoTime();
+		CachedValue entry;
+		synchronized (entries) {
+			entry = entries.get(key);
+		}
+
+		if (entry != null) {
+			if (now - entry.freshUntil < 0) {
+				hitCount.incrementAndGet();
+				if (entry.failure != null) {
+					throw entry.failure;
+				}
+				return clazz.cast(entry.value);
+			}
+			if (entry.value != null && now - entry.staleUntil < 0) {
+				hitCount.incrementAndGet();
+				staleHitCount.incrementAndGet();
+				refreshInBackground(key, entry, loader);
+				return clazz.cast(entry.value);
+			}
+		}
+
+		missCount.incrementAndGet();
+		return load(key, loader);
+	}
+
+	public void invalidate(CacheKey key) {
+		synchronized (entries) {
+			entries.remove(key);
+		}
+	}
+
+	public void invalidate(Class<?> resourceClass, String id, long version) {
+		synchronized (entries) {
+			recordChange(resourceClass, id, version);
+			Iterator<Map.Entry<CacheKey, CachedValue>> it = entries.entrySet().iterator();
+			while (it.hasNext()) {
+				Map.Entry<CacheKey, CachedValue> entry = it.next();
+				if (matches(entry.getKey(), resourceClass, id)) {
+					it.remove();
+				}
+			}
+		}
+	}
+
+	public void replace(Class<?> resourceClass, String id, Object value, long version) {
+		long now = System.nanoTime();
+		synchronized (entries) {
+			recordChange(resourceClass, id, version);
+			// Collect first: re-putting while iterating an access-ordered map
+			// would be a concurrent modification.
+			List<CacheKey> stale = new ArrayList<CacheKey>();
+			Iterator<Map.Entry<CacheKey, CachedValue>> it = entries.entrySet().iterator();
+			while (it.hasNext()) {
+				Map.Entry<CacheKey, CachedValue> entry = it.next();
+				if (!matches(entry.getKey(), resourceClass, id)) {
+					continue;
+				}
+				if (entry.getValue().version < version) {
+					stale.add(entry.getKey());
+				} else {
+					// Probably newer than the event, but the clocks may
+					// disagree; dropping the entry is always safe.
+					it.remove();
+				}
+			}
+			for (CacheKey key : stale) {
+				entries.put(key, new CachedValue(value, null, now, timeToLiveNanos, staleWhileRevalidateNanos, version));
+			}
+		}
+	}
+
+	public void invalidateAll() {
+		synchronized (entries) {
+			entries.clear();
+			changeVersions.clear();
+		}
+	}
+
+	public long size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	public CacheStats getStats() {
+		return new CacheStats(hitCount.get(), staleHitCount.get(), missCount.get(),
+				loadSuccessCount.get(), loadFailureCount.get(), totalLoadTimeNanos.get(),
+				evictionCount.get());
+	}
+
+	private <T> T load(CacheKey key, Loader<T> loader)
+			throws AuthenticationException, InvalidRequestException,
+			APIConnectionException, CardException, APIException {
+		long start = System.nanoTime();
+		// The object we get back is at least as new as the moment we asked for it.
+		long version = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+		Long changeVersion;
+		synchronized (entries) {
+			changeVersion = changeVersions.get(changeKey(key.getResourceClass(), key.getId()));
+		}
+		try {
+			T value = loader.load();
+			long end = System.nanoTime();
+			recordLoad(start, end, true);
+			put(key, new CachedValue(value, null, end, timeToLiveNanos, staleWhileRevalidateNanos, version), changeVersion);
+			return value;
+		} catch (InvalidRequestException e) {
+			long end = System.nanoTime();
+			recordLoad(start, end, false);
+			if (negativeTimeToLiveNanos > 0 && e.getStatusCode() != null && e.getStatusCode() == 404) {
+				put(key, new CachedValue(null, e, end, negativeTimeToLiveNanos, 0, version), changeVersion);
+			}
+			throw e;
+		} catch (AuthenticationException e) {
+			recordLoad(start, System.nanoTime(), false);
+			throw e;
+		} catch (APIConnectionException e) {
+			recordLoad(start, System.nanoTime(), false);
+			throw e;
+		} catch (CardException e) {
+			recordLoad(start, System.nanoTime(), false);
+			throw e;
+		} catch (APIException e) {
+			recordLoad(start, System.nanoTime(), false);
+			throw e;
+		}
+	}
+
+	private <T> void refreshInBackground(final CacheKey key, final CachedValue entry, final Loader<T> loader) {
+		if (!entry.refreshing.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			refreshExecutor.execute(new Runnable() {
+				public void run() {
+					try {
+						load(key, loader);
+					} catch (Exception e) {
+						// Keep serving the stale value until it falls out of the
+						// stale-while-revalidate window.
+					} finally {
+						// Lets the next stale hit try again if this one failed
+						entry.refreshing.set(false);
+					}
+				}
+			});
+		} catch (RuntimeException e) {
+			entry.refreshing.set(false);
+		}
+	}
+
+	/*
+	 * Caches a load unless a change was recorded for the object since it
+	 * started, which compares event versions only, never the local clock.
+	 */
+	private void put(CacheKey key, CachedValue entry, Long changeVersionAtStart) {
+		synchronized (entries) {
+			Long changeVersion = changeVersions.get(changeKey(key.getResourceClass(), key.getId()));
+			if (changeVersion == null ? changeVersionAtStart != null : !changeVersion.equals(changeVersionAtStart)) {
+				// The object changed while we were loading it, so what we
+				// loaded may already be stale.
+				entries.remove(key);
+				return;
+			}
+			entries.put(key, entry);
+		}
+	}
+
+	private void recordChange(Class<?> resourceClass, String id, long version) {
+		String changeKey = changeKey(resourceClass, id);
+		Long previous = changeVersions.get(changeKey);
+		if (previous == null || previous < version) {
+			changeVersions.put(changeKey, version);
+		}
+	}
+
+	private static String changeKey(Class<?> resourceClass, String id) {
+		return String.format("%s/%s", resourceClass.getName(), id);
+	}
+
+	private static boolean matches(CacheKey key, Class<?> resourceClass, String id) {
+		return key.getResourceClass() == resourceClass && id != null && id.equals(key.getId());
+	}
+
+	private void recordLoad(long start, long end, boolean success) {
+		totalLoadTimeNanos.addAndGet(end - start);
+		if (success) {
+			loadSuccessCount.incrementAndGet();
+		} else {
+			loadFailureCount.incrementAndGet();
+		}
+	}
+
+	private static Executor createRefreshExecutor() {
+		return Executors.newCachedThreadPool(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "stripe-cache-refresh");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	private static class CachedValue {
+		final Object value;
+		final InvalidRequestException failure;
+		final long freshUntil;
+		final long staleUntil;
+		final long version;
+		final AtomicBoolean refreshing = new AtomicBoolean();
+
+		CachedValue(Object value, InvalidRequestException failure, long loadedAt, long timeToLiveNanos,
+				long staleWhileRevalidateNanos, long version) {
+			this.value = value;
+			this.failure = failure;
+			this.freshUntil = loadedAt + timeToLiveNanos;
+			this.staleUntil = this.freshUntil + staleWhileRevalidateNanos;
+			this.version = version;
+		}
+	}
+
+	public static final class LruObjectCacheBuilder {
+		private int maximumSize = 1000;
+		private long timeToLiveNanos = TimeUnit.MINUTES.toNanos(5);
+		private long staleWhileRevalidateNanos = 0;
+		private long negativeTimeToLiveNanos = 0;
+		private Executor refreshExecutor;
+
+		public LruObjectCacheBuilder setMaximumSize(int maximumSize) {
+			if (maximumSize <= 0) {
+				throw new IllegalArgumentException("Maximum cache size must be positive");
+			}
+			this.maximumSize = maximumSize;
+			return this;
+		}
+
+		public LruObjectCacheBuilder setTimeToLive(long duration, TimeUnit unit) {
+			this.timeToLiveNanos = unit.toNanos(duration);
+			return this;
+		}
+
+		/**
+		 * Keep serving an expired entry for up to {@code duration} while it is
+		 * refreshed in the background.
+		 */
+		public LruObjectCacheBuilder setStaleWhileRevalidate(long duration, TimeUnit unit) {
+			this.staleWhileRevalidateNanos = unit.toNanos(duration);
+			return this;
+		}
+
+		/**
+		 * Cache 404 {@link InvalidRequestException}s for {@code duration}. Zero,
+		 * the default, disables negative caching.
+		 */
+		public LruObjectCacheBuilder setNegativeTimeToLive(long duration, TimeUnit unit) {
+			this.negativeTimeToLiveNanos = unit.toNanos(duration);
+			return this;
+		}
+
+		public LruObjectCacheBuilder setRefreshExecutor(Executor refreshExecutor) {
+			this.refreshExecutor = refreshExecutor;
+			return this;
+		}
+
+		public LruObjectCache build() {
+			return new LruObjectCache(this);
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package com.stripe.net;
+
+import com.stripe.exception.APIConnectionException;
+import com.stripe.exception.APIException;
+import com.stripe.exception.AuthenticationException;
+import com.stripe.exception.CardException;
+import com.stripe.exception.InvalidRequestException;
+
+/**
+ * A read-through cache for rarely changing API objects, such as plans and
+ * coupons. Set one on {@link RequestOptions} to have supported
+ * {@code retrieve} calls served from it.
+ */
+public interface ObjectCache {
+	/**
+	 * Returns the cached object for {@code key}, calling {@code loader} to fetch
+	 * it when there is no usable entry.
+	 */
+	public <T> T get(CacheKey key, Class<T> clazz, Loader<T> loader)
+			throws AuthenticationException, InvalidRequestException,
+			APIConnectionException, CardException, APIException;
+
+	/**
+	 * Removes every entry for the given object, across all API keys and
+	 * accounts. Loads that were in flight when the object changed at
+	 * {@code version} should not be cached either.
+	 *
+	 * @param version when the change happened, in seconds since the epoch
+	 *        (for example {@code Event.getCreated()})
+	 */
+	public void invalidate(Class<?> resourceClass, String id, long version);
+
+	/**
+	 * Replaces every entry for the given object with {@code value}. Entries
+	 * that may be newer than {@code version} are evicted instead.
+	 *
+	 * @param version when {@code value} was current, in seconds since the epoch
+	 */
+	public void replace(Class<?> resourceClass, String id, Object value, long version);
+
+	public void invalidateAll();
+
+	public CacheStats getStats();
+
+	public interface Loader<T> {
+		public T load() throws AuthenticationException, InvalidRequestException,
+				APIConnectionException, CardException, APIException;
+	}
+}
@@ -0,0 +1,211 @@
+package com.stripe.net;
+
+import com.stripe.exception.APIConnectionException;
+import com.stripe.exception.APIException;
+import com.stripe.exception.AuthenticationException;
+import com.stripe.exception.CardException;
+import com.stripe.exception.InvalidRequestException;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Wraps another {@link StripeResponseGetter} so that background work can't
+ * crowd out interactive requests, as chosen with
+ * {@link RequestOptions.RequestOptionsBuilder#setPriority}.
+ *
+ * At most {@code maxConcurrency} requests are in flight at once, of which
+ * {@code reservedInteractiveCapacity} slots are only ever given to
+ * interactive requests. Waiting interactive requests always go first, so a
+ * backfill is delayed rather than competing with checkout traffic:
+ *
+ * <pre>
+ * APIResource.setStripeResponseGetter(
+ *     PriorityStripeResponseGetter.builder(new LiveStripeResponseGetter())
+ *         .setMaxConcurrency(32)
+ *         .setReservedInteractiveCapacity(8)
+ *         .build());
+ * BalanceTransaction.all(params,
+ *     RequestOptions.builder().setPriority(RequestOptions.Priority.BACKGROUND).build());
+ * </pre>
+ *
+ * Each lane records a {@link LatencyHistogram} covering time spent both
+ * waiting for a slot and talking to Stripe.
+ */
+public class PriorityStripeResponseGetter implements StripeResponseGetter {
+	private final StripeResponseGetter delegate;
+	private final int reservedInteractiveCapacity;
+	private final Map<RequestOptions.Priority, LatencyHistogram> latencies =
+			new EnumMap<RequestOptions.Priority, LatencyHistogram>(RequestOptions.Priority.class);
+
+	// Guarded by this
+	private final Deque<CountDownLatch> waitingInteractive = new ArrayDeque<CountDownLatch>();
+	private final Deque<CountDownLatch> waitingBackground = new ArrayDeque<CountDownLatch>();
+	private int inFlight;
+	private int backgroundInFlight;
+	private int maxConcurrency;
+	private int maxBackgroundConcurrency;
+
+	private PriorityStripeResponseGetter(PriorityStripeResponseGetterBuilder builder) {
+		if (builder.reservedInteractiveCapacity >= builder.maxConcurrency) {
+			throw new IllegalArgumentException("Reserved capacity must leave room for background requests");
+		}
+		this.delegate = builder.delegate;
+		this.reservedInteractiveCapacity = builder.reservedInteractiveCapacity;
+		this.maxConcurrency = builder.maxConcurrency;
+		this.maxBackgroundConcurrency = builder.maxConcurrency - builder.reservedInteractiveCapacity;
+		for (RequestOptions.Priority priority : RequestOptions.Priority.values()) {
+			latencies.put(priority, new LatencyHistogram());
+		}
+	}
+
+	public static PriorityStripeResponseGetterBuilder builder(StripeResponseGetter delegate) {
+		return new PriorityStripeResponseGetterBuilder(delegate);
+	}
+
+	public <T> T request(
+			APIResource.RequestMethod method,
+			String url,
+			Map<String, Object> params,
+			Class<T> clazz,
+			APIResource.RequestType type,
+			RequestOptions options) throws AuthenticationException, InvalidRequestException, APIConnectionException, CardException, APIException {
+		RequestOptions.Priority priority = options == null
+				? RequestOptions.Priority.INTERACTIVE : options.getPriority();
+		boolean background = priority == RequestOptions.Priority.BACKGROUND;
+		long start = System.nanoTime();
+		CountDownLatch slot = enqueue(background);
+		try {
+			await(slot, Deadline.effective(options));
+			long queueWait = System.nanoTime() - start;
+			RequestTrace.addQueueWait(queueWait);
+			try {
+				return delegate.request(method, url, params, clazz, type, options);
+			} finally {
+				RequestTrace.addQueueWait(-queueWait);
+			}
+		} finally {
+			release(slot, background);
+			latencies.get(priority).recordNanos(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * @return the end-to-end latencies of requests in {@code priority}'s lane
+	 */
+	public LatencyHistogram getLatencyHistogram(RequestOptions.Priority priority) {
+		return latencies.get(priority);
+	}
+
+	public synchronized int getQueueLength(RequestOptions.Priority priority) {
+		return priority == RequestOptions.Priority.BACKGROUND ? waitingBackground.size() : waitingInteractive.size();
+	}
+
+	public synchronized int getInFlightCount(RequestOptions.Priority priority) {
+		return priority == RequestOptions.Priority.BACKGROUND ? backgroundInFlight : inFlight - backgroundInFlight;
+	}
+
+	public synchronized int getMaxConcurrency() {
+		return maxConcurrency;
+	}
+
+	/**
+	 * Changes the number of requests sent at once, keeping the same reserved
+	 * interactive capacity. Requests already in flight aren't affected when
+	 * lowering it.
+	 */
+	public synchronized void setMaxConcurrency(int maxConcurrency) {
+		if (reservedInteractiveCapacity >= maxConcurrency) {
+			throw new IllegalArgumentException("Reserved capacity must leave room for background requests");
+		}
+		this.maxConcurrency = maxConcurrency;
+		this.maxBackgroundConcurrency = maxConcurrency - reservedInteractiveCapacity;
+		dispatch();
+	}
+
+	StripeResponseGetter getDelegate() {
+		return delegate;
+	}
+
+	private synchronized CountDownLatch enqueue(boolean background) {
+		CountDownLatch slot = new CountDownLatch(1);
+		(background ? waitingBackground : waitingInteractive).addLast(slot);
+		dispatch();
+		return slot;
+	}
+
+	private void await(CountDownLatch slot, Deadline deadline) throws APIConnectionException {
+		try {
+			Deadline.await(slot, deadline);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new APIConnectionException("Interrupted while waiting to send a request to Stripe", e);
+		}
+	}
+
+	private synchronized void release(CountDownLatch slot, boolean background) {
+		if (slot.getCount() > 0) {
+			// Gave up before being scheduled
+			(background ? waitingBackground : waitingInteractive).remove(slot);
+			return;
+		}
+		inFlight--;
+		if (background) {
+			backgroundInFlight--;
+		}
+		dispatch();
+	}
+
+	private void dispatch() {
+		while (inFlight < maxConcurrency) {
+			if (!waitingInteractive.isEmpty()) {
+				waitingInteractive.pollFirst().countDown();
+			} else if (!waitingBackground.isEmpty() && backgroundInFlight < maxBackgroundConcurrency) {
+				waitingBackground.pollFirst().countDown();
+				backgroundInFlight++;
+			} else {
+				return;
+			}
+			inFlight++;
+		}
+	}
+
+	public static final class PriorityStripeResponseGetterBuilder {
+		private final StripeResponseGetter delegate;
+		private int maxConcurrency = 16;
+		private int reservedInteractiveCapacity = 4;
+
+		private PriorityStripeResponseGetterBuilder(StripeResponseGetter delegate) {
+			this.delegate = delegate;
+		}
+
+		/**
+		 * The number of requests sent at once across both lanes.
+		 */
+		public PriorityStripeResponseGetterBuilder setMaxConcurrency(int maxConcurrency) {
+			if (maxConcurrency <= 0) {
+				throw new IllegalArgumentException("Max concurrency must be positive");
+			}
+			this.maxConcurrency = maxConcurrency;
+			return this;
+		}
+
+		/**
+		 * The number of slots background requests may never use.
+		 */
+		public PriorityStripeResponseGetterBuilder setReservedInteractiveCapacity(int reservedInteractiveCapacity) {
+			if (reservedInteractiveCapacity < 0) {
+				throw new IllegalArgumentException("Reserved capacity must not be negative");
+			}
+			this.reservedInteractiveCapacity = reservedInteractiveCapacity;
+			return this;
+		}
+
+		public PriorityStripeResponseGetter build() {
+			return new PriorityStripeResponseGetter(this);
+		}
+	}
+}
@@ -0,0 +1,202 @@
+package com.stripe.net;
+
+import javax.net.ssl.SSLSocketFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.PasswordAuthentication;
+import java.net.Proxy;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.util.Arrays;
+
+/**
+ * Opens HTTPS connections through an HTTP proxy by setting up the CONNECT
+ * tunnel itself, rather than leaving it to HttpsURLConnection.
+ *
+ * HttpsURLConnection only authenticates to a proxy after a 407 challenge,
+ * and then only with credentials from the JVM-wide {@link java.net.Authenticator}.
+ * Instead, connections using this factory are opened without a proxy as far
+ * as HttpsURLConnection is concerned. The unconnected socket handed out by
+ * {@link #createSocket()} connects to the proxy and sends a CONNECT with the
+ * credentials up front, after which TLS is layered on top as usual.
+ * HttpsURLConnection pools connections by socket factory, so tunnels are
+ * reused just like direct connections.
+ */
+class ProxyTunnelSSLSocketFactory extends SSLSocketFactory {
+	private static final int MAX_RESPONSE_HEADER_BYTES = 16 * 1024;
+
+	private final SSLSocketFactory delegate;
+	private final Proxy proxy;
+	private final PasswordAuthentication credential;
+
+	ProxyTunnelSSLSocketFactory(SSLSocketFactory delegate, Proxy proxy, PasswordAuthentication credential) {
+		if (proxy.type() != Proxy.Type.HTTP) {
+			throw new IllegalArgumentException("Only HTTP proxies can tunnel");
+		}
+		this.delegate = delegate;
+		this.proxy = proxy;
+		this.credential = credential;
+	}
+
+	boolean isFor(Proxy proxy, PasswordAuthentication credential) {
+		if (!this.proxy.equals(proxy)) {
+			return false;
+		}
+		if (this.credential == null || credential == null) {
+			return this.credential == credential;
+		}
+		return this.credential.getUserName().equals(credential.getUserName())
+				&& Arrays.equals(this.credential.getPassword(), credential.getPassword());
+	}
+
+	/**
+	 * @return the value of a Proxy-Authorization header for {@code credential}
+	 *         using the Basic scheme
+	 */
+	static String basicAuthorization(PasswordAuthentication credential) {
+		String userPass = credential.getUserName() + ":" + new String(credential.getPassword());
+		try {
+			return "Basic " + base64(userPass.getBytes(APIResource.CHARSET));
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Override
+	public Socket createSocket() throws IOException {
+		return new TunnelSocket();
+	}
+
+	@Override
+	public Socket createSocket(Socket s, String host, int port, boolean autoClose) throws IOException {
+		return delegate.createSocket(s, host, port, autoClose);
+	}
+
+	@Override
+	public Socket createSocket(String host, int port) throws IOException {
+		Socket tunnel = new TunnelSocket();
+		tunnel.connect(new InetSocketAddress(host, port));
+		return delegate.createSocket(tunnel, host, port, true);
+	}
+
+	@Override
+	public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+		return createSocket(host, port);
+	}
+
+	@Override
+	public Socket createSocket(InetAddress host, int port) throws IOException {
+		return createSocket(host.getHostName(), port);
+	}
+
+	@Override
+	public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort)
+			throws IOException {
+		return createSocket(address.getHostName(), port);
+	}
+
+	@Override
+	public String[] getDefaultCipherSuites() {
+		return delegate.getDefaultCipherSuites();
+	}
+
+	@Override
+	public String[] getSupportedCipherSuites() {
+		return delegate.getSupportedCipherSuites();
+	}
+
+	/*
+	 * A plain socket that, when asked to connect to a host, connects to the
+	 * proxy instead and tunnels through it to the host.
+	 */
+	private class TunnelSocket extends Socket {
+		TunnelSocket() {
+			super(Proxy.NO_PROXY);
+		}
+
+		@Override
+		public void connect(SocketAddress endpoint, int timeout) throws IOException {
+			InetSocketAddress target = (InetSocketAddress) endpoint;
+			InetSocketAddress proxyAddress = (InetSocketAddress) proxy.address();
+			if (proxyAddress.isUnresolved()) {
+				proxyAddress = new InetSocketAddress(proxyAddress.getHostName(), proxyAddress.getPort());
+			}
+			super.connect(proxyAddress, timeout);
+
+			int soTimeout = getSoTimeout();
+			setSoTimeout(timeout);
+			try {
+				openTunnel(target.getHostName(), target.getPort());
+			} catch (IOException e) {
+				close();
+				throw e;
+			} finally {
+				if (!isClosed()) {
+					setSoTimeout(soTimeout);
+				}
+			}
+		}
+
+		private void openTunnel(String host, int port) throws IOException {
+			String hostPort = String.format("%s:%d", host, port);
+			StringBuilder request = new StringBuilder()
+					.append("CONNECT ").append(hostPort).append(" HTTP/1.1\r\n")
+					.append("Host: ").append(hostPort).append("\r\n")
+					.append("Proxy-Connection: keep-alive\r\n");
+			if (credential != null) {
+				request.append("Proxy-Authorization: ").append(basicAuthorization(credential)).append("\r\n");
+			}
+			request.append("\r\n");
+			OutputStream out = getOutputStream();
+			out.write(request.toString().getBytes(APIResource.CHARSET));
+			out.flush();
+
+			String statusLine = readResponseHead(getInputStream());
+			String[] parts = statusLine.split(" ");
+			if (parts.length < 2 || !parts[1].equals("200")) {
+				throw new IOException(String.format("Unable to tunnel through proxy %s: %s", proxy, statusLine));
+			}
+		}
+
+		/*
+		 * Reads the proxy's response up to and including the blank line that
+		 * ends its headers, one byte at a time so nothing belonging to the
+		 * tunnel is consumed.
+		 */
+		private String readResponseHead(InputStream in) throws IOException {
+			StringBuilder head = new StringBuilder();
+			while (head.length() < 4 || !head.substring(head.length() - 4).equals("\r\n\r\n")) {
+				int b = in.read();
+				if (b == -1) {
+					throw new IOException(String.format("Proxy %s closed the connection", proxy));
+				}
+				if (head.length() >= MAX_RESPONSE_HEADER_BYTES) {
+					throw new IOException(String.format("Proxy %s sent too large a response", proxy));
+				}
+				head.append((char) b);
+			}
+			return head.substring(0, head.indexOf("\r\n"));
+		}
+	}
+
+	private static final char[] BASE64 =
+			"ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+	private static String base64(byte[] data) {
+		StringBuilder encoded = new StringBuilder((data.length + 2) / 3 * 4);
+		for (int i = 0; i < data.length; i += 3) {
+			int b0 = data[i] & 0xff;
+			int b1 = i + 1 < data.length ? data[i + 1] & 0xff : 0;
+			int b2 = i + 2 < data.length ? data[i + 2] & 0xff : 0;
+			encoded.append(BASE64[b0 >> 2]);
+			encoded.append(BASE64[((b0 & 0x3) << 4) | (b1 >> 4)]);
+			encoded.append(i + 1 < data.length ? BASE64[((b1 & 0xf) << 2) | (b2 >> 6)] : '=');
+			encoded.append(i + 2 < data.length ? BASE64[b2 & 0x3f] : '=');
+		}
+		return encoded.toString();
+	}
+}
@@ -0,0 +1,320 @@
+package com.stripe.net;
+
+import com.stripe.exception.APIConnectionException;
+import com.stripe.exception.APIException;
+import com.stripe.exception.AuthenticationException;
+import com.stripe.exception.CardException;
+import com.stripe.exception.InvalidRequestException;
+import com.stripe.model.BalanceTransaction;
+import com.stripe.model.Charge;
+import com.stripe.model.Customer;
+import com.stripe.model.ExpandableField;
+import com.stripe.model.HasId;
+import com.stripe.model.Invoice;
+import com.stripe.model.Order;
+import com.stripe.model.Transfer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Batches lookups of referenced objects (a charge's customer, invoice or
+ * balance transaction, say) for the lifetime of one unit of work, such as
+ * rendering a page.
+ *
+ * Calls to {@code load} only queue an id and return a future. The first call
+ * to {@link #dispatch()}, or to {@code get()} on any returned future, fetches
+ * every queued id with bounded parallelism. Each distinct id is fetched at
+ * most once per loader, however many objects reference it:
+ *
+ * <pre>
+ * ReferenceLoader loader = new ReferenceLoader(options, 8);
+ * for (Charge charge : charges.getData()) {
+ *   customers.put(charge.getId(), loader.load(Customer.class, charge.getCustomerReference()));
+ * }
+ * loader.dispatch();
+ * </pre>
+ *
+ * {@link #loadReferenced(Class, Collection)} does the same for a whole list
+ * of objects. References that were already expanded resolve without a
+ * request.
+ *
+ * A loader caches everything it has fetched, so create a new one per request
+ * rather than sharing one across requests.
+ */
+public class ReferenceLoader {
+	private final RequestOptions options;
+	private final int parallelism;
+	private final Map<Class<?>, BulkRetriever.Retriever<?>> retrievers =
+			new HashMap<Class<?>, BulkRetriever.Retriever<?>>();
+	private final Map<String, FutureTask<?>> loaded = new HashMap<String, FutureTask<?>>();
+	private final List<FutureTask<?>> pending = new ArrayList<FutureTask<?>>();
+
+	public ReferenceLoader(RequestOptions options, int parallelism) {
+		if (parallelism <= 0) {
+			throw new IllegalArgumentException("Parallelism must be positive");
+		}
+		this.options = options;
+		this.parallelism = parallelism;
+
+		register(BalanceTransaction.class, new BulkRetriever.Retriever<BalanceTransaction>() {
+			public BalanceTransaction retrieve(String id, RequestOptions options)
+					throws AuthenticationException, InvalidRequestException,
+					APIConnectionException, CardException, APIException {
+				return BalanceTransaction.retrieve(id, options);
+			}
+		});
+		register(Charge.class, new BulkRetriever.Retriever<Charge>() {
+			public Charge retrieve(String id, RequestOptions options)
+					throws AuthenticationException, InvalidRequestException,
+					APIConnectionException, CardException, APIException {
+				return Charge.retrieve(id, options);
+			}
+		});
+		register(Customer.class, new BulkRetriever.Retriever<Customer>() {
+			public Customer retrieve(String id, RequestOptions options)
+					throws AuthenticationException, InvalidRequestException,
+					APIConnectionException, CardException, APIException {
+				return Customer.retrieve(id, options);
+			}
+		});
+		register(Invoice.class, new BulkRetriever.Retriever<Invoice>() {
+			public Invoice retrieve(String id, RequestOptions options)
+					throws AuthenticationException, InvalidRequestException,
+					APIConnectionException, CardException, APIException {
+				return Invoice.retrieve(id, options);
+			}
+		});
+	}
+
+	/**
+	 * Teaches this loader how to fetch objects of another type.
+	 */
+	public synchronized <T> void register(Class<T> clazz, BulkRetriever.Retriever<T> retriever) {
+		retrievers.put(clazz, retriever);
+	}
+
+	/**
+	 * Queues {@code id} for loading.
+	 *
+	 * @return a future for the object; its {@code get()} fails with the
+	 *         StripeException as cause if the object can't be retrieved. A null
+	 *         id yields a future for null.
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized <T> Future<T> load(final Class<T> clazz, final String id) {
+		if (id == null) {
+			return new ReferenceFuture<T>(this, completed((T) null));
+		}
+		String key = key(clazz, id);
+		FutureTask<T> task = (FutureTask<T>) loaded.get(key);
+		if (task == null) {
+			final BulkRetriever.Retriever<T> retriever = (BulkRetriever.Retriever<T>) retrievers.get(clazz);
+			if (retriever == null) {
+				throw new IllegalArgumentException(String.format(
+						"No retriever registered for %s", clazz.getSimpleName()));
+			}
+			// Fetched on another thread, which won't see this thread's deadline
+			final RequestOptions taskOptions = Deadline.propagate(options);
+			task = new FutureTask<T>(new Callable<T>() {
+				public T call() throws Exception {
+					return retriever.retrieve(id, taskOptions);
+				}
+			});
+			loaded.put(key, task);
+			pending.add(task);
+		}
+		return new ReferenceFuture<T>(this, task);
+	}
+
+	/**
+	 * Like {@link #load(Class, String)}, but an already expanded reference
+	 * completes immediately without a request, and later loads of the same id
+	 * reuse it.
+	 */
+	public synchronized <T extends HasId> Future<T> load(Class<T> clazz, ExpandableField<T> reference) {
+		if (reference != null && reference.isExpanded()) {
+			FutureTask<T> task = completed(reference.getExpanded());
+			String id = reference.getId() != null ? reference.getId() : reference.getExpanded().getId();
+			if (id != null && !loaded.containsKey(key(clazz, id))) {
+				loaded.put(key(clazz, id), task);
+			}
+			return new ReferenceFuture<T>(this, task);
+		}
+		return load(clazz, reference == null ? null : reference.getId());
+	}
+
+	/**
+	 * Queues whatever each of {@code objects} references as a {@code clazz},
+	 * such as the customer of each charge in a list. Expanded references
+	 * complete immediately without a request, and objects without such a
+	 * reference are skipped.
+	 *
+	 * @return futures keyed by referenced id, in the order the objects were
+	 *         given
+	 * @throws IllegalArgumentException if an object's type never references
+	 *         a {@code clazz}
+	 */
+	public synchronized <T extends HasId> Map<String, Future<T>> loadReferenced(Class<T> clazz, Collection<?> objects) {
+		Map<String, Future<T>> futures = new LinkedHashMap<String, Future<T>>();
+		for (Object object : objects) {
+			ExpandableField<T> reference = reference(object, clazz);
+			if (reference != null && reference.getId() != null && !futures.containsKey(reference.getId())) {
+				futures.put(reference.getId(), load(clazz, reference));
+			}
+		}
+		return futures;
+	}
+
+	/**
+	 * Queues every id in {@code ids}.
+	 *
+	 * @return futures keyed by id, in the order the ids were given
+	 */
+	public synchronized <T> Map<String, Future<T>> loadAll(Class<T> clazz, Collection<String> ids) {
+		Map<String, Future<T>> futures = new LinkedHashMap<String, Future<T>>();
+		for (String id : ids) {
+			if (id != null && !futures.containsKey(id)) {
+				futures.put(id, load(clazz, id));
+			}
+		}
+		return futures;
+	}
+
+	/**
+	 * Fetches every queued id, blocking until all of them are done. Individual
+	 * failures are reported through the corresponding futures.
+	 */
+	public void dispatch() throws InterruptedException {
+		ExecutorService executor = start();
+		if (executor == null) {
+			return;
+		}
+		try {
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/*
+	 * Starts fetching every queued id without waiting for them.
+	 *
+	 * Returns the executor fetching them, already shut down, or null if
+	 * nothing was queued.
+	 */
+	private ExecutorService start() {
+		// Responses fetched on other threads don't become this thread's last one
+		ResponseMetadata.setLast(null);
+		List<FutureTask<?>> batch;
+		synchronized (this) {
+			if (pending.isEmpty()) {
+				return null;
+			}
+			batch = new ArrayList<FutureTask<?>>(pending);
+			pending.clear();
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, batch.size()), new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "stripe-reference-loader");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		for (FutureTask<?> task : batch) {
+			executor.execute(task);
+		}
+		executor.shutdown();
+		return executor;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T extends HasId> ExpandableField<T> reference(Object object, Class<T> clazz) {
+		ExpandableField<?> reference;
+		if (object instanceof Charge && clazz == Customer.class) {
+			reference = ((Charge) object).getCustomerReference();
+		} else if (object instanceof Charge && clazz == Invoice.class) {
+			reference = ((Charge) object).getInvoiceReference();
+		} else if (object instanceof Charge && clazz == BalanceTransaction.class) {
+			reference = ((Charge) object).getBalanceTransactionReference();
+		} else if (object instanceof Invoice && clazz == Charge.class) {
+			reference = ((Invoice) object).getChargeReference();
+		} else if (object instanceof Order && clazz == Charge.class) {
+			reference = ((Order) object).getChargeReference();
+		} else if (object instanceof Transfer && clazz == BalanceTransaction.class) {
+			reference = ((Transfer) object).getBalanceTransactionReference();
+		} else {
+			throw new IllegalArgumentException(String.format("%s has no %s reference",
+					object == null ? "null" : object.getClass().getSimpleName(), clazz.getSimpleName()));
+		}
+		return (ExpandableField<T>) reference;
+	}
+
+	private static String key(Class<?> clazz, String id) {
+		return String.format("%s/%s", clazz.getName(), id);
+	}
+
+	private static <T> FutureTask<T> completed(final T value) {
+		FutureTask<T> task = new FutureTask<T>(new Callable<T>() {
+			public T call() {
+				return value;
+			}
+		});
+		task.run();
+		return task;
+	}
+
+	/*
+	 * Dispatches the loader on first use, so callers that forget to call
+	 * dispatch() don't block forever.
+	 */
+	private static class ReferenceFuture<T> implements Future<T> {
+		private final ReferenceLoader loader;
+		private final FutureTask<T> task;
+
+		ReferenceFuture(ReferenceLoader loader, FutureTask<T> task) {
+			this.loader = loader;
+			this.task = task;
+		}
+
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			return task.cancel(mayInterruptIfRunning);
+		}
+
+		public boolean isCancelled() {
+			return task.isCancelled();
+		}
+
+		public boolean isDone() {
+			return task.isDone();
+		}
+
+		public T get() throws InterruptedException, ExecutionException {
+			if (!task.isDone()) {
+				loader.start();
+			}
+			return task.get();
+		}
+
+		public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+			if (!task.isDone()) {
+				loader.start();
+			}
+			return task.get(timeout, unit);
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package com.stripe.net;
+
+/**
+ * Observes requests sent by a {@link LiveStripeResponseGetter}, for metrics,
+ * tracing or logging. Register one with
+ * {@link LiveStripeResponseGetter#addRequestListener(RequestListener)}.
+ *
+ * Callbacks run on the thread sending the request, in the order below, and
+ * should return quickly. Each gets the request's {@link RequestTrace}, which
+ * is filled in as the request progresses; only the steps a request actually
+ * went through are reported. Exceptions thrown by a listener are ignored.
+ *
+ * Every callback does nothing by default, so listeners override only what
+ * they need.
+ */
+public abstract class RequestListener {
+	/**
+	 * The request is about to be sent.
+	 */
+	public void onStart(RequestTrace trace) {
+	}
+
+	/**
+	 * The request is being sent again by whoever sent it before, e.g. after a
+	 * rate limit. See {@link RequestTrace#getAttempt()}.
+	 */
+	public void onRetry(RequestTrace trace) {
+	}
+
+	/**
+	 * A new TLS connection to Stripe was set up for the request.
+	 */
+	public void onTlsHandshakeDone(RequestTrace trace) {
+	}
+
+	/**
+	 * The request has a connection, either a new one or one from the
+	 * keep-alive pool.
+	 */
+	public void onConnectionAcquired(RequestTrace trace) {
+	}
+
+	/**
+	 * Stripe's response status and headers arrived.
+	 */
+	public void onFirstByte(RequestTrace trace) {
+	}
+
+	/**
+	 * The whole response body was read.
+	 */
+	public void onBodyRead(RequestTrace trace) {
+	}
+
+	/**
+	 * A successful response was turned into an object.
+	 */
+	public void onDeserialized(RequestTrace trace) {
+	}
+
+	/**
+	 * The request failed, either before Stripe answered or with an error
+	 * response. Follows whichever other callbacks the request got to.
+	 */
+	public void onError(RequestTrace trace, Throwable error) {
+	}
+}
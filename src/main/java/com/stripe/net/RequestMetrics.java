@@ -0,0 +1,276 @@
+package com.stripe.net;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Latency histograms and status code counts per method, endpoint and
+ * account, kept without locks so that any number of threads can record
+ * requests at once. Network time (connecting, sending the request and reading
+ * the response) is recorded separately from the time spent turning the
+ * response into an object, which tells a slow API apart from slow parsing.
+ *
+ * Register it with
+ * {@link StripeClient.StripeClientBuilder#addRequestListener(RequestListener)}
+ * or {@link LiveStripeResponseGetter#addRequestListener(RequestListener)}:
+ *
+ * <pre>
+ * RequestMetrics metrics = new RequestMetrics();
+ * StripeClient client = StripeClient.builder().addRequestListener(metrics).build();
+ * ...
+ * for (RequestMetrics.EndpointStats stats : metrics.snapshotAndReset()) {
+ *     report(stats.getMethod(), stats.getEndpoint(), stats.getNetworkNanosAtPercentile(99));
+ * }
+ * </pre>
+ */
+public class RequestMetrics extends RequestListener {
+	/** Requests made by the platform for itself. */
+	public static final String PLATFORM = "platform";
+	/** Requests made on behalf of a connected account, whichever it is. */
+	public static final String CONNECTED_ACCOUNT = "connected_account";
+
+	// Status codes above this are counted as this
+	private static final int MAX_STATUS = 599;
+
+	private final AtomicReference<Interval> interval = new AtomicReference<Interval>(new Interval());
+
+	@Override
+	public void onFirstByte(RequestTrace trace) {
+		Interval current = enter();
+		try {
+			current.recorder(trace).statusCounts.incrementAndGet(Math.min(trace.getStatusCode(), MAX_STATUS));
+		} finally {
+			current.writers.decrementAndGet();
+		}
+	}
+
+	@Override
+	public void onBodyRead(RequestTrace trace) {
+		Interval current = enter();
+		try {
+			current.recorder(trace).network.recordNanos(trace.getBodyReadNanos() - trace.getStartNanos());
+		} finally {
+			current.writers.decrementAndGet();
+		}
+	}
+
+	@Override
+	public void onDeserialized(RequestTrace trace) {
+		Interval current = enter();
+		try {
+			current.recorder(trace).deserialization.recordNanos(
+					trace.getDeserializedNanos() - trace.getBodyReadNanos());
+		} finally {
+			current.writers.decrementAndGet();
+		}
+	}
+
+	@Override
+	public void onError(RequestTrace trace, Throwable error) {
+		Interval current = enter();
+		try {
+			Recorder recorder = current.recorder(trace);
+			recorder.errors.incrementAndGet();
+			if (trace.getStatusCode() == 0) {
+				// No response at all, e.g. a timeout
+				recorder.statusCounts.incrementAndGet(0);
+			}
+		} finally {
+			current.writers.decrementAndGet();
+		}
+	}
+
+	/**
+	 * @return what was recorded since this was created or last reset, one
+	 *         entry per method, endpoint and account, sorted by endpoint
+	 */
+	public List<EndpointStats> snapshot() {
+		return stats(interval.get().recorders);
+	}
+
+	/**
+	 * Starts a new interval, and returns what was recorded in the previous
+	 * one. Everything recorded lands in exactly one of them, though the
+	 * status, network and deserialization times of a request that was
+	 * underway during the reset may be split between the two.
+	 */
+	public List<EndpointStats> snapshotAndReset() {
+		Interval previous = interval.getAndSet(new Interval());
+		// Let threads that were recording into it finish
+		while (previous.writers.get() != 0) {
+			Thread.yield();
+		}
+		return stats(previous.recorders);
+	}
+
+	public void reset() {
+		interval.set(new Interval());
+	}
+
+	/*
+	 * Registers the calling thread as recording into the current interval.
+	 * Checking that it is still current afterwards means a reset either sees
+	 * the thread as a writer or the thread moves on to the new interval.
+	 */
+	private Interval enter() {
+		while (true) {
+			Interval current = interval.get();
+			current.writers.incrementAndGet();
+			if (interval.get() == current) {
+				return current;
+			}
+			current.writers.decrementAndGet();
+		}
+	}
+
+	private static List<EndpointStats> stats(ConcurrentMap<String, Recorder> recorders) {
+		List<EndpointStats> stats = new ArrayList<EndpointStats>(recorders.size());
+		for (Recorder recorder : new TreeMap<String, Recorder>(recorders).values()) {
+			stats.add(new EndpointStats(recorder));
+		}
+		return Collections.unmodifiableList(stats);
+	}
+
+	private static final class Interval {
+		final ConcurrentMap<String, Recorder> recorders = new ConcurrentHashMap<String, Recorder>();
+		final AtomicLong writers = new AtomicLong();
+
+		Recorder recorder(RequestTrace trace) {
+			String account = trace.getStripeAccount() == null ? PLATFORM : CONNECTED_ACCOUNT;
+			String key = trace.getEndpoint() + ' ' + trace.getMethod() + ' ' + account;
+			Recorder recorder = recorders.get(key);
+			if (recorder == null) {
+				Recorder created = new Recorder(trace.getMethod(), trace.getEndpoint(), account);
+				recorder = recorders.putIfAbsent(key, created);
+				if (recorder == null) {
+					recorder = created;
+				}
+			}
+			return recorder;
+		}
+	}
+
+	private static final class Recorder {
+		final APIResource.RequestMethod method;
+		final String endpoint;
+		final String account;
+		final LatencyHistogram network = new LatencyHistogram();
+		final LatencyHistogram deserialization = new LatencyHistogram();
+		final AtomicLongArray statusCounts = new AtomicLongArray(MAX_STATUS + 1);
+		final AtomicLong errors = new AtomicLong();
+
+		Recorder(APIResource.RequestMethod method, String endpoint, String account) {
+			this.method = method;
+			this.endpoint = endpoint;
+			this.account = account;
+		}
+	}
+
+	/**
+	 * What was recorded for one method, endpoint and account.
+	 */
+	public static final class EndpointStats {
+		private final APIResource.RequestMethod method;
+		private final String endpoint;
+		private final String account;
+		private final LatencyHistogram network;
+		private final LatencyHistogram deserialization;
+		private final Map<Integer, Long> statusCounts;
+		private final long errorCount;
+
+		private EndpointStats(Recorder recorder) {
+			this.method = recorder.method;
+			this.endpoint = recorder.endpoint;
+			this.account = recorder.account;
+			// Copies, so later requests don't change a snapshot
+			this.network = new LatencyHistogram();
+			this.network.add(recorder.network);
+			this.deserialization = new LatencyHistogram();
+			this.deserialization.add(recorder.deserialization);
+			Map<Integer, Long> statusCounts = new TreeMap<Integer, Long>();
+			for (int status = 0; status <= MAX_STATUS; status++) {
+				long count = recorder.statusCounts.get(status);
+				if (count != 0) {
+					statusCounts.put(status, count);
+				}
+			}
+			this.statusCounts = Collections.unmodifiableMap(statusCounts);
+			this.errorCount = recorder.errors.get();
+		}
+
+		public APIResource.RequestMethod getMethod() {
+			return method;
+		}
+
+		/**
+		 * @see EndpointTemplate
+		 */
+		public String getEndpoint() {
+			return endpoint;
+		}
+
+		/**
+		 * @return {@link #PLATFORM} or {@link #CONNECTED_ACCOUNT}
+		 */
+		public String getAccount() {
+			return account;
+		}
+
+		/**
+		 * @return how many requests got a response, by status code, with 0
+		 *         counting requests that got none
+		 */
+		public Map<Integer, Long> getStatusCounts() {
+			return statusCounts;
+		}
+
+		/**
+		 * @return how many requests failed, with or without a response
+		 */
+		public long getErrorCount() {
+			return errorCount;
+		}
+
+		/**
+		 * @return time from sending requests to having read their response,
+		 *         including connecting, as of the snapshot
+		 */
+		public LatencyHistogram getNetworkLatency() {
+			return network;
+		}
+
+		/**
+		 * @return time spent turning successful responses into objects
+		 */
+		public LatencyHistogram getDeserializationLatency() {
+			return deserialization;
+		}
+
+		public long getNetworkNanosAtPercentile(double percentile) {
+			return network.getValueAtPercentileNanos(percentile);
+		}
+
+		public long getDeserializationNanosAtPercentile(double percentile) {
+			return deserialization.getValueAtPercentileNanos(percentile);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("<EndpointStats %s %s %s n=%d p50=%dus p99=%dus p999=%dus json-p99=%dus status=%s>",
+					method, endpoint, account, network.getCount(),
+					network.getValueAtPercentileNanos(50) / 1000,
+					network.getValueAtPercentileNanos(99) / 1000,
+					network.getValueAtPercentileNanos(99.9) / 1000,
+					deserialization.getValueAtPercentileNanos(99) / 1000,
+					statusCounts);
+		}
+	}
+}
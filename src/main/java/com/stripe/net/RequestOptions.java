@@ -3,20 +3,42 @@ package com.stripe.net;
 import com.stripe.Stripe;
 
 public class RequestOptions {
+	/**
+	 * How urgently a request needs an answer, for transports that schedule
+	 * requests such as {@link PriorityStripeResponseGetter}.
+	 */
+	public enum Priority {
+		/** Someone is waiting on the result, e.g. a checkout. The default. */
+		INTERACTIVE,
+		/** Batch work such as exports or backfills, which can be delayed. */
+		BACKGROUND
+	}
+
 	public static RequestOptions getDefault() {
-		return new RequestOptions(Stripe.apiKey, Stripe.apiVersion, null, null);
+		return new RequestOptions(Stripe.apiKey, Stripe.apiVersion, null, null, null, null, null, null, 1);
 	}
 
 	private final String apiKey;
 	private final String stripeVersion;
 	private final String idempotencyKey;
 	private final String stripeAccount;
-
-	private RequestOptions(String apiKey, String stripeVersion, String idempotencyKey, String stripeAccount) {
+	private final ObjectCache objectCache;
+	private final StripeClient client;
+	private final Priority priority;
+	private final Deadline deadline;
+	private final int attempt;
+
+	private RequestOptions(String apiKey, String stripeVersion, String idempotencyKey, String stripeAccount,
+			ObjectCache objectCache, StripeClient client, Priority priority, Deadline deadline, int attempt) {
 		this.apiKey = apiKey;
 		this.stripeVersion = stripeVersion;
 		this.idempotencyKey = idempotencyKey;
 		this.stripeAccount = stripeAccount;
+		this.objectCache = objectCache;
+		this.client = client;
+		this.priority = priority;
+		this.deadline = deadline;
+		this.attempt = attempt;
 	}
 
 	public String getApiKey() {
@@ -35,6 +57,50 @@ public class RequestOptions {
 		return stripeAccount;
 	}
 
+	/**
+	 * @return the cache consulted by {@code retrieve} calls for plans, coupons,
+	 *         products, SKUs, customers and accounts, or null
+	 */
+	public ObjectCache getObjectCache() {
+		return objectCache;
+	}
+
+	/**
+	 * @return the client whose transport sends requests made with these
+	 *         options, or null for {@link StripeClient#getDefault()}
+	 */
+	public StripeClient getClient() {
+		return client;
+	}
+
+	/**
+	 * @return the priority set on these options, or
+	 *         {@link Priority#INTERACTIVE} if none was
+	 */
+	public Priority getPriority() {
+		return priority == null ? Priority.INTERACTIVE : priority;
+	}
+
+	/**
+	 * @return the deadline set on these options, or null. Requests also honour
+	 *         {@link Deadline#current()}.
+	 */
+	public Deadline getDeadline() {
+		return deadline;
+	}
+
+	/**
+	 * @return which attempt at sending the same request this is, starting
+	 *         from 1, as reported to {@link RequestListener}s
+	 */
+	public int getAttempt() {
+		return attempt;
+	}
+
+	/**
+	 * Options are equal when they would send the same request the same way.
+	 * Clients, caches and deadlines are compared by identity.
+	 */
 	@Override
 	public boolean equals(Object o) {
 		if (this == o) return true;
@@ -51,6 +117,12 @@ public class RequestOptions {
 		if (stripeVersion != null ? !stripeVersion.equals(that.stripeVersion) : that.stripeVersion != null) {
 			return false;
 		}
+		if (objectCache != that.objectCache || client != that.client || deadline != that.deadline) {
+			return false;
+		}
+		if (getPriority() != that.getPriority() || attempt != that.attempt) {
+			return false;
+		}
 
 		return true;
 	}
@@ -60,6 +132,11 @@ public class RequestOptions {
 		int result = apiKey != null ? apiKey.hashCode() : 0;
 		result = 31 * result + (stripeVersion != null ? stripeVersion.hashCode() : 0);
 		result = 31 * result + (idempotencyKey != null ? idempotencyKey.hashCode() : 0);
+		result = 31 * result + (objectCache != null ? objectCache.hashCode() : 0);
+		result = 31 * result + (client != null ? client.hashCode() : 0);
+		result = 31 * result + getPriority().hashCode();
+		result = 31 * result + (deadline != null ? deadline.hashCode() : 0);
+		result = 31 * result + attempt;
 		return result;
 	}
 
@@ -68,7 +145,7 @@ public class RequestOptions {
 	}
 
 	public RequestOptionsBuilder toBuilder() {
-		return new RequestOptionsBuilder().setApiKey(this.apiKey).setStripeVersion(this.stripeVersion).setStripeAccount(this.stripeAccount);
+		return new RequestOptionsBuilder().setApiKey(this.apiKey).setStripeVersion(this.stripeVersion).setStripeAccount(this.stripeAccount).setObjectCache(this.objectCache).setClient(this.client).setPriority(this.priority).setDeadline(this.deadline).setAttempt(this.attempt);
 	}
 
 	public static final class RequestOptionsBuilder {
@@ -76,6 +153,11 @@ public class RequestOptions {
 		private String stripeVersion;
 		private String idempotencyKey;
 		private String stripeAccount;
+		private ObjectCache objectCache;
+		private StripeClient client;
+		private Priority priority;
+		private Deadline deadline;
+		private int attempt = 1;
 
 		public RequestOptionsBuilder() {
 			this.apiKey = Stripe.apiKey;
@@ -133,12 +215,86 @@ public class RequestOptions {
 			return setStripeAccount(null);
 		}
 
+		public ObjectCache getObjectCache() {
+			return this.objectCache;
+		}
+
+		public RequestOptionsBuilder setObjectCache(ObjectCache objectCache) {
+			this.objectCache = objectCache;
+			return this;
+		}
+
+		public RequestOptionsBuilder clearObjectCache() {
+			return setObjectCache(null);
+		}
+
+		public StripeClient getClient() {
+			return this.client;
+		}
+
+		public RequestOptionsBuilder setClient(StripeClient client) {
+			this.client = client;
+			return this;
+		}
+
+		public RequestOptionsBuilder clearClient() {
+			return setClient(null);
+		}
+
+		public Priority getPriority() {
+			return this.priority;
+		}
+
+		public RequestOptionsBuilder setPriority(Priority priority) {
+			this.priority = priority;
+			return this;
+		}
+
+		public RequestOptionsBuilder clearPriority() {
+			return setPriority(null);
+		}
+
+		public Deadline getDeadline() {
+			return this.deadline;
+		}
+
+		public RequestOptionsBuilder setDeadline(Deadline deadline) {
+			this.deadline = deadline;
+			return this;
+		}
+
+		public RequestOptionsBuilder clearDeadline() {
+			return setDeadline(null);
+		}
+
+		public int getAttempt() {
+			return this.attempt;
+		}
+
+		/**
+		 * Marks a request as a retry of an earlier one, 2 being the first
+		 * retry. Code that retries requests itself should set this so that
+		 * {@link RequestListener#onRetry(RequestTrace)} is called.
+		 */
+		public RequestOptionsBuilder setAttempt(int attempt) {
+			if (attempt < 1) {
+				throw new InvalidRequestOptionsException("Attempts are numbered from 1");
+			}
+			this.attempt = attempt;
+			return this;
+		}
+
 		public RequestOptions build() {
 			return new RequestOptions(
 				normalizeApiKey(this.apiKey),
 				normalizeStripeVersion(this.stripeVersion),
 				normalizeIdempotencyKey(this.idempotencyKey),
-				normalizeStripeAccount(this.stripeAccount));
+				normalizeStripeAccount(this.stripeAccount),
+				this.objectCache,
+				this.client,
+				this.priority,
+				this.deadline,
+				this.attempt);
 		}
 	}
 
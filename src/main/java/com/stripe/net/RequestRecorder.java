@@ -0,0 +1,468 @@
+package com.stripe.net;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.regex.Pattern;
+
+/**
+ * Remembers the last few thousand requests in a fixed-size ring, to be looked
+ * at after something went wrong:
+ *
+ * <pre>
+ * RequestRecorder recorder = RequestRecorder.builder()
+ *     .setCapacity(4096)
+ *     .setDumpOnErrorRate(0.5, 100, new RequestRecorder.Sink() {
+ *         public void dump(List&lt;RequestRecorder.Entry&gt; requests, String reason) {
+ *             log.warn("{}: {}", reason, requests);
+ *         }
+ *     })
+ *     .build();
+ * StripeClient client = StripeClient.builder().addRequestListener(recorder).build();
+ * ...
+ * recorder.dump(new File("/tmp/stripe-requests.log"));
+ * </pre>
+ *
+ * Recording a request takes no locks and allocates nothing: each one
+ * overwrites the oldest slot with the request's time, method, endpoint,
+ * status, latency, {@code Request-Id}, attempt and exception class. When
+ * sampling is on, every so many requests also keep their request and response
+ * bodies, which are redacted of card numbers, bank account numbers, secrets
+ * and API keys when dumped. Dumps taken while requests are being recorded
+ * skip entries that are overwritten as they are read. A request is dropped
+ * rather than waited for if the slot it would overwrite is still being
+ * written by a request it lapped, or already holds a newer one.
+ */
+public class RequestRecorder extends RequestListener {
+	private static final String REDACTED = "[REDACTED]";
+
+	private static final String SENSITIVE_KEYS =
+			"number|cvc|cvv|account_number|personal_id_number|ssn_last_4|client_secret|secret|password";
+	private static final Pattern SENSITIVE_FORM_FIELD = Pattern.compile(
+			"((?:^|&)[^=&]*(?:\\b|%5B|\\[|_)(?:" + SENSITIVE_KEYS + ")(?:%5D|\\])?=)[^&]*",
+			Pattern.CASE_INSENSITIVE);
+	private static final Pattern SENSITIVE_JSON_FIELD = Pattern.compile(
+			"(\"(?:" + SENSITIVE_KEYS + ")\"\\s*:\\s*)\"[^\"]*\"");
+	private static final Pattern API_KEY = Pattern.compile("\\b((?:sk|rk)_(?:live|test)_)[0-9A-Za-z]+");
+
+	private final int mask;
+	private final int bodySampling;
+	private final double dumpErrorRate;
+	private final int dumpWindow;
+	private final long dumpIntervalMillis;
+	private final Sink sink;
+	private final Executor executor;
+
+	private final AtomicLong next = new AtomicLong();
+	// The sequence number of the request in each slot, -1 if there is none, or
+	// writing(seq) while the request with that sequence number is written
+	private final AtomicLongArray published;
+	private final AtomicLongArray startMillis;
+	private final AtomicLongArray latencyNanos;
+	private final AtomicIntegerArray statusCodes;
+	private final AtomicIntegerArray attempts;
+	private final AtomicReferenceArray<APIResource.RequestMethod> methods;
+	private final AtomicReferenceArray<String> endpoints;
+	private final AtomicReferenceArray<String> requestIds;
+	private final AtomicReferenceArray<String> errors;
+	private final AtomicReferenceArray<String> requestBodies;
+	private final AtomicReferenceArray<String> responseBodies;
+
+	// Requests and errors in the current window of dumpWindow requests
+	private final AtomicLong window = new AtomicLong();
+	private final AtomicLong windowErrors = new AtomicLong();
+	private final AtomicLong lastDumpMillis = new AtomicLong();
+	private final AtomicBoolean dumping = new AtomicBoolean();
+
+	private RequestRecorder(RequestRecorderBuilder builder) {
+		int capacity = 1;
+		while (capacity < builder.capacity) {
+			capacity <<= 1;
+		}
+		this.mask = capacity - 1;
+		this.bodySampling = builder.bodySampling;
+		this.dumpErrorRate = builder.dumpErrorRate;
+		this.dumpWindow = builder.dumpWindow;
+		this.dumpIntervalMillis = builder.dumpIntervalMillis;
+		this.sink = builder.sink;
+		if (builder.executor != null || sink == null) {
+			this.executor = builder.executor;
+		} else {
+			this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "stripe-request-recorder");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		this.published = new AtomicLongArray(capacity);
+		for (int i = 0; i < capacity; i++) {
+			published.set(i, -1);
+		}
+		this.startMillis = new AtomicLongArray(capacity);
+		this.latencyNanos = new AtomicLongArray(capacity);
+		this.statusCodes = new AtomicIntegerArray(capacity);
+		this.attempts = new AtomicIntegerArray(capacity);
+		this.methods = new AtomicReferenceArray<APIResource.RequestMethod>(capacity);
+		this.endpoints = new AtomicReferenceArray<String>(capacity);
+		this.requestIds = new AtomicReferenceArray<String>(capacity);
+		this.errors = new AtomicReferenceArray<String>(capacity);
+		this.requestBodies = new AtomicReferenceArray<String>(capacity);
+		this.responseBodies = new AtomicReferenceArray<String>(capacity);
+	}
+
+	public static RequestRecorderBuilder builder() {
+		return new RequestRecorderBuilder();
+	}
+
+	@Override
+	public void onDeserialized(RequestTrace trace) {
+		record(trace, null);
+	}
+
+	@Override
+	public void onError(RequestTrace trace, Throwable error) {
+		record(trace, error);
+	}
+
+	private void record(RequestTrace trace, Throwable error) {
+		long seq = next.getAndIncrement();
+		int slot = (int) (seq & mask);
+		long latency = trace.getEndNanos() - trace.getStartNanos();
+
+		// Take the slot, so readers skip it and other writers leave it alone
+		// until it's been rewritten
+		long current = published.get(slot);
+		long marker = writing(seq);
+		if (current < -1 || current > seq || !published.compareAndSet(slot, current, marker)) {
+			if (sink != null) {
+				checkErrorRate(error != null);
+			}
+			return;
+		}
+		startMillis.lazySet(slot, System.currentTimeMillis() - TimeUnit.NANOSECONDS.toMillis(latency));
+		latencyNanos.lazySet(slot, latency);
+		statusCodes.lazySet(slot, trace.getStatusCode());
+		attempts.lazySet(slot, trace.getAttempt());
+		methods.lazySet(slot, trace.getMethod());
+		endpoints.lazySet(slot, trace.getEndpoint());
+		requestIds.lazySet(slot, trace.getRequestId());
+		errors.lazySet(slot, error == null ? null : error.getClass().getName());
+		boolean sampled = bodySampling > 0 && seq % bodySampling == 0;
+		requestBodies.lazySet(slot, sampled ? trace.requestBody : null);
+		responseBodies.lazySet(slot, sampled ? trace.responseBody : null);
+		published.compareAndSet(slot, marker, seq);
+
+		if (sink != null) {
+			checkErrorRate(error != null);
+		}
+	}
+
+	private static long writing(long seq) {
+		return -seq - 2;
+	}
+
+	private void checkErrorRate(boolean failed) {
+		long errorCount = failed ? windowErrors.incrementAndGet() : windowErrors.get();
+		long requestCount = window.incrementAndGet();
+		if (requestCount < dumpWindow) {
+			return;
+		}
+		// Start the next window; racing requests may land in either
+		window.set(0);
+		windowErrors.set(0);
+		if ((double) errorCount / requestCount < dumpErrorRate) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		long last = lastDumpMillis.get();
+		if (now - last < dumpIntervalMillis || !lastDumpMillis.compareAndSet(last, now)) {
+			return;
+		}
+		final String reason = String.format("%d of the last %d Stripe requests failed", errorCount, requestCount);
+		if (!dumping.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			executor.execute(new Runnable() {
+				public void run() {
+					try {
+						sink.dump(snapshot(), reason);
+					} finally {
+						dumping.set(false);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			dumping.set(false);
+		}
+	}
+
+	/**
+	 * @return the recorded requests, oldest first, with bodies redacted
+	 */
+	public List<Entry> snapshot() {
+		long end = next.get();
+		long start = Math.max(0, end - mask - 1);
+		List<Entry> entries = new ArrayList<Entry>((int) (end - start));
+		for (long seq = start; seq < end; seq++) {
+			int slot = (int) (seq & mask);
+			if (published.get(slot) != seq) {
+				continue;
+			}
+			Entry entry = new Entry(startMillis.get(slot), methods.get(slot), endpoints.get(slot),
+					statusCodes.get(slot), latencyNanos.get(slot), requestIds.get(slot), attempts.get(slot),
+					errors.get(slot), redact(requestBodies.get(slot)), redact(responseBodies.get(slot)));
+			// Overwritten while being read
+			if (published.get(slot) != seq) {
+				continue;
+			}
+			entries.add(entry);
+		}
+		return Collections.unmodifiableList(entries);
+	}
+
+	/**
+	 * Writes the recorded requests to {@code out}, one per line, oldest
+	 * first.
+	 */
+	public void dump(Appendable out) throws IOException {
+		for (Entry entry : snapshot()) {
+			out.append(entry.toString()).append('\n');
+		}
+	}
+
+	public void dump(File file) throws IOException {
+		Writer out = new OutputStreamWriter(new FileOutputStream(file), APIResource.CHARSET);
+		try {
+			dump(out);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Blanks out card and bank account numbers, CVCs, secrets and API keys in
+	 * a form-encoded request or JSON response.
+	 */
+	static String redact(String body) {
+		if (body == null) {
+			return null;
+		}
+		String redacted = SENSITIVE_FORM_FIELD.matcher(body).replaceAll("$1" + REDACTED);
+		redacted = SENSITIVE_JSON_FIELD.matcher(redacted).replaceAll("$1\"" + REDACTED + "\"");
+		return API_KEY.matcher(redacted).replaceAll("$1" + REDACTED);
+	}
+
+	/**
+	 * Told about recorded requests when the error rate spikes, on the
+	 * recorder's executor.
+	 */
+	public interface Sink {
+		void dump(List<Entry> requests, String reason);
+	}
+
+	/**
+	 * One recorded request.
+	 */
+	public static final class Entry {
+		private final long startMillis;
+		private final APIResource.RequestMethod method;
+		private final String endpoint;
+		private final int statusCode;
+		private final long latencyNanos;
+		private final String requestId;
+		private final int attempt;
+		private final String error;
+		private final String requestBody;
+		private final String responseBody;
+
+		private Entry(long startMillis, APIResource.RequestMethod method, String endpoint, int statusCode,
+				long latencyNanos, String requestId, int attempt, String error, String requestBody,
+				String responseBody) {
+			this.startMillis = startMillis;
+			this.method = method;
+			this.endpoint = endpoint;
+			this.statusCode = statusCode;
+			this.latencyNanos = latencyNanos;
+			this.requestId = requestId;
+			this.attempt = attempt;
+			this.error = error;
+			this.requestBody = requestBody;
+			this.responseBody = responseBody;
+		}
+
+		/**
+		 * @return when the request was sent, in milliseconds since the epoch
+		 */
+		public long getStartMillis() {
+			return startMillis;
+		}
+
+		public APIResource.RequestMethod getMethod() {
+			return method;
+		}
+
+		public String getEndpoint() {
+			return endpoint;
+		}
+
+		/**
+		 * @return the HTTP status code, or 0 if there was no response
+		 */
+		public int getStatusCode() {
+			return statusCode;
+		}
+
+		public long getLatencyNanos() {
+			return latencyNanos;
+		}
+
+		public String getRequestId() {
+			return requestId;
+		}
+
+		public int getAttempt() {
+			return attempt;
+		}
+
+		/**
+		 * @return the class name of the exception the request failed with,
+		 *         or null if it succeeded
+		 */
+		public String getError() {
+			return error;
+		}
+
+		/**
+		 * @return the redacted query or form body, if this request was
+		 *         sampled
+		 */
+		public String getRequestBody() {
+			return requestBody;
+		}
+
+		/**
+		 * @return the redacted response body, if this request was sampled
+		 */
+		public String getResponseBody() {
+			return responseBody;
+		}
+
+		@Override
+		public String toString() {
+			SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+			format.setTimeZone(TimeZone.getTimeZone("UTC"));
+			StringBuilder line = new StringBuilder();
+			line.append(format.format(new Date(startMillis))).append(' ').append(method).append(' ').append(endpoint)
+					.append(" status=").append(statusCode)
+					.append(" latency=").append(TimeUnit.NANOSECONDS.toMillis(latencyNanos)).append("ms")
+					.append(" request-id=").append(requestId)
+					.append(" attempt=").append(attempt);
+			if (error != null) {
+				line.append(" error=").append(error);
+			}
+			if (requestBody != null) {
+				line.append(" request=").append(requestBody);
+			}
+			if (responseBody != null) {
+				line.append(" response=").append(responseBody.replace('\n', ' '));
+			}
+			return line.toString();
+		}
+	}
+
+	public static final class RequestRecorderBuilder {
+		private int capacity = 4096;
+		private int bodySampling;
+		private double dumpErrorRate;
+		private int dumpWindow;
+		private long dumpIntervalMillis = TimeUnit.MINUTES.toMillis(1);
+		private Sink sink;
+		private Executor executor;
+
+		private RequestRecorderBuilder() {
+		}
+
+		/**
+		 * The number of requests remembered, rounded up to a power of two.
+		 */
+		public RequestRecorderBuilder setCapacity(int capacity) {
+			if (capacity <= 0 || capacity > 1 << 24) {
+				throw new IllegalArgumentException("Capacity must be between 1 and 2^24");
+			}
+			this.capacity = capacity;
+			return this;
+		}
+
+		/**
+		 * Keeps the bodies of one in every {@code oneIn} requests, or none if
+		 * 0, which is the default.
+		 */
+		public RequestRecorderBuilder setBodySampling(int oneIn) {
+			if (oneIn < 0) {
+				throw new IllegalArgumentException("Body sampling must not be negative");
+			}
+			this.bodySampling = oneIn;
+			return this;
+		}
+
+		/**
+		 * Hands the recorded requests to {@code sink} when at least
+		 * {@code errorRate} of a run of {@code window} requests failed.
+		 */
+		public RequestRecorderBuilder setDumpOnErrorRate(double errorRate, int window, Sink sink) {
+			if (errorRate <= 0 || errorRate > 1) {
+				throw new IllegalArgumentException("Error rate must be above 0 and at most 1");
+			}
+			if (window <= 0) {
+				throw new IllegalArgumentException("Window must be positive");
+			}
+			this.dumpErrorRate = errorRate;
+			this.dumpWindow = window;
+			this.sink = sink;
+			return this;
+		}
+
+		/**
+		 * The least time between two dumps for error rate spikes, a minute
+		 * by default.
+		 */
+		public RequestRecorderBuilder setMinimumDumpInterval(long duration, TimeUnit unit) {
+			this.dumpIntervalMillis = unit.toMillis(duration);
+			return this;
+		}
+
+		/**
+		 * Runs dumps for error rate spikes, instead of a thread of the
+		 * recorder's own.
+		 */
+		public RequestRecorderBuilder setExecutor(Executor executor) {
+			this.executor = executor;
+			return this;
+		}
+
+		public RequestRecorder build() {
+			return new RequestRecorder(this);
+		}
+	}
+}
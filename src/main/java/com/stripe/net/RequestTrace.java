@@ -0,0 +1,302 @@
+package com.stripe.net;
+
+import java.io.IOException;
+import java.net.URLConnection;
+
+/**
+ * What is known about one request sent by a {@link LiveStripeResponseGetter},
+ * as passed to {@link RequestListener}s. Timestamps come from
+ * {@link System#nanoTime()} and are 0 for steps the request hasn't gone
+ * through (yet). Listeners may keep a trace around after the request is done.
+ */
+public final class RequestTrace {
+	// The request connecting on this thread, if it is being traced
+	private static final ThreadLocal<RequestTrace> CONNECTING = new ThreadLocal<RequestTrace>();
+	// Time the request on this thread spent waiting in schedulers, in a cell reused per thread
+	private static final ThreadLocal<long[]> QUEUE_WAIT = new ThreadLocal<long[]>() {
+		@Override
+		protected long[] initialValue() {
+			return new long[1];
+		}
+	};
+
+	private final RequestListener[] listeners;
+	private final APIResource.RequestMethod method;
+	private final String url;
+	private final int attempt;
+	private final String stripeAccount;
+	private final long queueWaitNanos;
+	private final long startNanos;
+	private String endpoint;
+
+	long handshakeStartNanos;
+	long connectedNanos;
+	long requestWrittenNanos;
+	int inFlightAtStart;
+	long firstByteNanos;
+	long bodyReadNanos;
+	long deserializedNanos;
+	long endNanos;
+	int statusCode;
+	long requestBytes;
+	long responseBytes;
+	String requestId;
+	// Unredacted, so only for this package; see RequestRecorder
+	String requestBody;
+	String responseBody;
+
+	RequestTrace(RequestListener[] listeners, APIResource.RequestMethod method, String url, RequestOptions options) {
+		this.listeners = listeners;
+		this.method = method;
+		this.url = url;
+		this.attempt = options == null ? 1 : options.getAttempt();
+		this.stripeAccount = options == null ? null : options.getStripeAccount();
+		this.queueWaitNanos = QUEUE_WAIT.get()[0];
+		this.startNanos = System.nanoTime();
+	}
+
+	public APIResource.RequestMethod getMethod() {
+		return method;
+	}
+
+	/**
+	 * @return the URL without the query string
+	 */
+	public String getUrl() {
+		return url;
+	}
+
+	/**
+	 * @return the URL's path with ids replaced, e.g. {@code /v1/charges/{id}}
+	 * @see EndpointTemplate
+	 */
+	public String getEndpoint() {
+		// Worked out on demand, since not every listener wants it
+		String endpoint = this.endpoint;
+		if (endpoint == null) {
+			endpoint = EndpointTemplate.of(url);
+			this.endpoint = endpoint;
+		}
+		return endpoint;
+	}
+
+	/**
+	 * @return 1 for the first attempt at a request, 2 for the first retry and
+	 *         so on, as set with
+	 *         {@link RequestOptions.RequestOptionsBuilder#setAttempt(int)}
+	 */
+	public int getAttempt() {
+		return attempt;
+	}
+
+	/**
+	 * @return the connected account the request was made on behalf of, or
+	 *         null for the platform's own requests
+	 */
+	public String getStripeAccount() {
+		return stripeAccount;
+	}
+
+	/**
+	 * @return how long the request waited in a {@link PriorityStripeResponseGetter}
+	 *         or {@link FairSchedulingStripeResponseGetter} before
+	 *         {@link #getStartNanos()}, if it went through one on the same
+	 *         thread
+	 */
+	public long getQueueWaitNanos() {
+		return queueWaitNanos;
+	}
+
+	/**
+	 * @return how many other requests the same getter was sending when this
+	 *         one started
+	 */
+	public int getInFlightAtStart() {
+		return inFlightAtStart;
+	}
+
+	public long getStartNanos() {
+		return startNanos;
+	}
+
+	/**
+	 * @return when the TCP connection for a new TLS connection was made, and
+	 *         the handshake started; 0 if a pooled connection was reused, or
+	 *         the connection didn't come from a {@link StripeSSLSocketFactory}
+	 */
+	public long getHandshakeStartNanos() {
+		return handshakeStartNanos;
+	}
+
+	public boolean isNewConnection() {
+		return handshakeStartNanos != 0;
+	}
+
+	/**
+	 * @return when the request got a connection, which is also when a new
+	 *         connection's TLS handshake finished
+	 */
+	public long getConnectedNanos() {
+		return connectedNanos;
+	}
+
+	/**
+	 * @return when a request body finished being sent, or 0 for requests
+	 *         without one
+	 */
+	public long getRequestWrittenNanos() {
+		return requestWrittenNanos;
+	}
+
+	public long getFirstByteNanos() {
+		return firstByteNanos;
+	}
+
+	public long getBodyReadNanos() {
+		return bodyReadNanos;
+	}
+
+	public long getDeserializedNanos() {
+		return deserializedNanos;
+	}
+
+	/**
+	 * @return when the request succeeded or failed
+	 */
+	public long getEndNanos() {
+		return endNanos;
+	}
+
+	/**
+	 * @return the HTTP status code, or 0 if there was no response
+	 */
+	public int getStatusCode() {
+		return statusCode;
+	}
+
+	public long getRequestBytes() {
+		return requestBytes;
+	}
+
+	public long getResponseBytes() {
+		return responseBytes;
+	}
+
+	/**
+	 * @return the {@code Request-Id} Stripe gave the request, or null
+	 */
+	public String getRequestId() {
+		return requestId;
+	}
+
+	/*
+	 * Called by schedulers around handing a request on, with the negated wait
+	 * once it's done.
+	 */
+	static void addQueueWait(long nanos) {
+		QUEUE_WAIT.get()[0] += nanos;
+	}
+
+	/*
+	 * Called by StripeSSLSocketFactory when it layers TLS over a fresh TCP
+	 * connection.
+	 */
+	static void socketCreated() {
+		RequestTrace trace = CONNECTING.get();
+		if (trace != null && trace.handshakeStartNanos == 0) {
+			trace.handshakeStartNanos = System.nanoTime();
+		}
+	}
+
+	void started() {
+		for (RequestListener listener : listeners) {
+			try {
+				listener.onStart(this);
+				if (attempt > 1) {
+					listener.onRetry(this);
+				}
+			} catch (RuntimeException e) {
+				// Listeners mustn't break requests
+			}
+		}
+	}
+
+	void connect(URLConnection conn) throws IOException {
+		CONNECTING.set(this);
+		try {
+			conn.connect();
+		} finally {
+			// Rather than remove(), which would make the next set() allocate
+			CONNECTING.set(null);
+		}
+		connectedNanos = System.nanoTime();
+		for (RequestListener listener : listeners) {
+			try {
+				if (handshakeStartNanos != 0) {
+					listener.onTlsHandshakeDone(this);
+				}
+				listener.onConnectionAcquired(this);
+			} catch (RuntimeException e) {
+				// Listeners mustn't break requests
+			}
+		}
+	}
+
+	void requestWritten() {
+		this.requestWrittenNanos = System.nanoTime();
+	}
+
+	void firstByte(int statusCode, String requestId) {
+		this.firstByteNanos = System.nanoTime();
+		this.statusCode = statusCode;
+		this.requestId = requestId;
+		for (RequestListener listener : listeners) {
+			try {
+				listener.onFirstByte(this);
+			} catch (RuntimeException e) {
+				// Listeners mustn't break requests
+			}
+		}
+	}
+
+	void bodyRead(long responseBytes) {
+		this.bodyReadNanos = System.nanoTime();
+		this.responseBytes = responseBytes;
+		for (RequestListener listener : listeners) {
+			try {
+				listener.onBodyRead(this);
+			} catch (RuntimeException e) {
+				// Listeners mustn't break requests
+			}
+		}
+	}
+
+	void deserialized() {
+		this.deserializedNanos = System.nanoTime();
+		this.endNanos = deserializedNanos;
+		for (RequestListener listener : listeners) {
+			try {
+				listener.onDeserialized(this);
+			} catch (RuntimeException e) {
+				// Listeners mustn't break requests
+			}
+		}
+	}
+
+	void failed(Throwable error) {
+		this.endNanos = System.nanoTime();
+		for (RequestListener listener : listeners) {
+			try {
+				listener.onError(this, error);
+			} catch (RuntimeException e) {
+				// Listeners mustn't break requests
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("<RequestTrace %s %s attempt=%d status=%d request-id=%s>",
+				method, getEndpoint(), attempt, statusCode, requestId);
+	}
+}
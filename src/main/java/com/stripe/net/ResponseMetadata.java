@@ -0,0 +1,187 @@
+package com.stripe.net;
+
+/**
+ * How one request went: its {@code Request-Id}, status, sizes and where the
+ * time went. Available from {@link com.stripe.model.StripeObject#getLastResponse()}
+ * on the object a call returned, from {@link StripeResponse#getMetadata()}, or
+ * for the latest request on the current thread, successful or not, from
+ * {@link #getLast()}:
+ *
+ * <pre>
+ * Charge charge = Charge.create(params);
+ * log.info("charge took {}ms, request {}",
+ *     charge.getLastResponse().getTotalNanos() / 1000000, charge.getLastResponse().getRequestId());
+ * </pre>
+ *
+ * Durations are in nanoseconds, and 0 for steps a request didn't go through.
+ * {@code HttpURLConnection} resolves host names while connecting, so DNS time
+ * is part of {@link #getConnectNanos()}. Handshakes are only told apart from
+ * connecting for connections made by a {@link StripeSSLSocketFactory}.
+ */
+public final class ResponseMetadata {
+	private static final ThreadLocal<ResponseMetadata> LAST = new ThreadLocal<ResponseMetadata>();
+
+	private final APIResource.RequestMethod method;
+	private final String url;
+	private final String requestId;
+	private final int statusCode;
+	private final int attempt;
+	private final boolean connectionReused;
+	private final long connectNanos;
+	private final long tlsHandshakeNanos;
+	private final long requestWriteNanos;
+	private final long timeToFirstByteNanos;
+	private final long bodyReadNanos;
+	private final long deserializeNanos;
+	private final long totalNanos;
+	private final long requestBytes;
+	private final long responseBytes;
+
+	ResponseMetadata(RequestTrace trace) {
+		this.method = trace.getMethod();
+		this.url = trace.getUrl();
+		this.requestId = trace.getRequestId();
+		this.statusCode = trace.getStatusCode();
+		this.attempt = trace.getAttempt();
+		this.connectionReused = trace.getConnectedNanos() != 0 && !trace.isNewConnection();
+		this.requestBytes = trace.getRequestBytes();
+		this.responseBytes = trace.getResponseBytes();
+
+		long connected = trace.getConnectedNanos();
+		if (trace.isNewConnection()) {
+			this.connectNanos = trace.getHandshakeStartNanos() - trace.getStartNanos();
+			this.tlsHandshakeNanos = connected - trace.getHandshakeStartNanos();
+		} else {
+			this.connectNanos = connected == 0 ? 0 : connected - trace.getStartNanos();
+			this.tlsHandshakeNanos = 0;
+		}
+		long written = trace.getRequestWrittenNanos();
+		this.requestWriteNanos = written == 0 || connected == 0 ? 0 : written - connected;
+		long sent = written != 0 ? written : connected;
+		long firstByte = trace.getFirstByteNanos();
+		this.timeToFirstByteNanos = firstByte == 0 || sent == 0 ? 0 : firstByte - sent;
+		long bodyRead = trace.getBodyReadNanos();
+		this.bodyReadNanos = bodyRead == 0 || firstByte == 0 ? 0 : bodyRead - firstByte;
+		long deserialized = trace.getDeserializedNanos();
+		this.deserializeNanos = deserialized == 0 || bodyRead == 0 ? 0 : deserialized - bodyRead;
+		this.totalNanos = trace.getEndNanos() == 0 ? 0 : trace.getEndNanos() - trace.getStartNanos();
+	}
+
+	/**
+	 * @return what is known about the latest request sent from this thread
+	 *         by a {@link LiveStripeResponseGetter}, or null if there was none.
+	 *         Requests that a {@link HedgingStripeResponseGetter} sends on
+	 *         other threads, or that a {@link CoalescingStripeResponseGetter}
+	 *         shares with another caller, count as this thread's. Batches run
+	 *         by {@link BulkRetriever}, {@link BulkMutationExecutor} and
+	 *         {@link ReferenceLoader} clear it instead, since they stand for
+	 *         many requests; use {@code getLastResponse()} on the objects they
+	 *         return.
+	 */
+	public static ResponseMetadata getLast() {
+		return LAST.get();
+	}
+
+	static void setLast(ResponseMetadata metadata) {
+		LAST.set(metadata);
+	}
+
+	public APIResource.RequestMethod getMethod() {
+		return method;
+	}
+
+	/**
+	 * @return the URL without the query string
+	 */
+	public String getUrl() {
+		return url;
+	}
+
+	/**
+	 * @return the {@code Request-Id} to quote to Stripe support, or null if
+	 *         there was no response
+	 */
+	public String getRequestId() {
+		return requestId;
+	}
+
+	/**
+	 * @return the HTTP status code, or 0 if there was no response
+	 */
+	public int getStatusCode() {
+		return statusCode;
+	}
+
+	public int getAttempt() {
+		return attempt;
+	}
+
+	/**
+	 * @return whether the request went over a kept-alive connection
+	 */
+	public boolean isConnectionReused() {
+		return connectionReused;
+	}
+
+	/**
+	 * @return time to get a connection, including DNS and, for new
+	 *         connections not made by a {@link StripeSSLSocketFactory}, the TLS
+	 *         handshake
+	 */
+	public long getConnectNanos() {
+		return connectNanos;
+	}
+
+	public long getTlsHandshakeNanos() {
+		return tlsHandshakeNanos;
+	}
+
+	/**
+	 * @return time to send the request body; requests without one send their
+	 *         headers as part of {@link #getTimeToFirstByteNanos()}
+	 */
+	public long getRequestWriteNanos() {
+		return requestWriteNanos;
+	}
+
+	/**
+	 * @return time from having sent the request to the response status
+	 *         arriving, which is mostly Stripe's processing time
+	 */
+	public long getTimeToFirstByteNanos() {
+		return timeToFirstByteNanos;
+	}
+
+	public long getBodyReadNanos() {
+		return bodyReadNanos;
+	}
+
+	/**
+	 * @return time spent turning the response into an object
+	 */
+	public long getDeserializeNanos() {
+		return deserializeNanos;
+	}
+
+	public long getTotalNanos() {
+		return totalNanos;
+	}
+
+	public long getRequestBytes() {
+		return requestBytes;
+	}
+
+	public long getResponseBytes() {
+		return responseBytes;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("<ResponseMetadata %s %s status=%d request-id=%s reused=%s connect=%dus tls=%dus"
+				+ " write=%dus ttfb=%dus read=%dus deserialize=%dus total=%dus sent=%dB received=%dB>",
+				method, EndpointTemplate.of(url), statusCode, requestId, connectionReused,
+				connectNanos / 1000, tlsHandshakeNanos / 1000, requestWriteNanos / 1000,
+				timeToFirstByteNanos / 1000, bodyReadNanos / 1000, deserializeNanos / 1000,
+				totalNanos / 1000, requestBytes, responseBytes);
+	}
+}
@@ -0,0 +1,283 @@
+package com.stripe.net;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reports requests that took longer than a threshold, with what is known
+ * about where their time went:
+ *
+ * <pre>
+ * SlowRequestDetector detector = SlowRequestDetector.builder()
+ *     .setDefaultThreshold(2, TimeUnit.SECONDS)
+ *     .setThreshold("POST /v1/charges", 5, TimeUnit.SECONDS)
+ *     .setThreshold("/v1/customers/{id}", 500, TimeUnit.MILLISECONDS)
+ *     .setRateLimit(10, 1, TimeUnit.MINUTES)
+ *     .setSink(new SlowRequestDetector.Sink() {
+ *         public void report(SlowRequestDetector.SlowRequest request) {
+ *             log.warn("slow Stripe request: {}", request);
+ *         }
+ *     })
+ *     .build();
+ * StripeClient client = StripeClient.builder().addRequestListener(detector).build();
+ * </pre>
+ *
+ * A request's time counts from when it was handed to the client, so includes
+ * waiting in a {@link PriorityStripeResponseGetter} or
+ * {@link FairSchedulingStripeResponseGetter}. Reports beyond the rate limit
+ * are dropped and counted in the next one that gets through. The sink is
+ * called on the thread that sent the request.
+ */
+public class SlowRequestDetector extends RequestListener {
+	private final long defaultThresholdNanos;
+	private final Map<String, Long> thresholdNanos;
+	private final int reportsPerWindow;
+	private final long windowNanos;
+	private final Sink sink;
+
+	private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+	private final AtomicInteger windowReports = new AtomicInteger();
+	private final AtomicLong suppressed = new AtomicLong();
+
+	/**
+	 * Where slow requests are reported.
+	 */
+	public interface Sink {
+		void report(SlowRequest request);
+	}
+
+	private SlowRequestDetector(SlowRequestDetectorBuilder builder) {
+		if (builder.sink == null) {
+			throw new IllegalArgumentException("A sink is required");
+		}
+		this.defaultThresholdNanos = builder.defaultThresholdNanos;
+		this.thresholdNanos = new HashMap<String, Long>(builder.thresholdNanos);
+		this.reportsPerWindow = builder.reportsPerWindow;
+		this.windowNanos = builder.windowNanos;
+		this.sink = builder.sink;
+	}
+
+	public static SlowRequestDetectorBuilder builder() {
+		return new SlowRequestDetectorBuilder();
+	}
+
+	@Override
+	public void onDeserialized(RequestTrace trace) {
+		check(trace, null);
+	}
+
+	@Override
+	public void onError(RequestTrace trace, Throwable error) {
+		check(trace, error);
+	}
+
+	/**
+	 * @return the threshold for requests to {@code endpoint}, an
+	 *         {@link EndpointTemplate}, in nanoseconds
+	 */
+	long getThresholdNanos(APIResource.RequestMethod method, String endpoint) {
+		Long threshold = thresholdNanos.get(method + " " + endpoint);
+		if (threshold == null) {
+			threshold = thresholdNanos.get(endpoint);
+		}
+		return threshold == null ? defaultThresholdNanos : threshold;
+	}
+
+	private void check(RequestTrace trace, Throwable error) {
+		String endpoint = trace.getEndpoint();
+		long threshold = getThresholdNanos(trace.getMethod(), endpoint);
+		long elapsed = trace.getQueueWaitNanos() + trace.getEndNanos() - trace.getStartNanos();
+		if (elapsed < threshold || !acquire()) {
+			return;
+		}
+		SlowRequest request = new SlowRequest(new ResponseMetadata(trace), endpoint, threshold,
+				trace.getQueueWaitNanos(), trace.getInFlightAtStart(),
+				error == null ? null : error.getClass().getName(), suppressed.getAndSet(0));
+		try {
+			sink.report(request);
+		} catch (RuntimeException e) {
+			// Reporting mustn't break requests
+		}
+	}
+
+	private boolean acquire() {
+		long now = System.nanoTime();
+		long start = windowStart.get();
+		if (now - start >= windowNanos && windowStart.compareAndSet(start, now)) {
+			// Racing reports may count toward either window
+			windowReports.set(0);
+		}
+		if (windowReports.incrementAndGet() > reportsPerWindow) {
+			suppressed.incrementAndGet();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * A request that took longer than its threshold.
+	 */
+	public static final class SlowRequest {
+		private final ResponseMetadata metadata;
+		private final String endpoint;
+		private final long thresholdNanos;
+		private final long queueWaitNanos;
+		private final int inFlightAtStart;
+		private final String error;
+		private final long suppressedReports;
+
+		SlowRequest(ResponseMetadata metadata, String endpoint, long thresholdNanos, long queueWaitNanos,
+				int inFlightAtStart, String error, long suppressedReports) {
+			this.metadata = metadata;
+			this.endpoint = endpoint;
+			this.thresholdNanos = thresholdNanos;
+			this.queueWaitNanos = queueWaitNanos;
+			this.inFlightAtStart = inFlightAtStart;
+			this.error = error;
+			this.suppressedReports = suppressedReports;
+		}
+
+		/**
+		 * @return the request's {@code Request-Id}, status, sizes and phase
+		 *         timings, with connection reuse telling whether it had to
+		 *         set up a new connection
+		 */
+		public ResponseMetadata getMetadata() {
+			return metadata;
+		}
+
+		/**
+		 * @return the {@link EndpointTemplate} of the request's URL
+		 */
+		public String getEndpoint() {
+			return endpoint;
+		}
+
+		public long getThresholdNanos() {
+			return thresholdNanos;
+		}
+
+		/**
+		 * @return time spent waiting for a scheduler to let the request go
+		 */
+		public long getQueueWaitNanos() {
+			return queueWaitNanos;
+		}
+
+		/**
+		 * @return time from being handed to the client to finishing
+		 */
+		public long getTotalNanos() {
+			return queueWaitNanos + metadata.getTotalNanos();
+		}
+
+		/**
+		 * @return how many other requests the client was sending when this
+		 *         one started
+		 */
+		public int getInFlightAtStart() {
+			return inFlightAtStart;
+		}
+
+		/**
+		 * @return how many times this request had been sent before
+		 */
+		public int getRetries() {
+			return metadata.getAttempt() - 1;
+		}
+
+		/**
+		 * @return the exception class the request failed with, or null
+		 */
+		public String getError() {
+			return error;
+		}
+
+		/**
+		 * @return the number of slow requests not reported because of the
+		 *         rate limit since the last one that was
+		 */
+		public long getSuppressedReports() {
+			return suppressedReports;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder line = new StringBuilder();
+			line.append(metadata.getMethod()).append(' ').append(endpoint)
+					.append(" took=").append(TimeUnit.NANOSECONDS.toMillis(getTotalNanos())).append("ms")
+					.append(" threshold=").append(TimeUnit.NANOSECONDS.toMillis(thresholdNanos)).append("ms")
+					.append(" queued=").append(TimeUnit.NANOSECONDS.toMillis(queueWaitNanos)).append("ms")
+					.append(" in-flight=").append(inFlightAtStart)
+					.append(" retries=").append(getRetries());
+			if (error != null) {
+				line.append(" error=").append(error);
+			}
+			if (suppressedReports > 0) {
+				line.append(" suppressed=").append(suppressedReports);
+			}
+			return line.append(' ').append(metadata).toString();
+		}
+	}
+
+	public static final class SlowRequestDetectorBuilder {
+		private long defaultThresholdNanos = TimeUnit.SECONDS.toNanos(2);
+		private final Map<String, Long> thresholdNanos = new HashMap<String, Long>();
+		private int reportsPerWindow = 10;
+		private long windowNanos = TimeUnit.MINUTES.toNanos(1);
+		private Sink sink;
+
+		private SlowRequestDetectorBuilder() {
+		}
+
+		/**
+		 * The threshold for endpoints without one of their own, 2 seconds by
+		 * default.
+		 */
+		public SlowRequestDetectorBuilder setDefaultThreshold(long duration, TimeUnit unit) {
+			if (duration <= 0) {
+				throw new IllegalArgumentException("Threshold must be positive");
+			}
+			this.defaultThresholdNanos = unit.toNanos(duration);
+			return this;
+		}
+
+		/**
+		 * The threshold for an {@link EndpointTemplate} such as
+		 * {@code /v1/charges/{id}}, optionally preceded by a method as in
+		 * {@code POST /v1/charges}. Method-specific thresholds win.
+		 */
+		public SlowRequestDetectorBuilder setThreshold(String endpoint, long duration, TimeUnit unit) {
+			if (duration <= 0) {
+				throw new IllegalArgumentException("Threshold must be positive");
+			}
+			this.thresholdNanos.put(endpoint, unit.toNanos(duration));
+			return this;
+		}
+
+		/**
+		 * Reports at most {@code reports} slow requests per {@code period},
+		 * by default 10 a minute.
+		 */
+		public SlowRequestDetectorBuilder setRateLimit(int reports, long period, TimeUnit unit) {
+			if (reports <= 0 || period <= 0) {
+				throw new IllegalArgumentException("Rate limit must be positive");
+			}
+			this.reportsPerWindow = reports;
+			this.windowNanos = unit.toNanos(period);
+			return this;
+		}
+
+		public SlowRequestDetectorBuilder setSink(Sink sink) {
+			this.sink = sink;
+			return this;
+		}
+
+		public SlowRequestDetector build() {
+			return new SlowRequestDetector(this);
+		}
+	}
+}
@@ -0,0 +1,264 @@
+package com.stripe.net;
+
+import com.stripe.Stripe;
+import com.stripe.exception.APIConnectionException;
+import com.stripe.exception.APIException;
+import com.stripe.exception.AuthenticationException;
+import com.stripe.exception.CardException;
+import com.stripe.exception.InvalidRequestException;
+
+import javax.net.ssl.SSLSocketFactory;
+import java.net.PasswordAuthentication;
+import java.net.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An isolated set of Stripe configuration: API key, API version, API base,
+ * transport (timeouts, proxy, TLS) and object cache. Several clients can live side
+ * by side in one JVM, e.g. one per Connect platform or tenant, without sharing
+ * any of the static settings on {@link Stripe}.
+ *
+ * Model operations are routed to a client through the request options it
+ * hands out:
+ *
+ * <pre>
+ * StripeClient client = StripeClient.builder()
+ *     .setApiKey("sk_test_...")
+ *     .setReadTimeout(20 * 1000)
+ *     .build();
+ * Charge charge = Charge.retrieve("ch_123", client.getRequestOptions());
+ * Refund refund = charge.refund(params, client.requestOptionsBuilder().setIdempotencyKey(key).build());
+ * </pre>
+ *
+ * Calls made without a client go through the default client, which reads
+ * {@link Stripe#apiKey}, {@link Stripe#apiVersion} and the other static
+ * settings at the time of each request.
+ */
+public class StripeClient {
+	private static final StripeClient DEFAULT = new StripeClient(new StripeClientBuilder());
+
+	private final String apiKey;
+	private final String apiVersion;
+	private final String apiBase;
+	private final ObjectCache objectCache;
+	private volatile StripeResponseGetter responseGetter;
+
+	private StripeClient(StripeClientBuilder builder) {
+		this.apiKey = builder.apiKey;
+		this.apiVersion = builder.apiVersion;
+		this.apiBase = builder.apiBase;
+		this.objectCache = builder.objectCache;
+		if (builder.responseGetter != null) {
+			this.responseGetter = builder.responseGetter;
+		} else if (builder.useGlobalTransport) {
+			this.responseGetter = new LiveStripeResponseGetter();
+		} else {
+			this.responseGetter = new LiveStripeResponseGetter(builder.connectTimeoutMillis,
+					builder.readTimeoutMillis, builder.proxy, builder.proxyCredential, builder.sslSocketFactory);
+		}
+		if (this.responseGetter instanceof LiveStripeResponseGetter) {
+			for (RequestListener listener : builder.requestListeners) {
+				((LiveStripeResponseGetter) this.responseGetter).addRequestListener(listener);
+			}
+		}
+	}
+
+	/**
+	 * @return the client used by calls that don't name one, which is backed by
+	 *         the static settings on {@link Stripe}
+	 */
+	public static StripeClient getDefault() {
+		return DEFAULT;
+	}
+
+	public static StripeClientBuilder builder() {
+		return new StripeClientBuilder();
+	}
+
+	/**
+	 * @return the API key, or null if {@link Stripe#apiKey} is used
+	 */
+	public String getApiKey() {
+		return apiKey;
+	}
+
+	public String getApiVersion() {
+		return apiVersion;
+	}
+
+	/**
+	 * @return the API base, or null if {@link Stripe#getApiBase()} is used
+	 */
+	public String getApiBase() {
+		return apiBase;
+	}
+
+	public ObjectCache getObjectCache() {
+		return objectCache;
+	}
+
+	public StripeResponseGetter getResponseGetter() {
+		return responseGetter;
+	}
+
+	void setResponseGetter(StripeResponseGetter responseGetter) {
+		this.responseGetter = responseGetter;
+	}
+
+	/**
+	 * Opens {@code connections} connections to this client's API base ahead of
+	 * the first requests, if its transport is a {@link LiveStripeResponseGetter}.
+	 *
+	 * @return the number of connections that were opened
+	 * @see LiveStripeResponseGetter#warmUp(String, int)
+	 */
+	public int warmUp(int connections) {
+		StripeResponseGetter getter = responseGetter;
+		if (!(getter instanceof LiveStripeResponseGetter)) {
+			return 0;
+		}
+		return ((LiveStripeResponseGetter) getter).warmUp(apiBase != null ? apiBase : Stripe.getApiBase(), connections);
+	}
+
+	/**
+	 * @return options that send a request through this client
+	 */
+	public RequestOptions getRequestOptions() {
+		return requestOptionsBuilder().build();
+	}
+
+	/**
+	 * @return a builder for options that send a request through this client,
+	 *         for adding an idempotency key or Stripe-Account header
+	 */
+	public RequestOptions.RequestOptionsBuilder requestOptionsBuilder() {
+		RequestOptions.RequestOptionsBuilder builder = RequestOptions.builder().setClient(this);
+		if (apiKey != null) {
+			builder.setApiKey(apiKey);
+		}
+		if (apiVersion != null) {
+			builder.setStripeVersion(apiVersion);
+		}
+		if (objectCache != null) {
+			builder.setObjectCache(objectCache);
+		}
+		return builder;
+	}
+
+	<T> T request(APIResource.RequestMethod method, String url, Map<String, Object> params, Class<T> clazz,
+			APIResource.RequestType type, RequestOptions options) throws AuthenticationException,
+			InvalidRequestException, APIConnectionException, CardException, APIException {
+		return responseGetter.request(method, rebase(url), params, clazz, type, options);
+	}
+
+	private String rebase(String url) {
+		// URLs are built against the global API base by the model classes;
+		// uploads keep going to the uploads host.
+		String globalBase = Stripe.getApiBase();
+		if (apiBase == null || apiBase.equals(globalBase) || !url.startsWith(globalBase)) {
+			return url;
+		}
+		return apiBase + url.substring(globalBase.length());
+	}
+
+	public static final class StripeClientBuilder {
+		private String apiKey;
+		private String apiVersion;
+		private String apiBase;
+		private ObjectCache objectCache;
+		private StripeResponseGetter responseGetter;
+		private boolean useGlobalTransport = true;
+		private int connectTimeoutMillis = LiveStripeResponseGetter.DEFAULT_CONNECT_TIMEOUT_MILLIS;
+		private int readTimeoutMillis = LiveStripeResponseGetter.DEFAULT_READ_TIMEOUT_MILLIS;
+		private Proxy proxy;
+		private PasswordAuthentication proxyCredential;
+		private SSLSocketFactory sslSocketFactory;
+		private final List<RequestListener> requestListeners = new ArrayList<RequestListener>();
+
+		private StripeClientBuilder() {
+		}
+
+		public StripeClientBuilder setApiKey(String apiKey) {
+			this.apiKey = apiKey;
+			return this;
+		}
+
+		public StripeClientBuilder setApiVersion(String apiVersion) {
+			this.apiVersion = apiVersion;
+			return this;
+		}
+
+		public StripeClientBuilder setApiBase(String apiBase) {
+			this.apiBase = apiBase;
+			return this;
+		}
+
+		public StripeClientBuilder setObjectCache(ObjectCache objectCache) {
+			this.objectCache = objectCache;
+			return this;
+		}
+
+		public StripeClientBuilder setConnectTimeout(int connectTimeoutMillis) {
+			this.connectTimeoutMillis = connectTimeoutMillis;
+			this.useGlobalTransport = false;
+			return this;
+		}
+
+		public StripeClientBuilder setReadTimeout(int readTimeoutMillis) {
+			this.readTimeoutMillis = readTimeoutMillis;
+			this.useGlobalTransport = false;
+			return this;
+		}
+
+		/**
+		 * Sends this client's requests through {@code proxy} instead of the one
+		 * set with {@link Stripe#setConnectionProxy(Proxy)}.
+		 */
+		public StripeClientBuilder setProxy(Proxy proxy) {
+			this.proxy = proxy;
+			this.useGlobalTransport = false;
+			return this;
+		}
+
+		public StripeClientBuilder setProxyCredential(PasswordAuthentication proxyCredential) {
+			this.proxyCredential = proxyCredential;
+			this.useGlobalTransport = false;
+			return this;
+		}
+
+		/**
+		 * Uses {@code sslSocketFactory} for this client's TLS connections, e.g. a
+		 * {@link StripeSSLSocketFactory} with a session cache of its own.
+		 */
+		public StripeClientBuilder setSSLSocketFactory(SSLSocketFactory sslSocketFactory) {
+			this.sslSocketFactory = sslSocketFactory;
+			this.useGlobalTransport = false;
+			return this;
+		}
+
+		/**
+		 * Replaces the transport entirely, e.g. with a decorated
+		 * {@link LiveStripeResponseGetter}. Timeouts and proxy settings on this
+		 * builder are then ignored.
+		 */
+		public StripeClientBuilder setResponseGetter(StripeResponseGetter responseGetter) {
+			this.responseGetter = responseGetter;
+			return this;
+		}
+
+		/**
+		 * Tells {@code listener} about this client's requests, as long as its
+		 * transport is a {@link LiveStripeResponseGetter}.
+		 */
+		public StripeClientBuilder addRequestListener(RequestListener listener) {
+			this.requestListeners.add(listener);
+			return this;
+		}
+
+		public StripeClient build() {
+			return new StripeClient(this);
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package com.stripe.net;
+
+import java.util.Map;
+
+/**
+ * The JMX view of one {@link StripeClient}, registered with
+ * {@link StripeClientMonitor#register(StripeClient, String)}. Attributes for
+ * parts the client doesn't have, e.g. {@code MaxConcurrency} without a
+ * {@link PriorityStripeResponseGetter} or {@link FairSchedulingStripeResponseGetter},
+ * read as -1, and setting them fails.
+ */
+public interface StripeClientMXBean {
+	/**
+	 * @return requests that have been started and haven't finished yet
+	 */
+	long getInFlightRequests();
+
+	long getRequestCount();
+
+	long getErrorCount();
+
+	/**
+	 * @return failed requests by the simple name of the exception they
+	 *         failed with, e.g. {@code CardException}
+	 */
+	Map<String, Long> getErrorCounts();
+
+	/**
+	 * @return how many requests got a connection, new or kept alive
+	 */
+	long getConnectionsAcquired();
+
+	/**
+	 * @return how many requests had to set up a new TLS connection
+	 */
+	long getNewConnections();
+
+	long getTlsHandshakeCount();
+
+	long getResumedTlsHandshakeCount();
+
+	int getConnectTimeoutMillis();
+
+	void setConnectTimeoutMillis(int connectTimeoutMillis);
+
+	int getReadTimeoutMillis();
+
+	void setReadTimeoutMillis(int readTimeoutMillis);
+
+	int getMaxConcurrency();
+
+	void setMaxConcurrency(int maxConcurrency);
+
+	/**
+	 * @return hedged requests the {@link HedgingStripeResponseGetter} could
+	 *         send right now
+	 */
+	double getAvailableHedges();
+
+	double getCacheHitRatio();
+
+	long getCacheHitCount();
+
+	long getCacheMissCount();
+
+	long getCacheEvictionCount();
+
+	void invalidateCache();
+
+	void resetCounts();
+}
@@ -0,0 +1,308 @@
+package com.stripe.net;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import javax.net.ssl.SSLSocketFactory;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Exposes a {@link StripeClient}'s transport, scheduling and cache state over
+ * JMX, and lets timeouts and concurrency limits be changed at runtime:
+ *
+ * <pre>
+ * StripeClientMonitor monitor = StripeClientMonitor.register(client, "payments");
+ * // com.stripe:type=StripeClient,name="payments" in jconsole or any JMX tool
+ * ...
+ * monitor.unregister();
+ * </pre>
+ *
+ * The client's transport is searched for the pieces to report on: the
+ * {@link LiveStripeResponseGetter} at the bottom, and any
+ * {@link PriorityStripeResponseGetter}, {@link FairSchedulingStripeResponseGetter},
+ * {@link HedgingStripeResponseGetter} or {@link CoalescingStripeResponseGetter}
+ * wrapped around it. Request counts come from a {@link RequestListener}, so
+ * they need the live getter to be found.
+ */
+public class StripeClientMonitor implements StripeClientMXBean {
+	public static final String DOMAIN = "com.stripe";
+
+	private final StripeClient client;
+	private final ObjectName name;
+	private final LiveStripeResponseGetter live;
+	private final PriorityStripeResponseGetter priority;
+	private final FairSchedulingStripeResponseGetter fairScheduling;
+	private final HedgingStripeResponseGetter hedging;
+	private final Counter counter = new Counter();
+
+	private StripeClientMonitor(StripeClient client, ObjectName name) {
+		this.client = client;
+		this.name = name;
+		LiveStripeResponseGetter live = null;
+		PriorityStripeResponseGetter priority = null;
+		FairSchedulingStripeResponseGetter fairScheduling = null;
+		HedgingStripeResponseGetter hedging = null;
+		StripeResponseGetter getter = client.getResponseGetter();
+		while (getter != null) {
+			if (getter instanceof LiveStripeResponseGetter) {
+				live = (LiveStripeResponseGetter) getter;
+				getter = null;
+			} else if (getter instanceof PriorityStripeResponseGetter) {
+				priority = (PriorityStripeResponseGetter) getter;
+				getter = priority.getDelegate();
+			} else if (getter instanceof FairSchedulingStripeResponseGetter) {
+				fairScheduling = (FairSchedulingStripeResponseGetter) getter;
+				getter = fairScheduling.getDelegate();
+			} else if (getter instanceof HedgingStripeResponseGetter) {
+				hedging = (HedgingStripeResponseGetter) getter;
+				getter = hedging.getDelegate();
+			} else if (getter instanceof CoalescingStripeResponseGetter) {
+				getter = ((CoalescingStripeResponseGetter) getter).getDelegate();
+			} else {
+				getter = null;
+			}
+		}
+		this.live = live;
+		this.priority = priority;
+		this.fairScheduling = fairScheduling;
+		this.hedging = hedging;
+	}
+
+	/**
+	 * Registers an MXBean for {@code client} with the platform MBean server,
+	 * as {@code com.stripe:type=StripeClient,name="<name>"}.
+	 *
+	 * @throws IllegalArgumentException if another client is registered
+	 *         under {@code name}
+	 */
+	public static StripeClientMonitor register(StripeClient client, String name) {
+		StripeClientMonitor monitor = new StripeClientMonitor(client, objectName(name));
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(monitor, monitor.name);
+		} catch (InstanceAlreadyExistsException e) {
+			throw new IllegalArgumentException(String.format("A client is already registered as %s", name), e);
+		} catch (JMException e) {
+			throw new IllegalStateException(e);
+		}
+		if (monitor.live != null) {
+			monitor.live.addRequestListener(monitor.counter);
+		}
+		return monitor;
+	}
+
+	/**
+	 * Removes the MXBean, and stops counting the client's requests.
+	 */
+	public void unregister() {
+		if (live != null) {
+			live.removeRequestListener(counter);
+		}
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			server.unregisterMBean(name);
+		} catch (InstanceNotFoundException e) {
+			// Already unregistered
+		} catch (JMException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public ObjectName getObjectName() {
+		return name;
+	}
+
+	public StripeClient getClient() {
+		return client;
+	}
+
+	public long getInFlightRequests() {
+		return counter.inFlight.get();
+	}
+
+	public long getRequestCount() {
+		return counter.requests.get();
+	}
+
+	public long getErrorCount() {
+		return counter.errors.get();
+	}
+
+	public Map<String, Long> getErrorCounts() {
+		Map<String, Long> snapshot = new HashMap<String, Long>();
+		for (Map.Entry<String, AtomicLong> entry : counter.errorsByType.entrySet()) {
+			snapshot.put(entry.getKey(), entry.getValue().get());
+		}
+		return snapshot;
+	}
+
+	public long getConnectionsAcquired() {
+		return counter.connectionsAcquired.get();
+	}
+
+	public long getNewConnections() {
+		return counter.newConnections.get();
+	}
+
+	public long getTlsHandshakeCount() {
+		StripeSSLSocketFactory socketFactory = stripeSocketFactory();
+		return socketFactory == null ? -1 : socketFactory.getHandshakeCount();
+	}
+
+	public long getResumedTlsHandshakeCount() {
+		StripeSSLSocketFactory socketFactory = stripeSocketFactory();
+		return socketFactory == null ? -1 : socketFactory.getResumedHandshakeCount();
+	}
+
+	public int getConnectTimeoutMillis() {
+		return live == null ? -1 : live.getConnectTimeoutMillis();
+	}
+
+	public void setConnectTimeoutMillis(int connectTimeoutMillis) {
+		requireLive().setConnectTimeoutMillis(connectTimeoutMillis);
+	}
+
+	public int getReadTimeoutMillis() {
+		return live == null ? -1 : live.getReadTimeoutMillis();
+	}
+
+	public void setReadTimeoutMillis(int readTimeoutMillis) {
+		requireLive().setReadTimeoutMillis(readTimeoutMillis);
+	}
+
+	public int getMaxConcurrency() {
+		if (priority != null) {
+			return priority.getMaxConcurrency();
+		}
+		return fairScheduling == null ? -1 : fairScheduling.getMaxConcurrency();
+	}
+
+	/**
+	 * Sets the limit on whichever of the client's schedulers exist.
+	 */
+	public void setMaxConcurrency(int maxConcurrency) {
+		if (priority == null && fairScheduling == null) {
+			throw new UnsupportedOperationException("This client has no concurrency limit");
+		}
+		if (priority != null) {
+			priority.setMaxConcurrency(maxConcurrency);
+		}
+		if (fairScheduling != null) {
+			fairScheduling.setMaxConcurrency(maxConcurrency);
+		}
+	}
+
+	public double getAvailableHedges() {
+		return hedging == null ? -1 : hedging.getAvailableHedges();
+	}
+
+	public double getCacheHitRatio() {
+		ObjectCache cache = client.getObjectCache();
+		return cache == null ? -1 : cache.getStats().getHitRatio();
+	}
+
+	public long getCacheHitCount() {
+		ObjectCache cache = client.getObjectCache();
+		return cache == null ? -1 : cache.getStats().getHitCount();
+	}
+
+	public long getCacheMissCount() {
+		ObjectCache cache = client.getObjectCache();
+		return cache == null ? -1 : cache.getStats().getMissCount();
+	}
+
+	public long getCacheEvictionCount() {
+		ObjectCache cache = client.getObjectCache();
+		return cache == null ? -1 : cache.getStats().getEvictionCount();
+	}
+
+	public void invalidateCache() {
+		ObjectCache cache = client.getObjectCache();
+		if (cache != null) {
+			cache.invalidateAll();
+		}
+	}
+
+	/**
+	 * Zeroes the request, error and connection counts. Requests in flight
+	 * are still counted as such.
+	 */
+	public void resetCounts() {
+		counter.requests.set(0);
+		counter.errors.set(0);
+		counter.errorsByType.clear();
+		counter.connectionsAcquired.set(0);
+		counter.newConnections.set(0);
+	}
+
+	private LiveStripeResponseGetter requireLive() {
+		if (live == null) {
+			throw new UnsupportedOperationException("This client's transport isn't a LiveStripeResponseGetter");
+		}
+		return live;
+	}
+
+	private StripeSSLSocketFactory stripeSocketFactory() {
+		SSLSocketFactory socketFactory = live == null ? null : live.getSSLSocketFactory();
+		return socketFactory instanceof StripeSSLSocketFactory ? (StripeSSLSocketFactory) socketFactory : null;
+	}
+
+	private static ObjectName objectName(String name) {
+		try {
+			return new ObjectName(String.format("%s:type=StripeClient,name=%s", DOMAIN, ObjectName.quote(name)));
+		} catch (MalformedObjectNameException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+
+	private static final class Counter extends RequestListener {
+		final AtomicLong inFlight = new AtomicLong();
+		final AtomicLong requests = new AtomicLong();
+		final AtomicLong errors = new AtomicLong();
+		final ConcurrentMap<String, AtomicLong> errorsByType = new ConcurrentHashMap<String, AtomicLong>();
+		final AtomicLong connectionsAcquired = new AtomicLong();
+		final AtomicLong newConnections = new AtomicLong();
+
+		@Override
+		public void onStart(RequestTrace trace) {
+			inFlight.incrementAndGet();
+			requests.incrementAndGet();
+		}
+
+		@Override
+		public void onConnectionAcquired(RequestTrace trace) {
+			connectionsAcquired.incrementAndGet();
+			if (trace.isNewConnection()) {
+				newConnections.incrementAndGet();
+			}
+		}
+
+		@Override
+		public void onDeserialized(RequestTrace trace) {
+			inFlight.decrementAndGet();
+		}
+
+		@Override
+		public void onError(RequestTrace trace, Throwable error) {
+			inFlight.decrementAndGet();
+			errors.incrementAndGet();
+			String type = error.getClass().getSimpleName();
+			AtomicLong count = errorsByType.get(type);
+			if (count == null) {
+				AtomicLong created = new AtomicLong();
+				count = errorsByType.putIfAbsent(type, created);
+				if (count == null) {
+					count = created;
+				}
+			}
+			count.incrementAndGet();
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package com.stripe.net;
+
+import com.stripe.exception.APIConnectionException;
+import com.stripe.exception.AuthenticationException;
+import com.stripe.exception.CardException;
+import com.stripe.exception.InvalidRequestException;
+import com.stripe.exception.RateLimitException;
+import com.stripe.exception.StripeException;
+
+/**
+ * A failed request, as returned in a {@link StripeResult}. Carries the same
+ * details as the exception that would otherwise have been thrown.
+ */
+public class StripeError {
+	public static final String CARD_ERROR = "card_error";
+	public static final String INVALID_REQUEST_ERROR = "invalid_request_error";
+	public static final String RATE_LIMIT_ERROR = "rate_limit_error";
+	public static final String AUTHENTICATION_ERROR = "authentication_error";
+	public static final String API_CONNECTION_ERROR = "api_connection_error";
+	public static final String API_ERROR = "api_error";
+
+	private final String type;
+	private final String message;
+	private final String code;
+	private final String declineCode;
+	private final String param;
+	private final String charge;
+	private final String requestId;
+	private final Integer statusCode;
+	private final StripeException exception;
+
+	private StripeError(String type, String code, String declineCode, String param, String charge,
+			StripeException exception) {
+		this.type = type;
+		this.message = exception.getMessage();
+		this.code = code;
+		this.declineCode = declineCode;
+		this.param = param;
+		this.charge = charge;
+		this.requestId = exception.getRequestId();
+		this.statusCode = exception.getStatusCode();
+		this.exception = exception;
+	}
+
+	static StripeError from(StripeException e) {
+		if (e instanceof CardException) {
+			CardException card = (CardException) e;
+			return new StripeError(CARD_ERROR, card.getCode(), card.getDeclineCode(), card.getParam(),
+					card.getCharge(), e);
+		} else if (e instanceof RateLimitException) {
+			return new StripeError(RATE_LIMIT_ERROR, null, null, ((RateLimitException) e).getParam(), null, e);
+		} else if (e instanceof InvalidRequestException) {
+			return new StripeError(INVALID_REQUEST_ERROR, null, null, ((InvalidRequestException) e).getParam(),
+					null, e);
+		} else if (e instanceof AuthenticationException) {
+			return new StripeError(AUTHENTICATION_ERROR, null, null, null, null, e);
+		} else if (e instanceof APIConnectionException) {
+			return new StripeError(API_CONNECTION_ERROR, null, null, null, null, e);
+		}
+		return new StripeError(API_ERROR, null, null, null, null, e);
+	}
+
+	/**
+	 * @return one of the error type constants on this class
+	 */
+	public String getType() {
+		return type;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	public String getCode() {
+		return code;
+	}
+
+	public String getDeclineCode() {
+		return declineCode;
+	}
+
+	public String getParam() {
+		return param;
+	}
+
+	public String getCharge() {
+		return charge;
+	}
+
+	public String getRequestId() {
+		return requestId;
+	}
+
+	public Integer getStatusCode() {
+		return statusCode;
+	}
+
+	/**
+	 * @return the exception the error was built from, which has no stack
+	 *         trace unless the request was made on another thread
+	 */
+	public StripeException getException() {
+		return exception;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("<%s code=%s decline_code=%s param=%s request-id=%s> %s",
+				type, code, declineCode, param, requestId, message);
+	}
+}
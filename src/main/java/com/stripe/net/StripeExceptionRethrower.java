@@ -0,0 +1,41 @@
+package com.stripe.net;
+
+import com.stripe.exception.APIConnectionException;
+import com.stripe.exception.APIException;
+import com.stripe.exception.AuthenticationException;
+import com.stripe.exception.CardException;
+import com.stripe.exception.InvalidRequestException;
+
+/**
+ * Rethrows a failure captured on one thread (or by one request) using the
+ * checked exception types declared by {@link StripeResponseGetter#request}.
+ */
+final class StripeExceptionRethrower {
+	private StripeExceptionRethrower() {
+	}
+
+	/*
+	 * Always throws; the return type only exists so callers can write
+	 * `throw rethrow(e);` and keep the compiler's flow analysis happy.
+	 */
+	static RuntimeException rethrow(Throwable t) throws AuthenticationException,
+			InvalidRequestException, APIConnectionException, CardException,
+			APIException {
+		if (t instanceof AuthenticationException) {
+			throw (AuthenticationException) t;
+		} else if (t instanceof InvalidRequestException) {
+			throw (InvalidRequestException) t;
+		} else if (t instanceof APIConnectionException) {
+			throw (APIConnectionException) t;
+		} else if (t instanceof CardException) {
+			throw (CardException) t;
+		} else if (t instanceof APIException) {
+			throw (APIException) t;
+		} else if (t instanceof RuntimeException) {
+			throw (RuntimeException) t;
+		} else if (t instanceof Error) {
+			throw (Error) t;
+		}
+		throw new APIException(t.getMessage(), null, 0, t);
+	}
+}
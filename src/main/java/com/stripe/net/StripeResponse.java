@@ -8,6 +8,7 @@ public class StripeResponse {
 	int responseCode;
 	String responseBody;
 	Map<String, List<String>> responseHeaders;
+	ResponseMetadata metadata;
 	
 	public StripeResponse(int responseCode, String responseBody) {
 		this.responseCode = responseCode;
@@ -39,4 +40,17 @@ public class StripeResponse {
 	public Map<String, List<String>> getResponseHeaders() {
 		return responseHeaders;
 	}
+
+	/**
+	 * @return timings and sizes for the request, once the response has been
+	 *         turned into an object; null for responses that didn't come from
+	 *         a {@link LiveStripeResponseGetter}
+	 */
+	public ResponseMetadata getMetadata() {
+		return metadata;
+	}
+
+	void setMetadata(ResponseMetadata metadata) {
+		this.metadata = metadata;
+	}
 }
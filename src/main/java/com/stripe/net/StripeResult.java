@@ -0,0 +1,65 @@
+package com.stripe.net;
+
+import com.stripe.exception.StripeException;
+
+/**
+ * The outcome of a request made without throwing: either the object Stripe
+ * returned or a {@link StripeError} describing why it failed. Checking a
+ * result is much cheaper than catching an exception, which matters where
+ * failures are routine, such as card declines:
+ *
+ * <pre>
+ * StripeResult&lt;Charge&gt; result = Charge.createResult(params, options);
+ * if (result.isSuccess()) {
+ *   fulfil(result.getValue());
+ * } else if (StripeError.CARD_ERROR.equals(result.getError().getType())) {
+ *   showDecline(result.getError().getDeclineCode());
+ * }
+ * </pre>
+ */
+public final class StripeResult<T> {
+	private final T value;
+	private final StripeError error;
+
+	private StripeResult(T value, StripeError error) {
+		this.value = value;
+		this.error = error;
+	}
+
+	static <T> StripeResult<T> success(T value) {
+		return new StripeResult<T>(value, null);
+	}
+
+	static <T> StripeResult<T> failure(StripeError error) {
+		return new StripeResult<T>(null, error);
+	}
+
+	public boolean isSuccess() {
+		return error == null;
+	}
+
+	/**
+	 * @return the object Stripe returned, or null if the request failed
+	 */
+	public T getValue() {
+		return value;
+	}
+
+	/**
+	 * @return why the request failed, or null if it succeeded
+	 */
+	public StripeError getError() {
+		return error;
+	}
+
+	/**
+	 * @return the object Stripe returned
+	 * @throws StripeException the exception the request failed with
+	 */
+	public T getOrThrow() throws StripeException {
+		if (error != null) {
+			throw error.getException();
+		}
+		return value;
+	}
+}
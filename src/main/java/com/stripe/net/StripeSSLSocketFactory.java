@@ -1,7 +1,10 @@
 package com.stripe.net;
 
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
 import java.io.IOException;
@@ -10,20 +13,49 @@ import java.net.Socket;
 import java.net.UnknownHostException;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Wraps a SSLSocketFactory and enables more TLS versions
+ * Wraps a SSLSocketFactory and enables more TLS versions.
+ *
+ * Also keeps count of TLS handshakes, how many of them resumed an earlier
+ * session rather than doing a full key exchange, and how long they took.
  */
 public class StripeSSLSocketFactory extends SSLSocketFactory {
     private final SSLSocketFactory under;
     private final boolean tlsv11Supported, tlsv12Supported;
+    private final String[] defaultCipherSuites;
+    private final String[] supportedCipherSuites;
+    // Worked out from the first socket, since every socket starts out the same
+    private volatile String[] enabledProtocols;
+
+    private final LatencyHistogram handshakeLatency = new LatencyHistogram();
+    private final AtomicLong resumedHandshakeCount = new AtomicLong();
 
     private static final String TLSv11Proto = "TLSv1.1", TLSv12Proto = "TLSv1.2";
 
     public StripeSSLSocketFactory() {
-        this.under = HttpsURLConnection.getDefaultSSLSocketFactory();
+        this(HttpsURLConnection.getDefaultSSLSocketFactory());
+    }
+
+    /**
+     * Uses {@code context} for new sockets, with its client session cache
+     * limited to {@code sessionCacheSize} sessions (0 for no limit) kept for
+     * {@code sessionTimeoutSeconds} (0 for no limit). Sessions in the cache can
+     * be resumed, which makes reconnecting to Stripe much cheaper than a full
+     * handshake.
+     *
+     * Note that this changes the session cache of {@code context}, so pass in
+     * a context of your own rather than the JVM's default one.
+     */
+    public StripeSSLSocketFactory(SSLContext context, int sessionCacheSize, int sessionTimeoutSeconds) {
+        this(configureSessionCache(context, sessionCacheSize, sessionTimeoutSeconds).getSocketFactory());
+    }
+
+    private StripeSSLSocketFactory(SSLSocketFactory under) {
+        this.under = under;
 
         // For sufficiently old Java, TLSv1.1 and TLSv1.2 might not be supported, so do some detection
         boolean tlsv11Supported = false, tlsv12Supported = false;
@@ -44,6 +76,33 @@ public class StripeSSLSocketFactory extends SSLSocketFactory {
 
         this.tlsv11Supported = tlsv11Supported;
         this.tlsv12Supported = tlsv12Supported;
+        this.defaultCipherSuites = under.getDefaultCipherSuites();
+        this.supportedCipherSuites = under.getSupportedCipherSuites();
+    }
+
+    private static SSLContext configureSessionCache(SSLContext context, int sessionCacheSize, int sessionTimeoutSeconds) {
+        SSLSessionContext sessions = context.getClientSessionContext();
+        sessions.setSessionCacheSize(sessionCacheSize);
+        sessions.setSessionTimeout(sessionTimeoutSeconds);
+        return context;
+    }
+
+    /**
+     * @return how long handshakes took, from the creation of each TLS socket
+     */
+    public LatencyHistogram getHandshakeLatency() {
+        return handshakeLatency;
+    }
+
+    public long getHandshakeCount() {
+        return handshakeLatency.getCount();
+    }
+
+    /**
+     * @return handshakes that resumed a cached session
+     */
+    public long getResumedHandshakeCount() {
+        return resumedHandshakeCount.get();
     }
 
     private Socket fixupSocket(Socket sock) {
@@ -53,26 +112,51 @@ public class StripeSSLSocketFactory extends SSLSocketFactory {
 
         SSLSocket sslSock = (SSLSocket) sock;
 
-        Set<String> protos = new HashSet<String>(Arrays.asList(sslSock.getEnabledProtocols()));
-        if (tlsv11Supported) {
-            protos.add(TLSv11Proto);
-        }
-        if (tlsv12Supported) {
-            protos.add(TLSv12Proto);
+        String[] protos = enabledProtocols;
+        if (protos == null) {
+            Set<String> protoSet = new LinkedHashSet<String>(Arrays.asList(sslSock.getEnabledProtocols()));
+            if (tlsv11Supported) {
+                protoSet.add(TLSv11Proto);
+            }
+            if (tlsv12Supported) {
+                protoSet.add(TLSv12Proto);
+            }
+            protos = protoSet.toArray(new String[0]);
+            enabledProtocols = protos;
         }
 
-        sslSock.setEnabledProtocols(protos.toArray(new String[0]));
+        sslSock.setEnabledProtocols(protos);
+        sslSock.addHandshakeCompletedListener(new HandshakeTimer());
+        RequestTrace.socketCreated();
         return sslSock;
     }
 
+    /*
+     * Handshakes happen after the socket is created, so the listener is
+     * created with the socket and reports on completion. A resumed session
+     * was created before this socket was.
+     */
+    private class HandshakeTimer implements HandshakeCompletedListener {
+        private final long startNanos = System.nanoTime();
+        private final long startMillis = System.currentTimeMillis();
+
+        public void handshakeCompleted(HandshakeCompletedEvent event) {
+            handshakeLatency.recordNanos(System.nanoTime() - startNanos);
+            if (event.getSession().getCreationTime() < startMillis) {
+                resumedHandshakeCount.incrementAndGet();
+            }
+            event.getSocket().removeHandshakeCompletedListener(this);
+        }
+    }
+
     @Override
     public String[] getDefaultCipherSuites() {
-        return this.under.getDefaultCipherSuites();
+        return this.defaultCipherSuites.clone();
     }
 
     @Override
     public String[] getSupportedCipherSuites() {
-        return this.under.getSupportedCipherSuites();
+        return this.supportedCipherSuites.clone();
     }
 
     @Override
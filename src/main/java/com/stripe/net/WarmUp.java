@@ -0,0 +1,123 @@
+package com.stripe.net;
+
+import com.google.gson.Gson;
+import com.stripe.Stripe;
+import com.stripe.model.Account;
+import com.stripe.model.ApplicationFee;
+import com.stripe.model.Balance;
+import com.stripe.model.BalanceTransaction;
+import com.stripe.model.BalanceTransactionCollection;
+import com.stripe.model.BitcoinReceiver;
+import com.stripe.model.Charge;
+import com.stripe.model.ChargeCollection;
+import com.stripe.model.Coupon;
+import com.stripe.model.Customer;
+import com.stripe.model.CustomerCollection;
+import com.stripe.model.Dispute;
+import com.stripe.model.Event;
+import com.stripe.model.EventCollection;
+import com.stripe.model.FileUpload;
+import com.stripe.model.Invoice;
+import com.stripe.model.InvoiceCollection;
+import com.stripe.model.InvoiceItem;
+import com.stripe.model.Order;
+import com.stripe.model.Plan;
+import com.stripe.model.Product;
+import com.stripe.model.Recipient;
+import com.stripe.model.Refund;
+import com.stripe.model.SKU;
+import com.stripe.model.StripeObject;
+import com.stripe.model.Subscription;
+import com.stripe.model.Token;
+import com.stripe.model.Transfer;
+import com.stripe.model.TransferCollection;
+
+import java.net.InetAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Does the one-off work of the first call into Stripe ahead of time: loading
+ * and building the JSON adapters for the model classes, setting up TLS,
+ * resolving the API host and, optionally, opening connections. The pieces run
+ * in parallel. See {@link Stripe#warmUp(int)}.
+ */
+public final class WarmUp {
+	/*
+	 * The objects requests return. Adapters for the objects they contain are
+	 * built along with them.
+	 */
+	private static final Class<?>[] MODEL_CLASSES = {
+			Account.class, ApplicationFee.class, Balance.class, BalanceTransaction.class,
+			BalanceTransactionCollection.class, BitcoinReceiver.class, Charge.class, ChargeCollection.class,
+			Coupon.class, Customer.class, CustomerCollection.class, Dispute.class, Event.class,
+			EventCollection.class, FileUpload.class, Invoice.class, InvoiceCollection.class, InvoiceItem.class,
+			Order.class, Plan.class, Product.class, Recipient.class, Refund.class, SKU.class,
+			Subscription.class, Token.class, Transfer.class, TransferCollection.class };
+
+	private WarmUp() {
+	}
+
+	/**
+	 * Warms up everything a request through {@code client} needs, and opens
+	 * {@code connections} connections to its API base.
+	 *
+	 * @return the number of connections that were opened
+	 */
+	public static int run(final StripeClient client, final int connections) {
+		final AtomicInteger opened = new AtomicInteger();
+		List<Thread> threads = new ArrayList<Thread>();
+		threads.add(start(new Runnable() {
+			public void run() {
+				buildAdapters(APIResource.GSON);
+			}
+		}));
+		threads.add(start(new Runnable() {
+			public void run() {
+				buildAdapters(StripeObject.PRETTY_PRINT_GSON);
+			}
+		}));
+		threads.add(start(new Runnable() {
+			public void run() {
+				String apiBase = client.getApiBase() != null ? client.getApiBase() : Stripe.getApiBase();
+				resolve(apiBase);
+				// Building the getter sets up the TLS socket factory
+				StripeResponseGetter getter = client.getResponseGetter();
+				if (connections > 0 && getter instanceof LiveStripeResponseGetter) {
+					opened.set(((LiveStripeResponseGetter) getter).warmUp(apiBase, connections));
+				}
+			}
+		}));
+		try {
+			for (Thread thread : threads) {
+				thread.join();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return opened.get();
+	}
+
+	private static Thread start(Runnable task) {
+		Thread thread = new Thread(task, "stripe-warm-up");
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+
+	private static void buildAdapters(Gson gson) {
+		for (Class<?> modelClass : MODEL_CLASSES) {
+			gson.getAdapter(modelClass);
+		}
+	}
+
+	private static void resolve(String apiBase) {
+		try {
+			InetAddress.getAllByName(new URL(apiBase).getHost());
+		} catch (Exception e) {
+			// The first request will report it
+		}
+	}
+}
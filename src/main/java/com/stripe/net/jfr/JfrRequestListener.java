@@ -0,0 +1,98 @@
+package com.stripe.net.jfr;
+
+import com.stripe.net.RequestListener;
+import com.stripe.net.RequestTrace;
+
+/**
+ * Emits a {@link StripeRequestEvent} for every request and a
+ * {@link StripeDeserializationEvent} for every response parsed, whenever a
+ * Flight Recorder recording has them enabled. Otherwise each request costs a
+ * check of whether the event is enabled.
+ *
+ * Every {@code LiveStripeResponseGetter} registers this on its own when it
+ * runs on JDK 11 or later and the jar was built there; set the
+ * {@code com.stripe.net.jfr.disabled} system property to {@code true} to stop
+ * it.
+ */
+public class JfrRequestListener extends RequestListener {
+	// Callbacks for a request all run on the thread sending it
+	private static final ThreadLocal<StripeRequestEvent> REQUEST = new ThreadLocal<>();
+	private static final ThreadLocal<StripeDeserializationEvent> DESERIALIZATION = new ThreadLocal<>();
+
+	@Override
+	public void onStart(RequestTrace trace) {
+		StripeRequestEvent event = new StripeRequestEvent();
+		if (!event.isEnabled()) {
+			REQUEST.set(null);
+			return;
+		}
+		event.begin();
+		REQUEST.set(event);
+	}
+
+	@Override
+	public void onBodyRead(RequestTrace trace) {
+		if (trace.getStatusCode() < 200 || trace.getStatusCode() >= 300) {
+			// Error responses aren't turned into objects
+			return;
+		}
+		StripeDeserializationEvent event = new StripeDeserializationEvent();
+		if (!event.isEnabled()) {
+			return;
+		}
+		event.begin();
+		DESERIALIZATION.set(event);
+	}
+
+	@Override
+	public void onDeserialized(RequestTrace trace) {
+		StripeDeserializationEvent deserialization = DESERIALIZATION.get();
+		if (deserialization != null) {
+			DESERIALIZATION.set(null);
+			deserialization.end();
+			if (deserialization.shouldCommit()) {
+				deserialization.endpoint = trace.getEndpoint();
+				deserialization.responseBytes = trace.getResponseBytes();
+				deserialization.requestId = trace.getRequestId();
+				deserialization.commit();
+			}
+		}
+		finish(trace, null);
+	}
+
+	@Override
+	public void onError(RequestTrace trace, Throwable error) {
+		DESERIALIZATION.set(null);
+		finish(trace, error);
+	}
+
+	private static void finish(RequestTrace trace, Throwable error) {
+		StripeRequestEvent event = REQUEST.get();
+		if (event == null) {
+			return;
+		}
+		REQUEST.set(null);
+		event.end();
+		if (!event.shouldCommit()) {
+			return;
+		}
+		event.method = trace.getMethod().name();
+		event.endpoint = trace.getEndpoint();
+		event.statusCode = trace.getStatusCode();
+		event.requestBytes = trace.getRequestBytes();
+		event.responseBytes = trace.getResponseBytes();
+		event.attempt = trace.getAttempt();
+		event.connectionReused = trace.getConnectedNanos() != 0 && !trace.isNewConnection();
+		if (trace.getBodyReadNanos() != 0) {
+			event.networkTime = trace.getBodyReadNanos() - trace.getStartNanos();
+		}
+		if (trace.getDeserializedNanos() != 0) {
+			event.deserializationTime = trace.getDeserializedNanos() - trace.getBodyReadNanos();
+		}
+		event.requestId = trace.getRequestId();
+		if (error != null) {
+			event.error = error.getClass().getName();
+		}
+		event.commit();
+	}
+}
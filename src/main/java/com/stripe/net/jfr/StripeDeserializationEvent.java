@@ -0,0 +1,28 @@
+package com.stripe.net.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Turning one Stripe response into an object with {@code APIResource.GSON}.
+ */
+@Name("com.stripe.Deserialization")
+@Label("Stripe Deserialization")
+@Category("Stripe")
+@Description("Parsing a Stripe API response")
+@StackTrace(false)
+public class StripeDeserializationEvent extends jdk.jfr.Event {
+	@Label("Endpoint")
+	public String endpoint;
+
+	@Label("Response Size")
+	@DataAmount
+	public long responseBytes;
+
+	@Label("Request Id")
+	public String requestId;
+}
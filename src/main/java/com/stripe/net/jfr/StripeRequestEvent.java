@@ -0,0 +1,63 @@
+package com.stripe.net.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * One request to the Stripe API, from just before it was sent until its
+ * response was turned into an object or it failed.
+ */
+@Name("com.stripe.Request")
+@Label("Stripe Request")
+@Category("Stripe")
+@Description("A request to the Stripe API")
+@StackTrace(false)
+public class StripeRequestEvent extends jdk.jfr.Event {
+	@Label("Method")
+	public String method;
+
+	@Label("Endpoint")
+	@Description("The request path with object ids replaced by {id}")
+	public String endpoint;
+
+	@Label("Status Code")
+	@Description("The HTTP status code, or 0 if there was no response")
+	public int statusCode;
+
+	@Label("Request Size")
+	@DataAmount
+	public long requestBytes;
+
+	@Label("Response Size")
+	@DataAmount
+	public long responseBytes;
+
+	@Label("Attempt")
+	@Description("1 for the first attempt at a request, 2 for the first retry and so on")
+	public int attempt;
+
+	@Label("Connection Reused")
+	@Description("Whether the request went over a kept-alive connection rather than a new TLS connection")
+	public boolean connectionReused;
+
+	@Label("Network Time")
+	@Description("Time from sending the request to having read the response body")
+	@Timespan(Timespan.NANOSECONDS)
+	public long networkTime;
+
+	@Label("Deserialization Time")
+	@Timespan(Timespan.NANOSECONDS)
+	public long deserializationTime;
+
+	@Label("Request Id")
+	public String requestId;
+
+	@Label("Error")
+	@Description("The class of the exception the request failed with, if it did")
+	public String error;
+}
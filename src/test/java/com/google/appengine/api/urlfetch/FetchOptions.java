@@ -0,0 +1,39 @@
+package com.google.appengine.api.urlfetch;
+
+/**
+ * Stand-in for the App Engine SDK class of the same name.
+ */
+public final class FetchOptions {
+	private final boolean validateCertificate;
+	private Double deadline;
+
+	private FetchOptions(boolean validateCertificate) {
+		this.validateCertificate = validateCertificate;
+	}
+
+	public FetchOptions setDeadline(Double deadline) {
+		this.deadline = deadline;
+		return this;
+	}
+
+	public Double getDeadline() {
+		return deadline;
+	}
+
+	public boolean getValidateCertificate() {
+		return validateCertificate;
+	}
+
+	public static final class Builder {
+		private Builder() {
+		}
+
+		public static FetchOptions validateCertificate() {
+			return new FetchOptions(true);
+		}
+
+		public static FetchOptions withDefaults() {
+			return new FetchOptions(false);
+		}
+	}
+}
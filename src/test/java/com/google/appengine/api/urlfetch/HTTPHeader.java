@@ -0,0 +1,22 @@
+package com.google.appengine.api.urlfetch;
+
+/**
+ * Stand-in for the App Engine SDK class of the same name.
+ */
+public class HTTPHeader {
+	private final String name;
+	private final String value;
+
+	public HTTPHeader(String name, String value) {
+		this.name = name;
+		this.value = value;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getValue() {
+		return value;
+	}
+}
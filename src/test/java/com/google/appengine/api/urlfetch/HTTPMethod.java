@@ -0,0 +1,8 @@
+package com.google.appengine.api.urlfetch;
+
+/**
+ * Stand-in for the App Engine SDK class of the same name.
+ */
+public enum HTTPMethod {
+	GET, POST, HEAD, PUT, DELETE
+}
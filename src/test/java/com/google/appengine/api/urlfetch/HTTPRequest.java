@@ -0,0 +1,50 @@
+package com.google.appengine.api.urlfetch;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stand-in for the App Engine SDK class of the same name.
+ */
+public class HTTPRequest {
+	private final URL url;
+	private final HTTPMethod method;
+	private final FetchOptions fetchOptions;
+	private final List<HTTPHeader> headers = new ArrayList<HTTPHeader>();
+	private byte[] payload;
+
+	public HTTPRequest(URL url, HTTPMethod method, FetchOptions fetchOptions) {
+		this.url = url;
+		this.method = method;
+		this.fetchOptions = fetchOptions;
+	}
+
+	public void setPayload(byte[] payload) {
+		this.payload = payload;
+	}
+
+	public void setHeader(HTTPHeader header) {
+		headers.add(header);
+	}
+
+	public URL getURL() {
+		return url;
+	}
+
+	public HTTPMethod getMethod() {
+		return method;
+	}
+
+	public FetchOptions getFetchOptions() {
+		return fetchOptions;
+	}
+
+	public List<HTTPHeader> getHeaders() {
+		return headers;
+	}
+
+	public byte[] getPayload() {
+		return payload;
+	}
+}
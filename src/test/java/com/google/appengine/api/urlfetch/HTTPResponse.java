@@ -0,0 +1,22 @@
+package com.google.appengine.api.urlfetch;
+
+/**
+ * Stand-in for the App Engine SDK class of the same name.
+ */
+public final class HTTPResponse {
+	private final int responseCode;
+	private final byte[] content;
+
+	public HTTPResponse(int responseCode, byte[] content) {
+		this.responseCode = responseCode;
+		this.content = content;
+	}
+
+	public int getResponseCode() {
+		return responseCode;
+	}
+
+	public byte[] getContent() {
+		return content;
+	}
+}
@@ -0,0 +1,8 @@
+package com.google.appengine.api.urlfetch;
+
+/**
+ * Stand-in for the App Engine SDK interface of the same name.
+ */
+public interface URLFetchService {
+	HTTPResponse fetch(HTTPRequest request);
+}
@@ -0,0 +1,135 @@
+package com.stripe;
+
+import com.google.common.collect.Lists;
+import com.google.common.reflect.ClassPath;
+import com.stripe.model.Charge;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keeps the GraalVM native-image metadata shipped in the jar in step with the
+ * model classes Gson reflects over. After adding or renaming a model class,
+ * regenerate it by running this class's main method from the project root.
+ */
+public class NativeImageMetadataTest {
+	static final File REFLECT_CONFIG =
+			new File("src/main/resources/META-INF/native-image/com.stripe/stripe-java/reflect-config.json");
+
+	/*
+	 * Classes outside com.stripe.model that Gson builds from responses.
+	 */
+	private static final String[] OTHER_REFLECTED_CLASSES = {
+			"com.stripe.net.LiveStripeResponseGetter$Error",
+			"com.stripe.net.LiveStripeResponseGetter$ErrorContainer" };
+
+	public static void main(String[] args) throws IOException {
+		OutputStream out = new FileOutputStream(REFLECT_CONFIG);
+		try {
+			out.write(reflectConfig().getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+	}
+
+	@Test
+	public void testReflectConfigIsUpToDate() throws IOException {
+		Assert.assertTrue(String.format("Expected %s to exist", REFLECT_CONFIG), REFLECT_CONFIG.isFile());
+		Assert.assertEquals(String.format(
+				"%s is out of date; regenerate it with NativeImageMetadataTest's main method", REFLECT_CONFIG),
+				reflectConfig(), read(REFLECT_CONFIG));
+	}
+
+	@Test
+	public void testReflectConfigIsPackaged() {
+		Assert.assertNotNull(getClass().getClassLoader().getResource(
+				"META-INF/native-image/com.stripe/stripe-java/reflect-config.json"));
+		Assert.assertNotNull(getClass().getClassLoader().getResource(
+				"META-INF/native-image/com.stripe/stripe-java/native-image.properties"));
+	}
+
+	static String reflectConfig() throws IOException {
+		String modelPackage = Charge.class.getPackage().getName();
+		List<String> classNames = Lists.newArrayList(OTHER_REFLECTED_CLASSES);
+		// Only the main classes, leaving out the tests that share the package.
+		// Scanned on their own since Guava can't list JDK 9+'s class path.
+		URL mainClasses = Charge.class.getProtectionDomain().getCodeSource().getLocation();
+		for (ClassPath.ClassInfo classInfo : ClassPath.from(new URLClassLoader(new URL[] { mainClasses }, null))
+				.getAllClasses()) {
+			if (!classInfo.getPackageName().equals(modelPackage)) {
+				continue;
+			}
+			Class<?> c;
+			try {
+				c = Class.forName(classInfo.getName());
+			} catch (ClassNotFoundException e) {
+				throw new IllegalStateException(e);
+			}
+			if (c.isAnonymousClass() || c.isInterface()) {
+				continue;
+			}
+			classNames.add(c.getName());
+		}
+		Collections.sort(classNames);
+
+		StringBuilder json = new StringBuilder("[\n");
+		for (int i = 0; i < classNames.size(); i++) {
+			String className = classNames.get(i);
+			json.append("  {\n");
+			json.append("    \"name\": \"").append(className).append("\",\n");
+			if (needsUnsafeAllocation(className)) {
+				json.append("    \"unsafeAllocated\": true,\n");
+			}
+			json.append("    \"allDeclaredFields\": true,\n");
+			json.append("    \"allDeclaredConstructors\": true\n");
+			json.append(i < classNames.size() - 1 ? "  },\n" : "  }\n");
+		}
+		return json.append("]\n").toString();
+	}
+
+	/*
+	 * Gson falls back to allocating instances without a constructor for
+	 * classes that have no no-argument one.
+	 */
+	private static boolean needsUnsafeAllocation(String className) {
+		try {
+			Class<?> c = Class.forName(className);
+			if (Modifier.isAbstract(c.getModifiers())) {
+				return false;
+			}
+			c.getDeclaredConstructor();
+			return false;
+		} catch (ClassNotFoundException e) {
+			throw new IllegalStateException(e);
+		} catch (NoSuchMethodException e) {
+			return true;
+		}
+	}
+
+	private static String read(File file) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			ByteArrayOutputStream contents = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				contents.write(buffer, 0, read);
+			}
+			return contents.toString("UTF-8");
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,34 @@
+package com.stripe;
+
+import com.stripe.model.Charge;
+import com.stripe.model.Customer;
+import com.stripe.model.Event;
+
+/**
+ * Retrieves a charge, a customer and an event from the API base given as the
+ * only argument, and prints what it got. Built into a native image by the
+ * {@code native} profile; see {@link NativeImageSmokeTest}.
+ */
+public class NativeImageSmoke {
+	public static void main(String[] args) throws Exception {
+		long start = System.nanoTime();
+		System.out.print(run(args[0]));
+		System.out.printf("took %dms%n", (System.nanoTime() - start) / 1000000);
+	}
+
+	static String run(String apiBase) throws Exception {
+		Stripe.overrideApiBase(apiBase);
+		Stripe.apiKey = "sk_test_smoke";
+		try {
+			Charge charge = Charge.retrieve("ch_123");
+			Customer customer = Customer.retrieve("cus_123");
+			Event event = Event.retrieve("evt_123");
+			return String.format("charge %s refunds=%d%ncustomer %s sources=%d%nevent %s object=%s%n",
+					charge.getId(), charge.getRefunds().getData().size(),
+					customer.getId(), customer.getSources().getData().size(),
+					event.getType(), event.getData().getObject().getClass().getSimpleName());
+		} finally {
+			Stripe.overrideApiBase(Stripe.LIVE_API_BASE);
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package com.stripe;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs {@link NativeImageSmoke} against a local stand-in for the API, on the
+ * JVM and, when built with {@code mvn -Pnative test}, as a native image whose
+ * path is in the {@code stripe.nativeImage} system property.
+ */
+public class NativeImageSmokeTest {
+	private static final String EXPECTED = String.format(
+			"charge ch_104But4hAU1NpT8JeeCuY1oU refunds=2%n"
+			+ "customer cus_123 sources=1%n"
+			+ "event account.updated object=Account%n");
+
+	HttpServer server;
+	String apiBase;
+
+	@Before
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		serve("/v1/charges/ch_123", "model/charge_with_refund_sublist.json");
+		serve("/v1/customers/cus_123", "model/customer_with_external_account.json");
+		serve("/v1/events/evt_123", "model/account_event.json");
+		server.start();
+		apiBase = String.format("http://127.0.0.1:%d", server.getAddress().getPort());
+	}
+
+	@After
+	public void stopServer() {
+		server.stop(0);
+	}
+
+	@Test
+	public void testSmokeOnJvm() throws Exception {
+		assertEquals(EXPECTED, NativeImageSmoke.run(apiBase));
+	}
+
+	@Test
+	public void testSmokeInNativeImage() throws Exception {
+		String image = System.getProperty("stripe.nativeImage");
+		Assume.assumeTrue(image != null && !image.isEmpty());
+
+		Process process = new ProcessBuilder(image, apiBase).redirectErrorStream(true).start();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8"));
+		StringBuilder output = new StringBuilder();
+		String line;
+		while ((line = reader.readLine()) != null) {
+			output.append(line).append(String.format("%n"));
+		}
+		assertEquals(output.toString(), 0, process.waitFor());
+		assertTrue(output.toString(), output.toString().startsWith(EXPECTED));
+	}
+
+	private void serve(String path, final String fixture) {
+		server.createContext(path, new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				byte[] body = read(fixture);
+				exchange.sendResponseHeaders(200, body.length);
+				exchange.getResponseBody().write(body);
+				exchange.close();
+			}
+		});
+	}
+
+	private byte[] read(String fixture) throws IOException {
+		InputStream in = getClass().getResourceAsStream(fixture);
+		try {
+			ByteArrayOutputStream contents = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				contents.write(buffer, 0, read);
+			}
+			return contents.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package com.stripe.model;
+
+import com.stripe.BaseStripeTest;
+import com.stripe.exception.CardException;
+import com.stripe.exception.StripeException;
+import com.stripe.net.APIResource;
+import com.stripe.net.LiveStripeResponseGetter;
+import com.stripe.net.RequestOptions;
+import com.stripe.net.StripeError;
+import com.stripe.net.StripeResult;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.when;
+
+public class ChargeTest extends BaseStripeTest {
+	@Before
+	public void mockStripeResponseGetter() {
+		APIResource.setStripeResponseGetter(networkMock);
+	}
+
+	@After
+	public void unmockStripeResponseGetter() {
+		/* This needs to be done because tests aren't isolated in Java */
+		APIResource.setStripeResponseGetter(new LiveStripeResponseGetter());
+		StripeException.setCaptureStackTraces(true);
+	}
+
+	@Test
+	public void testCreateResultSuccess() throws StripeException {
+		stubNetwork(Charge.class, "{\"id\": \"ch_123\", \"object\": \"charge\"}");
+		Map<String, Object> params = new HashMap<String, Object>();
+		params.put("amount", 100);
+
+		StripeResult<Charge> result = Charge.createResult(params);
+
+		assertTrue(result.isSuccess());
+		assertNull(result.getError());
+		assertEquals("ch_123", result.getValue().getId());
+		verifyPost(Charge.class, "https://api.stripe.com/v1/charges", params);
+	}
+
+	@Test
+	public void testCreateResultDecline() throws StripeException {
+		stubDecline();
+
+		StripeResult<Charge> result = Charge.createResult(new HashMap<String, Object>());
+
+		assertFalse(result.isSuccess());
+		assertNull(result.getValue());
+		StripeError error = result.getError();
+		assertEquals(StripeError.CARD_ERROR, error.getType());
+		assertEquals("card_declined", error.getCode());
+		assertEquals("insufficient_funds", error.getDeclineCode());
+		assertEquals("ch_declined", error.getCharge());
+		assertEquals("req_123", error.getRequestId());
+		assertEquals((Integer) 402, error.getStatusCode());
+		assertEquals("Your card has insufficient funds.", error.getMessage());
+		assertEquals(0, error.getException().getStackTrace().length);
+		try {
+			result.getOrThrow();
+			fail("Expected the decline to be thrown");
+		} catch (CardException e) {
+			assertSame(error.getException(), e);
+		}
+	}
+
+	@Test
+	public void testCreateCapturesStackTracesByDefault() throws StripeException {
+		stubDecline();
+		try {
+			Charge.create(new HashMap<String, Object>());
+			fail("Expected a decline");
+		} catch (CardException e) {
+			assertTrue(e.getStackTrace().length > 0);
+		}
+	}
+
+	@Test
+	public void testStackTraceCaptureCanBeTurnedOff() throws StripeException {
+		stubDecline();
+		StripeException.setCaptureStackTraces(false);
+		try {
+			Charge.create(new HashMap<String, Object>());
+			fail("Expected a decline");
+		} catch (CardException e) {
+			assertEquals(0, e.getStackTrace().length);
+		}
+	}
+
+	private static void stubDecline() throws StripeException {
+		when(networkMock.request(
+				Mockito.any(APIResource.RequestMethod.class),
+				Mockito.anyString(),
+				Mockito.<Map<String, Object>>any(),
+				Mockito.<Class<Charge>>any(),
+				Mockito.any(APIResource.RequestType.class),
+				Mockito.any(RequestOptions.class))).thenAnswer(new Answer<Charge>() {
+					public Charge answer(InvocationOnMock invocation) throws CardException {
+						// Created here, as the transport would, so capture settings apply
+						throw new CardException("Your card has insufficient funds.", "req_123", "card_declined",
+								null, "insufficient_funds", "ch_declined", 402, null);
+					}
+				});
+	}
+}
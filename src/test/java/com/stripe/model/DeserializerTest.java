@@ -10,6 +10,7 @@ import java.util.List;
 
 import static org.hamcrest.core.IsNull.notNullValue;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 
 public class DeserializerTest extends BaseStripeTest {
@@ -124,4 +125,21 @@ public class DeserializerTest extends BaseStripeTest {
 		assertEquals("fr_104Buu4hAU1NpT8JMBAc564Q", refunds.get(0).getId());
 		assertEquals("fee_4UNP26L2Vuc42P", refunds.get(0).getFee());
 	}
+
+	@Test
+	public void deserializeExpandableFields() throws IOException {
+		String json = resource("charge_expanded.json");
+		Charge charge = gson.fromJson(json, Charge.class);
+
+		assertEquals("cus_6zEz7aO3FiHXvL", charge.getCustomer());
+		assertEquals("jenny.rosen@example.com", charge.getCustomerObject().getEmail());
+		assertEquals("txn_16mGhB2eZvKYlo2CZoXk2aYF", charge.getBalanceTransaction());
+		assertEquals(Integer.valueOf(88), charge.getBalanceTransactionObject().getFee());
+		assertEquals("in_16mGh92eZvKYlo2CuJgGBBuT", charge.getInvoice());
+		assertNull(charge.getInvoiceObject());
+
+		charge.setCustomer("cus_other");
+		assertEquals("cus_other", charge.getCustomer());
+		assertNull(charge.getCustomerObject());
+	}
 }
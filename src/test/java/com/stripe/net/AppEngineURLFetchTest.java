@@ -0,0 +1,56 @@
+package com.stripe.net;
+
+import com.google.appengine.api.urlfetch.HTTPHeader;
+import com.google.appengine.api.urlfetch.HTTPMethod;
+import com.google.appengine.api.urlfetch.HTTPRequest;
+import com.google.appengine.api.urlfetch.URLFetchServiceFactory;
+
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class AppEngineURLFetchTest {
+	@Test
+	public void testLookupsAreCached() throws Exception {
+		assertSame(AppEngineURLFetch.get(), AppEngineURLFetch.get());
+	}
+
+	@Test
+	public void testFetch() throws Exception {
+		Map<String, String> headers = new LinkedHashMap<String, String>();
+		headers.put("Authorization", "Bearer sk_test");
+		headers.put("Stripe-Version", "2015-10-16");
+
+		StripeResponse response = AppEngineURLFetch.get().fetch(APIResource.RequestMethod.POST,
+				new URL("https://api.stripe.com/v1/charges"), "amount=100".getBytes("UTF-8"), headers, 10);
+
+		assertEquals(200, response.getResponseCode());
+		assertEquals("{}", response.getResponseBody());
+		HTTPRequest request = URLFetchServiceFactory.lastRequest;
+		assertEquals(HTTPMethod.POST, request.getMethod());
+		assertEquals("amount=100", new String(request.getPayload(), "UTF-8"));
+		assertEquals(Double.valueOf(10), request.getFetchOptions().getDeadline());
+		assertTrue(request.getFetchOptions().getValidateCertificate());
+		assertEquals(2, request.getHeaders().size());
+		HTTPHeader header = request.getHeaders().get(1);
+		assertEquals("Stripe-Version", header.getName());
+		assertEquals("2015-10-16", header.getValue());
+	}
+
+	@Test
+	public void testFetchWithoutPayload() throws Exception {
+		AppEngineURLFetch.get().fetch(APIResource.RequestMethod.GET,
+				new URL("https://api.stripe.com/v1/charges?limit=3"), null, new LinkedHashMap<String, String>(), 55);
+
+		HTTPRequest request = URLFetchServiceFactory.lastRequest;
+		assertEquals(HTTPMethod.GET, request.getMethod());
+		assertNull(request.getPayload());
+	}
+}
@@ -0,0 +1,176 @@
+package com.stripe.net;
+
+import com.stripe.exception.APIConnectionException;
+import com.stripe.exception.CardException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+public class BulkMutationExecutorTest {
+	File checkpoint;
+
+	@Before
+	public void before() throws IOException {
+		checkpoint = File.createTempFile("stripe-bulk", ".checkpoint");
+		checkpoint.delete();
+	}
+
+	@After
+	public void after() {
+		checkpoint.delete();
+	}
+
+	@Test
+	public void testResumedRunSkipsCompletedItemsAndReusesKeys() throws Exception {
+		RecordingMutation mutation = new RecordingMutation();
+		mutation.failingRecordIds.add("r2");
+
+		List<BulkMutationExecutor.ItemResult<String>> first = executor(mutation).execute(items("r1", "r2", "r3").iterator());
+
+		assertTrue(first.get(0).isSuccessful());
+		assertFalse(first.get(1).isSuccessful());
+		assertEquals("usage-r3", first.get(2).getResult());
+
+		mutation.failingRecordIds.clear();
+		mutation.idempotencyKeys.clear();
+		List<BulkMutationExecutor.ItemResult<String>> second = executor(mutation).execute(items("r1", "r2", "r3").iterator());
+
+		assertTrue(second.get(0).isSkipped());
+		assertNull(second.get(0).getResult());
+		assertEquals("usage-r2", second.get(1).getResult());
+		assertTrue(second.get(2).isSkipped());
+		assertEquals(Collections.singletonList("usage-r2"), mutation.idempotencyKeys);
+	}
+
+	@Test
+	public void testConnectionErrorsAreRetriedWithTheSameKey() throws Exception {
+		RecordingMutation mutation = new RecordingMutation();
+		mutation.connectionErrorsRemaining = 1;
+
+		List<BulkMutationExecutor.ItemResult<String>> results = executor(mutation).execute(items("r1").iterator());
+
+		assertTrue(results.get(0).isSuccessful());
+		assertEquals(2, mutation.idempotencyKeys.size());
+		assertEquals("usage-r1", mutation.idempotencyKeys.get(1));
+	}
+
+	@Test
+	public void testLongRecordIdsAreHashed() {
+		StringBuilder recordId = new StringBuilder();
+		for (int i = 0; i < 300; i++) {
+			recordId.append('x');
+		}
+		String key = executor(new RecordingMutation()).idempotencyKey(recordId.toString());
+
+		assertEquals("usage-".length() + 64, key.length());
+		assertEquals(key, executor(new RecordingMutation()).idempotencyKey(recordId.toString()));
+	}
+
+	@Test
+	public void testLongPrefixesStillFitTheKeyLimit() {
+		StringBuilder prefix = new StringBuilder();
+		for (int i = 0; i < 190; i++) {
+			prefix.append('p');
+		}
+		BulkMutationExecutor<String> executor = BulkMutationExecutor.builder(new RecordingMutation())
+				.setIdempotencyKeyPrefix(prefix.toString()).build();
+
+		assertEquals(255, executor.idempotencyKey(prefix.toString()).length());
+		try {
+			BulkMutationExecutor.builder(new RecordingMutation()).setIdempotencyKeyPrefix(prefix.append('p').toString());
+			fail("Expected an IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			// No room left for the record id's digest
+		}
+	}
+
+	@Test
+	public void testRuntimeExceptionsFailOnlyTheirItem() throws Exception {
+		RecordingMutation mutation = new RecordingMutation();
+		mutation.brokenRecordIds.add("r2");
+
+		List<BulkMutationExecutor.ItemResult<String>> results = executor(mutation).execute(items("r1", "r2", "r3").iterator());
+
+		assertEquals(3, results.size());
+		assertTrue(results.get(0).isSuccessful());
+		assertFalse(results.get(1).isSuccessful());
+		assertEquals("r2", results.get(1).getRecordId());
+		assertTrue(results.get(1).getFailure().getCause() instanceof IllegalStateException);
+		assertTrue(results.get(2).isSuccessful());
+	}
+
+	@Test
+	public void testCheckpointWriteFailuresAreThrown() throws Exception {
+		File full = new File("/dev/full");
+		assumeTrue(full.canWrite());
+		RecordingMutation mutation = new RecordingMutation();
+		List<BulkMutationExecutor.Item> items = items("r1", "r2", "r3", "r4", "r5");
+
+		try {
+			BulkMutationExecutor.builder(mutation).setIdempotencyKeyPrefix("usage").setCheckpointFile(full)
+					.setParallelism(1).build().execute(items.iterator());
+			fail("Expected an IOException");
+		} catch (IOException e) {
+			// The disk is full
+		}
+		assertTrue(mutation.idempotencyKeys.toString(), mutation.idempotencyKeys.size() < items.size());
+	}
+
+	private BulkMutationExecutor<String> executor(RecordingMutation mutation) {
+		return BulkMutationExecutor.builder(mutation)
+				.setIdempotencyKeyPrefix("usage")
+				.setCheckpointFile(checkpoint)
+				.setParallelism(2)
+				.build();
+	}
+
+	private static List<BulkMutationExecutor.Item> items(String... recordIds) {
+		List<BulkMutationExecutor.Item> items = new ArrayList<BulkMutationExecutor.Item>();
+		for (String recordId : recordIds) {
+			Map<String, Object> params = new HashMap<String, Object>();
+			params.put("amount", 100);
+			items.add(new BulkMutationExecutor.Item(recordId, params));
+		}
+		return items;
+	}
+
+	private static class RecordingMutation implements BulkMutationExecutor.Mutation<String> {
+		final List<String> idempotencyKeys = Collections.synchronizedList(new ArrayList<String>());
+		final List<String> failingRecordIds = Collections.synchronizedList(new ArrayList<String>());
+		final List<String> brokenRecordIds = Collections.synchronizedList(new ArrayList<String>());
+		volatile int connectionErrorsRemaining;
+
+		public String mutate(Map<String, Object> params, RequestOptions options)
+				throws APIConnectionException, CardException {
+			String key = options.getIdempotencyKey();
+			idempotencyKeys.add(key);
+			if (connectionErrorsRemaining > 0) {
+				connectionErrorsRemaining--;
+				throw new APIConnectionException("Connection reset");
+			}
+			if (brokenRecordIds.contains(key.substring("usage-".length()))) {
+				throw new IllegalStateException("Bug");
+			}
+			if (failingRecordIds.contains(key.substring("usage-".length()))) {
+				throw new CardException("Your card was declined.", "req_123", "card_declined", null, null, null, 402, null);
+			}
+			return key;
+		}
+	}
+}
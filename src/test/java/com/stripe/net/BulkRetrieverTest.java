@@ -0,0 +1,103 @@
+package com.stripe.net;
+
+import com.stripe.exception.APIException;
+import com.stripe.exception.InvalidRequestException;
+import com.stripe.exception.RateLimitException;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BulkRetrieverTest {
+	@Test
+	public void testResultsAreDedupedAndKeepInputOrder() {
+		RecordingRetriever retriever = new RecordingRetriever();
+		List<String> ids = Arrays.asList("c", "a", "b", "a", "missing", "c");
+
+		BulkResult<String> result = BulkRetriever.retrieveAll(ids, 2, null, retriever);
+
+		assertEquals(Arrays.asList("c", "a", "b", "missing"), result.getIds());
+		assertEquals(Arrays.asList("c", "a", "b"), Arrays.asList(result.getResults().keySet().toArray()));
+		assertEquals("object-a", result.get("a"));
+		assertEquals(Integer.valueOf(404), result.getFailure("missing").getStatusCode());
+		assertFalse(result.isSuccessful());
+		assertEquals(4, retriever.calls.get());
+		assertTrue(retriever.maxConcurrent.get() <= 2);
+	}
+
+	@Test
+	public void testRateLimitedIdsAreRetried() {
+		RecordingRetriever retriever = new RecordingRetriever();
+		retriever.rateLimitsRemaining.put("b", new AtomicInteger(1));
+
+		BulkResult<String> result = BulkRetriever.retrieveAll(Arrays.asList("a", "b"), 4, null, retriever);
+
+		assertTrue(result.isSuccessful());
+		assertEquals("object-b", result.get("b"));
+		assertEquals(3, retriever.calls.get());
+	}
+
+	@Test
+	public void testRuntimeExceptionsFailOnlyTheirId() {
+		RecordingRetriever retriever = new RecordingRetriever();
+
+		BulkResult<String> result = BulkRetriever.retrieveAll(Arrays.asList("a", "broken", "b"), 1, null, retriever);
+
+		assertEquals("object-a", result.get("a"));
+		assertEquals("object-b", result.get("b"));
+		assertTrue(result.getFailure("broken") instanceof APIException);
+		assertTrue(result.getFailure("broken").getCause() instanceof IllegalStateException);
+	}
+
+	@Test
+	public void testNullIdsAreRejected() {
+		try {
+			BulkRetriever.retrieveAll(Arrays.asList("a", null), 2, null, new RecordingRetriever());
+			fail("Expected an IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			// Nothing to retrieve
+		}
+	}
+
+	private static class RecordingRetriever implements BulkRetriever.Retriever<String> {
+		final AtomicInteger calls = new AtomicInteger();
+		final AtomicInteger inFlight = new AtomicInteger();
+		final AtomicInteger maxConcurrent = new AtomicInteger();
+		final Map<String, AtomicInteger> rateLimitsRemaining = new ConcurrentHashMap<String, AtomicInteger>();
+
+		public String retrieve(String id, RequestOptions options) throws InvalidRequestException {
+			calls.incrementAndGet();
+			int current = inFlight.incrementAndGet();
+			try {
+				int max;
+				while ((max = maxConcurrent.get()) < current && !maxConcurrent.compareAndSet(max, current)) {
+				}
+				Thread.sleep(10);
+				AtomicInteger rateLimits = rateLimitsRemaining.get(id);
+				if (rateLimits != null && rateLimits.getAndDecrement() > 0) {
+					throw new RateLimitException("Too many requests", null, "req_429", 429, null);
+				}
+				if (id.equals("broken")) {
+					throw new IllegalStateException("Unparseable response");
+				}
+				if (id.equals("missing")) {
+					throw new InvalidRequestException("No such object: missing", "id", "req_404", 404, null);
+				}
+				return "object-" + id;
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			} finally {
+				inFlight.decrementAndGet();
+			}
+		}
+	}
+}
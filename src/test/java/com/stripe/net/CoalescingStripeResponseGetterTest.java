@@ -0,0 +1,287 @@
+package com.stripe.net;
+
+import com.stripe.exception.APIConnectionException;
+import com.stripe.exception.APIException;
+import com.stripe.exception.AuthenticationException;
+import com.stripe.exception.CardException;
+import com.stripe.exception.DeadlineExceededException;
+import com.stripe.exception.InvalidRequestException;
+import com.stripe.model.Plan;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CoalescingStripeResponseGetterTest {
+	private static final String URL = "https://api.stripe.com/v1/plans/gold";
+	private static final int CALLERS = 8;
+
+	BlockingGetter delegate;
+	CoalescingStripeResponseGetter srg;
+	ExecutorService executor;
+
+	@Before
+	public void before() {
+		delegate = new BlockingGetter();
+		srg = new CoalescingStripeResponseGetter(delegate);
+		executor = Executors.newFixedThreadPool(CALLERS);
+	}
+
+	@After
+	public void after() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testConcurrentIdenticalGetsShareOneRequest() throws Exception {
+		List<Future<Plan>> futures = submitRetrieves(RequestOptions.builder().setApiKey("sk_test").build());
+		delegate.release(null);
+
+		Plan first = futures.get(0).get(5, TimeUnit.SECONDS);
+		for (Future<Plan> future : futures) {
+			assertSame(first, future.get(5, TimeUnit.SECONDS));
+		}
+		assertEquals(1, delegate.calls.get());
+		assertEquals(CALLERS - 1, srg.getCoalescedCount());
+		assertEquals(Long.valueOf(CALLERS - 1), srg.getCoalescedCountsByEndpoint().get("/v1/plans/{id}"));
+	}
+
+	@Test
+	public void testWaitersSeeTheSharedResponse() throws Exception {
+		final RequestOptions options = RequestOptions.builder().setApiKey("sk_test").build();
+		List<Future<ResponseMetadata>> futures = new ArrayList<Future<ResponseMetadata>>();
+		for (int i = 0; i < CALLERS; i++) {
+			futures.add(executor.submit(new Callable<ResponseMetadata>() {
+				public ResponseMetadata call() throws Exception {
+					ResponseMetadata.setLast(null);
+					srg.request(APIResource.RequestMethod.GET, URL, null, Plan.class,
+							APIResource.RequestType.NORMAL, options);
+					return ResponseMetadata.getLast();
+				}
+			}));
+		}
+		awaitCoalesced();
+		delegate.release(null);
+
+		for (Future<ResponseMetadata> future : futures) {
+			assertEquals(URL, future.get(5, TimeUnit.SECONDS).getUrl());
+		}
+		assertEquals(1, delegate.calls.get());
+	}
+
+	@Test
+	public void testFailureIsPropagatedToEveryCaller() throws Exception {
+		List<Future<Plan>> futures = submitRetrieves(RequestOptions.builder().setApiKey("sk_test").build());
+		InvalidRequestException failure = new InvalidRequestException("No such plan: gold", "id", "req_123", 404, null);
+		delegate.release(failure);
+
+		for (Future<Plan> future : futures) {
+			try {
+				future.get(5, TimeUnit.SECONDS);
+			} catch (ExecutionException e) {
+				assertSame(failure, e.getCause());
+				continue;
+			}
+			throw new AssertionError("Expected every caller to see the failure");
+		}
+		assertEquals(1, delegate.calls.get());
+	}
+
+	@Test
+	public void testDifferentStripeAccountsAreNotCoalesced() throws Exception {
+		delegate.release(null);
+		srg.request(APIResource.RequestMethod.GET, URL, null, Plan.class, APIResource.RequestType.NORMAL,
+				RequestOptions.builder().setApiKey("sk_test").setStripeAccount("acct_1").build());
+		srg.request(APIResource.RequestMethod.GET, URL, null, Plan.class, APIResource.RequestType.NORMAL,
+				RequestOptions.builder().setApiKey("sk_test").setStripeAccount("acct_2").build());
+
+		assertEquals(2, delegate.calls.get());
+		assertEquals(0, srg.getCoalescedCount());
+	}
+
+	@Test
+	public void testWaitersGiveUpAtTheirDeadline() throws Exception {
+		List<Future<Plan>> futures = submitRetrieves(RequestOptions.builder().setApiKey("sk_test").build());
+		try {
+			long start = System.nanoTime();
+			try {
+				srg.request(APIResource.RequestMethod.GET, URL, null, Plan.class, APIResource.RequestType.NORMAL,
+						RequestOptions.builder().setApiKey("sk_test")
+								.setDeadline(Deadline.after(50, TimeUnit.MILLISECONDS)).build());
+				fail("Expected a DeadlineExceededException");
+			} catch (DeadlineExceededException e) {
+				assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+			}
+		} finally {
+			delegate.release(null);
+		}
+
+		futures.get(0).get(5, TimeUnit.SECONDS);
+		assertEquals(1, delegate.calls.get());
+	}
+
+	@Test
+	public void testWaitersOutliveTheLeadersDeadline() throws Exception {
+		final CountDownLatch leaderEntered = new CountDownLatch(1);
+		final AtomicInteger calls = new AtomicInteger();
+		srg = new CoalescingStripeResponseGetter(new StripeResponseGetter() {
+			public <T> T request(APIResource.RequestMethod method, String url, Map<String, Object> params,
+					Class<T> clazz, APIResource.RequestType type, RequestOptions options)
+					throws APIConnectionException {
+				calls.incrementAndGet();
+				Deadline deadline = options.getDeadline();
+				if (deadline != null) {
+					leaderEntered.countDown();
+					// Run out of time once the other caller is waiting on us
+					long giveUp = System.currentTimeMillis() + 5000;
+					while (srg.getCoalescedCount() < 1 && System.currentTimeMillis() < giveUp) {
+						try {
+							Thread.sleep(5);
+						} catch (InterruptedException e) {
+							throw new APIConnectionException("interrupted", e);
+						}
+					}
+					throw deadline.exceeded(null);
+				}
+				return APIResource.GSON.fromJson("{\"id\": \"gold\", \"object\": \"plan\"}", clazz);
+			}
+		});
+		Future<Plan> leader = executor.submit(new Callable<Plan>() {
+			public Plan call() throws Exception {
+				return srg.request(APIResource.RequestMethod.GET, URL, null, Plan.class, APIResource.RequestType.NORMAL,
+						RequestOptions.builder().setApiKey("sk_test")
+								.setDeadline(Deadline.after(1, TimeUnit.MINUTES)).build());
+			}
+		});
+		assertTrue(leaderEntered.await(5, TimeUnit.SECONDS));
+		Future<Plan> waiter = executor.submit(new Callable<Plan>() {
+			public Plan call() throws Exception {
+				return srg.request(APIResource.RequestMethod.GET, URL, null, Plan.class, APIResource.RequestType.NORMAL,
+						RequestOptions.builder().setApiKey("sk_test").build());
+			}
+		});
+
+		try {
+			leader.get(5, TimeUnit.SECONDS);
+			fail("Expected the leader to run out of time");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof DeadlineExceededException);
+		}
+		assertEquals("gold", waiter.get(5, TimeUnit.SECONDS).getId());
+		assertEquals(2, calls.get());
+		assertEquals(0, srg.getCoalescedCount());
+	}
+
+	@Test
+	public void testWaitersDontSeeTheLeadersEarlierMetadata() throws Exception {
+		final CountDownLatch entered = new CountDownLatch(1);
+		final CountDownLatch released = new CountDownLatch(1);
+		srg = new CoalescingStripeResponseGetter(new StripeResponseGetter() {
+			public <T> T request(APIResource.RequestMethod method, String url, Map<String, Object> params,
+					Class<T> clazz, APIResource.RequestType type, RequestOptions options) {
+				// Records no metadata of its own
+				entered.countDown();
+				try {
+					released.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return null;
+			}
+		});
+		final RequestOptions options = RequestOptions.builder().setApiKey("sk_test").build();
+		Future<ResponseMetadata> leader = executor.submit(new Callable<ResponseMetadata>() {
+			public ResponseMetadata call() throws Exception {
+				ResponseMetadata.setLast(new ResponseMetadata(new RequestTrace(new RequestListener[0],
+						APIResource.RequestMethod.GET, "https://api.stripe.com/v1/charges/ch_earlier", options)));
+				srg.request(APIResource.RequestMethod.GET, URL, null, Plan.class, APIResource.RequestType.NORMAL, options);
+				return ResponseMetadata.getLast();
+			}
+		});
+		assertTrue(entered.await(5, TimeUnit.SECONDS));
+		Future<ResponseMetadata> waiter = executor.submit(new Callable<ResponseMetadata>() {
+			public ResponseMetadata call() throws Exception {
+				srg.request(APIResource.RequestMethod.GET, URL, null, Plan.class, APIResource.RequestType.NORMAL, options);
+				return ResponseMetadata.getLast();
+			}
+		});
+		long deadline = System.currentTimeMillis() + 5000;
+		while (srg.getCoalescedCount() < 1 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+		released.countDown();
+
+		assertNull(leader.get(5, TimeUnit.SECONDS));
+		assertNull(waiter.get(5, TimeUnit.SECONDS));
+	}
+
+	private List<Future<Plan>> submitRetrieves(final RequestOptions options) throws InterruptedException {
+		List<Future<Plan>> futures = new ArrayList<Future<Plan>>();
+		for (int i = 0; i < CALLERS; i++) {
+			futures.add(executor.submit(new Callable<Plan>() {
+				public Plan call() throws Exception {
+					return srg.request(APIResource.RequestMethod.GET, URL, null, Plan.class,
+							APIResource.RequestType.NORMAL, options);
+				}
+			}));
+		}
+		awaitCoalesced();
+		return futures;
+	}
+
+	private void awaitCoalesced() throws InterruptedException {
+		// Wait until the leader is inside the delegate and everyone else has piled up behind it.
+		assertTrue(delegate.entered.await(5, TimeUnit.SECONDS));
+		long deadline = System.currentTimeMillis() + 5000;
+		while (srg.getCoalescedCount() < CALLERS - 1 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+	}
+
+	private static class BlockingGetter implements StripeResponseGetter {
+		final AtomicInteger calls = new AtomicInteger();
+		final CountDownLatch entered = new CountDownLatch(1);
+		final CountDownLatch released = new CountDownLatch(1);
+		volatile InvalidRequestException failure;
+
+		void release(InvalidRequestException failure) {
+			this.failure = failure;
+			released.countDown();
+		}
+
+		public <T> T request(APIResource.RequestMethod method, String url, Map<String, Object> params,
+				Class<T> clazz, APIResource.RequestType type, RequestOptions options)
+				throws AuthenticationException, InvalidRequestException, APIConnectionException, CardException, APIException {
+			calls.incrementAndGet();
+			entered.countDown();
+			ResponseMetadata.setLast(new ResponseMetadata(new RequestTrace(new RequestListener[0], method, url, options)));
+			try {
+				released.await();
+			} catch (InterruptedException e) {
+				throw new APIConnectionException("interrupted", e);
+			}
+			if (failure != null) {
+				throw failure;
+			}
+			return APIResource.GSON.fromJson("{\"id\": \"gold\", \"object\": \"plan\"}", clazz);
+		}
+	}
+}
@@ -0,0 +1,136 @@
+package com.stripe.net;
+
+import com.stripe.exception.DeadlineExceededException;
+import com.stripe.model.Charge;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DeadlineTest {
+	HttpServer server;
+	String url;
+
+	@Before
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/v1/charges", new HttpHandler() {
+			// Sends a valid JSON body one byte every 100ms
+			public void handle(HttpExchange exchange) throws IOException {
+				exchange.sendResponseHeaders(200, 0);
+				OutputStream body = exchange.getResponseBody();
+				try {
+					for (int i = 0; i < 50; i++) {
+						body.write(' ');
+						body.flush();
+						Thread.sleep(100);
+					}
+					body.write("{}".getBytes("UTF-8"));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} catch (IOException e) {
+					// Client hung up
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		server.start();
+		url = String.format("http://127.0.0.1:%d/v1/charges/ch_123", server.getAddress().getPort());
+	}
+
+	@After
+	public void stopServer() {
+		server.stop(0);
+	}
+
+	@Test
+	public void testSlowResponseBodiesAreCutOff() throws Exception {
+		RequestOptions options = RequestOptions.builder()
+				.setApiKey("sk_test")
+				.setDeadline(Deadline.after(300, TimeUnit.MILLISECONDS))
+				.build();
+		long start = System.nanoTime();
+		try {
+			new LiveStripeResponseGetter().request(APIResource.RequestMethod.GET, url, null, Charge.class,
+					APIResource.RequestType.NORMAL, options);
+			fail("Expected the deadline to pass");
+		} catch (DeadlineExceededException e) {
+			assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+		}
+	}
+
+	@Test
+	public void testThreadDeadlineApplies() throws Exception {
+		Deadline previous = Deadline.setCurrent(Deadline.after(-1, TimeUnit.MILLISECONDS));
+		try {
+			new LiveStripeResponseGetter().request(APIResource.RequestMethod.GET, url, null, Charge.class,
+					APIResource.RequestType.NORMAL, RequestOptions.builder().setApiKey("sk_test").build());
+			fail("Expected the deadline to have passed");
+		} catch (DeadlineExceededException e) {
+			// Not even sent
+		} finally {
+			Deadline.setCurrent(previous);
+		}
+		assertNull(Deadline.current());
+	}
+
+	@Test
+	public void testQueuedRequestsGiveUpAtTheDeadline() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		final FairSchedulingStripeResponseGetter scheduler = FairSchedulingStripeResponseGetter.builder(
+				new StripeResponseGetter() {
+					public <T> T request(APIResource.RequestMethod method, String url, Map<String, Object> params,
+							Class<T> clazz, APIResource.RequestType type, RequestOptions options) {
+						try {
+							release.await();
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+						return null;
+					}
+				}).setMaxConcurrency(1).build();
+		Thread busy = new Thread() {
+			@Override
+			public void run() {
+				try {
+					scheduler.request(APIResource.RequestMethod.GET, url, null, Charge.class,
+							APIResource.RequestType.NORMAL, null);
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			}
+		};
+		busy.start();
+		while (scheduler.getInFlightCount() < 1) {
+			Thread.sleep(1);
+		}
+
+		Deadline deadline = Deadline.after(50, TimeUnit.MILLISECONDS);
+		try {
+			scheduler.request(APIResource.RequestMethod.GET, url, null, Charge.class,
+					APIResource.RequestType.NORMAL, RequestOptions.builder().setDeadline(deadline).build());
+			fail("Expected the deadline to pass");
+		} catch (DeadlineExceededException e) {
+			assertEquals(0, scheduler.getAccountStats().get(FairSchedulingStripeResponseGetter.PLATFORM_ACCOUNT).getQueueLength());
+		} finally {
+			release.countDown();
+			busy.join();
+		}
+	}
+}
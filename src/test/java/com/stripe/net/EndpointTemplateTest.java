@@ -0,0 +1,36 @@
+package com.stripe.net;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class EndpointTemplateTest {
+	@Test
+	public void testIdsAreReplaced() {
+		assertEquals("/v1/charges", EndpointTemplate.of("https://api.stripe.com/v1/charges?limit=3"));
+		assertEquals("/v1/plans/{id}", EndpointTemplate.of("https://api.stripe.com/v1/plans/gold"));
+		assertEquals("/v1/customers/{id}/sources/{id}",
+				EndpointTemplate.of("https://api.stripe.com/v1/customers/cus_123/sources/card_456"));
+		assertEquals("/v1/charges/{id}/dispute/close",
+				EndpointTemplate.of("https://api.stripe.com/v1/charges/ch_123/dispute/close"));
+		assertEquals("/v1/invoices/upcoming", EndpointTemplate.of("https://api.stripe.com/v1/invoices/upcoming"));
+		assertEquals("/", EndpointTemplate.of("https://api.stripe.com"));
+	}
+
+	@Test
+	public void testMultiSegmentCollections() {
+		assertEquals("/v1/bitcoin/receivers/{id}",
+				EndpointTemplate.of("https://api.stripe.com/v1/bitcoin/receivers/btcrcv_123"));
+		assertEquals("/v1/bitcoin/receivers", EndpointTemplate.of("https://api.stripe.com/v1/bitcoin/receivers"));
+		assertEquals("/v1/balance/history/{id}", EndpointTemplate.of("https://api.stripe.com/v1/balance/history/txn_123"));
+		assertEquals("/v1/balance", EndpointTemplate.of("https://api.stripe.com/v1/balance"));
+		assertEquals("/v1/application_fees/{id}/refunds",
+				EndpointTemplate.of("https://api.stripe.com/v1/application_fees/fee_123/refunds"));
+	}
+
+	@Test
+	public void testGeneratedIdsOutOfPlace() {
+		assertEquals("/v1/widgets/things/{id}", EndpointTemplate.of("https://api.stripe.com/v1/widgets/things/wdg_1AbC"));
+		assertEquals("/v1/3d_secure/{id}", EndpointTemplate.of("https://api.stripe.com/v1/3d_secure/tdsrc_123"));
+	}
+}
@@ -0,0 +1,142 @@
+package com.stripe.net;
+
+import com.stripe.exception.StripeException;
+import com.stripe.model.Event;
+import com.stripe.model.Plan;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EventCacheInvalidatorTest {
+	private static final long NOW = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+
+	LruObjectCache cache;
+	EventCacheInvalidator invalidator;
+	CountingLoader loader;
+
+	@Before
+	public void before() {
+		cache = LruObjectCache.builder().build();
+		invalidator = new EventCacheInvalidator(cache);
+		loader = new CountingLoader();
+	}
+
+	@Test
+	public void testUpdatedEventReplacesEntry() throws StripeException {
+		cache.get(key("gold"), Plan.class, loader);
+
+		assertTrue(invalidator.handle(planEvent("plan.updated", "gold", "Gold Plus", NOW + 60)));
+
+		assertEquals("Gold Plus", cache.get(key("gold"), Plan.class, loader).getName());
+		assertEquals(1, loader.loads.get());
+	}
+
+	@Test
+	public void testDeletedEventEvictsEntry() throws StripeException {
+		cache.get(key("gold"), Plan.class, loader);
+
+		assertTrue(invalidator.handle(planEvent("plan.deleted", "gold", "Gold", NOW + 60)));
+
+		cache.get(key("gold"), Plan.class, loader);
+		assertEquals(2, loader.loads.get());
+	}
+
+	@Test
+	public void testStaleEventDoesNotOverwriteNewerEntry() throws StripeException {
+		cache.get(key("gold"), Plan.class, loader);
+
+		invalidator.handle(planEvent("plan.updated", "gold", "Old Gold", NOW - 3600));
+
+		assertEquals("Gold", cache.get(key("gold"), Plan.class, loader).getName());
+		// Evicted rather than kept, since the clocks can't be trusted
+		assertEquals(2, loader.loads.get());
+	}
+
+	@Test
+	public void testUpdatedEventEvictsEntryWhenLocalClockIsAhead() throws StripeException {
+		cache.get(key("gold"), Plan.class, loader);
+		loader.name = "Gold Plus";
+
+		assertTrue(invalidator.handle(planEvent("plan.updated", "gold", "Gold Plus", NOW - 60)));
+
+		assertEquals("Gold Plus", cache.get(key("gold"), Plan.class, loader).getName());
+		assertEquals(2, loader.loads.get());
+	}
+
+	@Test
+	public void testLoadRacingAChangeIsNotCachedWhenLocalClockIsAhead() throws StripeException {
+		ObjectCache.Loader<Plan> racing = new ObjectCache.Loader<Plan>() {
+			public Plan load() {
+				Plan plan = loader.load();
+				// The plan changes, by Stripe's clock a minute before our own,
+				// while the response is on its way
+				cache.invalidate(Plan.class, "gold", NOW - 60);
+				return plan;
+			}
+		};
+		cache.get(key("gold"), Plan.class, racing);
+
+		cache.get(key("gold"), Plan.class, loader);
+		assertEquals(2, loader.loads.get());
+	}
+
+	@Test
+	public void testDeletedEventEvictsEntryWhenLocalClockIsAhead() throws StripeException {
+		cache.get(key("gold"), Plan.class, loader);
+
+		// Our clock is a minute ahead of Stripe's, so the event looks older
+		// than the entry
+		assertTrue(invalidator.handle(planEvent("plan.deleted", "gold", "Gold", NOW - 60)));
+
+		cache.get(key("gold"), Plan.class, loader);
+		assertEquals(2, loader.loads.get());
+	}
+
+	@Test
+	public void testInvalidationEvictsEntryWhenLocalClockIsAhead() throws StripeException {
+		invalidator = new EventCacheInvalidator(cache, false);
+		cache.get(key("gold"), Plan.class, loader);
+
+		assertTrue(invalidator.handle(planEvent("plan.updated", "gold", "Gold Plus", NOW - 60)));
+
+		cache.get(key("gold"), Plan.class, loader);
+		assertEquals(2, loader.loads.get());
+	}
+
+	@Test
+	public void testUnrelatedEventIsIgnored() {
+		Event event = APIResource.GSON.fromJson(String.format("{\"type\": \"charge.succeeded\", \"created\": %d, "
+				+ "\"data\": {\"object\": {\"id\": \"ch_123\", \"object\": \"charge\"}}}", NOW), Event.class);
+
+		assertFalse(invalidator.handle(event));
+	}
+
+	private static Event planEvent(String type, String id, String name, long created) {
+		return APIResource.GSON.fromJson(String.format("{\"type\": \"%s\", \"created\": %d, "
+				+ "\"data\": {\"object\": {\"id\": \"%s\", \"object\": \"plan\", \"name\": \"%s\"}}}",
+				type, created, id, name), Event.class);
+	}
+
+	private static CacheKey key(String id) {
+		return new CacheKey(Plan.class, id, "https://api.stripe.com/v1/plans/" + id,
+				RequestOptions.builder().setApiKey("sk_test").build());
+	}
+
+	private static class CountingLoader implements ObjectCache.Loader<Plan> {
+		final AtomicInteger loads = new AtomicInteger();
+		volatile String name = "Gold";
+
+		public Plan load() {
+			loads.incrementAndGet();
+			return APIResource.GSON.fromJson(String.format(
+					"{\"id\": \"gold\", \"object\": \"plan\", \"name\": \"%s\"}", name), Plan.class);
+		}
+	}
+}
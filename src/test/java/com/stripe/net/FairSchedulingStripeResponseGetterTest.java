@@ -0,0 +1,138 @@
+package com.stripe.net;
+
+import com.stripe.exception.APIConnectionException;
+import com.stripe.model.Charge;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class FairSchedulingStripeResponseGetterTest {
+	@Test
+	public void testAccountsTakeTurns() throws Exception {
+		GatedGetter gated = new GatedGetter();
+		FairSchedulingStripeResponseGetter scheduler = FairSchedulingStripeResponseGetter.builder(gated)
+				.setMaxConcurrency(1)
+				.build();
+
+		List<Thread> threads = new ArrayList<Thread>();
+		for (String account : Arrays.asList("acct_big", "acct_big", "acct_big", "acct_big", "acct_small")) {
+			threads.add(start(scheduler, account));
+			// Make sure requests are queued in order
+			while (gated.started.size() + queued(scheduler) < threads.size()) {
+				Thread.sleep(1);
+			}
+		}
+		gated.permits.release(threads.size());
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertEquals(Arrays.asList("acct_big", "acct_big", "acct_small", "acct_big", "acct_big"), gated.started);
+		assertEquals(4, scheduler.getAccountStats().get("acct_big").getServedCount());
+		assertEquals(0, scheduler.getInFlightCount());
+	}
+
+	@Test
+	public void testFullQueuesRejectImmediately() throws Exception {
+		GatedGetter gated = new GatedGetter();
+		FairSchedulingStripeResponseGetter scheduler = FairSchedulingStripeResponseGetter.builder(gated)
+				.setMaxConcurrency(1)
+				.setMaxQueueLength(1)
+				.build();
+		Thread first = start(scheduler, "acct_big");
+		Thread second = start(scheduler, "acct_big");
+		while (queued(scheduler) < 1) {
+			Thread.sleep(1);
+		}
+
+		try {
+			scheduler.request(APIResource.RequestMethod.GET, "/v1/charges", null, Charge.class,
+					APIResource.RequestType.NORMAL, RequestOptions.builder().setStripeAccount("acct_big").build());
+			fail("Expected the request to be rejected");
+		} catch (APIConnectionException e) {
+			assertEquals(1, scheduler.getAccountStats().get("acct_big").getRejectedCount());
+		}
+
+		gated.permits.release(2);
+		first.join();
+		second.join();
+		assertEquals(2, scheduler.getAccountStats().get("acct_big").getServedCount());
+	}
+
+	@Test
+	public void testIdleAccountsAreForgotten() throws Exception {
+		final GatedGetter gated = new GatedGetter();
+		FairSchedulingStripeResponseGetter scheduler = FairSchedulingStripeResponseGetter.builder(
+				new StripeResponseGetter() {
+					public <T> T request(APIResource.RequestMethod method, String url, Map<String, Object> params,
+							Class<T> clazz, APIResource.RequestType type, RequestOptions options) {
+						// Only the busy account's request waits
+						return options.getStripeAccount().equals("acct_busy")
+								? gated.request(method, url, params, clazz, type, options) : null;
+					}
+				})
+				.setMaxIdleAccounts(2)
+				.build();
+		Thread busy = start(scheduler, "acct_busy");
+		while (gated.started.size() < 1) {
+			Thread.sleep(1);
+		}
+
+		for (int i = 0; i < 10; i++) {
+			scheduler.request(APIResource.RequestMethod.GET, "/v1/charges", null, Charge.class,
+					APIResource.RequestType.NORMAL, RequestOptions.builder().setStripeAccount("acct_" + i).build());
+		}
+
+		Map<String, FairSchedulingStripeResponseGetter.AccountStats> stats = scheduler.getAccountStats();
+		assertEquals(new HashSet<String>(Arrays.asList("acct_busy", "acct_7", "acct_8", "acct_9")), stats.keySet());
+		assertEquals(1, stats.get("acct_busy").getInFlightCount());
+		gated.permits.release();
+		busy.join();
+	}
+
+	private static int queued(FairSchedulingStripeResponseGetter scheduler) {
+		int queued = 0;
+		for (FairSchedulingStripeResponseGetter.AccountStats stats : scheduler.getAccountStats().values()) {
+			queued += stats.getQueueLength();
+		}
+		return queued;
+	}
+
+	private static Thread start(final StripeResponseGetter getter, final String account) {
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					getter.request(APIResource.RequestMethod.GET, "/v1/charges", null, Charge.class,
+							APIResource.RequestType.NORMAL, RequestOptions.builder().setStripeAccount(account).build());
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			}
+		};
+		thread.start();
+		return thread;
+	}
+
+	private static class GatedGetter implements StripeResponseGetter {
+		final List<String> started = Collections.synchronizedList(new ArrayList<String>());
+		final Semaphore permits = new Semaphore(0);
+
+		public <T> T request(APIResource.RequestMethod method, String url, Map<String, Object> params,
+				Class<T> clazz, APIResource.RequestType type, RequestOptions options) {
+			started.add(options.getStripeAccount());
+			permits.acquireUninterruptibly();
+			return null;
+		}
+	}
+}
@@ -0,0 +1,221 @@
+package com.stripe.net;
+
+import com.stripe.exception.APIConnectionException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HedgingStripeResponseGetterTest {
+	@Test
+	public void testSlowRequestsAreHedged() throws Exception {
+		SlowOnceGetter slow = new SlowOnceGetter(5);
+		HedgingStripeResponseGetter getter = HedgingStripeResponseGetter.builder(slow)
+				.setMinimumSamples(5)
+				.setMinimumDelay(1, TimeUnit.MILLISECONDS)
+				.build();
+
+		for (int i = 0; i < 6; i++) {
+			getter.request(APIResource.RequestMethod.GET, "https://api.stripe.com/v1/customers/cus_" + i, null,
+					String.class, APIResource.RequestType.NORMAL, null);
+		}
+
+		assertEquals(7, slow.calls.get());
+		assertEquals(1, getter.getHedgeCount());
+		assertEquals(1, getter.getHedgeWinCount());
+		assertEquals(1, slow.abandoned.get());
+		// The slow first attempt lost, but is still timed up to when it was
+		// abandoned
+		LatencyHistogram histogram = getter.getLatencyHistogram("/v1/customers/{id}");
+		assertEquals(6, histogram.getCount());
+		assertTrue(histogram.getMaxNanos() >= TimeUnit.MILLISECONDS.toNanos(1));
+	}
+
+	@Test
+	public void testFirstAttemptsRunOnTheCallingThread() throws Exception {
+		SlowOnceGetter slow = new SlowOnceGetter(5);
+		HedgingStripeResponseGetter getter = HedgingStripeResponseGetter.builder(slow)
+				.setMinimumSamples(5)
+				.setMinimumDelay(1, TimeUnit.MILLISECONDS)
+				.build();
+
+		for (int i = 0; i < 6; i++) {
+			getter.request(APIResource.RequestMethod.GET, "https://api.stripe.com/v1/customers/cus_" + i, null,
+					String.class, APIResource.RequestType.NORMAL, null);
+		}
+
+		assertEquals(7, slow.threads.size());
+		for (int i = 0; i < 6; i++) {
+			assertSame(Thread.currentThread(), slow.threads.get(i));
+		}
+		assertNotSame(Thread.currentThread(), slow.threads.get(6));
+	}
+
+	@Test
+	public void testCancellationDisconnectsTheRequest() throws Exception {
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/v1/customers", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					Thread.sleep(5000);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				exchange.close();
+			}
+		});
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.start();
+		final Cancellation cancellation = new Cancellation();
+		Cancellation previous = Cancellation.setCurrent(cancellation);
+		try {
+			new Timer(true).schedule(new TimerTask() {
+				@Override
+				public void run() {
+					cancellation.cancel();
+				}
+			}, 100);
+			long start = System.nanoTime();
+			try {
+				new LiveStripeResponseGetter().request(APIResource.RequestMethod.GET,
+						String.format("http://127.0.0.1:%d/v1/customers/cus_1", server.getAddress().getPort()),
+						null, String.class, APIResource.RequestType.NORMAL,
+						RequestOptions.builder().setApiKey("sk_test_cancel").build());
+				fail("Expected an APIConnectionException");
+			} catch (APIConnectionException e) {
+				assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(3));
+			}
+		} finally {
+			Cancellation.setCurrent(previous);
+			server.stop(0);
+		}
+	}
+
+	@Test
+	public void testLastResponseIsTheWinningAttempts() throws Exception {
+		SlowOnceGetter slow = new SlowOnceGetter(-1);
+		HedgingStripeResponseGetter getter = HedgingStripeResponseGetter.builder(slow).build();
+		ResponseMetadata.setLast(null);
+
+		getter.request(APIResource.RequestMethod.GET, "https://api.stripe.com/v1/customers/cus_1", null,
+				String.class, APIResource.RequestType.NORMAL, null);
+
+		assertEquals("https://api.stripe.com/v1/customers/cus_1", ResponseMetadata.getLast().getUrl());
+	}
+
+	@Test
+	public void testOnlyRecentLatenciesCount() throws Exception {
+		SlowOnceGetter slow = new SlowOnceGetter(-1);
+		HedgingStripeResponseGetter getter = HedgingStripeResponseGetter.builder(slow)
+				.setWindow(100, TimeUnit.MILLISECONDS)
+				.build();
+
+		for (int i = 0; i < 3; i++) {
+			getter.request(APIResource.RequestMethod.GET, "https://api.stripe.com/v1/customers/cus_" + i, null,
+					String.class, APIResource.RequestType.NORMAL, null);
+		}
+		assertEquals(3, getter.getLatencyHistogram("/v1/customers/{id}").getCount());
+
+		// Kept for a second window, then dropped
+		Thread.sleep(120);
+		assertEquals(3, getter.getLatencyHistogram("/v1/customers/{id}").getCount());
+		Thread.sleep(120);
+		assertEquals(0, getter.getLatencyHistogram("/v1/customers/{id}").getCount());
+	}
+
+	@Test
+	public void testHedgesAreLimitedByBudget() throws Exception {
+		SlowOnceGetter slow = new SlowOnceGetter(5);
+		HedgingStripeResponseGetter getter = HedgingStripeResponseGetter.builder(slow)
+				.setMinimumSamples(5)
+				.setMinimumDelay(1, TimeUnit.MILLISECONDS)
+				.setBudgetRatio(0)
+				.setMaxBurst(0)
+				.build();
+
+		for (int i = 0; i < 6; i++) {
+			getter.request(APIResource.RequestMethod.GET, "https://api.stripe.com/v1/customers/cus_" + i, null,
+					String.class, APIResource.RequestType.NORMAL, null);
+		}
+
+		assertEquals(6, slow.calls.get());
+		assertEquals(0, getter.getHedgeCount());
+		assertEquals(1, getter.getBudgetExhaustedCount());
+	}
+
+	@Test
+	public void testWritesAreNotHedged() throws Exception {
+		SlowOnceGetter slow = new SlowOnceGetter(0);
+		HedgingStripeResponseGetter getter = HedgingStripeResponseGetter.builder(slow).build();
+
+		getter.request(APIResource.RequestMethod.POST, "https://api.stripe.com/v1/charges", null,
+				String.class, APIResource.RequestType.NORMAL, null);
+
+		assertEquals(0, getter.getRequestCount());
+		assertEquals(1, slow.calls.get());
+	}
+
+	/*
+	 * Answers immediately, except for call number slowCall which takes half a
+	 * second unless it is abandoned.
+	 */
+	private static class SlowOnceGetter implements StripeResponseGetter {
+		final AtomicInteger calls = new AtomicInteger();
+		final AtomicInteger abandoned = new AtomicInteger();
+		final List<Thread> threads = Collections.synchronizedList(new ArrayList<Thread>());
+		final int slowCall;
+
+		SlowOnceGetter(int slowCall) {
+			this.slowCall = slowCall;
+		}
+
+		public <T> T request(APIResource.RequestMethod method, String url, Map<String, Object> params,
+				Class<T> clazz, APIResource.RequestType type, RequestOptions options) throws APIConnectionException {
+			threads.add(Thread.currentThread());
+			if (calls.getAndIncrement() == slowCall) {
+				// Stands in for the connection being closed
+				final Thread thread = Thread.currentThread();
+				Runnable interrupt = new Runnable() {
+					public void run() {
+						thread.interrupt();
+					}
+				};
+				Cancellation cancellation = Cancellation.current();
+				if (cancellation != null) {
+					cancellation.register(interrupt);
+				}
+				try {
+					Thread.sleep(500);
+				} catch (InterruptedException e) {
+					abandoned.incrementAndGet();
+					throw new APIConnectionException("Connection closed", e);
+				} finally {
+					if (cancellation != null) {
+						cancellation.unregister(interrupt);
+					}
+				}
+			}
+			ResponseMetadata.setLast(new ResponseMetadata(new RequestTrace(new RequestListener[0], method, url, options)));
+			return clazz.cast(url);
+		}
+	}
+}
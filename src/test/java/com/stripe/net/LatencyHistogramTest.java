@@ -0,0 +1,36 @@
+package com.stripe.net;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+	@Test
+	public void testPercentilesAreWithinBucketPrecision() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int millis = 1; millis <= 100; millis++) {
+			histogram.record(millis, TimeUnit.MILLISECONDS);
+		}
+
+		assertEquals(100, histogram.getCount());
+		long p50 = histogram.getValueAtPercentileNanos(50);
+		assertTrue(p50 >= TimeUnit.MILLISECONDS.toNanos(50) && p50 <= TimeUnit.MILLISECONDS.toNanos(57));
+		assertEquals(TimeUnit.MILLISECONDS.toNanos(100), histogram.getValueAtPercentileNanos(100));
+		assertEquals(TimeUnit.MILLISECONDS.toNanos(100), histogram.getMaxNanos());
+
+		histogram.reset();
+		assertEquals(0, histogram.getValueAtPercentileNanos(99));
+	}
+
+	@Test
+	public void testBucketsCoverEveryValue() {
+		for (long micros = 0; micros < 100000; micros++) {
+			int bucket = LatencyHistogram.bucket(micros);
+			assertTrue(micros < LatencyHistogram.upperBound(bucket));
+			assertTrue(bucket == 0 || micros >= LatencyHistogram.upperBound(bucket - 1));
+		}
+	}
+}
@@ -0,0 +1,159 @@
+package com.stripe.net;
+
+import com.stripe.BaseStripeTest;
+import com.stripe.exception.APIConnectionException;
+import com.stripe.exception.InvalidRequestException;
+import com.stripe.exception.StripeException;
+import com.stripe.model.Plan;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.*;
+
+public class LruObjectCacheTest extends BaseStripeTest {
+	private static final Executor SAME_THREAD = new Executor() {
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
+
+	@Before
+	public void mockStripeResponseGetter() {
+		APIResource.setStripeResponseGetter(networkMock);
+	}
+
+	@After
+	public void unmockStripeResponseGetter() {
+		/* This needs to be done because tests aren't isolated in Java */
+		APIResource.setStripeResponseGetter(new LiveStripeResponseGetter());
+	}
+
+	@Test
+	public void testRetrieveIsServedFromCache() throws StripeException {
+		stubNetwork(Plan.class, "{\"id\": \"gold\", \"object\": \"plan\"}");
+		LruObjectCache cache = LruObjectCache.builder().build();
+		RequestOptions options = RequestOptions.builder().setObjectCache(cache).build();
+
+		Plan first = Plan.retrieve("gold", options);
+		Plan second = Plan.retrieve("gold", options);
+
+		assertSame(first, second);
+		verifyGet(Plan.class, "https://api.stripe.com/v1/plans/gold", options);
+		verifyNoMoreInteractions(networkMock);
+		assertEquals(1, cache.getStats().getHitCount());
+		assertEquals(1, cache.getStats().getMissCount());
+		assertEquals(0.5, cache.getStats().getHitRatio(), 0.0);
+	}
+
+	@Test
+	public void testEntriesAreScopedByStripeAccount() throws StripeException {
+		stubNetwork(Plan.class, "{\"id\": \"gold\", \"object\": \"plan\"}");
+		LruObjectCache cache = LruObjectCache.builder().build();
+
+		Plan.retrieve("gold", RequestOptions.builder().setObjectCache(cache).setStripeAccount("acct_1").build());
+		Plan.retrieve("gold", RequestOptions.builder().setObjectCache(cache).setStripeAccount("acct_2").build());
+
+		assertEquals(2, cache.getStats().getMissCount());
+		assertEquals(2, cache.size());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedEntryIsEvicted() throws StripeException {
+		LruObjectCache cache = LruObjectCache.builder().setMaximumSize(2).build();
+		CountingLoader loader = new CountingLoader();
+
+		cache.get(key("a"), String.class, loader);
+		cache.get(key("b"), String.class, loader);
+		cache.get(key("a"), String.class, loader);
+		cache.get(key("c"), String.class, loader);
+		cache.get(key("a"), String.class, loader);
+		cache.get(key("b"), String.class, loader);
+
+		assertEquals(4, loader.loads.get());
+		assertEquals(2, cache.getStats().getEvictionCount());
+	}
+
+	@Test
+	public void testStaleEntryIsServedWhileRevalidating() throws Exception {
+		LruObjectCache cache = LruObjectCache.builder()
+				.setTimeToLive(1, TimeUnit.MILLISECONDS)
+				.setStaleWhileRevalidate(1, TimeUnit.MINUTES)
+				.setRefreshExecutor(SAME_THREAD)
+				.build();
+		CountingLoader loader = new CountingLoader();
+
+		assertEquals("value-1", cache.get(key("a"), String.class, loader));
+		Thread.sleep(10);
+		assertEquals("value-1", cache.get(key("a"), String.class, loader));
+		assertEquals("value-2", cache.get(key("a"), String.class, loader));
+		assertEquals(1, cache.getStats().getStaleHitCount());
+	}
+
+	@Test
+	public void testFailedRefreshIsRetried() throws Exception {
+		LruObjectCache cache = LruObjectCache.builder()
+				.setTimeToLive(1, TimeUnit.MILLISECONDS)
+				.setStaleWhileRevalidate(1, TimeUnit.MINUTES)
+				.setRefreshExecutor(SAME_THREAD)
+				.build();
+		final AtomicInteger loads = new AtomicInteger();
+		ObjectCache.Loader<String> flaky = new ObjectCache.Loader<String>() {
+			public String load() throws APIConnectionException {
+				if (loads.incrementAndGet() == 2) {
+					throw new APIConnectionException("Connection reset");
+				}
+				return "value-" + loads.get();
+			}
+		};
+
+		assertEquals("value-1", cache.get(key("a"), String.class, flaky));
+		Thread.sleep(10);
+		assertEquals("value-1", cache.get(key("a"), String.class, flaky));
+		assertEquals("value-1", cache.get(key("a"), String.class, flaky));
+		assertEquals("value-3", cache.get(key("a"), String.class, flaky));
+	}
+
+	@Test
+	public void testNotFoundIsCachedNegatively() throws StripeException {
+		LruObjectCache cache = LruObjectCache.builder().setNegativeTimeToLive(1, TimeUnit.MINUTES).build();
+		final AtomicInteger loads = new AtomicInteger();
+		ObjectCache.Loader<String> missing = new ObjectCache.Loader<String>() {
+			public String load() throws InvalidRequestException {
+				loads.incrementAndGet();
+				throw new InvalidRequestException("No such plan: a", "id", "req_123", 404, null);
+			}
+		};
+
+		for (int i = 0; i < 3; i++) {
+			try {
+				cache.get(key("a"), String.class, missing);
+				fail("Expected a 404");
+			} catch (InvalidRequestException e) {
+				assertEquals(Integer.valueOf(404), e.getStatusCode());
+			}
+		}
+		assertEquals(1, loads.get());
+	}
+
+	private static CacheKey key(String id) {
+		return new CacheKey(Plan.class, id, "https://api.stripe.com/v1/plans/" + id,
+				RequestOptions.builder().setApiKey("sk_test").build());
+	}
+
+	private static class CountingLoader implements ObjectCache.Loader<String> {
+		final AtomicInteger loads = new AtomicInteger();
+
+		public String load() {
+			return "value-" + loads.incrementAndGet();
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package com.stripe.net;
+
+import com.stripe.model.Charge;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class PriorityStripeResponseGetterTest {
+	@Test
+	public void testBackgroundRequestsCannotUseReservedCapacity() throws Exception {
+		GatedGetter gated = new GatedGetter();
+		PriorityStripeResponseGetter getter = PriorityStripeResponseGetter.builder(gated)
+				.setMaxConcurrency(2)
+				.setReservedInteractiveCapacity(1)
+				.build();
+
+		Thread firstExport = start(getter, RequestOptions.Priority.BACKGROUND);
+		Thread secondExport = start(getter, RequestOptions.Priority.BACKGROUND);
+		while (getter.getQueueLength(RequestOptions.Priority.BACKGROUND) < 1) {
+			Thread.sleep(1);
+		}
+		assertEquals(1, getter.getInFlightCount(RequestOptions.Priority.BACKGROUND));
+
+		Thread checkout = start(getter, RequestOptions.Priority.INTERACTIVE);
+		while (getter.getInFlightCount(RequestOptions.Priority.INTERACTIVE) < 1) {
+			Thread.sleep(1);
+		}
+		assertEquals(1, getter.getQueueLength(RequestOptions.Priority.BACKGROUND));
+
+		gated.permits.release(3);
+		firstExport.join();
+		secondExport.join();
+		checkout.join();
+		assertEquals(2, getter.getLatencyHistogram(RequestOptions.Priority.BACKGROUND).getCount());
+		assertEquals(1, getter.getLatencyHistogram(RequestOptions.Priority.INTERACTIVE).getCount());
+	}
+
+	@Test
+	public void testInteractiveRequestsAreDispatchedBeforeBackgroundOnes() throws Exception {
+		GatedGetter gated = new GatedGetter();
+		PriorityStripeResponseGetter getter = PriorityStripeResponseGetter.builder(gated)
+				.setMaxConcurrency(1)
+				.setReservedInteractiveCapacity(0)
+				.build();
+
+		Thread first = start(getter, RequestOptions.Priority.INTERACTIVE);
+		while (gated.dispatched.size() < 1) {
+			Thread.sleep(1);
+		}
+		// Queued first, but should still be sent last
+		Thread export = start(getter, RequestOptions.Priority.BACKGROUND);
+		while (getter.getQueueLength(RequestOptions.Priority.BACKGROUND) < 1) {
+			Thread.sleep(1);
+		}
+		Thread checkout = start(getter, RequestOptions.Priority.INTERACTIVE);
+		while (getter.getQueueLength(RequestOptions.Priority.INTERACTIVE) < 1) {
+			Thread.sleep(1);
+		}
+
+		gated.permits.release(3);
+		first.join();
+		export.join();
+		checkout.join();
+		assertEquals(3, gated.dispatched.size());
+		assertEquals(RequestOptions.Priority.INTERACTIVE, gated.dispatched.get(1));
+		assertEquals(RequestOptions.Priority.BACKGROUND, gated.dispatched.get(2));
+	}
+
+	private static Thread start(final StripeResponseGetter getter, final RequestOptions.Priority priority) {
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					getter.request(APIResource.RequestMethod.GET, "/v1/charges", null, Charge.class,
+							APIResource.RequestType.NORMAL, RequestOptions.builder().setPriority(priority).build());
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			}
+		};
+		thread.start();
+		return thread;
+	}
+
+	private static class GatedGetter implements StripeResponseGetter {
+		final Semaphore permits = new Semaphore(0);
+		final List<RequestOptions.Priority> dispatched = new CopyOnWriteArrayList<RequestOptions.Priority>();
+
+		public <T> T request(APIResource.RequestMethod method, String url, Map<String, Object> params,
+				Class<T> clazz, APIResource.RequestType type, RequestOptions options) {
+			dispatched.add(options.getPriority());
+			permits.acquireUninterruptibly();
+			return null;
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package com.stripe.net;
+
+import com.stripe.exception.InvalidRequestException;
+import com.stripe.model.Charge;
+import com.stripe.model.Customer;
+import com.stripe.model.Invoice;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ReferenceLoaderTest {
+	ReferenceLoader loader;
+	final AtomicInteger fetches = new AtomicInteger();
+
+	@Before
+	public void before() {
+		loader = new ReferenceLoader(RequestOptions.builder().setApiKey("sk_test").build(), 4);
+		loader.register(Customer.class, new BulkRetriever.Retriever<Customer>() {
+			public Customer retrieve(String id, RequestOptions options) throws InvalidRequestException {
+				fetches.incrementAndGet();
+				if (id.equals("cus_missing")) {
+					throw new InvalidRequestException("No such customer: cus_missing", "id", "req_123", 404, null);
+				}
+				Customer customer = new Customer();
+				customer.setId(id);
+				return customer;
+			}
+		});
+	}
+
+	@Test
+	public void testEachDistinctIdIsFetchedOnce() throws Exception {
+		List<Future<Customer>> futures = new ArrayList<Future<Customer>>();
+		for (String customerId : Arrays.asList("cus_1", "cus_2", "cus_1", "cus_1", null)) {
+			Charge charge = new Charge();
+			charge.setCustomer(customerId);
+			futures.add(loader.load(Customer.class, charge.getCustomer()));
+		}
+		assertEquals(0, fetches.get());
+
+		loader.dispatch();
+
+		assertEquals(2, fetches.get());
+		assertEquals("cus_1", futures.get(0).get().getId());
+		assertSame(futures.get(0).get(), futures.get(3).get());
+		assertNull(futures.get(4).get());
+	}
+
+	@Test
+	public void testLoadReferencedFromModelObjects() throws Exception {
+		Charge plain = new Charge();
+		plain.setCustomer("cus_1");
+		Charge expanded = APIResource.GSON.fromJson("{\"id\": \"ch_2\", \"object\": \"charge\","
+				+ " \"customer\": {\"id\": \"cus_2\", \"object\": \"customer\", \"email\": \"a@example.com\"}}",
+				Charge.class);
+		Charge guest = new Charge();
+
+		Map<String, Future<Customer>> futures = loader.loadReferenced(Customer.class,
+				Arrays.asList(plain, expanded, guest, plain));
+
+		assertEquals(Arrays.asList("cus_1", "cus_2"), new ArrayList<String>(futures.keySet()));
+		assertSame(expanded.getCustomerObject(), futures.get("cus_2").get());
+		assertEquals("cus_1", futures.get("cus_1").get().getId());
+		assertEquals(1, fetches.get());
+		try {
+			loader.loadReferenced(Customer.class, Arrays.asList(new Customer()));
+			fail("Expected an IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			// Customers don't reference customers
+		}
+	}
+
+	@Test
+	public void testExpandedReferencesAreReusedByLaterLoads() throws Exception {
+		Charge expanded = APIResource.GSON.fromJson("{\"id\": \"ch_1\", \"object\": \"charge\","
+				+ " \"customer\": {\"id\": \"cus_1\", \"object\": \"customer\"}}",
+				Charge.class);
+
+		loader.loadReferenced(Customer.class, Arrays.asList(expanded));
+		Future<Customer> later = loader.load(Customer.class, "cus_1");
+		loader.dispatch();
+
+		assertSame(expanded.getCustomerObject(), later.get());
+		assertEquals(0, fetches.get());
+	}
+
+	@Test
+	public void testGetWithTimeoutDoesNotWaitForTheWholeBatch() throws Exception {
+		final CountDownLatch slow = new CountDownLatch(1);
+		loader.register(Invoice.class, new BulkRetriever.Retriever<Invoice>() {
+			public Invoice retrieve(String id, RequestOptions options) {
+				if (id.equals("in_slow")) {
+					try {
+						slow.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				Invoice invoice = new Invoice();
+				invoice.setId(id);
+				return invoice;
+			}
+		});
+		Future<Invoice> fast = loader.load(Invoice.class, "in_fast");
+		Future<Invoice> stuck = loader.load(Invoice.class, "in_slow");
+		try {
+			assertEquals("in_fast", fast.get(5, TimeUnit.SECONDS).getId());
+			try {
+				stuck.get(50, TimeUnit.MILLISECONDS);
+				fail("Expected a TimeoutException");
+			} catch (TimeoutException e) {
+				// Still waiting on the slow invoice
+			}
+		} finally {
+			slow.countDown();
+		}
+		assertEquals("in_slow", stuck.get(5, TimeUnit.SECONDS).getId());
+	}
+
+	@Test
+	public void testGetDispatchesAndReportsFailuresPerId() throws Exception {
+		Map<String, Future<Customer>> futures = loader.loadAll(Customer.class, Arrays.asList("cus_1", "cus_missing"));
+
+		assertEquals("cus_1", futures.get("cus_1").get().getId());
+		try {
+			futures.get("cus_missing").get();
+			fail("Expected the missing customer to fail");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof InvalidRequestException);
+		}
+
+		loader.load(Customer.class, "cus_1").get();
+		assertEquals(2, fetches.get());
+	}
+}
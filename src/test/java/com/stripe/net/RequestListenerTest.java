@@ -0,0 +1,193 @@
+package com.stripe.net;
+
+import com.stripe.exception.CardException;
+import com.stripe.exception.StripeException;
+import com.stripe.model.Charge;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RequestListenerTest {
+	static final String CHARGE = "{\"id\": \"ch_123\", \"object\": \"charge\", \"amount\": 100}";
+	static final String CARD_ERROR = "{\"error\": {\"type\": \"card_error\", \"message\": \"Your card was declined.\","
+			+ " \"code\": \"card_declined\"}}";
+
+	HttpServer server;
+	StripeClient client;
+	RecordingListener listener = new RecordingListener();
+
+	@Before
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/v1/charges", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				InputStream request = exchange.getRequestBody();
+				while (request.read() != -1) {
+					// Drain it so the connection can be reused
+				}
+				boolean declined = "POST".equals(exchange.getRequestMethod());
+				byte[] body = (declined ? CARD_ERROR : CHARGE).getBytes("UTF-8");
+				exchange.getResponseHeaders().add("Request-Id", "req_123");
+				exchange.sendResponseHeaders(declined ? 402 : 200, body.length);
+				exchange.getResponseBody().write(body);
+				exchange.close();
+			}
+		});
+		server.start();
+		client = StripeClient.builder()
+				.setApiKey("sk_test_listener")
+				.setApiBase(String.format("http://127.0.0.1:%d", server.getAddress().getPort()))
+				.setReadTimeout(5000)
+				.addRequestListener(listener)
+				.build();
+	}
+
+	@After
+	public void stopServer() {
+		server.stop(0);
+	}
+
+	@Test
+	public void testCallbacksForSuccessfulRequest() throws StripeException {
+		Charge.retrieve("ch_123", client.getRequestOptions());
+
+		assertEquals("start connected firstByte bodyRead deserialized", listener.events());
+		RequestTrace trace = listener.trace;
+		assertEquals(APIResource.RequestMethod.GET, trace.getMethod());
+		assertEquals("/v1/charges/{id}", trace.getEndpoint());
+		assertEquals(1, trace.getAttempt());
+		assertEquals(200, trace.getStatusCode());
+		assertEquals("req_123", trace.getRequestId());
+		assertEquals(CHARGE.length(), trace.getResponseBytes());
+		// Plain HTTP, so no handshake
+		assertFalse(trace.isNewConnection());
+		assertTrue(trace.getStartNanos() <= trace.getConnectedNanos());
+		assertTrue(trace.getConnectedNanos() <= trace.getFirstByteNanos());
+		assertTrue(trace.getFirstByteNanos() <= trace.getBodyReadNanos());
+		assertTrue(trace.getBodyReadNanos() <= trace.getDeserializedNanos());
+		assertEquals(trace.getDeserializedNanos(), trace.getEndNanos());
+	}
+
+	@Test
+	public void testCallbacksForErrorResponse() throws StripeException {
+		Map<String, Object> params = new HashMap<String, Object>();
+		params.put("amount", 100);
+		params.put("currency", "usd");
+		try {
+			Charge.create(params, client.getRequestOptions());
+			fail("Expected a CardException");
+		} catch (CardException e) {
+			assertSame(e, listener.error);
+		}
+
+		assertEquals("start connected firstByte bodyRead error", listener.events());
+		assertEquals(402, listener.trace.getStatusCode());
+		assertEquals("/v1/charges", listener.trace.getEndpoint());
+		assertTrue(listener.trace.getRequestBytes() > 0);
+		assertTrue(listener.trace.getEndNanos() >= listener.trace.getBodyReadNanos());
+	}
+
+	@Test
+	public void testRetriesAreReported() throws StripeException {
+		Charge.retrieve("ch_123", client.requestOptionsBuilder().setAttempt(2).build());
+
+		assertEquals("start retry connected firstByte bodyRead deserialized", listener.events());
+		assertEquals(2, listener.trace.getAttempt());
+	}
+
+	@Test
+	public void testFailingListenerDoesNotBreakRequests() throws StripeException {
+		LiveStripeResponseGetter getter = (LiveStripeResponseGetter) client.getResponseGetter();
+		RequestListener failing = new RequestListener() {
+			@Override
+			public void onStart(RequestTrace trace) {
+				throw new IllegalStateException();
+			}
+		};
+		getter.addRequestListener(failing);
+
+		assertEquals("ch_123", Charge.retrieve("ch_123", client.getRequestOptions()).getId());
+
+		getter.removeRequestListener(failing);
+		getter.removeRequestListener(listener);
+		Charge.retrieve("ch_123", client.getRequestOptions());
+		assertEquals("start connected firstByte bodyRead deserialized", listener.events());
+	}
+
+	static class RecordingListener extends RequestListener {
+		final List<String> events = new ArrayList<String>();
+		RequestTrace trace;
+		Throwable error;
+
+		@Override
+		public void onStart(RequestTrace trace) {
+			this.trace = trace;
+			events.add("start");
+		}
+
+		@Override
+		public void onRetry(RequestTrace trace) {
+			events.add("retry");
+		}
+
+		@Override
+		public void onTlsHandshakeDone(RequestTrace trace) {
+			events.add("handshake");
+		}
+
+		@Override
+		public void onConnectionAcquired(RequestTrace trace) {
+			events.add("connected");
+		}
+
+		@Override
+		public void onFirstByte(RequestTrace trace) {
+			events.add("firstByte");
+		}
+
+		@Override
+		public void onBodyRead(RequestTrace trace) {
+			events.add("bodyRead");
+		}
+
+		@Override
+		public void onDeserialized(RequestTrace trace) {
+			events.add("deserialized");
+		}
+
+		@Override
+		public void onError(RequestTrace trace, Throwable error) {
+			this.error = error;
+			events.add("error");
+		}
+
+		String events() {
+			StringBuilder joined = new StringBuilder();
+			for (String event : events) {
+				if (joined.length() > 0) {
+					joined.append(' ');
+				}
+				joined.append(event);
+			}
+			return joined.toString();
+		}
+	}
+}
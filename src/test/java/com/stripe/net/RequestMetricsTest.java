@@ -0,0 +1,168 @@
+package com.stripe.net;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RequestMetricsTest {
+	RequestMetrics metrics = new RequestMetrics();
+
+	@Test
+	public void testRecordsNetworkAndDeserializationSeparately() {
+		for (int i = 1; i <= 100; i++) {
+			succeed(trace("https://api.stripe.com/v1/charges/ch_" + i, null), i, 1);
+		}
+
+		List<RequestMetrics.EndpointStats> stats = metrics.snapshot();
+		assertEquals(1, stats.size());
+		RequestMetrics.EndpointStats charges = stats.get(0);
+		assertEquals(APIResource.RequestMethod.GET, charges.getMethod());
+		assertEquals("/v1/charges/{id}", charges.getEndpoint());
+		assertEquals(RequestMetrics.PLATFORM, charges.getAccount());
+		assertEquals(100, charges.getNetworkLatency().getCount());
+		assertEquals(100, charges.getDeserializationLatency().getCount());
+		assertWithinBucket(TimeUnit.MILLISECONDS.toNanos(50), charges.getNetworkNanosAtPercentile(50));
+		assertWithinBucket(TimeUnit.MILLISECONDS.toNanos(99), charges.getNetworkNanosAtPercentile(99));
+		assertWithinBucket(TimeUnit.MILLISECONDS.toNanos(1), charges.getDeserializationNanosAtPercentile(99.9));
+		assertEquals(Long.valueOf(100), charges.getStatusCounts().get(200));
+		assertEquals(0, charges.getErrorCount());
+	}
+
+	@Test
+	public void testGroupsByMethodEndpointAndAccount() {
+		succeed(trace("https://api.stripe.com/v1/charges/ch_1", null), 1, 1);
+		succeed(trace("https://api.stripe.com/v1/charges/ch_2", "acct_1"), 1, 1);
+		succeed(trace("https://api.stripe.com/v1/charges/ch_3", "acct_2"), 1, 1);
+		succeed(new RequestTrace(new RequestListener[0], APIResource.RequestMethod.POST,
+				"https://api.stripe.com/v1/charges/ch_4", null), 1, 1);
+
+		List<RequestMetrics.EndpointStats> stats = metrics.snapshot();
+		assertEquals(3, stats.size());
+		assertEquals("GET", stats.get(0).getMethod().name());
+		assertEquals(RequestMetrics.CONNECTED_ACCOUNT, stats.get(0).getAccount());
+		assertEquals(2, stats.get(0).getNetworkLatency().getCount());
+		assertEquals(RequestMetrics.PLATFORM, stats.get(1).getAccount());
+		assertEquals(APIResource.RequestMethod.POST, stats.get(2).getMethod());
+	}
+
+	@Test
+	public void testCountsErrors() {
+		RequestTrace declined = trace("https://api.stripe.com/v1/charges", null);
+		declined.firstByte(402, "req_1");
+		metrics.onFirstByte(declined);
+		metrics.onError(declined, new RuntimeException());
+		RequestTrace timedOut = trace("https://api.stripe.com/v1/charges", null);
+		metrics.onError(timedOut, new IOException());
+
+		RequestMetrics.EndpointStats stats = metrics.snapshot().get(0);
+		assertEquals(Long.valueOf(1), stats.getStatusCounts().get(402));
+		assertEquals(Long.valueOf(1), stats.getStatusCounts().get(0));
+		assertEquals(2, stats.getErrorCount());
+	}
+
+	@Test
+	public void testSnapshotAndResetStartsNewInterval() {
+		succeed(trace("https://api.stripe.com/v1/customers/cus_1", null), 1, 1);
+
+		assertEquals(1, metrics.snapshotAndReset().get(0).getNetworkLatency().getCount());
+		assertTrue(metrics.snapshot().isEmpty());
+
+		succeed(trace("https://api.stripe.com/v1/customers/cus_1", null), 1, 1);
+		assertEquals(1, metrics.snapshot().get(0).getNetworkLatency().getCount());
+		metrics.reset();
+		assertTrue(metrics.snapshot().isEmpty());
+	}
+
+	@Test
+	public void testRecordsFromManyThreads() throws InterruptedException {
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < 1000; j++) {
+						succeed(trace("https://api.stripe.com/v1/charges/ch_1", null), 1, 1);
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		RequestMetrics.EndpointStats stats = metrics.snapshot().get(0);
+		assertEquals(8000, stats.getNetworkLatency().getCount());
+		assertEquals(Long.valueOf(8000), stats.getStatusCounts().get(200));
+	}
+
+	@Test
+	public void testSnapshotsDontChangeAfterwards() {
+		succeed(trace("https://api.stripe.com/v1/customers/cus_1", null), 1, 1);
+		RequestMetrics.EndpointStats stats = metrics.snapshot().get(0);
+
+		succeed(trace("https://api.stripe.com/v1/customers/cus_1", null), 1, 1);
+
+		assertEquals(1, stats.getNetworkLatency().getCount());
+		assertEquals(1, stats.getDeserializationLatency().getCount());
+		assertEquals(2, metrics.snapshot().get(0).getNetworkLatency().getCount());
+	}
+
+	@Test
+	public void testResetsLoseNothing() throws InterruptedException {
+		Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < 20000; j++) {
+						succeed(trace("https://api.stripe.com/v1/charges/ch_1", null), 1, 1);
+					}
+				}
+			};
+			threads[i].start();
+		}
+		long network = 0;
+		long statuses = 0;
+		boolean running = true;
+		while (running) {
+			running = false;
+			for (Thread thread : threads) {
+				running |= thread.isAlive();
+			}
+			for (RequestMetrics.EndpointStats stats : metrics.snapshotAndReset()) {
+				network += stats.getNetworkLatency().getCount();
+				// A request's phases may straddle a reset
+				Long ok = stats.getStatusCounts().get(200);
+				statuses += ok == null ? 0 : ok;
+			}
+		}
+
+		assertEquals(80000, network);
+		assertEquals(80000, statuses);
+	}
+
+	private RequestTrace trace(String url, String stripeAccount) {
+		RequestOptions options = RequestOptions.builder().setStripeAccount(stripeAccount).build();
+		return new RequestTrace(new RequestListener[0], APIResource.RequestMethod.GET, url, options);
+	}
+
+	private void succeed(RequestTrace trace, long networkMillis, long deserializationMillis) {
+		trace.statusCode = 200;
+		trace.bodyReadNanos = trace.getStartNanos() + TimeUnit.MILLISECONDS.toNanos(networkMillis);
+		trace.deserializedNanos = trace.bodyReadNanos + TimeUnit.MILLISECONDS.toNanos(deserializationMillis);
+		metrics.onFirstByte(trace);
+		metrics.onBodyRead(trace);
+		metrics.onDeserialized(trace);
+	}
+
+	private static void assertWithinBucket(long expectedNanos, long actualNanos) {
+		assertTrue(String.format("%d not within 12.5%% of %d", actualNanos, expectedNanos),
+				actualNanos >= expectedNanos && actualNanos <= expectedNanos * 1.125);
+	}
+}
@@ -0,0 +1,288 @@
+package com.stripe.net;
+
+import com.stripe.exception.CardException;
+import com.stripe.exception.StripeException;
+import com.stripe.model.Charge;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RequestRecorderTest {
+	static final String CHARGE = "{\"id\": \"ch_123\", \"object\": \"charge\", \"amount\": 100,"
+			+ " \"source\": {\"object\": \"card\", \"number\": \"4242424242424242\", \"cvc\": \"123\"}}";
+	static final String CARD_ERROR = "{\"error\": {\"type\": \"card_error\", \"message\": \"Your card was declined.\"}}";
+
+	static final Executor DIRECT = new Executor() {
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
+
+	HttpServer server;
+	String apiBase;
+
+	@Before
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/v1/charges", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				InputStream request = exchange.getRequestBody();
+				while (request.read() != -1) {
+					// Drain it so the connection can be reused
+				}
+				boolean declined = "POST".equals(exchange.getRequestMethod());
+				byte[] body = (declined ? CARD_ERROR : CHARGE).getBytes("UTF-8");
+				exchange.getResponseHeaders().add("Request-Id", declined ? "req_declined" : "req_123");
+				exchange.sendResponseHeaders(declined ? 402 : 200, body.length);
+				exchange.getResponseBody().write(body);
+				exchange.close();
+			}
+		});
+		server.start();
+		apiBase = String.format("http://127.0.0.1:%d", server.getAddress().getPort());
+	}
+
+	@After
+	public void stopServer() {
+		server.stop(0);
+	}
+
+	@Test
+	public void testRecordsRequests() throws StripeException {
+		RequestRecorder recorder = RequestRecorder.builder().build();
+		StripeClient client = client(recorder);
+
+		Charge.retrieve("ch_123", client.getRequestOptions());
+		decline(client);
+
+		List<RequestRecorder.Entry> entries = recorder.snapshot();
+		assertEquals(2, entries.size());
+		RequestRecorder.Entry retrieve = entries.get(0);
+		assertEquals(APIResource.RequestMethod.GET, retrieve.getMethod());
+		assertEquals("/v1/charges/{id}", retrieve.getEndpoint());
+		assertEquals(200, retrieve.getStatusCode());
+		assertEquals("req_123", retrieve.getRequestId());
+		assertEquals(1, retrieve.getAttempt());
+		assertNull(retrieve.getError());
+		assertNull(retrieve.getResponseBody());
+		assertTrue(retrieve.getLatencyNanos() > 0);
+		assertTrue(Math.abs(System.currentTimeMillis() - retrieve.getStartMillis()) < 60000);
+
+		RequestRecorder.Entry create = entries.get(1);
+		assertEquals(402, create.getStatusCode());
+		assertEquals(CardException.class.getName(), create.getError());
+	}
+
+	@Test
+	public void testKeepsOnlyTheLatestRequests() {
+		RequestRecorder recorder = RequestRecorder.builder().setCapacity(3).build();
+		for (int i = 0; i < 10; i++) {
+			recorder.onDeserialized(trace("https://api.stripe.com/v1/customers/cus_" + i, 200));
+		}
+
+		// Rounded up to 4
+		List<RequestRecorder.Entry> entries = recorder.snapshot();
+		assertEquals(4, entries.size());
+		assertEquals("req_6", entries.get(0).getRequestId());
+		assertEquals("req_9", entries.get(3).getRequestId());
+	}
+
+	@Test
+	public void testSampledBodiesAreRedacted() throws StripeException {
+		RequestRecorder recorder = RequestRecorder.builder().setBodySampling(1).build();
+		StripeClient client = client(recorder);
+
+		Charge.retrieve("ch_123", client.getRequestOptions());
+		Map<String, Object> card = new HashMap<String, Object>();
+		card.put("number", "4000000000000002");
+		card.put("cvc", "314");
+		Map<String, Object> params = new HashMap<String, Object>();
+		params.put("amount", 100);
+		params.put("card", card);
+		try {
+			Charge.create(params, client.getRequestOptions());
+			fail("Expected a CardException");
+		} catch (CardException e) {
+			// Recorded
+		}
+
+		List<RequestRecorder.Entry> entries = recorder.snapshot();
+		String response = entries.get(0).getResponseBody();
+		assertTrue(response, response.contains("\"ch_123\""));
+		assertFalse(response, response.contains("4242424242424242"));
+		assertFalse(response, response.contains("\"123\""));
+		String request = entries.get(1).getRequestBody();
+		assertTrue(request, request.contains("amount=100"));
+		assertFalse(request, request.contains("4000000000000002"));
+		assertFalse(request, request.contains("314"));
+	}
+
+	@Test
+	public void testRedact() {
+		assertEquals("card%5Bnumber%5D=[REDACTED]&card%5Bcvc%5D=[REDACTED]&amount=100",
+				RequestRecorder.redact("card%5Bnumber%5D=4242424242424242&card%5Bcvc%5D=123&amount=100"));
+		assertEquals("bank_account[account_number]=[REDACTED]&currency=usd",
+				RequestRecorder.redact("bank_account[account_number]=000123456789&currency=usd"));
+		assertEquals("{\"client_secret\": \"[REDACTED]\", \"key\": \"sk_live_[REDACTED]\"}",
+				RequestRecorder.redact("{\"client_secret\": \"pi_1_secret_2\", \"key\": \"sk_live_abc123\"}"));
+		assertEquals("{\"last4\": \"4242\"}", RequestRecorder.redact("{\"last4\": \"4242\"}"));
+	}
+
+	@Test
+	public void testDumpsOnErrorRateSpike() {
+		final List<String> reasons = new ArrayList<String>();
+		final List<Integer> sizes = new ArrayList<Integer>();
+		RequestRecorder recorder = RequestRecorder.builder()
+				.setDumpOnErrorRate(0.5, 4, new RequestRecorder.Sink() {
+					public void dump(List<RequestRecorder.Entry> requests, String reason) {
+						reasons.add(reason);
+						sizes.add(requests.size());
+					}
+				})
+				.setExecutor(DIRECT)
+				.build();
+
+		for (int i = 0; i < 4; i++) {
+			recorder.onDeserialized(trace("https://api.stripe.com/v1/charges", 200));
+		}
+		assertTrue(reasons.isEmpty());
+
+		recorder.onDeserialized(trace("https://api.stripe.com/v1/charges", 200));
+		for (int i = 0; i < 3; i++) {
+			recorder.onError(trace("https://api.stripe.com/v1/charges", 500), new RuntimeException());
+		}
+		assertEquals(1, reasons.size());
+		assertEquals("3 of the last 4 Stripe requests failed", reasons.get(0));
+		assertEquals(Integer.valueOf(8), sizes.get(0));
+
+		// Not again within the minimum interval
+		for (int i = 0; i < 4; i++) {
+			recorder.onError(trace("https://api.stripe.com/v1/charges", 500), new RuntimeException());
+		}
+		assertEquals(1, reasons.size());
+	}
+
+	@Test
+	public void testDumpToFile() throws IOException {
+		RequestRecorder recorder = RequestRecorder.builder().build();
+		recorder.onDeserialized(trace("https://api.stripe.com/v1/charges/ch_1", 200));
+		File file = File.createTempFile("stripe-requests", ".log");
+		try {
+			recorder.dump(file);
+			StringBuilder out = new StringBuilder();
+			recorder.dump(out);
+			assertTrue(out.toString(), out.toString().contains("GET /v1/charges/{id} status=200"));
+			assertEquals(out.length(), file.length());
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testRecordsFromManyThreads() throws InterruptedException {
+		final RequestRecorder recorder = RequestRecorder.builder().setCapacity(64).build();
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < 10000; j++) {
+						recorder.onDeserialized(trace("https://api.stripe.com/v1/charges/ch_1", 200));
+					}
+				}
+			};
+			threads[i].start();
+		}
+		while (threads[0].isAlive()) {
+			for (RequestRecorder.Entry entry : recorder.snapshot()) {
+				assertEquals("/v1/charges/{id}", entry.getEndpoint());
+			}
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		// A writer lapped by a newer one for the same slot loses its entry
+		int size = recorder.snapshot().size();
+		assertTrue(String.valueOf(size), size > 64 - threads.length && size <= 64);
+	}
+
+	@Test
+	public void testEntriesAreNeverMixedUp() throws InterruptedException {
+		final String[] resources = {"charges", "customers", "plans", "coupons", "refunds", "payouts", "products", "skus"};
+		final RequestRecorder recorder = RequestRecorder.builder().setCapacity(1).build();
+		Thread[] threads = new Thread[resources.length];
+		for (int i = 0; i < threads.length; i++) {
+			final int n = i;
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					RequestOptions options = RequestOptions.builder().setAttempt(n + 1).build();
+					for (int j = 0; j < 20000; j++) {
+						RequestTrace trace = new RequestTrace(new RequestListener[0], APIResource.RequestMethod.GET,
+								"https://api.stripe.com/v1/" + resources[n], options);
+						trace.firstByte(200 + n, "req_" + n);
+						trace.endNanos = trace.getStartNanos() + n;
+						recorder.onDeserialized(trace);
+					}
+				}
+			};
+			threads[i].start();
+		}
+		boolean running = true;
+		while (running) {
+			running = false;
+			for (Thread thread : threads) {
+				running |= thread.isAlive();
+			}
+			for (RequestRecorder.Entry entry : recorder.snapshot()) {
+				int n = entry.getAttempt() - 1;
+				assertEquals("/v1/" + resources[n], entry.getEndpoint());
+				assertEquals(200 + n, entry.getStatusCode());
+				assertEquals("req_" + n, entry.getRequestId());
+				assertEquals(n, entry.getLatencyNanos());
+			}
+		}
+	}
+
+	private StripeClient client(RequestRecorder recorder) {
+		return StripeClient.builder().setApiKey("sk_test_recorder").setApiBase(apiBase).setReadTimeout(5000)
+				.addRequestListener(recorder).build();
+	}
+
+	private void decline(StripeClient client) throws StripeException {
+		try {
+			Charge.create(new HashMap<String, Object>(), client.getRequestOptions());
+			fail("Expected a CardException");
+		} catch (CardException e) {
+			// Recorded
+		}
+	}
+
+	private static RequestTrace trace(String url, int statusCode) {
+		RequestTrace trace = new RequestTrace(new RequestListener[0], APIResource.RequestMethod.GET, url, null);
+		trace.firstByte(statusCode, "req_" + url.substring(url.lastIndexOf('_') + 1));
+		trace.endNanos = System.nanoTime();
+		return trace;
+	}
+}
@@ -0,0 +1,147 @@
+package com.stripe.net;
+
+import com.stripe.exception.CardException;
+import com.stripe.exception.StripeException;
+import com.stripe.model.Charge;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ResponseMetadataTest {
+	static final String CHARGE = "{\"id\": \"ch_123\", \"object\": \"charge\", \"amount\": 100}";
+	static final String CARD_ERROR = "{\"error\": {\"type\": \"card_error\", \"message\": \"Your card was declined.\"}}";
+
+	HttpServer server;
+	StripeClient client;
+
+	@Before
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/v1/charges", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				InputStream request = exchange.getRequestBody();
+				while (request.read() != -1) {
+					// Drain it so the connection can be reused
+				}
+				boolean declined = "POST".equals(exchange.getRequestMethod());
+				byte[] body = (declined ? CARD_ERROR : CHARGE).getBytes("UTF-8");
+				exchange.getResponseHeaders().add("Request-Id", declined ? "req_declined" : "req_123");
+				exchange.sendResponseHeaders(declined ? 402 : 200, body.length);
+				exchange.getResponseBody().write(body);
+				exchange.close();
+			}
+		});
+		server.start();
+		client = StripeClient.builder()
+				.setApiKey("sk_test_metadata")
+				.setApiBase(String.format("http://127.0.0.1:%d", server.getAddress().getPort()))
+				.setReadTimeout(5000)
+				.build();
+	}
+
+	@After
+	public void stopServer() {
+		server.stop(0);
+	}
+
+	@Test
+	public void testMetadataOnReturnedObject() throws StripeException {
+		Charge charge = Charge.retrieve("ch_123", client.getRequestOptions());
+
+		ResponseMetadata metadata = charge.getLastResponse();
+		assertEquals("req_123", metadata.getRequestId());
+		assertEquals(200, metadata.getStatusCode());
+		assertEquals(APIResource.RequestMethod.GET, metadata.getMethod());
+		assertTrue(metadata.getUrl().endsWith("/v1/charges/ch_123"));
+		assertEquals(1, metadata.getAttempt());
+		assertEquals(CHARGE.length(), metadata.getResponseBytes());
+		assertEquals(0, metadata.getRequestBytes());
+		assertEquals(0, metadata.getRequestWriteNanos());
+		assertEquals(0, metadata.getTlsHandshakeNanos());
+		assertTrue(metadata.getTimeToFirstByteNanos() > 0);
+		assertTrue(metadata.getTotalNanos() >= metadata.getConnectNanos() + metadata.getTimeToFirstByteNanos()
+				+ metadata.getBodyReadNanos() + metadata.getDeserializeNanos());
+		assertSame(metadata, ResponseMetadata.getLast());
+		// Never serialized along with the object
+		assertFalse(charge.toString().contains("req_123"));
+	}
+
+	@Test
+	public void testConnectionReuse() throws StripeException {
+		Charge.retrieve("ch_123", client.getRequestOptions());
+		Charge second = Charge.retrieve("ch_123", client.getRequestOptions());
+
+		assertTrue(second.getLastResponse().isConnectionReused());
+		assertNotSame(second.getLastResponse(), Charge.retrieve("ch_123", client.getRequestOptions()).getLastResponse());
+	}
+
+	@Test
+	public void testLastResponseForFailedRequest() throws StripeException {
+		Map<String, Object> params = new HashMap<String, Object>();
+		params.put("amount", 100);
+		try {
+			Charge.create(params, client.getRequestOptions());
+			fail("Expected a CardException");
+		} catch (CardException e) {
+			// Described by the thread's last response
+		}
+
+		ResponseMetadata metadata = ResponseMetadata.getLast();
+		assertEquals("req_declined", metadata.getRequestId());
+		assertEquals(402, metadata.getStatusCode());
+		assertEquals(APIResource.RequestMethod.POST, metadata.getMethod());
+		assertTrue(metadata.getRequestBytes() > 0);
+		assertEquals(CARD_ERROR.length(), metadata.getResponseBytes());
+		assertEquals(0, metadata.getDeserializeNanos());
+		assertTrue(metadata.getTotalNanos() > 0);
+	}
+
+	@Test
+	public void testPhasesNotReachedAreZero() {
+		// As for App Engine URL Fetch, where the body isn't read separately
+		RequestTrace trace = new RequestTrace(new RequestListener[0], APIResource.RequestMethod.GET,
+				"https://api.stripe.com/v1/charges/ch_123", null);
+		trace.firstByte(200, "req_123");
+		trace.deserialized();
+
+		ResponseMetadata metadata = new ResponseMetadata(trace);
+		assertEquals(0, metadata.getBodyReadNanos());
+		assertEquals(0, metadata.getDeserializeNanos());
+		assertTrue(metadata.getTotalNanos() > 0);
+	}
+
+	@Test
+	public void testLastResponseIsPerThread() throws Exception {
+		Charge.retrieve("ch_123", client.getRequestOptions());
+		final ResponseMetadata[] seen = new ResponseMetadata[1];
+		Thread other = new Thread() {
+			@Override
+			public void run() {
+				seen[0] = ResponseMetadata.getLast();
+			}
+		};
+		other.start();
+		other.join();
+
+		assertNull(seen[0]);
+		assertEquals("req_123", ResponseMetadata.getLast().getRequestId());
+	}
+}
@@ -0,0 +1,213 @@
+package com.stripe.net;
+
+import com.stripe.exception.StripeException;
+import com.stripe.model.Charge;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SlowRequestDetectorTest {
+	static final String CHARGE = "{\"id\": \"ch_123\", \"object\": \"charge\", \"amount\": 100}";
+
+	HttpServer server;
+	String apiBase;
+	final List<SlowRequestDetector.SlowRequest> reports =
+			Collections.synchronizedList(new ArrayList<SlowRequestDetector.SlowRequest>());
+	final SlowRequestDetector.Sink sink = new SlowRequestDetector.Sink() {
+		public void report(SlowRequestDetector.SlowRequest request) {
+			reports.add(request);
+		}
+	};
+
+	@Before
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/v1/charges", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				InputStream request = exchange.getRequestBody();
+				while (request.read() != -1) {
+					// Drain it so the connection can be reused
+				}
+				if (exchange.getRequestURI().getPath().endsWith("ch_slow")) {
+					try {
+						Thread.sleep(200);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				byte[] body = CHARGE.getBytes("UTF-8");
+				exchange.getResponseHeaders().add("Request-Id", "req_123");
+				exchange.sendResponseHeaders(200, body.length);
+				exchange.getResponseBody().write(body);
+				exchange.close();
+			}
+		});
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.start();
+		apiBase = String.format("http://127.0.0.1:%d", server.getAddress().getPort());
+	}
+
+	@After
+	public void stopServer() {
+		server.stop(0);
+	}
+
+	@Test
+	public void testReportsRequestsOverTheirEndpointsThreshold() throws StripeException {
+		SlowRequestDetector detector = SlowRequestDetector.builder()
+				.setDefaultThreshold(1, TimeUnit.MINUTES)
+				.setThreshold("/v1/charges/{id}", 100, TimeUnit.MILLISECONDS)
+				.setSink(sink)
+				.build();
+		StripeClient client = StripeClient.builder().setApiKey("sk_test_slow").setApiBase(apiBase)
+				.setReadTimeout(5000).addRequestListener(detector).build();
+		warmUp();
+
+		Charge.retrieve("ch_fast", client.getRequestOptions());
+		Charge.retrieve("ch_slow", client.getRequestOptions());
+
+		assertEquals(1, reports.size());
+		SlowRequestDetector.SlowRequest report = reports.get(0);
+		assertEquals("/v1/charges/{id}", report.getEndpoint());
+		assertEquals(TimeUnit.MILLISECONDS.toNanos(100), report.getThresholdNanos());
+		assertEquals("req_123", report.getMetadata().getRequestId());
+		assertEquals(200, report.getMetadata().getStatusCode());
+		assertEquals(CHARGE.length(), report.getMetadata().getResponseBytes());
+		assertTrue(report.getMetadata().getTimeToFirstByteNanos() >= TimeUnit.MILLISECONDS.toNanos(200));
+		assertTrue(report.getTotalNanos() >= TimeUnit.MILLISECONDS.toNanos(200));
+		assertEquals(0, report.getQueueWaitNanos());
+		assertEquals(0, report.getInFlightAtStart());
+		assertEquals(0, report.getRetries());
+		assertNull(report.getError());
+		assertTrue(report.toString(), report.toString().startsWith("GET /v1/charges/{id} took="));
+	}
+
+	@Test
+	public void testIncludesQueueWait() throws Exception {
+		SlowRequestDetector detector = SlowRequestDetector.builder()
+				.setDefaultThreshold(150, TimeUnit.MILLISECONDS)
+				.setSink(sink)
+				.build();
+		LiveStripeResponseGetter live = new LiveStripeResponseGetter(1000, 5000, null, null);
+		live.addRequestListener(detector);
+		final StripeClient client = StripeClient.builder().setApiKey("sk_test_slow").setApiBase(apiBase)
+				.setResponseGetter(PriorityStripeResponseGetter.builder(live)
+						.setMaxConcurrency(1).setReservedInteractiveCapacity(0).build())
+				.build();
+		warmUp();
+
+		Thread slow = new Thread() {
+			@Override
+			public void run() {
+				try {
+					Charge.retrieve("ch_slow", client.getRequestOptions());
+				} catch (StripeException e) {
+					fail(e.getMessage());
+				}
+			}
+		};
+		slow.start();
+		Thread.sleep(50);
+		Charge.retrieve("ch_fast", client.getRequestOptions());
+		slow.join();
+
+		assertEquals(2, reports.size());
+		SlowRequestDetector.SlowRequest queued = reports.get(1);
+		assertTrue(queued.toString(), queued.getQueueWaitNanos() >= TimeUnit.MILLISECONDS.toNanos(100));
+		assertTrue(queued.getMetadata().getTotalNanos() < TimeUnit.MILLISECONDS.toNanos(150));
+		assertEquals(0, new RequestTrace(new RequestListener[0], APIResource.RequestMethod.GET, apiBase, null)
+				.getQueueWaitNanos());
+	}
+
+	@Test
+	public void testMethodSpecificThresholdsWin() {
+		SlowRequestDetector detector = SlowRequestDetector.builder()
+				.setThreshold("/v1/charges", 1, TimeUnit.SECONDS)
+				.setThreshold("POST /v1/charges", 5, TimeUnit.SECONDS)
+				.setSink(sink)
+				.build();
+
+		assertEquals(TimeUnit.SECONDS.toNanos(5),
+				detector.getThresholdNanos(APIResource.RequestMethod.POST, "/v1/charges"));
+		assertEquals(TimeUnit.SECONDS.toNanos(1),
+				detector.getThresholdNanos(APIResource.RequestMethod.GET, "/v1/charges"));
+		assertEquals(TimeUnit.SECONDS.toNanos(2),
+				detector.getThresholdNanos(APIResource.RequestMethod.GET, "/v1/customers"));
+	}
+
+	@Test
+	public void testRateLimit() {
+		SlowRequestDetector detector = SlowRequestDetector.builder()
+				.setDefaultThreshold(1, TimeUnit.MILLISECONDS)
+				.setRateLimit(2, 1, TimeUnit.HOURS)
+				.setSink(sink)
+				.build();
+
+		for (int i = 0; i < 5; i++) {
+			detector.onError(slowTrace(), new IOException());
+		}
+
+		assertEquals(2, reports.size());
+		assertEquals(IOException.class.getName(), reports.get(0).getError());
+		assertEquals(0, reports.get(1).getSuppressedReports());
+	}
+
+	@Test
+	public void testCountsSuppressedReports() throws InterruptedException {
+		SlowRequestDetector detector = SlowRequestDetector.builder()
+				.setDefaultThreshold(1, TimeUnit.MILLISECONDS)
+				.setRateLimit(1, 50, TimeUnit.MILLISECONDS)
+				.setSink(sink)
+				.build();
+
+		for (int i = 0; i < 4; i++) {
+			detector.onDeserialized(slowTrace());
+		}
+		Thread.sleep(60);
+		detector.onDeserialized(slowTrace());
+
+		assertEquals(2, reports.size());
+		assertEquals(3, reports.get(1).getSuppressedReports());
+	}
+
+	@Test
+	public void testRequiresSink() {
+		try {
+			SlowRequestDetector.builder().build();
+			fail("Expected an IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			// Nowhere to report to
+		}
+	}
+
+	private void warmUp() throws StripeException {
+		// So the first request measured isn't slowed by class loading
+		Charge.retrieve("ch_fast", StripeClient.builder().setApiKey("sk_test_slow").setApiBase(apiBase)
+				.build().getRequestOptions());
+	}
+
+	private static RequestTrace slowTrace() {
+		RequestTrace trace = new RequestTrace(new RequestListener[0], APIResource.RequestMethod.GET,
+				"https://api.stripe.com/v1/charges", null);
+		trace.endNanos = trace.getStartNanos() + TimeUnit.MILLISECONDS.toNanos(10);
+		return trace;
+	}
+}
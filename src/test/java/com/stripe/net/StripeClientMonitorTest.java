@@ -0,0 +1,170 @@
+package com.stripe.net;
+
+import com.stripe.exception.CardException;
+import com.stripe.exception.StripeException;
+import com.stripe.model.Charge;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class StripeClientMonitorTest {
+	static final String CHARGE = "{\"id\": \"ch_123\", \"object\": \"charge\", \"amount\": 100}";
+	static final String CARD_ERROR = "{\"error\": {\"type\": \"card_error\", \"message\": \"Your card was declined.\"}}";
+
+	HttpServer server;
+	String apiBase;
+	StripeClientMonitor monitor;
+
+	@Before
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/v1/charges", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				InputStream request = exchange.getRequestBody();
+				while (request.read() != -1) {
+					// Drain it so the connection can be reused
+				}
+				boolean declined = "POST".equals(exchange.getRequestMethod());
+				byte[] body = (declined ? CARD_ERROR : CHARGE).getBytes("UTF-8");
+				exchange.sendResponseHeaders(declined ? 402 : 200, body.length);
+				exchange.getResponseBody().write(body);
+				exchange.close();
+			}
+		});
+		server.start();
+		apiBase = String.format("http://127.0.0.1:%d", server.getAddress().getPort());
+	}
+
+	@After
+	public void stopServer() {
+		if (monitor != null) {
+			monitor.unregister();
+		}
+		server.stop(0);
+	}
+
+	@Test
+	public void testCountsRequestsAndErrors() throws StripeException {
+		StripeClient client = StripeClient.builder().setApiKey("sk_test_jmx").setApiBase(apiBase)
+				.setReadTimeout(5000).build();
+		monitor = StripeClientMonitor.register(client, "counts");
+
+		Charge.retrieve("ch_123", client.getRequestOptions());
+		Map<String, Object> params = new HashMap<String, Object>();
+		params.put("amount", 100);
+		try {
+			Charge.create(params, client.getRequestOptions());
+			fail("Expected a CardException");
+		} catch (CardException e) {
+			// Counted below
+		}
+
+		assertEquals(2, monitor.getRequestCount());
+		assertEquals(0, monitor.getInFlightRequests());
+		assertEquals(1, monitor.getErrorCount());
+		assertEquals(Long.valueOf(1), monitor.getErrorCounts().get("CardException"));
+		assertEquals(2, monitor.getConnectionsAcquired());
+		assertEquals(0, monitor.getNewConnections());
+		assertTrue(monitor.getTlsHandshakeCount() >= 0);
+
+		monitor.resetCounts();
+		assertEquals(0, monitor.getRequestCount());
+		assertTrue(monitor.getErrorCounts().isEmpty());
+	}
+
+	@Test
+	public void testAttributesThroughMBeanServer() throws Exception {
+		LiveStripeResponseGetter live = new LiveStripeResponseGetter(1000, 5000, null, null);
+		PriorityStripeResponseGetter priority = PriorityStripeResponseGetter.builder(live)
+				.setMaxConcurrency(8).setReservedInteractiveCapacity(2).build();
+		StripeClient client = StripeClient.builder().setApiBase(apiBase)
+				.setResponseGetter(new CoalescingStripeResponseGetter(priority))
+				.setObjectCache(LruObjectCache.builder().build())
+				.build();
+		monitor = StripeClientMonitor.register(client, "tenant \"a\"");
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+		assertTrue(server.isRegistered(monitor.getObjectName()));
+		assertEquals(1000, server.getAttribute(monitor.getObjectName(), "ConnectTimeoutMillis"));
+		assertEquals(8, server.getAttribute(monitor.getObjectName(), "MaxConcurrency"));
+		assertEquals(-1.0, server.getAttribute(monitor.getObjectName(), "AvailableHedges"));
+		assertEquals(0L, server.getAttribute(monitor.getObjectName(), "CacheHitCount"));
+		assertTrue(server.getAttribute(monitor.getObjectName(), "ErrorCounts") instanceof TabularData);
+
+		server.setAttribute(monitor.getObjectName(), new Attribute("ReadTimeoutMillis", 250));
+		server.setAttribute(monitor.getObjectName(), new Attribute("MaxConcurrency", 4));
+
+		assertEquals(250, live.getReadTimeoutMillis());
+		assertEquals(4, priority.getMaxConcurrency());
+	}
+
+	@Test
+	public void testErrorCountsAreOpenData() throws Exception {
+		StripeClient client = StripeClient.builder().setApiKey("sk_test_jmx").setApiBase(apiBase)
+				.setReadTimeout(5000).build();
+		monitor = StripeClientMonitor.register(client, "open-data");
+		try {
+			Charge.create(new HashMap<String, Object>(), client.getRequestOptions());
+		} catch (CardException e) {
+			// Counted below
+		}
+
+		TabularData errors = (TabularData) ManagementFactory.getPlatformMBeanServer()
+				.getAttribute(monitor.getObjectName(), "ErrorCounts");
+		CompositeData row = (CompositeData) errors.values().iterator().next();
+		assertEquals("CardException", row.get("key"));
+		assertEquals(1L, row.get("value"));
+	}
+
+	@Test
+	public void testWithoutSchedulerOrCache() {
+		StripeClient client = StripeClient.builder().setApiBase(apiBase).build();
+		monitor = StripeClientMonitor.register(client, "plain");
+
+		assertEquals(-1, monitor.getMaxConcurrency());
+		assertEquals(-1.0, monitor.getCacheHitRatio(), 0.0);
+		try {
+			monitor.setMaxConcurrency(4);
+			fail("Expected an UnsupportedOperationException");
+		} catch (UnsupportedOperationException e) {
+			// Nothing to limit
+		}
+	}
+
+	@Test
+	public void testUnregister() {
+		StripeClient client = StripeClient.builder().setApiBase(apiBase).build();
+		monitor = StripeClientMonitor.register(client, "unregister");
+		try {
+			StripeClientMonitor.register(client, "unregister");
+			fail("Expected an IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			// Names are unique
+		}
+
+		monitor.unregister();
+
+		assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(monitor.getObjectName()));
+		monitor = null;
+	}
+}
@@ -0,0 +1,91 @@
+package com.stripe.net;
+
+import com.stripe.BaseStripeTest;
+import com.stripe.exception.StripeException;
+import com.stripe.model.Charge;
+
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.*;
+
+public class StripeClientTest extends BaseStripeTest {
+	StripeResponseGetter tenantGetter;
+
+	@Before
+	public void mockStripeResponseGetter() {
+		APIResource.setStripeResponseGetter(networkMock);
+		tenantGetter = mock(StripeResponseGetter.class);
+	}
+
+	@After
+	public void unmockStripeResponseGetter() {
+		/* This needs to be done because tests aren't isolated in Java */
+		APIResource.setStripeResponseGetter(new LiveStripeResponseGetter());
+	}
+
+	@Test
+	public void testRequestsAreRoutedToTheClientTransport() throws StripeException {
+		StripeClient client = StripeClient.builder()
+				.setApiKey("sk_test_tenant")
+				.setApiBase("http://localhost:12111")
+				.setResponseGetter(tenantGetter)
+				.build();
+
+		Charge.retrieve("ch_123", client.getRequestOptions());
+
+		ArgumentCaptor<RequestOptions> options = ArgumentCaptor.forClass(RequestOptions.class);
+		verify(tenantGetter).request(
+				eq(APIResource.RequestMethod.GET),
+				eq("http://localhost:12111/v1/charges/ch_123"),
+				(Map<String, Object>) isNull(),
+				eq(Charge.class),
+				eq(APIResource.RequestType.NORMAL),
+				options.capture());
+		assertEquals("sk_test_tenant", options.getValue().getApiKey());
+		assertSame(client, options.getValue().getClient());
+		verifyZeroInteractions(networkMock);
+	}
+
+	@Test
+	public void testRequestsWithoutAClientUseTheDefault() throws StripeException {
+		Charge.retrieve("ch_123");
+
+		verifyGet(Charge.class, "https://api.stripe.com/v1/charges/ch_123");
+		verifyZeroInteractions(tenantGetter);
+		assertSame(networkMock, StripeClient.getDefault().getResponseGetter());
+	}
+
+	@Test
+	public void testRequestOptionsBuilderKeepsTheClient() {
+		StripeClient client = StripeClient.builder().setApiKey("sk_test_tenant").setReadTimeout(5000).build();
+
+		RequestOptions options = client.requestOptionsBuilder().setIdempotencyKey("key").build();
+
+		assertSame(client, options.toBuilder().build().getClient());
+		assertEquals("key", options.getIdempotencyKey());
+		assertEquals(5000, ((LiveStripeResponseGetter) client.getResponseGetter()).getReadTimeoutMillis());
+		assertNull(RequestOptions.getDefault().getClient());
+	}
+
+	@Test
+	public void testOptionsForDifferentClientsAreNotEqual() {
+		StripeClient first = StripeClient.builder().setApiKey("sk_test_tenant").build();
+		StripeClient second = StripeClient.builder().setApiKey("sk_test_tenant").build();
+
+		RequestOptions options = first.getRequestOptions();
+
+		assertEquals(options, first.getRequestOptions());
+		assertEquals(options.hashCode(), first.getRequestOptions().hashCode());
+		assertFalse(options.equals(second.getRequestOptions()));
+		assertFalse(options.equals(options.toBuilder().setPriority(RequestOptions.Priority.BACKGROUND).build()));
+	}
+}
@@ -0,0 +1,90 @@
+package com.stripe.net;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StripeSSLSocketFactoryTest {
+	@Test
+	public void testSessionCacheIsConfigured() throws Exception {
+		SSLContext context = SSLContext.getInstance("TLS");
+		context.init(null, null, null);
+		new StripeSSLSocketFactory(context, 50, 600);
+
+		assertEquals(50, context.getClientSessionContext().getSessionCacheSize());
+		assertEquals(600, context.getClientSessionContext().getSessionTimeout());
+	}
+
+	@Test
+	public void testNewerProtocolsAreEnabled() throws Exception {
+		SSLContext context = SSLContext.getInstance("TLS");
+		context.init(null, null, null);
+		StripeSSLSocketFactory factory = new StripeSSLSocketFactory(context, 10, 60);
+		ServerSocket server = new ServerSocket(0);
+		try {
+			SSLSocket first = layer(factory, server);
+			SSLSocket second = layer(factory, server);
+
+			assertTrue(Arrays.asList(first.getEnabledProtocols()).contains("TLSv1.2"));
+			assertEquals(Arrays.asList(first.getEnabledProtocols()), Arrays.asList(second.getEnabledProtocols()));
+			assertEquals(0, factory.getHandshakeCount());
+			assertEquals(0, factory.getResumedHandshakeCount());
+			first.close();
+			second.close();
+		} finally {
+			server.close();
+		}
+	}
+
+	@Test
+	public void testWarmUpOpensConnectionsAtOnce() throws Exception {
+		final Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<Integer>());
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				clientPorts.add(exchange.getRemoteAddress().getPort());
+				byte[] body = "{}".getBytes("UTF-8");
+				exchange.sendResponseHeaders(404, body.length);
+				exchange.getResponseBody().write(body);
+				exchange.close();
+			}
+		});
+		server.start();
+		try {
+			String apiBase = String.format("http://127.0.0.1:%d", server.getAddress().getPort());
+			int opened = new LiveStripeResponseGetter().warmUp(apiBase, 3);
+
+			assertEquals(3, opened);
+			assertTrue(clientPorts.size() > 1);
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	public void testWarmUpCountsFailures() {
+		assertEquals(0, new LiveStripeResponseGetter(1000, 1000, null, null).warmUp("http://127.0.0.1:1", 2));
+	}
+
+	private static SSLSocket layer(StripeSSLSocketFactory factory, ServerSocket server) throws IOException {
+		Socket plain = new Socket("127.0.0.1", server.getLocalPort());
+		return (SSLSocket) factory.createSocket(plain, "127.0.0.1", server.getLocalPort(), true);
+	}
+}
@@ -0,0 +1,115 @@
+package com.stripe.net;
+
+import com.stripe.Stripe;
+import com.stripe.model.Charge;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Measures the time to the first successful request in a fresh JVM, with and
+ * without {@link Stripe#warmUp(int)}, against a local stand-in for the API.
+ * Each run gets its own JVM since the costs being measured are one-off. Run
+ * with the test classpath, e.g.:
+ *
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt
+ * java -cp target/classes:target/test-classes:$(cat cp.txt) com.stripe.net.WarmUpBenchmark 10
+ * </pre>
+ *
+ * The stand-in speaks plain HTTP, so TLS handshakes aren't part of the
+ * numbers.
+ */
+public class WarmUpBenchmark {
+	private static final String CHARGE = "{\"id\": \"ch_123\", \"object\": \"charge\", \"amount\": 100, "
+			+ "\"currency\": \"usd\", \"paid\": true, \"refunds\": {\"object\": \"list\", \"data\": []}}";
+
+	public static void main(String[] args) throws Exception {
+		if (args.length == 2) {
+			runOnce(args[0], args[1]);
+			return;
+		}
+		int runs = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/v1/charges/ch_123", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				byte[] body = CHARGE.getBytes("UTF-8");
+				exchange.sendResponseHeaders(200, body.length);
+				exchange.getResponseBody().write(body);
+				exchange.close();
+			}
+		});
+		server.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				exchange.sendResponseHeaders(404, -1);
+				exchange.close();
+			}
+		});
+		server.start();
+		String apiBase = String.format("http://127.0.0.1:%d", server.getAddress().getPort());
+		try {
+			for (String mode : Arrays.asList("cold", "warm")) {
+				List<Long> firstRequest = new ArrayList<Long>();
+				List<Long> total = new ArrayList<Long>();
+				for (int i = 0; i < runs; i++) {
+					String[] result = fork(mode, apiBase).split(" ");
+					firstRequest.add(Long.parseLong(result[0]));
+					total.add(Long.parseLong(result[1]));
+				}
+				System.out.printf("%s: median first request %.1fms, median from main() to first response %.1fms%n",
+						mode, median(firstRequest) / 1e6, median(total) / 1e6);
+			}
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	/*
+	 * Prints the nanoseconds taken by the first request, and since main().
+	 */
+	private static void runOnce(String mode, String apiBase) throws Exception {
+		long start = System.nanoTime();
+		Stripe.overrideApiBase(apiBase);
+		Stripe.apiKey = "sk_test_benchmark";
+		if (mode.equals("warm")) {
+			Stripe.warmUp(1);
+		}
+		long requestStart = System.nanoTime();
+		Charge.retrieve("ch_123");
+		long end = System.nanoTime();
+		System.out.println((end - requestStart) + " " + (end - start));
+	}
+
+	private static String fork(String mode, String apiBase) throws Exception {
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+				WarmUpBenchmark.class.getName(), mode, apiBase).redirectErrorStream(true).start();
+		BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8"));
+		String line;
+		String last = null;
+		while ((line = output.readLine()) != null) {
+			last = line;
+		}
+		if (process.waitFor() != 0) {
+			throw new IllegalStateException("Benchmark run failed: " + last);
+		}
+		return last;
+	}
+
+	private static long median(List<Long> values) {
+		List<Long> sorted = new ArrayList<Long>(values);
+		Collections.sort(sorted);
+		return sorted.get(sorted.size() / 2);
+	}
+}
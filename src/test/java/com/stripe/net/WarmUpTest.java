@@ -0,0 +1,68 @@
+package com.stripe.net;
+
+import com.stripe.Stripe;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class WarmUpTest {
+	HttpServer server;
+	String apiBase;
+	final AtomicInteger requests = new AtomicInteger();
+
+	@Before
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				requests.incrementAndGet();
+				byte[] body = "{}".getBytes("UTF-8");
+				exchange.sendResponseHeaders(404, body.length);
+				exchange.getResponseBody().write(body);
+				exchange.close();
+			}
+		});
+		server.start();
+		apiBase = String.format("http://127.0.0.1:%d", server.getAddress().getPort());
+	}
+
+	@After
+	public void stopServer() {
+		Stripe.overrideApiBase(Stripe.LIVE_API_BASE);
+		server.stop(0);
+	}
+
+	@Test
+	public void testWarmUpWithoutConnections() {
+		Stripe.overrideApiBase(apiBase);
+		Stripe.warmUp();
+
+		assertEquals(0, requests.get());
+	}
+
+	@Test
+	public void testWarmUpOpensConnectionsToApiBase() {
+		Stripe.overrideApiBase(apiBase);
+
+		assertEquals(2, Stripe.warmUp(2));
+		assertEquals(2, requests.get());
+	}
+
+	@Test
+	public void testWarmUpUsesClientApiBase() {
+		StripeClient client = StripeClient.builder().setApiBase(apiBase).setReadTimeout(5000).build();
+
+		assertEquals(1, WarmUp.run(client, 1));
+		assertEquals(1, requests.get());
+	}
+}
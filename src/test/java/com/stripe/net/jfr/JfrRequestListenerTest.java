@@ -0,0 +1,152 @@
+package com.stripe.net.jfr;
+
+import com.stripe.exception.CardException;
+import com.stripe.exception.StripeException;
+import com.stripe.model.Charge;
+import com.stripe.net.StripeClient;
+import com.sun.net.httpserver.HttpServer;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JfrRequestListenerTest {
+	static final String CHARGE = "{\"id\": \"ch_123\", \"object\": \"charge\", \"amount\": 100}";
+	static final String CARD_ERROR = "{\"error\": {\"type\": \"card_error\", \"message\": \"Your card was declined.\"}}";
+
+	HttpServer server;
+	StripeClient client;
+
+	@Before
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/v1/charges", exchange -> {
+			exchange.getRequestBody().readAllBytes();
+			boolean declined = "POST".equals(exchange.getRequestMethod());
+			byte[] body = (declined ? CARD_ERROR : CHARGE).getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().add("Request-Id", "req_123");
+			exchange.sendResponseHeaders(declined ? 402 : 200, body.length);
+			exchange.getResponseBody().write(body);
+			exchange.close();
+		});
+		server.start();
+		client = StripeClient.builder()
+				.setApiKey("sk_test_jfr")
+				.setApiBase(String.format("http://127.0.0.1:%d", server.getAddress().getPort()))
+				.setReadTimeout(5000)
+				.build();
+	}
+
+	@After
+	public void stopServer() {
+		server.stop(0);
+	}
+
+	@Test
+	public void testEventsAreRecorded() throws Exception {
+		List<RecordedEvent> events = record(() -> {
+			Charge.retrieve("ch_123", client.getRequestOptions());
+			Map<String, Object> params = new HashMap<>();
+			params.put("amount", 100);
+			try {
+				Charge.create(params, client.getRequestOptions());
+				fail("Expected a CardException");
+			} catch (CardException e) {
+				// Recorded with its status
+			}
+		});
+
+		List<RecordedEvent> requests = named(events, "com.stripe.Request");
+		assertEquals(2, requests.size());
+		RecordedEvent retrieve = requests.get(0);
+		assertEquals("GET", retrieve.getString("method"));
+		assertEquals("/v1/charges/{id}", retrieve.getString("endpoint"));
+		assertEquals(200, retrieve.getInt("statusCode"));
+		assertEquals(CHARGE.length(), retrieve.getLong("responseBytes"));
+		assertEquals(1, retrieve.getInt("attempt"));
+		assertEquals("req_123", retrieve.getString("requestId"));
+		assertTrue(retrieve.getLong("networkTime") > 0);
+		assertTrue(retrieve.getLong("deserializationTime") > 0);
+		assertFalse(retrieve.getDuration().isNegative());
+
+		RecordedEvent create = requests.get(1);
+		assertEquals("POST", create.getString("method"));
+		assertEquals(402, create.getInt("statusCode"));
+		assertTrue(create.getLong("requestBytes") > 0);
+		assertEquals(CardException.class.getName(), create.getString("error"));
+
+		List<RecordedEvent> deserializations = named(events, "com.stripe.Deserialization");
+		assertEquals(1, deserializations.size());
+		assertEquals("/v1/charges/{id}", deserializations.get(0).getString("endpoint"));
+	}
+
+	@Test
+	public void testNothingIsRecordedWhenDisabled() throws Exception {
+		List<RecordedEvent> events;
+		try (Recording recording = new Recording()) {
+			recording.disable(StripeRequestEvent.class);
+			recording.disable(StripeDeserializationEvent.class);
+			recording.start();
+			Charge.retrieve("ch_123", client.getRequestOptions());
+			recording.stop();
+			events = read(recording);
+		}
+
+		assertTrue(named(events, "com.stripe.Request").isEmpty());
+		assertTrue(named(events, "com.stripe.Deserialization").isEmpty());
+	}
+
+	interface Requests {
+		void send() throws StripeException;
+	}
+
+	private static List<RecordedEvent> record(Requests requests) throws StripeException, IOException {
+		try (Recording recording = new Recording()) {
+			recording.enable(StripeRequestEvent.class);
+			recording.enable(StripeDeserializationEvent.class);
+			recording.start();
+			requests.send();
+			recording.stop();
+			return read(recording);
+		}
+	}
+
+	private static List<RecordedEvent> read(Recording recording) throws IOException {
+		Path file = Files.createTempFile("stripe", ".jfr");
+		try {
+			recording.dump(file);
+			return RecordingFile.readAllEvents(file);
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	private static List<RecordedEvent> named(List<RecordedEvent> events, String name) {
+		List<RecordedEvent> named = new ArrayList<>();
+		for (RecordedEvent event : events) {
+			if (event.getEventType().getName().equals(name)) {
+				named.add(event);
+			}
+		}
+		named.sort((a, b) -> a.getStartTime().compareTo(b.getStartTime()));
+		return named;
+	}
+}